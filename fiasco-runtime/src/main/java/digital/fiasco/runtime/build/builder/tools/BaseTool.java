@@ -6,20 +6,39 @@ import com.telenav.kivakit.filesystem.Folder;
 import com.telenav.kivakit.interfaces.object.Copyable;
 import digital.fiasco.runtime.build.Build;
 import digital.fiasco.runtime.build.builder.Builder;
+import digital.fiasco.runtime.build.cache.ActionCache;
 import digital.fiasco.runtime.build.execution.BuildExecutionStep;
 import digital.fiasco.runtime.build.settings.BuildOption;
 import digital.fiasco.runtime.build.settings.BuildProfile;
 import digital.fiasco.runtime.build.settings.BuildSettings;
 import digital.fiasco.runtime.dependency.collections.ArtifactList;
 import digital.fiasco.runtime.librarian.Librarian;
+import digital.fiasco.runtime.repository.remote.server.FiascoClient;
+
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import static com.telenav.kivakit.core.messaging.Listener.nullListener;
+import static digital.fiasco.runtime.build.cache.ActionCache.actionCache;
+import static digital.fiasco.runtime.build.cache.ActionKey.actionKey;
+import static digital.fiasco.runtime.build.settings.BuildOption.ACTION_CACHE;
+import static digital.fiasco.runtime.build.settings.BuildOption.REMOTE_ACTION_CACHE;
 import static digital.fiasco.runtime.build.settings.BuildOption.VERBOSE;
 import static digital.fiasco.runtime.build.settings.BuildProfile.DEFAULT;
+import static digital.fiasco.runtime.repository.remote.server.FiascoClient.fiascoClient;
 
 /**
  * Base class for build {@link Tool}s. Build tools can be enabled or disabled under a given {@link BuildProfile}.
  *
+ * <p><b>Caching</b></p>
+ *
+ * <p>
+ * When {@link BuildOption#ACTION_CACHE} is enabled, a tool that implements {@link CacheableTool} is only run if the
+ * {@link ActionCache} has no outputs for its inputs. Otherwise, its outputs are restored from the cache. When
+ * {@link BuildOption#REMOTE_ACTION_CACHE} is also enabled, the cache is shared with other machines through a
+ * {@link FiascoClient}, which is created once for each build, so all of its tools share one connection to the server.
+ * </p>
+ *
  * @author Jonathan Locke
  */
 @SuppressWarnings("unused")
@@ -28,6 +47,9 @@ public abstract class BaseTool<TOOL extends BaseTool<TOOL, OUTPUT>, OUTPUT> exte
     Copyable<TOOL>,
     Tool<TOOL, OUTPUT>
 {
+    /** The action cache of each build, backed by a single {@link FiascoClient} that all of the build's tools share */
+    private static final Map<Build, ActionCache> remoteActionCaches = new WeakHashMap<>();
+
     /** The builder associated with this tool */
     private final Builder builder;
 
@@ -167,6 +189,11 @@ public abstract class BaseTool<TOOL extends BaseTool<TOOL, OUTPUT>, OUTPUT> exte
 
     /**
      * {@inheritDoc}
+     *
+     * <p>
+     * If the outputs of a {@link CacheableTool} are restored from the {@link ActionCache}, {@link #onRun()} is not
+     * called, and null is returned.
+     * </p>
      */
     @Override
     public final OUTPUT run()
@@ -176,7 +203,14 @@ public abstract class BaseTool<TOOL extends BaseTool<TOOL, OUTPUT>, OUTPUT> exte
         if (isEnabled())
         {
             onRunning();
-            output = onRun();
+            if (this instanceof CacheableTool cacheable && settings().isEnabled(ACTION_CACHE) && !shouldDescribe())
+            {
+                output = runCached(cacheable);
+            }
+            else
+            {
+                output = onRun();
+            }
             onRan();
         }
 
@@ -238,4 +272,62 @@ public abstract class BaseTool<TOOL extends BaseTool<TOOL, OUTPUT>, OUTPUT> exte
             return nullListener();
         }
     }
+
+    /**
+     * Returns the action cache of this tool's build, backed by the build's {@link FiascoClient}, creating it the first
+     * time it is needed
+     */
+    private ActionCache remoteActionCache()
+    {
+        synchronized (remoteActionCaches)
+        {
+            return remoteActionCaches.computeIfAbsent(build(), build ->
+                actionCache().withRemote(build.listenTo(fiascoClient())));
+        }
+    }
+
+    /**
+     * Restores the outputs of this tool from the action cache, or if they aren't cached, runs this tool and caches its
+     * outputs
+     *
+     * @param cacheable This tool
+     * @return The output of this tool, or null if its outputs were restored
+     */
+    private OUTPUT runCached(CacheableTool cacheable)
+    {
+        // Hash this tool's inputs, including the artifacts its builder depends on,
+        var root = rootFolder().asJavaFile().toPath();
+        var key = actionKey(root, getClass().getName());
+        for (var artifact : artifactDependencies())
+        {
+            key.with("dependency", artifact.descriptor().name());
+        }
+        var hash = cacheable.cacheInputs(key).key();
+
+        // and if outputs for those inputs are cached, restore them,
+        var cache = settings().isEnabled(REMOTE_ACTION_CACHE)
+            ? remoteActionCache()
+            : actionCache();
+        if (cache.restore(hash, root))
+        {
+            trace("Restored outputs of $ from action cache", getClass().getSimpleName());
+            return null;
+        }
+
+        // otherwise, run this tool and cache its outputs, unless it wrote files outside the root folder.
+        var output = onRun();
+        if (cacheable.shouldCacheOutputs())
+        {
+            var outputs = cacheable.cacheOutputs();
+            if (cache.canStore(root, outputs))
+            {
+                cache.store(hash, root, outputs);
+            }
+            else
+            {
+                trace("Not caching outputs of $, since some are outside $", getClass().getSimpleName(), root);
+            }
+        }
+        return output;
+    }
 }
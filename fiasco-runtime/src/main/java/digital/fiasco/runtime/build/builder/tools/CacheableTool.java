@@ -0,0 +1,53 @@
+package digital.fiasco.runtime.build.builder.tools;
+
+import com.telenav.kivakit.core.collections.list.ObjectList;
+import digital.fiasco.runtime.build.cache.ActionCache;
+import digital.fiasco.runtime.build.cache.ActionKey;
+import digital.fiasco.runtime.build.settings.BuildOption;
+
+import java.nio.file.Path;
+
+/**
+ * A {@link Tool} whose outputs depend only on its inputs, so they can be restored from an {@link ActionCache} instead
+ * of running the tool again. When {@link BuildOption#ACTION_CACHE} is enabled, {@link BaseTool#run()} computes an
+ * {@link ActionKey} from the tool's inputs. If the cache has outputs for the key, they are restored and the tool is not
+ * run. Otherwise, the tool is run and its outputs are stored under the key.
+ *
+ * <p><b>Caching</b></p>
+ *
+ * <ul>
+ *     <li>{@link #cacheInputs(ActionKey)}</li>
+ *     <li>{@link #cacheOutputs()}</li>
+ *     <li>{@link #shouldCacheOutputs()}</li>
+ * </ul>
+ *
+ * @author Jonathan Locke
+ * @see ActionCache
+ * @see ActionKey
+ */
+public interface CacheableTool
+{
+    /**
+     * Adds everything that affects this tool's outputs to the given key. The tool's class and the artifacts its builder
+     * depends on have already been added.
+     *
+     * @param key The key
+     * @return The key, for chaining
+     */
+    ActionKey cacheInputs(ActionKey key);
+
+    /**
+     * Returns the files written by this tool, after it has run
+     *
+     * @return The output files. If any is outside the builder's root folder, the outputs are not cached.
+     */
+    ObjectList<Path> cacheOutputs();
+
+    /**
+     * Returns true if the outputs of the last run should be cached. Outputs of a run that failed are not cached.
+     */
+    default boolean shouldCacheOutputs()
+    {
+        return true;
+    }
+}
@@ -1,8 +1,13 @@
 package digital.fiasco.runtime.build.builder.tools.assemble.archiver;
 
+import com.telenav.kivakit.core.collections.list.ObjectList;
 import com.telenav.kivakit.filesystem.File;
 import digital.fiasco.runtime.build.builder.Builder;
 import digital.fiasco.runtime.build.builder.tools.BaseFileTool;
+import digital.fiasco.runtime.build.builder.tools.CacheableTool;
+import digital.fiasco.runtime.build.cache.ActionKey;
+
+import java.nio.file.Path;
 
 import static com.telenav.kivakit.resource.compression.archive.ZipArchive.AccessMode.WRITE;
 import static com.telenav.kivakit.resource.compression.archive.ZipArchive.zipArchive;
@@ -13,7 +18,7 @@ import static com.telenav.kivakit.resource.compression.archive.ZipArchive.zipArc
  * @author Jonathan Locke
  */
 @SuppressWarnings("unused")
-public class Archiver extends BaseFileTool<Archiver, Void>
+public class Archiver extends BaseFileTool<Archiver, Void> implements CacheableTool
 {
     /** The archive */
     private File archiveFile;
@@ -39,6 +44,31 @@ public class Archiver extends BaseFileTool<Archiver, Void>
         this.archiveFile = that.archiveFile;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @param key {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public ActionKey cacheInputs(ActionKey key)
+    {
+        key.withPath("archive", archiveFile.asJavaFile().toPath());
+        files().forEach(it -> key.withFile(it.asJavaFile().toPath()));
+        return key;
+    }
+
+    /**
+     * Returns the archive file
+     *
+     * @return {@inheritDoc}
+     */
+    @Override
+    public ObjectList<Path> cacheOutputs()
+    {
+        return ObjectList.list(archiveFile.asJavaFile().toPath());
+    }
+
     /**
      * Returns a copy of this archiver
      */
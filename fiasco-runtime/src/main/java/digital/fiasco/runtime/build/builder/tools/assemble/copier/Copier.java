@@ -7,14 +7,20 @@
 
 package digital.fiasco.runtime.build.builder.tools.assemble.copier;
 
+import com.telenav.kivakit.core.collections.list.ObjectList;
 import com.telenav.kivakit.filesystem.Folder;
 import digital.fiasco.runtime.build.builder.Builder;
 import digital.fiasco.runtime.build.builder.tools.BaseFileTool;
+import digital.fiasco.runtime.build.builder.tools.CacheableTool;
+import digital.fiasco.runtime.build.cache.ActionKey;
+
+import java.nio.file.Path;
 
 import static com.telenav.kivakit.core.progress.reporters.BroadcastingProgressReporter.progressReporter;
 import static com.telenav.kivakit.core.string.Formatter.format;
 import static com.telenav.kivakit.filesystem.Folders.currentFolder;
 import static com.telenav.kivakit.resource.WriteMode.OVERWRITE;
+import static digital.fiasco.runtime.build.execution.Blocking.blocking;
 
 /**
  * Copies selected files from one folder to another.
@@ -22,7 +28,7 @@ import static com.telenav.kivakit.resource.WriteMode.OVERWRITE;
  * @author Jonathan Locke
  */
 @SuppressWarnings({ "unused", "UnusedReturnValue" })
-public class Copier extends BaseFileTool<Copier, Void>
+public class Copier extends BaseFileTool<Copier, Void> implements CacheableTool
 {
     /** The folder to copy to */
     private Folder to;
@@ -48,6 +54,40 @@ public class Copier extends BaseFileTool<Copier, Void>
         this.to = that.to;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @param key {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public ActionKey cacheInputs(ActionKey key)
+    {
+        key.withPath("to", to.asJavaFile().toPath());
+        files().forEach(it -> key.withFile(it.asJavaFile().toPath()));
+        return key;
+    }
+
+    /**
+     * Returns the copied files
+     *
+     * @return {@inheritDoc}
+     */
+    @Override
+    public ObjectList<Path> cacheOutputs()
+    {
+        var outputs = new ObjectList<Path>();
+        if (files().isNonEmpty())
+        {
+            var sourceFolder = files().parent();
+            for (var source : files())
+            {
+                outputs.add(to.file(source.relativeTo(sourceFolder)).asJavaFile().toPath());
+            }
+        }
+        return outputs;
+    }
+
     /**
      * Returns a copy of this copier
      */
@@ -99,7 +139,8 @@ public class Copier extends BaseFileTool<Copier, Void>
                 destination.parent().mkdirs();
 
                 // and copy the source file to the destination location
-                step(() -> source.safeCopyTo(destination, OVERWRITE, progress), "Copying $ to $", source, destination);
+                step(() -> blocking(() -> source.safeCopyTo(destination, OVERWRITE, progress)),
+                    "Copying $ to $", source, destination);
                 progress.next();
             }
             progress.end(files.size() + " files copied");
@@ -1,15 +1,20 @@
 package digital.fiasco.runtime.build.builder.tools.assemble.stamper;
 
 import com.telenav.cactus.metadata.BuildName;
+import com.telenav.kivakit.core.collections.list.ObjectList;
 import com.telenav.kivakit.core.collections.list.StringList;
 import com.telenav.kivakit.core.string.Formatter;
+import com.telenav.kivakit.filesystem.File;
 import digital.fiasco.runtime.build.builder.Builder;
 import digital.fiasco.runtime.build.builder.tools.BaseTool;
+import digital.fiasco.runtime.build.builder.tools.CacheableTool;
 import digital.fiasco.runtime.build.builder.tools.ToolFactory;
 import digital.fiasco.runtime.build.builder.tools.toolchain.git.GitLocalTimeConverter;
+import digital.fiasco.runtime.build.cache.ActionKey;
 import digital.fiasco.runtime.build.environment.BuildStructure;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.file.Path;
 import java.time.LocalDate;
 
 import static com.telenav.kivakit.core.collections.list.StringList.stringList;
@@ -47,6 +52,7 @@ import static com.telenav.kivakit.core.time.Time.now;
 @SuppressWarnings({ "unused", "SpellCheckingInspection" })
 public class BuildStamper extends BaseTool<BuildStamper, Void> implements
     BuildStructure,
+    CacheableTool,
     ToolFactory
 {
     /**
@@ -64,6 +70,34 @@ public class BuildStamper extends BaseTool<BuildStamper, Void> implements
         super(that);
     }
 
+    /**
+     * Adds the project properties, the commit hash and the build number. The build time is left out, so a stamp is
+     * restored from the cache until the commit or the build number changes. The build number is computed from the
+     * date, so it changes each day.
+     *
+     * @param key {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public ActionKey cacheInputs(ActionKey key)
+    {
+        return key.with("project", projectProperties().join("\n"))
+            .with("commit", newGit().commitHash().run())
+            .with("build-number", buildNumber());
+    }
+
+    /**
+     * Returns the project and build properties files
+     *
+     * @return {@inheritDoc}
+     */
+    @Override
+    public ObjectList<Path> cacheOutputs()
+    {
+        return ObjectList.list(projectPropertiesFile().asJavaFile().toPath(),
+            buildPropertiesFile().asJavaFile().toPath());
+    }
+
     @Override
     public BuildStamper copy()
     {
@@ -93,14 +127,10 @@ public class BuildStamper extends BaseTool<BuildStamper, Void> implements
     @Override
     public Void onRun()
     {
-        var name = associatedBuilder().descriptor().artifactName().name().replaceAll("\\.", "-");
-
-        announce("Stamping $ as build #$ ($)", name, buildNumber(), buildName());
+        announce("Stamping $ as build #$ ($)", stampName(), buildNumber(), buildName());
 
-        var projectProperties = targetClassesFolder()
-            .file(name + "-project.properties");
-        var buildProperties = targetClassesFolder()
-            .file(name + "-build.properties");
+        var projectProperties = projectPropertiesFile();
+        var buildProperties = buildPropertiesFile();
 
         step(() -> projectProperties.saveText(projectProperties().join("\n")),
             "Writing $", projectProperties);
@@ -138,6 +168,14 @@ public class BuildStamper extends BaseTool<BuildStamper, Void> implements
             "build.commit.time = " + commitTime);
     }
 
+    /**
+     * Returns the file holding build properties
+     */
+    private File buildPropertiesFile()
+    {
+        return targetClassesFolder().file(stampName() + "-build.properties");
+    }
+
     /**
      * Returns project properties as a {@link StringList}
      */
@@ -149,4 +187,20 @@ public class BuildStamper extends BaseTool<BuildStamper, Void> implements
             "artifact.version = " + descriptor.version(),
             "artifact = " + descriptor);
     }
+
+    /**
+     * Returns the file holding project properties
+     */
+    private File projectPropertiesFile()
+    {
+        return targetClassesFolder().file(stampName() + "-project.properties");
+    }
+
+    /**
+     * Returns the name that prefixes the properties files
+     */
+    private String stampName()
+    {
+        return associatedBuilder().descriptor().artifactName().name().replaceAll("\\.", "-");
+    }
 }
@@ -0,0 +1,47 @@
+package digital.fiasco.runtime.build.builder.tools.compile.java;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * A file manager that records the source file of each class file the compiler writes
+ *
+ * @author Jonathan Locke
+ * @see IncrementalCompilation
+ */
+public class ClassRecordingFileManager extends ForwardingJavaFileManager<JavaFileManager>
+{
+    /** The binary name of each class written, and the absolute path of its source file */
+    private final Map<String, String> classToSource;
+
+    /**
+     * @param fileManager The file manager to forward to
+     * @param classToSource The map to record classes in
+     */
+    public ClassRecordingFileManager(JavaFileManager fileManager, Map<String, String> classToSource)
+    {
+        super(fileManager);
+        this.classToSource = classToSource;
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location,
+                                               String className,
+                                               JavaFileObject.Kind kind,
+                                               FileObject sibling) throws IOException
+    {
+        if (kind == JavaFileObject.Kind.CLASS && sibling != null)
+        {
+            synchronized (classToSource)
+            {
+                classToSource.put(className, Path.of(sibling.toUri()).toString());
+            }
+        }
+        return super.getJavaFileForOutput(location, className, kind, sibling);
+    }
+}
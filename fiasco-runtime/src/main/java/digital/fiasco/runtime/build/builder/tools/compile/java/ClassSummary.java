@@ -0,0 +1,396 @@
+package digital.fiasco.runtime.build.builder.tools.compile.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * What incremental compilation needs to know about a compiled class, read from its class file:
+ *
+ * <ul>
+ *     <li>{@link #name()} - The internal name of the class, like java/lang/String</li>
+ *     <li>{@link #abi()} - A fingerprint of the part of the class that other classes compile against: its
+ *         declaration (including its annotations, permitted subclasses, record components and nested classes), and
+ *         the names, types, modifiers, throws clauses, annotations and annotation defaults of its non-private fields
+ *         and methods</li>
+ *     <li>{@link #constants()} - A fingerprint of the values of its constant fields, which the compiler copies into the
+ *         classes that use them, leaving no reference behind</li>
+ *     <li>{@link #references()} - The internal names of the classes it refers to</li>
+ * </ul>
+ *
+ * <p>
+ * Method bodies, private members and debug information are not part of the ABI fingerprint, so changing them doesn't
+ * require recompiling other classes.
+ * </p>
+ *
+ * @author Jonathan Locke
+ * @see IncrementalCompilation
+ */
+public record ClassSummary(String name, String abi, String constants, Set<String> references)
+{
+    /** Finds class names in field and method descriptors and signatures */
+    private static final Pattern DESCRIPTOR_CLASS = Pattern.compile("L([\\w/$]+)[;<]");
+
+    /** Private access flag */
+    private static final int ACC_PRIVATE = 0x0002;
+
+    /** Synthetic access flag */
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    /**
+     * Returns a summary of the class file at the given path
+     *
+     * @param classFile The class file
+     * @return The summary
+     * @throws IllegalStateException Thrown if the class file cannot be read
+     */
+    public static ClassSummary classSummary(Path classFile)
+    {
+        try
+        {
+            return classSummary(Files.readAllBytes(classFile));
+        }
+        catch (IOException e)
+        {
+            return illegalState(e, "Unable to read class file: $", classFile);
+        }
+    }
+
+    /**
+     * Returns a summary of the given class file
+     *
+     * @param bytes The bytes of the class file
+     * @return The summary
+     * @throws IllegalStateException Thrown if the class file is not valid
+     */
+    public static ClassSummary classSummary(byte[] bytes)
+    {
+        try
+        {
+            return new Reader(bytes).read();
+        }
+        catch (IOException e)
+        {
+            return illegalState(e, "Invalid class file");
+        }
+    }
+
+    /**
+     * Reads a class file
+     */
+    private static class Reader
+    {
+        private final DataInputStream in;
+
+        /** The UTF-8 constants, by index */
+        private String[] utf8;
+
+        /** The class constants (indexes of their names), by index */
+        private int[] classes;
+
+        /** Values of constants that can be field initializers, by index */
+        private String[] values;
+
+        Reader(byte[] bytes)
+        {
+            in = new DataInputStream(new ByteArrayInputStream(bytes));
+        }
+
+        ClassSummary read() throws IOException
+        {
+            // Check the header,
+            ensure(in.readInt() == 0xCAFEBABE, "Not a class file");
+            var abi = new ArrayList<String>();
+            abi.add("version " + in.readUnsignedShort() + "." + in.readUnsignedShort());
+
+            // read the constant pool,
+            readConstants();
+
+            // the class declaration,
+            var access = in.readUnsignedShort();
+            var name = className(in.readUnsignedShort());
+            var superclass = className(in.readUnsignedShort());
+            var interfaces = new ArrayList<String>();
+            for (var count = in.readUnsignedShort(); count > 0; count--)
+            {
+                interfaces.add(className(in.readUnsignedShort()));
+            }
+            Collections.sort(interfaces);
+            abi.add("class " + access + " " + name + " extends " + superclass + " implements " + interfaces);
+
+            // and the non-private members,
+            var constants = new ArrayList<String>();
+            var members = new ArrayList<String>();
+            readMembers("field", members, constants);
+            readMembers("method", members, constants);
+            Collections.sort(members);
+            Collections.sort(constants);
+            abi.addAll(members);
+
+            // then the class attributes that are part of the ABI.
+            abi.add("attributes " + readAttributes(name, null));
+
+            // Collect the classes referred to by class constants and descriptors.
+            var references = new HashSet<String>();
+            for (var at = 1; at < classes.length; at++)
+            {
+                if (classes[at] != 0)
+                {
+                    var referenced = utf8[classes[at]];
+                    var matcher = DESCRIPTOR_CLASS.matcher(referenced + ";");
+                    references.add(referenced.startsWith("[") && matcher.find() ? matcher.group(1) : referenced);
+                }
+            }
+            for (var at = 1; at < utf8.length; at++)
+            {
+                if (utf8[at] != null && utf8[at].indexOf(';') >= 0)
+                {
+                    var matcher = DESCRIPTOR_CLASS.matcher(utf8[at]);
+                    while (matcher.find())
+                    {
+                        references.add(matcher.group(1));
+                    }
+                }
+            }
+            references.remove(name);
+
+            return new ClassSummary(name, fingerprint(abi), fingerprint(constants), Set.copyOf(references));
+        }
+
+        private String className(int index)
+        {
+            return index == 0 ? "" : utf8[classes[index]];
+        }
+
+        private String fingerprint(List<String> lines)
+        {
+            try
+            {
+                var digest = MessageDigest.getInstance("SHA-256");
+                for (var line : lines)
+                {
+                    digest.update(line.getBytes(UTF_8));
+                    digest.update((byte) '\n');
+                }
+                return HexFormat.of().formatHex(digest.digest());
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                return illegalState(e, "SHA-256 is not available");
+            }
+        }
+
+        /**
+         * Reads an annotation, returning its type and the names and values of its elements
+         */
+        private String readAnnotation() throws IOException
+        {
+            var annotation = new StringBuilder("@" + utf8[in.readUnsignedShort()] + "(");
+            for (var count = in.readUnsignedShort(); count > 0; count--)
+            {
+                annotation.append(utf8[in.readUnsignedShort()]).append("=").append(readElementValue()).append(",");
+            }
+            return annotation.append(")").toString();
+        }
+
+        /**
+         * Reads the annotations in a RuntimeVisibleAnnotations or RuntimeInvisibleAnnotations attribute
+         */
+        private String readAnnotations() throws IOException
+        {
+            var annotations = new ArrayList<String>();
+            for (var count = in.readUnsignedShort(); count > 0; count--)
+            {
+                annotations.add(readAnnotation());
+            }
+            Collections.sort(annotations);
+            return annotations.toString();
+        }
+
+        /**
+         * Reads attributes, returning the ones that are part of the ABI, and recording a ConstantValue in the given
+         * array. The attributes that refer to the constant pool are resolved, since the constant pool changes when
+         * method bodies change.
+         *
+         * @param className The internal name of the class, if these are the attributes of the class, or null
+         * @param constantValue The array in which to record the value of a ConstantValue attribute, or null
+         */
+        private String readAttributes(String className, String[] constantValue) throws IOException
+        {
+            var attributes = new ArrayList<String>();
+            for (var count = in.readUnsignedShort(); count > 0; count--)
+            {
+                var attribute = utf8[in.readUnsignedShort()];
+                var length = in.readInt();
+                switch (attribute)
+                {
+                    case "Signature" -> attributes.add("signature " + utf8[in.readUnsignedShort()]);
+                    case "ConstantValue" ->
+                    {
+                        var value = values[in.readUnsignedShort()];
+                        if (constantValue != null)
+                        {
+                            constantValue[0] = value;
+                        }
+                    }
+                    case "Exceptions", "PermittedSubclasses" ->
+                    {
+                        var names = new ArrayList<String>();
+                        for (var entries = in.readUnsignedShort(); entries > 0; entries--)
+                        {
+                            names.add(className(in.readUnsignedShort()));
+                        }
+                        Collections.sort(names);
+                        attributes.add(attribute + " " + names);
+                    }
+                    case "RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations" ->
+                        attributes.add(attribute + " " + readAnnotations());
+                    case "RuntimeVisibleParameterAnnotations", "RuntimeInvisibleParameterAnnotations" ->
+                    {
+                        var parameters = new ArrayList<String>();
+                        for (var parameter = in.readUnsignedByte(); parameter > 0; parameter--)
+                        {
+                            parameters.add(readAnnotations());
+                        }
+                        attributes.add(attribute + " " + parameters);
+                    }
+                    case "AnnotationDefault" -> attributes.add("default " + readElementValue());
+                    case "Record" ->
+                    {
+                        var components = new ArrayList<String>();
+                        for (var component = in.readUnsignedShort(); component > 0; component--)
+                        {
+                            var name = utf8[in.readUnsignedShort()];
+                            var descriptor = utf8[in.readUnsignedShort()];
+                            components.add(name + " " + descriptor + " " + readAttributes(null, null));
+                        }
+                        attributes.add("record " + components);
+                    }
+                    case "InnerClasses" -> attributes.add("nested " + readInnerClasses(className));
+                    default -> in.skipNBytes(length);
+                }
+            }
+            Collections.sort(attributes);
+            return attributes.toString();
+        }
+
+        /**
+         * Reads an annotation element value
+         */
+        private String readElementValue() throws IOException
+        {
+            var tag = (char) in.readUnsignedByte();
+            return switch (tag)
+            {
+                case 'B', 'C', 'D', 'F', 'I', 'J', 'S', 'Z' -> tag + " " + values[in.readUnsignedShort()];
+                case 's', 'c' -> tag + " " + utf8[in.readUnsignedShort()];
+                case 'e' -> "e " + utf8[in.readUnsignedShort()] + "." + utf8[in.readUnsignedShort()];
+                case '@' -> readAnnotation();
+                case '[' ->
+                {
+                    var elements = new ArrayList<String>();
+                    for (var count = in.readUnsignedShort(); count > 0; count--)
+                    {
+                        elements.add(readElementValue());
+                    }
+                    yield elements.toString();
+                }
+                default -> throw new IOException("Unknown annotation element tag " + tag);
+            };
+        }
+
+        /**
+         * Reads an InnerClasses attribute, returning the flags of the given class, if it is nested, and the names and
+         * flags of the non-private classes nested in it. Entries for other classes, which are there because the class
+         * refers to them, are not part of its ABI.
+         */
+        private String readInnerClasses(String className) throws IOException
+        {
+            var nested = new ArrayList<String>();
+            for (var count = in.readUnsignedShort(); count > 0; count--)
+            {
+                var inner = className(in.readUnsignedShort());
+                var outer = className(in.readUnsignedShort());
+                var name = in.readUnsignedShort();
+                var access = in.readUnsignedShort();
+                var member = outer.equals(className) && (access & (ACC_PRIVATE | ACC_SYNTHETIC)) == 0;
+                if (className != null && (inner.equals(className) || member))
+                {
+                    nested.add(inner + " " + outer + " " + (name == 0 ? "" : utf8[name]) + " " + access);
+                }
+            }
+            Collections.sort(nested);
+            return nested.toString();
+        }
+
+        private void readConstants() throws IOException
+        {
+            var count = in.readUnsignedShort();
+            utf8 = new String[count];
+            classes = new int[count];
+            values = new String[count];
+            for (var at = 1; at < count; at++)
+            {
+                var tag = in.readUnsignedByte();
+                switch (tag)
+                {
+                    case 1 -> utf8[at] = in.readUTF();
+                    case 3 -> values[at] = "int " + in.readInt();
+                    case 4 -> values[at] = "float " + in.readFloat();
+                    case 5 -> values[at++] = "long " + in.readLong();
+                    case 6 -> values[at++] = "double " + in.readDouble();
+                    case 7 -> classes[at] = in.readUnsignedShort();
+                    case 8 -> values[at] = "string#" + in.readUnsignedShort();
+                    case 16, 19, 20 -> in.skipNBytes(2);
+                    case 15 -> in.skipNBytes(3);
+                    case 9, 10, 11, 12, 17, 18 -> in.skipNBytes(4);
+                    default -> throw new IOException("Unknown constant pool tag " + tag);
+                }
+            }
+
+            // Resolve string constants to their text.
+            for (var at = 1; at < count; at++)
+            {
+                if (values[at] != null && values[at].startsWith("string#"))
+                {
+                    values[at] = "string " + utf8[Integer.parseInt(values[at].substring(7))];
+                }
+            }
+        }
+
+        private void readMembers(String kind, List<String> members, List<String> constants) throws IOException
+        {
+            for (var count = in.readUnsignedShort(); count > 0; count--)
+            {
+                var access = in.readUnsignedShort();
+                var name = utf8[in.readUnsignedShort()];
+                var descriptor = utf8[in.readUnsignedShort()];
+                var constantValue = new String[1];
+                var attributes = readAttributes(null, constantValue);
+                if ((access & (ACC_PRIVATE | ACC_SYNTHETIC)) == 0)
+                {
+                    members.add(kind + " " + access + " " + name + " " + descriptor + " " + attributes);
+                    if (constantValue[0] != null)
+                    {
+                        constants.add(name + " = " + constantValue[0]);
+                    }
+                }
+            }
+        }
+    }
+}
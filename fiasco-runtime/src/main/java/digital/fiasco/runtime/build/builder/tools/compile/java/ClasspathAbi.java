@@ -0,0 +1,117 @@
+package digital.fiasco.runtime.build.builder.tools.compile.java;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
+import static digital.fiasco.runtime.build.builder.tools.compile.java.ClassSummary.classSummary;
+import static digital.fiasco.runtime.repository.local.cache.ContentBlobIndex.hex;
+import static digital.fiasco.runtime.repository.local.cache.ContentBlobIndex.sha256Digest;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A fingerprint of what a compile can see on its classpath. {@link IncrementalCompilation} only knows which source files
+ * depend on classes it compiled itself, so when a class on the classpath changes in a way that affects the code that
+ * uses it, every source file has to be compiled again. The fingerprint changes when that happens: it includes the name
+ * of each class file in each classpath folder, its ABI ({@link ClassSummary#abi()}) and the values of its constants
+ * ({@link ClassSummary#constants()}), so changes to method bodies and private members don't change it. JARs on the
+ * classpath are included by identity (for example, their name and SHA-256 hash), so any change to a JAR changes it.
+ *
+ * <p>
+ * Class files are only read when their size or modification time has changed since they were last summarized.
+ * </p>
+ *
+ * @author Jonathan Locke
+ * @see IncrementalCompilation
+ * @see JavaCompiler
+ */
+class ClasspathAbi
+{
+    /**
+     * The ABI of a class file, as of the given size and modification time
+     */
+    private record Abi(long size, long modified, String abi)
+    {
+    }
+
+    /** The ABI of each class file that has been summarized, by absolute path */
+    private static final Map<Path, Abi> abis = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the fingerprint of the given classpath
+     *
+     * @param folders The classpath folders, in classpath order
+     * @param jars The identities of the classpath JARs, in classpath order
+     * @return The fingerprint
+     * @throws IllegalStateException Thrown if a folder cannot be read
+     */
+    static String classpathAbi(List<Path> folders, List<String> jars)
+    {
+        var digest = sha256Digest();
+        for (var jar : jars)
+        {
+            digest.update(("jar:" + jar + "\n").getBytes(UTF_8));
+        }
+        for (var folder : folders)
+        {
+            // For each class file in each folder, in a stable order,
+            digest.update(("folder:" + folder + "\n").getBytes(UTF_8));
+            if (Files.isDirectory(folder))
+            {
+                var classes = new ArrayList<Path>();
+                try (var files = Files.walk(folder))
+                {
+                    files.filter(it -> it.toString().endsWith(".class")).sorted().forEach(classes::add);
+                }
+                catch (IOException | UncheckedIOException e)
+                {
+                    return illegalState(e, "Unable to read classpath folder: $", folder);
+                }
+
+                // add its name and ABI.
+                for (var file : classes)
+                {
+                    digest.update((folder.relativize(file) + ":" + abi(file) + "\n").getBytes(UTF_8));
+                }
+            }
+        }
+        return hex(digest);
+    }
+
+    /**
+     * Returns the ABI and constants of the given class file, summarizing it only if it has changed since it was last
+     * summarized
+     */
+    private static String abi(Path file)
+    {
+        try
+        {
+            var path = file.toAbsolutePath().normalize();
+            var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            var size = attributes.size();
+            var modified = attributes.lastModifiedTime().toMillis();
+
+            var known = abis.get(path);
+            if (known != null && known.size() == size && known.modified() == modified)
+            {
+                return known.abi();
+            }
+
+            var summary = classSummary(path);
+            var abi = summary.abi() + "/" + summary.constants();
+            abis.put(path, new Abi(size, modified, abi));
+            return abi;
+        }
+        catch (IOException e)
+        {
+            return illegalState(e, "Unable to read class file: $", file);
+        }
+    }
+}
@@ -0,0 +1,827 @@
+package digital.fiasco.runtime.build.builder.tools.compile.java;
+
+import com.telenav.kivakit.core.collections.list.ObjectList;
+import digital.fiasco.runtime.dependency.artifact.content.jar.JarContent;
+import digital.fiasco.runtime.dependency.artifact.content.jar.JarIndexColumns;
+import digital.fiasco.runtime.repository.local.cache.ContentLogSection;
+import digital.fiasco.runtime.repository.local.cache.FiascoJavaFileManager;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
+import static digital.fiasco.runtime.dependency.artifact.content.ArtifactContentSignatures.signatures;
+import static digital.fiasco.runtime.dependency.artifact.content.jar.JarContent.jarContent;
+import static digital.fiasco.runtime.dependency.artifact.content.jar.JarIndexColumns.jarIndexColumns;
+import static digital.fiasco.runtime.repository.local.cache.ContentLogSection.contentLogSection;
+import static digital.fiasco.runtime.repository.local.cache.FiascoJavaFileManager.fiascoJavaFileManager;
+import static java.net.StandardProtocolFamily.UNIX;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static javax.tools.StandardLocation.ANNOTATION_PROCESSOR_PATH;
+import static javax.tools.StandardLocation.CLASS_OUTPUT;
+import static javax.tools.StandardLocation.CLASS_PATH;
+import static javax.tools.StandardLocation.SOURCE_PATH;
+
+/**
+ * A long-running process that compiles Java code for builds. Because the process outlives builds, the compiler is
+ * already loaded and optimized by the JIT, and its file managers, which cache the contents of the classpath JARs they
+ * have opened, are reused from one build to the next.
+ *
+ * <p><b>Protocol</b></p>
+ *
+ * <p>
+ * The daemon listens on a Unix domain socket, by default {@link #DEFAULT_SOCKET}. Each connection starts with a
+ * handshake: the client sends {@link #MAGIC} and its {@link #PROTOCOL_VERSION}, and the daemon replies with its own.
+ * If the client's magic number or version is not the daemon's, the daemon exits after replying, so that a client from
+ * a different release of Fiasco can start a daemon that speaks its protocol. After the handshake, the connection
+ * carries one or more {@link Request}s, each answered with a {@link Response}. Connections are served in parallel, so
+ * many builders can compile at once. Requests are normally sent with {@link CompilerDaemonClient}, which starts the
+ * daemon if it is not running, and restarts it if it speaks another version of the protocol.
+ * </p>
+ *
+ * <p><b>Classpath JARs</b></p>
+ *
+ * <p>
+ * JARs stored exploded in a cache repository are not put on the <i>-classpath</i>. Instead, each request carries a
+ * {@link ClasspathJar} for each of them, giving the section of the content log that holds its entries and its
+ * {@link JarIndexColumns}, and the daemon serves them with a {@link FiascoJavaFileManager}, reading each class file
+ * directly from the content log.
+ * </p>
+ *
+ * <p><b>File Managers</b></p>
+ *
+ * <p>
+ * File managers are reused from one request to the next, but their locations are not: the classpath is emptied and
+ * the source path, annotation processor path and class output are reset to their defaults before each request, so a
+ * request that doesn't give one of them doesn't see the one given by the previous request. Since a file manager keeps
+ * the JARs it has opened, the daemon remembers the size and modification time of each JAR file on the
+ * <i>-classpath</i> of each request, and when a JAR has changed, it closes every file manager that may have opened the
+ * old JAR.
+ * </p>
+ *
+ * <p><b>Lifetime</b></p>
+ *
+ * <p>
+ * The daemon exits when it has been idle for {@link #IDLE_TIMEOUT_MINUTES} minutes. To stop it sooner, delete its
+ * socket file. Only one daemon can serve a socket: a daemon holds a lock on a lock file next to its socket (for
+ * example, <i>compiler-daemon.lock</i>) while it runs, and a daemon that starts while the lock is held exits without
+ * touching the socket. Failures are appended to a log file next to the socket (for example,
+ * <i>compiler-daemon.log</i>), since the daemon has no console.
+ * </p>
+ *
+ * @author Jonathan Locke
+ * @see CompilerDaemonClient
+ * @see JavaCompiler#withDaemon(boolean)
+ */
+public class CompilerDaemon
+{
+    /** The default socket for the daemon */
+    public static final Path DEFAULT_SOCKET = Path.of(System.getProperty("user.home"),
+        ".fiasco", "compiler-daemon.socket");
+
+    /** The number of minutes the daemon waits for requests before exiting */
+    public static final int IDLE_TIMEOUT_MINUTES = 60;
+
+    /** Magic number sent by both ends of a connection before anything else ("FICD") */
+    static final int MAGIC = 0x46494344;
+
+    /** The version of the protocol, which must be changed whenever a request or response changes */
+    static final int PROTOCOL_VERSION = 1;
+
+    /** The size at which the log file is cleared when a daemon starts */
+    private static final long MAXIMUM_LOG_SIZE = 1_024 * 1_024;
+
+    /** The maximum number of classpath JARs to keep decoded, or to remember the size and modification time of */
+    private static final int MAXIMUM_JARS = 4_096;
+
+    /**
+     * An idle file manager
+     *
+     * @param fileManager The file manager
+     * @param generation The {@link #generation} of the classpath JAR files when the file manager was created
+     */
+    private record PooledFileManager(StandardJavaFileManager fileManager, long generation)
+    {
+    }
+
+    /**
+     * A JAR stored exploded in a section of a cache repository's content log
+     *
+     * @param name The name of the JAR
+     * @param sha256 The SHA-256 hash of the JAR, or an empty string if it is not known
+     * @param offset The offset of the JAR in the cache repository
+     * @param segment The path of the content log segment holding the JAR's entries
+     * @param position The position of the entries in the segment
+     * @param length The length of the entries
+     * @param index The JAR's index, as written by {@link JarIndexColumns#write(DataOutput)}
+     */
+    public record ClasspathJar(String name,
+                               String sha256,
+                               long offset,
+                               String segment,
+                               long position,
+                               long length,
+                               byte[] index)
+    {
+        /**
+         * Returns a description of the given JAR content, which must be bound to a {@link ContentLogSection}
+         */
+        public static ClasspathJar classpathJar(JarContent jar)
+        {
+            var section = (ContentLogSection) jar.resource();
+            var bytes = new ByteArrayOutputStream();
+            try (var out = new DataOutputStream(bytes))
+            {
+                jarIndexColumns(jar.index()).write(out);
+            }
+            catch (IOException e)
+            {
+                return illegalState(e, "Unable to write index of: $", jar.name());
+            }
+            return new ClasspathJar(jar.name(), jar.sha256() == null ? "" : jar.sha256(), jar.offset(),
+                section.segmentPath().toString(), section.segmentPosition(), section.sectionLength(),
+                bytes.toByteArray());
+        }
+
+        static ClasspathJar read(DataInput in) throws IOException
+        {
+            var name = readString(in);
+            var sha256 = readString(in);
+            var offset = in.readLong();
+            var segment = readString(in);
+            var position = in.readLong();
+            var length = in.readLong();
+            var index = new byte[in.readInt()];
+            in.readFully(index);
+            return new ClasspathJar(name, sha256, offset, segment, position, length, index);
+        }
+
+        /**
+         * Returns the key that identifies this JAR's content
+         */
+        String key()
+        {
+            return name + "@" + offset + ":" + length + ":" + sha256 + ":" + segment + ":" + position;
+        }
+
+        /**
+         * Returns JAR content that reads this JAR's entries from its content log segment
+         */
+        JarContent toJarContent() throws IOException
+        {
+            var columns = JarIndexColumns.read(new DataInputStream(new ByteArrayInputStream(index)));
+            return jarContent(columns.toIndex(), contentLogSection(Path.of(segment), position, length))
+                .withName(name)
+                .withOffset(offset)
+                .withSignatures(signatures().withSha256(sha256.isEmpty() ? null : sha256));
+        }
+
+        void write(DataOutput out) throws IOException
+        {
+            writeString(out, name);
+            writeString(out, sha256);
+            out.writeLong(offset);
+            writeString(out, segment);
+            out.writeLong(position);
+            out.writeLong(length);
+            out.writeInt(index.length);
+            out.write(index);
+        }
+    }
+
+    /**
+     * A problem reported by the compiler
+     *
+     * @param kind The kind of diagnostic
+     * @param code The compiler's code for the diagnostic
+     * @param source The name of the source file, or an empty string if the problem is not in a file
+     * @param line The line number in the source file
+     * @param message The message
+     */
+    public record Problem(String kind, String code, String source, long line, String message)
+    {
+    }
+
+    /**
+     * A request to compile source files
+     *
+     * @param options The compiler options
+     * @param sources The absolute paths of the source files
+     * @param jars The JARs to serve from cache repository content logs, in classpath order
+     * @param encoding The name of the source encoding
+     * @param locale The language tag of the locale for messages
+     * @param recordClasses True to record the source file of each class written
+     */
+    public record Request(List<String> options,
+                          List<String> sources,
+                          List<ClasspathJar> jars,
+                          String encoding,
+                          String locale,
+                          boolean recordClasses)
+    {
+        static Request read(DataInput in) throws IOException
+        {
+            var options = readStrings(in);
+            var sources = readStrings(in);
+            var jars = new ArrayList<ClasspathJar>();
+            for (var count = in.readInt(); count > 0; count--)
+            {
+                jars.add(ClasspathJar.read(in));
+            }
+            return new Request(options, sources, jars, readString(in), readString(in), in.readBoolean());
+        }
+
+        void write(DataOutput out) throws IOException
+        {
+            writeStrings(out, options);
+            writeStrings(out, sources);
+            out.writeInt(jars.size());
+            for (var jar : jars)
+            {
+                jar.write(out);
+            }
+            writeString(out, encoding);
+            writeString(out, locale);
+            out.writeBoolean(recordClasses);
+        }
+    }
+
+    /**
+     * The result of compiling
+     *
+     * @param succeeded True if the compile succeeded
+     * @param problems The problems reported by the compiler
+     * @param classToSource The binary name of each class written, and its source file, if requested
+     */
+    public record Response(boolean succeeded, List<Problem> problems, Map<String, String> classToSource)
+    {
+        static Response read(DataInput in) throws IOException
+        {
+            var succeeded = in.readBoolean();
+            var problems = new ArrayList<Problem>();
+            for (var count = in.readInt(); count > 0; count--)
+            {
+                var kind = readString(in);
+                var code = readString(in);
+                var source = readString(in);
+                var line = in.readLong();
+                problems.add(new Problem(kind, code, source, line, readString(in)));
+            }
+            var classToSource = new HashMap<String, String>();
+            for (var count = in.readInt(); count > 0; count--)
+            {
+                classToSource.put(readString(in), readString(in));
+            }
+            return new Response(succeeded, problems, classToSource);
+        }
+
+        void write(DataOutput out) throws IOException
+        {
+            out.writeBoolean(succeeded);
+            out.writeInt(problems.size());
+            for (var problem : problems)
+            {
+                writeString(out, problem.kind());
+                writeString(out, problem.code());
+                writeString(out, problem.source());
+                out.writeLong(problem.line());
+                writeString(out, problem.message());
+            }
+            out.writeInt(classToSource.size());
+            for (var entry : classToSource.entrySet())
+            {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Runs the daemon on the socket given as the only argument, or on {@link #DEFAULT_SOCKET}
+     */
+    public static void main(String[] arguments) throws IOException
+    {
+        new CompilerDaemon(arguments.length > 0 ? Path.of(arguments[0]) : DEFAULT_SOCKET).run();
+    }
+
+    /**
+     * Returns the lock file held by the daemon serving the given socket
+     */
+    static Path lockFile(Path socket)
+    {
+        return sibling(socket, ".lock");
+    }
+
+    /**
+     * Returns the log file of the daemon serving the given socket
+     */
+    static Path logFile(Path socket)
+    {
+        return sibling(socket, ".log");
+    }
+
+    /**
+     * Reads a string of any length. Classpath options can be longer than {@link DataInput#readUTF()} allows.
+     */
+    static String readString(DataInput in) throws IOException
+    {
+        var bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    static List<String> readStrings(DataInput in) throws IOException
+    {
+        var strings = new ArrayList<String>();
+        for (var count = in.readInt(); count > 0; count--)
+        {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    static void writeString(DataOutput out, String string) throws IOException
+    {
+        var bytes = string.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static void writeStrings(DataOutput out, List<String> strings) throws IOException
+    {
+        out.writeInt(strings.size());
+        for (var string : strings)
+        {
+            writeString(out, string);
+        }
+    }
+
+    /**
+     * Returns the file next to the given socket with the same name, but the given extension instead of ".socket"
+     */
+    private static Path sibling(Path socket, String extension)
+    {
+        var name = socket.getFileName().toString();
+        if (name.endsWith(".socket"))
+        {
+            name = name.substring(0, name.length() - ".socket".length());
+        }
+        return socket.resolveSibling(name + extension);
+    }
+
+    /** The socket to listen on */
+    private final Path socket;
+
+    /** The compiler */
+    private final javax.tools.JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+    /** Idle file managers, by encoding and locale */
+    private final Map<String, ConcurrentLinkedDeque<PooledFileManager>> fileManagers = new ConcurrentHashMap<>();
+
+    /** Classpath JARs that have been decoded, by {@link ClasspathJar#key()} */
+    private final Map<String, JarContent> jars = new ConcurrentHashMap<>();
+
+    /** The size and modification time of each classpath JAR file, when it was last on a request's classpath */
+    private final Map<Path, String> jarFiles = new ConcurrentHashMap<>();
+
+    /** Incremented when a classpath JAR file changes, so file managers that may have opened it are closed */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** The number of requests being served */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /** The time of the last request */
+    private volatile long lastRequest = System.nanoTime();
+
+    /**
+     * @param socket The socket to listen on
+     */
+    public CompilerDaemon(Path socket)
+    {
+        this.socket = socket;
+    }
+
+    /**
+     * Serves requests until the daemon has been idle for {@link #IDLE_TIMEOUT_MINUTES} minutes, or its socket file is
+     * deleted. If another daemon is serving the socket, returns immediately.
+     *
+     * @throws IOException Thrown if the socket cannot be opened
+     */
+    public void run() throws IOException
+    {
+        // Take the lock, unless another daemon holds it,
+        Files.createDirectories(socket.getParent());
+        try (var lockChannel = FileChannel.open(lockFile(socket), CREATE, WRITE))
+        {
+            FileLock lock;
+            try
+            {
+                lock = lockChannel.tryLock();
+            }
+            catch (OverlappingFileLockException e)
+            {
+                lock = null;
+            }
+            if (lock == null)
+            {
+                log("Compiler daemon is already running on " + socket);
+                return;
+            }
+
+            // then serve the socket until the daemon stops.
+            clearLog();
+            log("Compiler daemon starting on " + socket);
+            try
+            {
+                serve();
+            }
+            finally
+            {
+                log("Compiler daemon stopped");
+            }
+        }
+    }
+
+    /**
+     * Compiles the source files in the given request
+     *
+     * @param request The request
+     * @return The response
+     */
+    Response compile(Request request)
+    {
+        // Close file managers that may have opened a classpath JAR that has changed since it was opened,
+        checkJarFiles(request.options());
+
+        // get an idle file manager for the request's encoding and locale,
+        var key = request.encoding() + "/" + request.locale();
+        var idle = fileManagers.computeIfAbsent(key, ignored -> new ConcurrentLinkedDeque<>());
+        var pooled = idle.pollFirst();
+        while (pooled != null && pooled.generation() != generation.get())
+        {
+            close(pooled.fileManager());
+            pooled = idle.pollFirst();
+        }
+        if (pooled == null)
+        {
+            pooled = new PooledFileManager(compiler.getStandardFileManager(null,
+                Locale.forLanguageTag(request.locale()), Charset.forName(request.encoding())), generation.get());
+        }
+        var standard = pooled.fileManager();
+
+        try
+        {
+            // forget the locations given by the previous request (an empty classpath, since the default is the
+            // daemon's own classpath),
+            standard.setLocation(CLASS_PATH, List.of());
+            standard.setLocation(SOURCE_PATH, null);
+            standard.setLocation(ANNOTATION_PROCESSOR_PATH, null);
+            standard.setLocation(CLASS_OUTPUT, null);
+
+            // compile the sources,
+            var diagnostics = new DiagnosticCollector<JavaFileObject>();
+            var classToSource = new LinkedHashMap<String, String>();
+            var classpath = classpath(standard, request.jars());
+            var fileManager = request.recordClasses()
+                ? new ClassRecordingFileManager(classpath, classToSource)
+                : classpath;
+            var files = standard.getJavaFileObjectsFromFiles(request.sources().stream().map(File::new).toList());
+            var succeeded = compiler.getTask(null, fileManager, diagnostics, request.options(), null, files).call();
+
+            // and return the result.
+            var problems = new ArrayList<Problem>();
+            for (var diagnostic : diagnostics.getDiagnostics())
+            {
+                problems.add(problem(diagnostic, Locale.forLanguageTag(request.locale())));
+            }
+            return new Response(succeeded, problems, classToSource);
+        }
+        catch (IOException e)
+        {
+            return illegalState(e, "Unable to reset file manager locations");
+        }
+        finally
+        {
+            // Return the file manager, which keeps its open JARs, for the next request, unless a JAR has changed.
+            try
+            {
+                standard.flush();
+                if (pooled.generation() == generation.get())
+                {
+                    idle.addFirst(pooled);
+                }
+                else
+                {
+                    close(standard);
+                }
+            }
+            catch (IOException e)
+            {
+                close(standard);
+            }
+        }
+    }
+
+    /**
+     * Remembers the size and modification time of each JAR file on the <i>-classpath</i> in the given compiler
+     * options, and if any has changed since it was last seen, moves to the next {@link #generation}, so file managers
+     * that may have opened the old JAR are closed
+     */
+    private void checkJarFiles(List<String> options)
+    {
+        for (var index = 0; index < options.size() - 1; index++)
+        {
+            var option = options.get(index);
+            if (option.equals("-classpath") || option.equals("-cp") || option.equals("--class-path"))
+            {
+                for (var entry : options.get(index + 1).split(File.pathSeparator))
+                {
+                    if (entry.endsWith(".jar"))
+                    {
+                        var jar = Path.of(entry).toAbsolutePath().normalize();
+                        var file = jar.toFile();
+                        var stamp = file.length() + ":" + file.lastModified();
+                        if (jarFiles.size() >= MAXIMUM_JARS)
+                        {
+                            // Once JARs are forgotten, their changes can't be seen, so start a new generation.
+                            jarFiles.clear();
+                            generation.incrementAndGet();
+                        }
+                        var previous = jarFiles.put(jar, stamp);
+                        if (previous != null && !previous.equals(stamp))
+                        {
+                            log("Classpath JAR changed: " + jar);
+                            generation.incrementAndGet();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the given file manager, serving the given cache repository JARs on its classpath, if there are any
+     */
+    private JavaFileManager classpath(StandardJavaFileManager standard, List<ClasspathJar> classpath)
+    {
+        if (classpath.isEmpty())
+        {
+            return standard;
+        }
+
+        // Decode each JAR, unless it has been decoded already,
+        var contents = new ObjectList<JarContent>();
+        for (var jar : classpath)
+        {
+            var content = jars.get(jar.key());
+            if (content == null)
+            {
+                try
+                {
+                    content = jar.toJarContent();
+                }
+                catch (IOException e)
+                {
+                    return illegalState(e, "Unable to read index of: $", jar.name());
+                }
+                if (jars.size() >= MAXIMUM_JARS)
+                {
+                    jars.clear();
+                }
+                jars.put(jar.key(), content);
+            }
+            contents.add(content);
+        }
+
+        // and serve them from their content logs.
+        return fiascoJavaFileManager(standard, contents);
+    }
+
+    /**
+     * Clears the log file if it has grown larger than {@link #MAXIMUM_LOG_SIZE}
+     */
+    private void clearLog()
+    {
+        try
+        {
+            var log = logFile(socket);
+            if (Files.exists(log) && Files.size(log) > MAXIMUM_LOG_SIZE)
+            {
+                try (var channel = FileChannel.open(log, WRITE))
+                {
+                    channel.truncate(0);
+                }
+            }
+        }
+        catch (IOException ignored)
+        {
+        }
+    }
+
+    private void close(AutoCloseable closeable)
+    {
+        try
+        {
+            closeable.close();
+        }
+        catch (Exception ignored)
+        {
+        }
+    }
+
+    /**
+     * Appends the given message to the log file, since the daemon has no console
+     */
+    private void log(String message)
+    {
+        try
+        {
+            Files.writeString(logFile(socket), Instant.now() + " " + message + System.lineSeparator(), UTF_8,
+                CREATE, APPEND);
+        }
+        catch (IOException ignored)
+        {
+        }
+    }
+
+    private Problem problem(Diagnostic<? extends JavaFileObject> diagnostic, Locale locale)
+    {
+        var source = diagnostic.getSource();
+        var code = diagnostic.getCode();
+        return new Problem(diagnostic.getKind().name(),
+            code == null ? "" : code,
+            source == null ? "" : source.getName(),
+            diagnostic.getLineNumber(),
+            diagnostic.getMessage(locale));
+    }
+
+    /**
+     * Serves the socket, which only the daemon holding the lock may do
+     */
+    private void serve() throws IOException
+    {
+        // Replace any socket left behind by a daemon that didn't exit cleanly,
+        Files.deleteIfExists(socket);
+
+        ExecutorService connections = Executors.newCachedThreadPool(code ->
+        {
+            var thread = new Thread(code, "CompilerDaemon");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (var server = ServerSocketChannel.open(UNIX))
+        {
+            // listen for connections,
+            server.bind(UnixDomainSocketAddress.of(socket));
+
+            // stop when idle or when the socket file is deleted,
+            var watchdog = Executors.newSingleThreadScheduledExecutor(code ->
+            {
+                var thread = new Thread(code, "CompilerDaemonWatchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            watchdog.scheduleWithFixedDelay(() ->
+            {
+                var idle = System.nanoTime() - lastRequest;
+                if (!Files.exists(socket)
+                    || (active.get() == 0 && idle > TimeUnit.MINUTES.toNanos(IDLE_TIMEOUT_MINUTES)))
+                {
+                    close(server);
+                }
+            }, 1, 1, TimeUnit.MINUTES);
+
+            // and serve each connection on its own thread.
+            while (server.isOpen())
+            {
+                try
+                {
+                    var connection = server.accept();
+                    connections.submit(() -> serve(server, connection));
+                }
+                catch (IOException e)
+                {
+                    if (server.isOpen())
+                    {
+                        throw e;
+                    }
+                }
+            }
+        }
+        finally
+        {
+            connections.shutdownNow();
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    /**
+     * Serves requests on the given connection until it is closed. If the client speaks another version of the
+     * protocol, closes the given server, so the daemon exits.
+     */
+    private void serve(ServerSocketChannel server, SocketChannel connection)
+    {
+        try (connection)
+        {
+            var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+            var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+
+            // Read the client's magic number and protocol version, and reply with the daemon's own,
+            int magic;
+            int version;
+            try
+            {
+                magic = in.readInt();
+                version = in.readInt();
+            }
+            catch (EOFException e)
+            {
+                return;
+            }
+            out.writeInt(MAGIC);
+            out.writeInt(PROTOCOL_VERSION);
+            out.flush();
+
+            // and if the client speaks another protocol, exit, so it can start a daemon that speaks its protocol.
+            if (magic != MAGIC || version != PROTOCOL_VERSION)
+            {
+                log("Compiler daemon exiting, since a client uses protocol " + Integer.toHexString(magic) + "/"
+                    + version + " instead of " + Integer.toHexString(MAGIC) + "/" + PROTOCOL_VERSION);
+                close(server);
+                return;
+            }
+
+            // Serve requests until the client closes the connection.
+            while (true)
+            {
+                Request request;
+                try
+                {
+                    request = Request.read(in);
+                }
+                catch (EOFException e)
+                {
+                    return;
+                }
+
+                active.incrementAndGet();
+                try
+                {
+                    compile(request).write(out);
+                    out.flush();
+                }
+                finally
+                {
+                    active.decrementAndGet();
+                    lastRequest = System.nanoTime();
+                }
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            log("Compiler daemon connection failed: " + e);
+        }
+    }
+}
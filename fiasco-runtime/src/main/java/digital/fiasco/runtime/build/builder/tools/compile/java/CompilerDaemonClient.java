@@ -0,0 +1,223 @@
+package digital.fiasco.runtime.build.builder.tools.compile.java;
+
+import com.telenav.kivakit.component.BaseComponent;
+import digital.fiasco.runtime.build.builder.tools.compile.java.CompilerDaemon.Request;
+import digital.fiasco.runtime.build.builder.tools.compile.java.CompilerDaemon.Response;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static digital.fiasco.runtime.build.builder.tools.compile.java.CompilerDaemon.MAGIC;
+import static digital.fiasco.runtime.build.builder.tools.compile.java.CompilerDaemon.PROTOCOL_VERSION;
+import static java.net.StandardProtocolFamily.UNIX;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Sends compile requests to a {@link CompilerDaemon}, starting the daemon if it is not running. If the daemon speaks
+ * another version of the protocol, it exits after the handshake, and the client waits for it to release its lock file
+ * and then starts a daemon that speaks this client's protocol.
+ *
+ * @author Jonathan Locke
+ * @see CompilerDaemon
+ */
+public class CompilerDaemonClient extends BaseComponent
+{
+    /** The number of times to try connecting to a daemon that is starting */
+    private static final int CONNECT_ATTEMPTS = 50;
+
+    /** The time to wait between attempts to connect, in milliseconds */
+    private static final long CONNECT_INTERVAL = 100;
+
+    /** The daemon's socket */
+    private final Path socket;
+
+    /**
+     * Creates a client for the daemon on {@link CompilerDaemon#DEFAULT_SOCKET}
+     */
+    public CompilerDaemonClient()
+    {
+        this(CompilerDaemon.DEFAULT_SOCKET);
+    }
+
+    /**
+     * @param socket The daemon's socket
+     */
+    public CompilerDaemonClient(Path socket)
+    {
+        this.socket = socket;
+    }
+
+    /**
+     * Sends the given request to the daemon, starting the daemon first if it is not running, or restarting it if it
+     * speaks another version of the protocol
+     *
+     * @param request The request
+     * @return The response, or null if the daemon could not be reached
+     */
+    public Response compile(Request request)
+    {
+        try
+        {
+            for (var attempt = 0; attempt < 2; attempt++)
+            {
+                try (var connection = connect())
+                {
+                    if (connection == null)
+                    {
+                        return null;
+                    }
+
+                    // Send the protocol magic number and version, and read the daemon's,
+                    var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+                    var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+                    out.writeInt(MAGIC);
+                    out.writeInt(PROTOCOL_VERSION);
+                    out.flush();
+                    var magic = in.readInt();
+                    var version = in.readInt();
+
+                    // and if the daemon speaks the same protocol, send the request and read the response.
+                    if (magic == MAGIC && version == PROTOCOL_VERSION)
+                    {
+                        request.write(out);
+                        out.flush();
+                        return Response.read(in);
+                    }
+                    warning("Compiler daemon on $ speaks protocol version $, not $", socket, version, PROTOCOL_VERSION);
+                }
+
+                // Otherwise, the daemon is exiting, so wait for it to exit before starting a new one.
+                if (!awaitExit())
+                {
+                    return null;
+                }
+            }
+            return null;
+        }
+        catch (IOException e)
+        {
+            warning(e, "Unable to compile with daemon on $", socket);
+            return null;
+        }
+    }
+
+    /**
+     * Waits for the daemon to exit, which it has done when its lock file can be locked
+     *
+     * @return True if the daemon exited, false if it didn't exit in time or the thread was interrupted
+     */
+    private boolean awaitExit() throws IOException
+    {
+        for (var attempt = 0; attempt < CONNECT_ATTEMPTS; attempt++)
+        {
+            try (var channel = FileChannel.open(CompilerDaemon.lockFile(socket), CREATE, WRITE))
+            {
+                var lock = channel.tryLock();
+                if (lock != null)
+                {
+                    lock.release();
+                    return true;
+                }
+            }
+            catch (OverlappingFileLockException ignored)
+            {
+                // The daemon is running in this process and still holds the lock.
+            }
+            if (!sleep())
+            {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a connection to the daemon, starting it if need be, or null if it cannot be reached
+     */
+    private SocketChannel connect() throws IOException
+    {
+        // Try to connect to a running daemon,
+        var connection = tryConnect();
+        if (connection == null)
+        {
+            // and if there isn't one, start one, logging its output, since it has no console,
+            information("Starting compiler daemon on $", socket);
+            Files.createDirectories(socket.getParent());
+            var log = CompilerDaemon.logFile(socket).toFile();
+            var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                CompilerDaemon.class.getName(), socket.toString())
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+                .redirectError(ProcessBuilder.Redirect.appendTo(log))
+                .start();
+
+            // then wait for it to start listening.
+            for (var attempt = 0; connection == null && attempt < CONNECT_ATTEMPTS; attempt++)
+            {
+                if (!sleep())
+                {
+                    return null;
+                }
+                connection = tryConnect();
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Waits for {@link #CONNECT_INTERVAL} milliseconds
+     *
+     * @return False if the thread was interrupted
+     */
+    private boolean sleep()
+    {
+        try
+        {
+            Thread.sleep(CONNECT_INTERVAL);
+            return true;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Returns a connection to the daemon, or null if it is not listening
+     */
+    private SocketChannel tryConnect()
+    {
+        if (Files.exists(socket))
+        {
+            try
+            {
+                var connection = SocketChannel.open(UNIX);
+                try
+                {
+                    connection.connect(UnixDomainSocketAddress.of(socket));
+                    return connection;
+                }
+                catch (IOException e)
+                {
+                    connection.close();
+                }
+            }
+            catch (IOException ignored)
+            {
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,327 @@
+package digital.fiasco.runtime.build.builder.tools.compile.java;
+
+import com.telenav.kivakit.component.BaseComponent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
+import static digital.fiasco.runtime.build.builder.tools.compile.java.ClassSummary.classSummary;
+import static digital.fiasco.runtime.repository.local.cache.ContentBlobIndex.sha256;
+
+/**
+ * Compiles only the source files that have changed since the last compile, and the source files that depend on
+ * classes whose ABI has changed.
+ *
+ * <p><b>Compiling</b></p>
+ *
+ * <ol>
+ *     <li>The {@link IncrementalState} of the last compile is loaded. If there is none, or the fingerprint of the
+ *         compiler options and classpath ({@link ClasspathAbi}) has changed, every source file is compiled.</li>
+ *     <li>Source files whose contents have changed, or that are new, are compiled. The class files compiled from
+ *         them last time are deleted first, as are the class files of source files that no longer exist.</li>
+ *     <li>The ABI fingerprints ({@link ClassSummary#abi()}) of the classes that were compiled are compared with the
+ *         fingerprints from last time. Any source file that refers to a class whose ABI changed, or that was added
+ *         or removed, is compiled next.</li>
+ *     <li>This repeats until no more ABIs change. If the value of a constant changes, every remaining source file is
+ *         compiled, since the compiler copies constants into the classes that use them.</li>
+ *     <li>The new state is saved. The state file is deleted when it is loaded, before any class file is deleted, so
+ *         if a compile fails, or the process dies before the new state is saved, the next compile is a full one.</li>
+ * </ol>
+ *
+ * @author Jonathan Locke
+ * @see JavaCompiler#withIncremental(boolean)
+ */
+public class IncrementalCompilation extends BaseComponent
+{
+    /**
+     * Compiles a group of source files
+     */
+    public interface Compiler
+    {
+        /**
+         * Compiles the given source files, recording the source file of each class that is written
+         *
+         * @param sources The source files to compile
+         * @param classToSource Map to which the compiler adds the binary name of each class written, and the absolute
+         * path of the source file it was compiled from
+         * @return True if the compile succeeded
+         */
+        boolean compile(List<File> sources, Map<String, String> classToSource);
+    }
+
+    /** The folder that class files are written to */
+    private final Path targetFolder;
+
+    /** The state file */
+    private final Path stateFile;
+
+    /** The fingerprint of the compiler options and classpath */
+    private final String options;
+
+    /** The compiler */
+    private final Compiler compiler;
+
+    /** The internal names of the classes compiled from the source files given to the last compile */
+    private final List<String> classes = new ArrayList<>();
+
+    /**
+     * @param targetFolder The folder that class files are written to
+     * @param options The fingerprint of the compiler options and classpath
+     * @param compiler The compiler to use
+     */
+    public IncrementalCompilation(Path targetFolder, String options, Compiler compiler)
+    {
+        this.targetFolder = targetFolder;
+        this.stateFile = targetFolder.resolveSibling(targetFolder.getFileName() + ".incremental");
+        this.options = options;
+        this.compiler = compiler;
+    }
+
+    /**
+     * Returns the internal names of the classes compiled from the source files given to the last successful compile,
+     * whether they were compiled by that compile or an earlier one
+     */
+    public List<String> classes()
+    {
+        return classes;
+    }
+
+    /**
+     * Compiles the given source files incrementally
+     *
+     * @param files All the source files to be compiled
+     * @return True if the compile succeeded
+     */
+    public boolean compile(List<File> files)
+    {
+        // Hash the source files,
+        var hashes = new LinkedHashMap<String, String>();
+        var sourceFiles = new HashMap<String, File>();
+        for (var file : files)
+        {
+            var path = key(file.toPath());
+            sourceFiles.put(path, file);
+            hashes.put(path, hash(file.toPath()));
+        }
+
+        // then load the last state, and if it matches our options,
+        var pending = new LinkedHashSet<String>();
+        var changedClasses = new HashSet<String>();
+        var state = IncrementalState.load(stateFile);
+
+        // (The state on disk won't match the target folder once we start deleting class files, so we delete it now,
+        // and only save the new state once every round of compiling has succeeded.)
+        deleteState();
+        if (state != null && state.options().equals(options))
+        {
+            // compile the source files that have changed,
+            for (var entry : hashes.entrySet())
+            {
+                var source = state.source(entry.getKey());
+                if (source == null || !source.hash().equals(entry.getValue()))
+                {
+                    pending.add(entry.getKey());
+                }
+            }
+
+            // and delete the classes of source files that have been removed.
+            for (var removed : state.sources())
+            {
+                if (!hashes.containsKey(removed))
+                {
+                    changedClasses.addAll(deleteClasses(state.remove(removed)));
+                }
+            }
+        }
+        else
+        {
+            // Otherwise, delete all the classes we compiled last time, and compile everything.
+            if (state != null)
+            {
+                for (var file : state.sources())
+                {
+                    deleteClasses(state.remove(file));
+                }
+            }
+            state = new IncrementalState(options);
+            pending.addAll(hashes.keySet());
+        }
+
+        // Until there's nothing left to compile,
+        var compiled = new HashSet<String>();
+        while (true)
+        {
+            // add source files that refer to classes that changed,
+            for (var file : hashes.keySet())
+            {
+                if (!compiled.contains(file) && !pending.contains(file) && state.refersToAny(file, changedClasses))
+                {
+                    pending.add(file);
+                }
+            }
+            if (pending.isEmpty())
+            {
+                break;
+            }
+
+            // delete the classes compiled from the pending files last time, remembering their summaries,
+            var previous = new HashMap<String, ClassSummary>();
+            var compiling = new ArrayList<File>();
+            for (var file : pending)
+            {
+                var source = state.source(file);
+                if (source != null)
+                {
+                    for (var name : source.classes())
+                    {
+                        var summary = state.classSummary(name);
+                        if (summary != null)
+                        {
+                            previous.put(name, summary);
+                        }
+                    }
+                    deleteClasses(state.remove(file));
+                }
+                compiling.add(sourceFiles.get(file));
+            }
+
+            // compile the pending files,
+            information("Compiling $ of $ files", compiling.size(), files.size());
+            var classToSource = new HashMap<String, String>();
+            if (!compiler.compile(compiling, classToSource))
+            {
+                return false;
+            }
+
+            // group the classes that were written by source file,
+            var sourceToClasses = new HashMap<String, List<ClassSummary>>();
+            for (var entry : classToSource.entrySet())
+            {
+                var name = entry.getKey().replace('.', '/');
+                var summary = classSummary(targetFolder.resolve(name + ".class"));
+                var source = key(Path.of(entry.getValue()));
+                sourceToClasses.computeIfAbsent(source, ignored -> new ArrayList<>()).add(summary);
+            }
+
+            // and find the classes whose ABI has changed.
+            changedClasses = new HashSet<>();
+            var constantsChanged = false;
+            for (var file : pending)
+            {
+                var summaries = sourceToClasses.getOrDefault(file, List.of());
+                state.put(file, hashes.get(file), summaries);
+                for (var summary : summaries)
+                {
+                    var before = previous.remove(summary.name());
+                    if (before == null || !before.abi().equals(summary.abi()))
+                    {
+                        changedClasses.add(summary.name());
+                    }
+                    if (before != null && !before.constants().equals(summary.constants()))
+                    {
+                        constantsChanged = true;
+                    }
+                }
+            }
+            changedClasses.addAll(previous.keySet());
+            compiled.addAll(pending);
+            pending.clear();
+
+            // If any constant changed, we can't tell which files use it, so compile all the others.
+            if (constantsChanged)
+            {
+                for (var file : hashes.keySet())
+                {
+                    if (!compiled.contains(file))
+                    {
+                        pending.add(file);
+                    }
+                }
+            }
+        }
+
+        // Remember the classes of all the source files,
+        classes.clear();
+        for (var file : hashes.keySet())
+        {
+            classes.addAll(state.source(file).classes());
+        }
+
+        // and save the state for next time.
+        try
+        {
+            state.save(stateFile);
+        }
+        catch (IOException e)
+        {
+            warning(e, "Unable to save incremental compilation state: $", stateFile);
+            deleteState();
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the class files compiled from the given source
+     *
+     * @return The internal names of the deleted classes
+     */
+    private List<String> deleteClasses(IncrementalState.Source source)
+    {
+        if (source == null)
+        {
+            return List.of();
+        }
+        for (var name : source.classes())
+        {
+            var classFile = targetFolder.resolve(name + ".class");
+            try
+            {
+                Files.deleteIfExists(classFile);
+            }
+            catch (IOException e)
+            {
+                illegalState(e, "Unable to delete stale class file: $", classFile);
+            }
+        }
+        return source.classes();
+    }
+
+    private void deleteState()
+    {
+        try
+        {
+            Files.deleteIfExists(stateFile);
+        }
+        catch (IOException e)
+        {
+            illegalState(e, "Unable to delete incremental compilation state: $", stateFile);
+        }
+    }
+
+    private String hash(Path file)
+    {
+        try
+        {
+            return sha256(Files.newInputStream(file));
+        }
+        catch (IOException e)
+        {
+            return illegalState(e, "Unable to read source file: $", file);
+        }
+    }
+
+    private String key(Path path)
+    {
+        return path.toAbsolutePath().normalize().toString();
+    }
+}
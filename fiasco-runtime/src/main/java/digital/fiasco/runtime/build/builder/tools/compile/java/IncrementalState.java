@@ -0,0 +1,252 @@
+package digital.fiasco.runtime.build.builder.tools.compile.java;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * The state of an incremental compilation, kept between builds in a file next to the compiler's target folder:
+ *
+ * <ul>
+ *     <li>A fingerprint of the compiler options, so any change to them forces a full compile</li>
+ *     <li>For each source file, a hash of its contents, and the classes compiled from it</li>
+ *     <li>For each class, its {@link ClassSummary}, including the classes it refers to</li>
+ * </ul>
+ *
+ * @author Jonathan Locke
+ * @see IncrementalCompilation
+ */
+public class IncrementalState
+{
+    /** Identifies a state file */
+    private static final int MAGIC = 0x46494353;
+
+    /** The version of the state file format */
+    private static final int VERSION = 1;
+
+    /**
+     * What is known about a source file
+     *
+     * @param hash The hash of the file's contents
+     * @param classes The internal names of the classes compiled from the file
+     */
+    public record Source(String hash, List<String> classes)
+    {
+    }
+
+    /**
+     * Reads the state file at the given path
+     *
+     * @param path The state file
+     * @return The state, or null if the file does not exist or cannot be read
+     */
+    public static IncrementalState load(Path path)
+    {
+        if (!Files.isRegularFile(path))
+        {
+            return null;
+        }
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                return null;
+            }
+
+            var state = new IncrementalState(in.readUTF());
+            for (var sources = in.readInt(); sources > 0; sources--)
+            {
+                var file = in.readUTF();
+                var hash = in.readUTF();
+                var classes = new ArrayList<String>();
+                for (var count = in.readInt(); count > 0; count--)
+                {
+                    classes.add(in.readUTF());
+                }
+                state.sources.put(file, new Source(hash, classes));
+            }
+            for (var count = in.readInt(); count > 0; count--)
+            {
+                var name = in.readUTF();
+                var abi = in.readUTF();
+                var constants = in.readUTF();
+                var references = new HashSet<String>();
+                for (var referenceCount = in.readInt(); referenceCount > 0; referenceCount--)
+                {
+                    references.add(in.readUTF());
+                }
+                state.classes.put(name, new ClassSummary(name, abi, constants, Set.copyOf(references)));
+            }
+            return state;
+        }
+        catch (IOException e)
+        {
+            // A damaged state file just means a full compile.
+            return null;
+        }
+    }
+
+    /** The fingerprint of the compiler options */
+    private final String options;
+
+    /** Source files, by absolute path */
+    private final Map<String, Source> sources = new HashMap<>();
+
+    /** Classes, by internal name */
+    private final Map<String, ClassSummary> classes = new HashMap<>();
+
+    public IncrementalState(String options)
+    {
+        this.options = options;
+    }
+
+    /**
+     * Returns the summary of the given class, or null if it is not known
+     */
+    public ClassSummary classSummary(String name)
+    {
+        return classes.get(name);
+    }
+
+    /**
+     * Returns the fingerprint of the compiler options for this state
+     */
+    public String options()
+    {
+        return options;
+    }
+
+    /**
+     * Records the classes compiled from the given source file
+     *
+     * @param file The source file
+     * @param hash The hash of its contents
+     * @param summaries The classes compiled from it
+     */
+    public void put(String file, String hash, List<ClassSummary> summaries)
+    {
+        remove(file);
+        var names = new ArrayList<String>();
+        for (var summary : summaries)
+        {
+            names.add(summary.name());
+            classes.put(summary.name(), summary);
+        }
+        sources.put(file, new Source(hash, names));
+    }
+
+    /**
+     * Returns true if the given source file refers to any of the given classes
+     */
+    public boolean refersToAny(String file, Set<String> classNames)
+    {
+        var source = sources.get(file);
+        if (source != null)
+        {
+            for (var name : source.classes())
+            {
+                var summary = classes.get(name);
+                if (summary != null)
+                {
+                    for (var reference : summary.references())
+                    {
+                        if (classNames.contains(reference))
+                        {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the given source file and the classes compiled from it
+     *
+     * @param file The source file
+     * @return The source, or null if it was not known
+     */
+    public Source remove(String file)
+    {
+        var source = sources.remove(file);
+        if (source != null)
+        {
+            source.classes().forEach(classes::remove);
+        }
+        return source;
+    }
+
+    /**
+     * Writes this state to the given path, replacing any existing state file
+     *
+     * @param path The state file
+     * @throws IOException Thrown if the file cannot be written
+     */
+    public void save(Path path) throws IOException
+    {
+        // Write to a temporary file,
+        var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary))))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(options);
+            out.writeInt(sources.size());
+            for (var entry : sources.entrySet())
+            {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue().hash());
+                out.writeInt(entry.getValue().classes().size());
+                for (var name : entry.getValue().classes())
+                {
+                    out.writeUTF(name);
+                }
+            }
+            out.writeInt(classes.size());
+            for (var summary : classes.values())
+            {
+                out.writeUTF(summary.name());
+                out.writeUTF(summary.abi());
+                out.writeUTF(summary.constants());
+                out.writeInt(summary.references().size());
+                for (var reference : summary.references())
+                {
+                    out.writeUTF(reference);
+                }
+            }
+        }
+
+        // then move it into place.
+        Files.move(temporary, path, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns what is known about the given source file, or null if it is not known
+     */
+    public Source source(String file)
+    {
+        return sources.get(file);
+    }
+
+    /**
+     * Returns the paths of the source files in this state
+     */
+    public Set<String> sources()
+    {
+        return Set.copyOf(sources.keySet());
+    }
+}
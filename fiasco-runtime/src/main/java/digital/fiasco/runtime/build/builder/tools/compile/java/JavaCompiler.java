@@ -1,5 +1,6 @@
 package digital.fiasco.runtime.build.builder.tools.compile.java;
 
+import com.telenav.kivakit.core.collections.list.ObjectList;
 import com.telenav.kivakit.core.collections.list.StringList;
 import com.telenav.kivakit.core.collections.set.ObjectSet;
 import com.telenav.kivakit.core.version.Version;
@@ -8,23 +9,45 @@ import com.telenav.kivakit.filesystem.Folder;
 import com.telenav.kivakit.filesystem.FolderList;
 import digital.fiasco.runtime.build.builder.Builder;
 import digital.fiasco.runtime.build.builder.tools.BaseTool;
+import digital.fiasco.runtime.build.builder.tools.CacheableTool;
 import digital.fiasco.runtime.build.builder.tools.Tool;
+import digital.fiasco.runtime.build.builder.tools.compile.java.CompilerDaemon.ClasspathJar;
+import digital.fiasco.runtime.build.builder.tools.compile.java.CompilerDaemon.Request;
 import digital.fiasco.runtime.build.builder.tools.compile.java.flags.CompilerWarning;
 import digital.fiasco.runtime.build.builder.tools.compile.java.flags.DebugInformation;
+import digital.fiasco.runtime.build.cache.ActionKey;
+import digital.fiasco.runtime.dependency.artifact.content.jar.JarContent;
+import digital.fiasco.runtime.repository.local.cache.ContentLogSection;
+import digital.fiasco.runtime.repository.local.cache.FiascoCacheRepository;
+import digital.fiasco.runtime.repository.local.cache.FiascoJavaFileManager;
 import digital.fiasco.runtime.utility.CommandLineComposer;
 
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import static com.telenav.kivakit.core.collections.set.ObjectSet.set;
 import static com.telenav.kivakit.core.ensure.Ensure.ensure;
 import static com.telenav.kivakit.core.string.Formatter.format;
 import static com.telenav.kivakit.filesystem.Folders.currentFolder;
+import static digital.fiasco.runtime.build.builder.tools.compile.java.ClasspathAbi.classpathAbi;
+import static digital.fiasco.runtime.build.builder.tools.compile.java.CompilerDaemon.ClasspathJar.classpathJar;
 import static digital.fiasco.runtime.build.builder.tools.compile.java.flags.DebugInformation.ALL;
 import static digital.fiasco.runtime.build.builder.tools.compile.java.flags.DebugInformation.NONE;
+import static digital.fiasco.runtime.dependency.artifact.content.ArtifactAttachmentType.JAR_ATTACHMENT;
+import static digital.fiasco.runtime.repository.local.cache.ContentBlobIndex.sha256;
+import static digital.fiasco.runtime.repository.local.cache.FiascoJavaFileManager.fiascoJavaFileManager;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static javax.tools.ToolProvider.getSystemJavaCompiler;
 
@@ -37,7 +60,11 @@ import static javax.tools.ToolProvider.getSystemJavaCompiler;
  *     <li>{@link #checkConsistency()}</li>
  *     <li>{@link #compilerWarnings()}</li>
  *     <li>{@link #debugInformation()}</li>
+ *     <li>{@link #isIncremental()}</li>
+ *     <li>{@link #usesDaemon()}</li>
+ *     <li>{@link #withDaemon(boolean)}</li>
  *     <li>{@link #withDebugInformation(DebugInformation...)}</li>
+ *     <li>{@link #withIncremental(boolean)}</li>
  *     <li>{@link #withReleaseVersion(Version)}</li>
  *     <li>{@link #withWarningDisabled(CompilerWarning...)}</li>
  *     <li>{@link #withWarningEnabled(CompilerWarning...)}</li>
@@ -65,6 +92,16 @@ import static javax.tools.ToolProvider.getSystemJavaCompiler;
  *     <li>{@link #withTargetVersion(Version)}</li>
  * </ul>
  *
+ * <p><b>Classpath</b></p>
+ *
+ * <p>
+ * The classpath is the classpath folders, followed by the JAR attachments of the builder's artifact dependencies. JARs
+ * stored exploded in a {@link FiascoCacheRepository} are served by a {@link FiascoJavaFileManager}, which reads each
+ * class file directly from the repository's content log, both in this process and in the {@link CompilerDaemon}.
+ * Other JARs are passed to the compiler with <i>-classpath</i>, after the classpath folders, and the JARs served from
+ * a cache repository come last, so a class in a classpath folder is always found before one in a JAR.
+ * </p>
+ *
  * @author Jonathan Locke
  * @see Tool
  * @see BaseTool
@@ -74,7 +111,7 @@ import static javax.tools.ToolProvider.getSystemJavaCompiler;
  * @see FileList
  */
 @SuppressWarnings({ "unused", "UnusedReturnValue" })
-public class JavaCompiler extends BaseTool<JavaCompiler, Void>
+public class JavaCompiler extends BaseTool<JavaCompiler, Void> implements CacheableTool
 {
     /**
      * Broadcasts compilation errors
@@ -126,6 +163,18 @@ public class JavaCompiler extends BaseTool<JavaCompiler, Void>
     /** The source file locale */
     private Locale sourceLocale = Locale.getDefault();
 
+    /** True to compile only changed sources, and the sources that depend on them */
+    private boolean incremental;
+
+    /** True to compile with the {@link CompilerDaemon} */
+    private boolean daemon;
+
+    /** True if the last compile succeeded */
+    private boolean succeeded = true;
+
+    /** The internal names of the classes written (or kept, when compiling incrementally) by the last compile */
+    private final List<String> classes = new ArrayList<>();
+
     /**
      * Create a new Java compiler associated with the given builder
      *
@@ -148,8 +197,10 @@ public class JavaCompiler extends BaseTool<JavaCompiler, Void>
         super(that.associatedBuilder());
 
         this.classpath = that.classpath.copy();
+        this.daemon = that.daemon;
         this.debugInformation = that.debugInformation;
         this.enabledCompilerWarnings = that.enabledCompilerWarnings.copy();
+        this.incremental = that.incremental;
         this.releaseVersion = that.releaseVersion;
         this.sourceEncoding = that.sourceEncoding;
         this.sourceLocale = that.sourceLocale;
@@ -160,6 +211,51 @@ public class JavaCompiler extends BaseTool<JavaCompiler, Void>
         this.targetVersion = that.targetVersion;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @param key {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public ActionKey cacheInputs(ActionKey key)
+    {
+        key.withAll("debug", debugInformation)
+            .withAll("warnings", enabledCompilerWarnings)
+            .with("release", releaseVersion)
+            .with("source", sourceVersion)
+            .with("target", targetVersion)
+            .with("encoding", sourceEncoding)
+            .withPath("target-folder", targetFolder.asJavaFile().toPath());
+        sources.asJavaFiles().forEach(it -> key.withFile(it.toPath()));
+        classpath.forEach(it -> key.withFolder(it.asJavaFile().toPath()));
+        jarFiles().forEach(key::withFile);
+        contentLogJars().forEach(it -> key.with("jar", identity(it)));
+        return key;
+    }
+
+    /**
+     * Returns the class files compiled from the sources by the last compile. Other class files in the target folder,
+     * such as those left by earlier compiles of sources that have since been removed, are not included.
+     *
+     * @return {@inheritDoc}
+     */
+    @Override
+    public ObjectList<Path> cacheOutputs()
+    {
+        var outputs = new ObjectList<Path>();
+        var target = targetFolder.asJavaFile().toPath();
+        for (var name : classes)
+        {
+            var file = target.resolve(name + ".class");
+            if (Files.isRegularFile(file))
+            {
+                outputs.add(file);
+            }
+        }
+        return outputs;
+    }
+
     @Override
     public void checkConsistency()
     {
@@ -219,11 +315,19 @@ public class JavaCompiler extends BaseTool<JavaCompiler, Void>
     @Override
     public Void onRun()
     {
-        compile(sources);
+        succeeded = compile(sources);
 
         return null;
     }
 
+    /**
+     * Returns true if this compiler compiles incrementally
+     */
+    public boolean isIncremental()
+    {
+        return incremental;
+    }
+
     /**
      * Returns the targeted Java release
      */
@@ -232,6 +336,17 @@ public class JavaCompiler extends BaseTool<JavaCompiler, Void>
         return releaseVersion;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @return False if the last compile failed
+     */
+    @Override
+    public boolean shouldCacheOutputs()
+    {
+        return succeeded;
+    }
+
     /**
      * Returns the source code encoding
      */
@@ -283,6 +398,27 @@ public class JavaCompiler extends BaseTool<JavaCompiler, Void>
         return targetVersion;
     }
 
+    /**
+     * Returns true if this compiler compiles with the {@link CompilerDaemon}
+     */
+    public boolean usesDaemon()
+    {
+        return daemon;
+    }
+
+    /**
+     * Returns a copy of this compiler tool that compiles with the {@link CompilerDaemon}, or not. The daemon keeps the
+     * compiler and the classpath JARs it has opened warm from one build to the next, and is started if it is not
+     * running. If the daemon cannot be reached, sources are compiled in this process.
+     *
+     * @param daemon True to compile with the daemon
+     * @return The new copy of this compiler tool
+     */
+    public JavaCompiler withDaemon(boolean daemon)
+    {
+        return mutated(it -> it.daemon = daemon);
+    }
+
     /**
      * Returns a copy of this compiler tool with the given debug information included in class files
      *
@@ -294,6 +430,20 @@ public class JavaCompiler extends BaseTool<JavaCompiler, Void>
         return mutated(it -> it.debugInformation = set(information));
     }
 
+    /**
+     * Returns a copy of this compiler tool that compiles incrementally, or not. When compiling incrementally, only
+     * source files that have changed since the last compile are compiled, along with the source files that depend on
+     * classes whose ABI changed, and class files for removed sources are deleted. See {@link IncrementalCompilation}
+     * for details.
+     *
+     * @param incremental True to compile incrementally
+     * @return The new copy of this compiler tool
+     */
+    public JavaCompiler withIncremental(boolean incremental)
+    {
+        return mutated(it -> it.incremental = incremental);
+    }
+
     /**
      * Returns a copy of this compiler tool with the given target Java release
      *
@@ -400,20 +550,132 @@ public class JavaCompiler extends BaseTool<JavaCompiler, Void>
      */
     private boolean compile(FileList sources)
     {
+        classes.clear();
         if (sources.isNonEmpty())
         {
             announce("Compiling $ files in $", sources.count(), sources.parent().relativeTo(currentFolder()));
             trace("Compiling $", sources.relativeTo(currentFolder()));
 
-            var compiler = getSystemJavaCompiler();
-            var fileManager = compiler.getStandardFileManager(new ProblemListener(), sourceLocale, sourceEncoding);
-            var files = fileManager.getJavaFileObjectsFromFiles(sources.asJavaFiles());
-            var task = compiler.getTask(null, fileManager, new ProblemListener(), options(), null, files);
-            return task.call();
+            var files = new ArrayList<File>();
+            sources.asJavaFiles().forEach(files::add);
+            if (incremental)
+            {
+                var target = targetFolder.asJavaFile().toPath();
+                // The fingerprint covers the classpath's ABI, so a change that affects the code using the classpath
+                // causes a full compile.
+                var options = options(true);
+                var folders = new ArrayList<Path>();
+                classpath.forEach(it -> folders.add(it.asJavaFile().toPath()));
+                var jars = new ArrayList<String>();
+                jarFiles().forEach(it -> jars.add(identity(it)));
+                contentLogJars().forEach(it -> jars.add(identity(it)));
+                var fingerprint = sha256(new ByteArrayInputStream((String.join("\n", options) + "\n"
+                    + classpathAbi(folders, jars)).getBytes(UTF_8)));
+                var compilation = listenTo(new IncrementalCompilation(target, fingerprint,
+                    (group, classToSource) -> compile(group, options, classToSource)));
+                if (compilation.compile(files))
+                {
+                    classes.addAll(compilation.classes());
+                    return true;
+                }
+                return false;
+            }
+
+            // Compile everything, recording the classes that are written.
+            var classToSource = new HashMap<String, String>();
+            if (compile(files, options(false), classToSource))
+            {
+                classToSource.keySet().forEach(it -> classes.add(it.replace('.', '/')));
+                return true;
+            }
+            return false;
         }
         return true;
     }
 
+    /**
+     * Compiles the given source files with the given options
+     *
+     * @param sources The files to compile
+     * @param options The compiler options
+     * @param classToSource The map in which to record the source file of each class that is written
+     * @return True if the files compiled
+     */
+    private boolean compile(List<File> sources, StringList options, Map<String, String> classToSource)
+    {
+        var contentLogJars = contentLogJars();
+
+        // If we're using the daemon,
+        if (daemon)
+        {
+            // send it the request, with the cache repository JARs it should serve from their content logs,
+            var paths = new ArrayList<String>();
+            sources.forEach(it -> paths.add(it.getAbsolutePath()));
+            var jars = new ArrayList<ClasspathJar>();
+            contentLogJars.forEach(it -> jars.add(classpathJar(it)));
+            var request = new Request(options, paths, jars, sourceEncoding.name(), sourceLocale.toLanguageTag(), true);
+            var response = listenTo(new CompilerDaemonClient()).compile(request);
+
+            // and if it responded, report its problems and the classes it wrote.
+            if (response != null)
+            {
+                for (var problem : response.problems())
+                {
+                    problem("$ $ ($:$): $", problem.kind(), problem.code(), problem.source(), problem.line(),
+                        problem.message());
+                }
+                classToSource.putAll(response.classToSource());
+                return response.succeeded();
+            }
+        }
+
+        // Otherwise, compile in this process, serving cache repository JARs from their content logs.
+        var compiler = getSystemJavaCompiler();
+        var standard = compiler.getStandardFileManager(new ProblemListener(), sourceLocale, sourceEncoding);
+        JavaFileManager classpath = contentLogJars.isEmpty()
+            ? standard
+            : fiascoJavaFileManager(standard, contentLogJars);
+        var fileManager = new ClassRecordingFileManager(classpath, classToSource);
+        var files = standard.getJavaFileObjectsFromFiles(sources);
+        var task = compiler.getTask(null, fileManager, new ProblemListener(), options, null, files);
+        return task.call();
+    }
+
+    /**
+     * Returns the JARs attached to the builder's artifact dependencies, in dependency order
+     */
+    private ObjectList<JarContent> classpathJars()
+    {
+        var jars = new ObjectList<JarContent>();
+        for (var artifact : artifactDependencies())
+        {
+            for (var attachment : artifact.attachments())
+            {
+                if (attachment.attachmentType() == JAR_ATTACHMENT && attachment.content() instanceof JarContent jar)
+                {
+                    jars.add(jar);
+                }
+            }
+        }
+        return jars;
+    }
+
+    /**
+     * Returns the classpath JARs that are stored exploded in a cache repository's content log
+     */
+    private ObjectList<JarContent> contentLogJars()
+    {
+        var jars = new ObjectList<JarContent>();
+        for (var jar : classpathJars())
+        {
+            if (jar.resource() instanceof ContentLogSection)
+            {
+                jars.add(jar);
+            }
+        }
+        return jars;
+    }
+
     private CommandLineComposer debugFlags(CommandLineComposer composer)
     {
         if (debugInformation.contains(ALL))
@@ -429,10 +691,58 @@ public class JavaCompiler extends BaseTool<JavaCompiler, Void>
         return composer.withOneArgumentSwitch("-g", debugInformation.map(DebugInformation::flag), ",", ":");
     }
 
-    private StringList options()
+    /**
+     * Returns the identity of the given cache repository JAR, which changes if its content changes. The cache
+     * repository computes the SHA-256 hash of each JAR it stores, so the identity doesn't depend on where the JAR is
+     * stored, and is the same on every machine.
+     */
+    private String identity(JarContent jar)
     {
+        return jar.name() + ":" + jar.sha256();
+    }
+
+    /**
+     * Returns the identity of the given JAR file, which changes if it is modified
+     */
+    private String identity(Path jar)
+    {
+        var file = jar.toFile();
+        return jar + ":" + file.length() + ":" + file.lastModified();
+    }
+
+    /**
+     * Returns the classpath JAR files that are not stored in a cache repository's content log
+     */
+    private ObjectList<Path> jarFiles()
+    {
+        var files = new ObjectList<Path>();
+        for (var jar : classpathJars())
+        {
+            if (jar.resource() instanceof com.telenav.kivakit.filesystem.File file)
+            {
+                files.add(file.asJavaFile().toPath());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Returns the compiler options
+     *
+     * @param incremental True to add the target folder to the classpath, so classes that are not being compiled are
+     * found there
+     */
+    private StringList options(boolean incremental)
+    {
+        var classpath = new ArrayList<Object>();
+        this.classpath.forEach(classpath::add);
+        jarFiles().forEach(classpath::add);
+        if (incremental)
+        {
+            classpath.add(targetFolder);
+        }
         return debugFlags(new CommandLineComposer())
-            .withTwoArgumentSwitch("-classpath", classpath, ";")
+            .withTwoArgumentSwitch("-classpath", classpath, File.pathSeparator)
             .withTwoArgumentSwitch("-d", targetFolder)
             .withTwoArgumentSwitch("-encoding", sourceEncoding)
             .withTwoArgumentSwitch("-release", releaseVersion)
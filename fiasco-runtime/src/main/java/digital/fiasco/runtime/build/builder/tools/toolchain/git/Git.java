@@ -15,6 +15,7 @@ import digital.fiasco.runtime.build.builder.tools.BaseTool;
 import static com.telenav.kivakit.core.collections.list.StringList.stringList;
 import static com.telenav.kivakit.core.os.OperatingSystem.operatingSystem;
 import static com.telenav.kivakit.core.string.Formatter.format;
+import static digital.fiasco.runtime.build.execution.Blocking.blocking;
 
 /**
  * Runs the Git source control tool.
@@ -139,8 +140,8 @@ public class Git extends BaseTool<Git, String>
     public String onRun()
     {
         trace(description());
-        output = operatingSystem().execute(this,
-            folder.asJavaFile(), arguments.asStringArray()).trim();
+        output = blocking(() -> operatingSystem().execute(this,
+            folder.asJavaFile(), arguments.asStringArray())).trim();
         return output;
     }
 
@@ -0,0 +1,395 @@
+package digital.fiasco.runtime.build.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
+import static digital.fiasco.runtime.FiascoRuntime.fiascoCacheFolder;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * A content-addressed cache of the outputs of build actions. Each entry is a bundle of the files written by an action,
+ * stored under the {@link ActionKey} computed from the action's inputs. When an action's inputs haven't changed, its
+ * outputs are restored from the bundle instead of running the action again.
+ *
+ * <p><b>Bundles</b></p>
+ *
+ * <p>
+ * A bundle holds the path of each output file, relative to the builder's root folder, and its contents. Bundles are
+ * written to a temporary file and then moved into place, so a bundle is either complete or absent, even if the process
+ * is killed. Bundles are never modified, so they can be shared between processes and machines. The cache returned by
+ * {@link #actionCache()} is in the Fiasco cache folder, and is shared by all builds on this machine.
+ * </p>
+ *
+ * <p><b>Remote Caches</b></p>
+ *
+ * <p>
+ * An action cache can be backed by a {@link RemoteActionCache}, such as a Fiasco server, with
+ * {@link #withRemote(RemoteActionCache)}. Bundles that aren't in the local cache are then fetched from the remote
+ * cache, and bundles stored in the local cache are sent to it, so outputs built on one machine are reused on others.
+ * </p>
+ *
+ * <p>
+ * Restoring a bundle writes its outputs into the builder's root folder. Paths that would escape the root folder are
+ * rejected, but a bundle can still replace any file under it, including sources. So a remote cache must only hold
+ * bundles from trusted builds. A Fiasco server only accepts bundles when it is configured to trust its clients.
+ * </p>
+ *
+ * <p><b>Actions</b></p>
+ *
+ * <ul>
+ *     <li>{@link #canStore(Path, Collection)}</li>
+ *     <li>{@link #restore(String, Path)}</li>
+ *     <li>{@link #store(String, Path, Collection)}</li>
+ *     <li>{@link #withRemote(RemoteActionCache)}</li>
+ * </ul>
+ *
+ * <p><b>Bundles</b></p>
+ *
+ * <ul>
+ *     <li>{@link #bundle(String)}</li>
+ *     <li>{@link #contains(String)}</li>
+ *     <li>{@link #putBundle(String, byte[])}</li>
+ * </ul>
+ *
+ * @author Jonathan Locke
+ * @see ActionKey
+ */
+public class ActionCache
+{
+    /** Identifies a bundle */
+    private static final int MAGIC = 0x46414342;
+
+    /** The version of the bundle format */
+    private static final int VERSION = 1;
+
+    /**
+     * An output file in a bundle
+     *
+     * @param path The path of the file, relative to the builder's root folder
+     * @param contents The contents of the file
+     */
+    private record Output(String path, byte[] contents)
+    {
+    }
+
+    /**
+     * Writes bundle contents to a stream
+     */
+    private interface BundleWriter
+    {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /** The cache shared by builds on this machine */
+    private static ActionCache cache;
+
+    /**
+     * Returns the action cache in the Fiasco cache folder
+     */
+    public static synchronized ActionCache actionCache()
+    {
+        if (cache == null)
+        {
+            cache = new ActionCache(Path.of(fiascoCacheFolder().folder("action-cache").mkdirs().asUri()));
+        }
+        return cache;
+    }
+
+    /** The folder holding bundles */
+    private final Path folder;
+
+    /** The remote cache, or null if there is none */
+    private final RemoteActionCache remote;
+
+    /**
+     * @param folder The folder to hold bundles
+     */
+    public ActionCache(Path folder)
+    {
+        this(folder, null);
+    }
+
+    /**
+     * @param folder The folder to hold bundles
+     * @param remote The remote cache, or null if there is none
+     */
+    protected ActionCache(Path folder, RemoteActionCache remote)
+    {
+        this.folder = folder;
+        this.remote = remote;
+    }
+
+    /**
+     * Returns the bundle with the given key
+     *
+     * @param key The key
+     * @return The bundle, or null if there is no bundle with the key
+     * @throws IllegalStateException Thrown if the bundle cannot be read
+     */
+    public byte[] bundle(String key)
+    {
+        var path = path(key);
+        try
+        {
+            return Files.isRegularFile(path) ? Files.readAllBytes(path) : null;
+        }
+        catch (IOException e)
+        {
+            return illegalState(e, "Unable to read bundle: $", path);
+        }
+    }
+
+    /**
+     * Returns true if the given output files can be stored in a bundle, which is the case if they are all under the
+     * given root folder. Outputs are restored relative to the root folder, so an action that writes files outside of
+     * it, like a copy to an installation folder, can't be cached.
+     *
+     * @param root The builder's root folder
+     * @param outputs The output files
+     * @return True if the outputs can be stored
+     */
+    public boolean canStore(Path root, Collection<Path> outputs)
+    {
+        var base = root.toAbsolutePath().normalize();
+        for (var output : outputs)
+        {
+            if (!output.toAbsolutePath().normalize().startsWith(base))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if this cache has a bundle with the given key
+     */
+    public boolean contains(String key)
+    {
+        return Files.isRegularFile(path(key));
+    }
+
+    /**
+     * Adds the given bundle to this cache, unless it already has a bundle with the given key
+     *
+     * @param key The key
+     * @param bundle The bundle
+     * @throws IllegalStateException Thrown if the bundle is not valid, or cannot be written
+     */
+    public void putBundle(String key, byte[] bundle)
+    {
+        try
+        {
+            // Check that the bundle can be read,
+            read(new ByteArrayInputStream(bundle));
+
+            // then write it.
+            write(key, out -> out.write(bundle));
+        }
+        catch (IOException e)
+        {
+            illegalState(e, "Invalid bundle: $", key);
+        }
+    }
+
+    /**
+     * Restores the output files in the bundle with the given key
+     *
+     * @param key The key
+     * @param root The builder's root folder
+     * @return True if the outputs were restored, false if there is no bundle with the given key or it can't be read
+     */
+    public boolean restore(String key, Path root)
+    {
+        // If the bundle isn't in this cache, try to get it from the remote cache,
+        var path = path(key);
+        if (!Files.isRegularFile(path) && !fetch(key))
+        {
+            return false;
+        }
+
+        // then write the output files in it.
+        try (var in = new BufferedInputStream(Files.newInputStream(path)))
+        {
+            for (var output : read(in))
+            {
+                var file = root.resolve(output.path());
+                Files.createDirectories(file.getParent());
+                Files.write(file, output.contents());
+            }
+            return true;
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Stores a bundle of the given output files under the given key
+     *
+     * @param key The key
+     * @param root The builder's root folder
+     * @param outputs The output files, which must be under the root folder (see {@link #canStore(Path, Collection)})
+     * @throws IllegalStateException Thrown if an output file is not under the root folder, or cannot be read
+     */
+    public void store(String key, Path root, Collection<Path> outputs)
+    {
+        var base = root.toAbsolutePath().normalize();
+        try
+        {
+            write(key, out ->
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(outputs.size());
+                for (var output : outputs)
+                {
+                    var file = output.toAbsolutePath().normalize();
+                    if (!file.startsWith(base))
+                    {
+                        throw new IOException("Output " + file + " is not under " + base);
+                    }
+                    var contents = Files.readAllBytes(file);
+                    out.writeUTF(base.relativize(file).toString().replace('\\', '/'));
+                    out.writeInt(contents.length);
+                    out.write(contents);
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            illegalState(e, "Unable to store outputs: $", key);
+        }
+
+        // Share the bundle with the remote cache, unless it already has it.
+        if (remote != null)
+        {
+            try
+            {
+                if (remote.findBundles(List.of(key)).isEmpty())
+                {
+                    remote.putBundle(key, bundle(key));
+                }
+            }
+            catch (RuntimeException ignored)
+            {
+                // The remote cache is only an optimization.
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of this cache that gets bundles it doesn't have from the given remote cache, and shares the
+     * bundles it stores with it
+     *
+     * @param remote The remote cache
+     * @return The copy
+     */
+    public ActionCache withRemote(RemoteActionCache remote)
+    {
+        return new ActionCache(folder, remote);
+    }
+
+    /**
+     * Gets the bundle with the given key from the remote cache, if there is one
+     *
+     * @return True if the bundle was added to this cache
+     */
+    private boolean fetch(String key)
+    {
+        if (remote != null)
+        {
+            try
+            {
+                var bundle = remote.bundle(key);
+                if (bundle != null)
+                {
+                    putBundle(key, bundle);
+                    return true;
+                }
+            }
+            catch (RuntimeException ignored)
+            {
+                // A remote bundle that can't be read is a cache miss.
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the path of the bundle with the given key
+     */
+    private Path path(String key)
+    {
+        if (!key.matches("[0-9a-f]{64}"))
+        {
+            return illegalState("Invalid action key: $", key);
+        }
+        return folder.resolve(key.substring(0, 2)).resolve(key + ".bundle");
+    }
+
+    /**
+     * Reads the outputs in the given bundle
+     *
+     * @throws IOException Thrown if the bundle is damaged, or has an output outside the builder's root folder
+     */
+    private List<Output> read(InputStream bundle) throws IOException
+    {
+        var in = new DataInputStream(bundle);
+        if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        {
+            throw new IOException("Not a bundle");
+        }
+        var outputs = new ArrayList<Output>();
+        for (var count = in.readInt(); count > 0; count--)
+        {
+            var path = in.readUTF();
+            if (path.startsWith("/") || Path.of(path).normalize().startsWith("..") || Path.of(path).isAbsolute())
+            {
+                throw new IOException("Output is outside of the root folder: " + path);
+            }
+            var contents = new byte[in.readInt()];
+            in.readFully(contents);
+            outputs.add(new Output(path, contents));
+        }
+        return outputs;
+    }
+
+    /**
+     * Writes the bundle with the given key to a temporary file, then moves it into place
+     */
+    private void write(String key, BundleWriter writer) throws IOException
+    {
+        var path = path(key);
+        if (!Files.exists(path))
+        {
+            Files.createDirectories(path.getParent());
+            var temporary = Files.createTempFile(path.getParent(), key, ".tmp");
+            try
+            {
+                try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary))))
+                {
+                    writer.write(out);
+                }
+                Files.move(temporary, path, REPLACE_EXISTING, ATOMIC_MOVE);
+            }
+            finally
+            {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package digital.fiasco.runtime.build.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
+import static digital.fiasco.runtime.repository.local.cache.ContentBlobIndex.sha256;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Computes the key of a build action in an {@link ActionCache} from the action's inputs. The key is a SHA-256 hash of
+ * the name of the action, its settings, and the paths and contents of its input files.
+ *
+ * <p>
+ * Paths under the builder's root folder are hashed relative to it, so the same project checked out in different places
+ * (or on different machines) has the same keys. Input files outside the root folder, like JARs in a local Maven
+ * repository, are hashed by their contents alone (and the files in a folder outside the root folder by their paths
+ * relative to that folder), since their absolute paths differ from one machine to the next. The hashes of file
+ * contents are remembered for as long as a file's size and modification time don't change, so the inputs of an
+ * unchanged module are hashed without reading them.
+ * </p>
+ *
+ * <p><b>Inputs</b></p>
+ *
+ * <ul>
+ *     <li>{@link #with(String, Object)}</li>
+ *     <li>{@link #withAll(String, Iterable)}</li>
+ *     <li>{@link #withFile(Path)}</li>
+ *     <li>{@link #withFolder(Path)}</li>
+ *     <li>{@link #withPath(String, Path)}</li>
+ * </ul>
+ *
+ * <p><b>Key</b></p>
+ *
+ * <ul>
+ *     <li>{@link #key()}</li>
+ * </ul>
+ *
+ * @author Jonathan Locke
+ * @see ActionCache
+ */
+public class ActionKey
+{
+    /**
+     * Returns a key for the given action, with input paths relative to the given root folder
+     *
+     * @param root The builder's root folder
+     * @param action The name of the action
+     * @return The key
+     */
+    public static ActionKey actionKey(Path root, String action)
+    {
+        return new ActionKey(root).with("action", action);
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            return illegalState(e, "SHA-256 is not available");
+        }
+    }
+
+    /**
+     * The hash of a file's contents, as of the given size and modification time
+     */
+    private record FileHash(long size, long modified, String hash)
+    {
+    }
+
+    /** The hashes of files that have been read, by absolute path */
+    private static final Map<Path, FileHash> fileHashes = new ConcurrentHashMap<>();
+
+    /** The builder's root folder */
+    private final Path root;
+
+    /** The hash of the inputs so far */
+    private final MessageDigest digest;
+
+    protected ActionKey(Path root)
+    {
+        this.root = root.toAbsolutePath().normalize();
+        this.digest = newDigest();
+    }
+
+    /**
+     * Returns the key, as a lowercase hexadecimal string. No more inputs can be added once the key is computed.
+     */
+    public String key()
+    {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Adds the given setting to this key
+     *
+     * @param name The name of the setting
+     * @param value The value of the setting, which may be null
+     * @return This key, for chaining
+     */
+    public ActionKey with(String name, Object value)
+    {
+        update(name);
+        update(String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * Adds the given unordered settings to this key. The settings are sorted, so the key doesn't depend on their order.
+     *
+     * @param name The name of the settings
+     * @param values The values of the settings
+     * @return This key, for chaining
+     */
+    public ActionKey withAll(String name, Iterable<?> values)
+    {
+        var sorted = new TreeSet<String>();
+        values.forEach(value -> sorted.add(String.valueOf(value)));
+        return with(name, sorted);
+    }
+
+    /**
+     * Adds the contents of the given file to this key, and its path, if it is under the root folder. A file that
+     * doesn't exist is added as missing.
+     *
+     * @param file The file
+     * @return This key, for chaining
+     * @throws IllegalStateException Thrown if the file cannot be read
+     */
+    public ActionKey withFile(Path file)
+    {
+        update("file");
+        update(isUnderRoot(file) ? relative(file) : "");
+        update(Files.isRegularFile(file) ? hash(file) : "missing");
+        return this;
+    }
+
+    /**
+     * Adds the contents of each file in the given folder and its sub-folders to this key, with the path of each file
+     * relative to the folder, and the path of the folder, if it is under the root folder
+     *
+     * @param folder The folder
+     * @return This key, for chaining
+     * @throws IllegalStateException Thrown if the folder cannot be read
+     */
+    public ActionKey withFolder(Path folder)
+    {
+        update("folder");
+        update(isUnderRoot(folder) ? relative(folder) : "");
+        if (Files.isDirectory(folder))
+        {
+            try (var files = Files.walk(folder))
+            {
+                files.filter(Files::isRegularFile)
+                    .sorted()
+                    .forEach(file ->
+                    {
+                        update("file");
+                        update(folder.relativize(file).toString().replace('\\', '/'));
+                        update(hash(file));
+                    });
+            }
+            catch (IOException | UncheckedIOException e)
+            {
+                return illegalState(e, "Unable to read folder: $", folder);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds the given path to this key, without the contents of the file or folder it refers to
+     *
+     * @param name The name of the setting
+     * @param path The path
+     * @return This key, for chaining
+     */
+    public ActionKey withPath(String name, Path path)
+    {
+        return with(name, relative(path));
+    }
+
+    /**
+     * Returns the hash of the given file's contents, reading the file only if it has changed since it was last hashed
+     */
+    private String hash(Path file)
+    {
+        try
+        {
+            var path = file.toAbsolutePath().normalize();
+            var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            var size = attributes.size();
+            var modified = attributes.lastModifiedTime().toMillis();
+
+            var known = fileHashes.get(path);
+            if (known != null && known.size() == size && known.modified() == modified)
+            {
+                return known.hash();
+            }
+
+            var hash = sha256(Files.newInputStream(path));
+            fileHashes.put(path, new FileHash(size, modified, hash));
+            return hash;
+        }
+        catch (IOException e)
+        {
+            return illegalState(e, "Unable to hash file: $", file);
+        }
+    }
+
+    /**
+     * Returns true if the given path is under the root folder
+     */
+    private boolean isUnderRoot(Path path)
+    {
+        return path.toAbsolutePath().normalize().startsWith(root);
+    }
+
+    /**
+     * Returns the given path relative to the root folder, if it is under it, or otherwise its absolute path
+     */
+    private String relative(Path path)
+    {
+        var absolute = path.toAbsolutePath().normalize();
+        var relative = absolute.startsWith(root) ? root.relativize(absolute) : absolute;
+        return relative.toString().replace('\\', '/');
+    }
+
+    /**
+     * Adds the given string to the hash, followed by a separator, so adjacent inputs can't run together
+     */
+    private void update(String value)
+    {
+        digest.update(value.getBytes(UTF_8));
+        digest.update((byte) 0);
+    }
+}
@@ -0,0 +1,53 @@
+package digital.fiasco.runtime.build.cache;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * An {@link ActionCache} on another machine, shared by the machines that build a project, such as developer machines
+ * and CI agents. When a local action cache doesn't have the outputs of an action, it asks its remote cache for them,
+ * and it sends the outputs of the actions it runs to the remote cache.
+ *
+ * <p>
+ * A remote cache that can't be reached behaves like an empty cache that ignores additions, so builds continue without
+ * it.
+ * </p>
+ *
+ * <p><b>Bundles</b></p>
+ *
+ * <ul>
+ *     <li>{@link #bundle(String)}</li>
+ *     <li>{@link #findBundles(Collection)}</li>
+ *     <li>{@link #putBundle(String, byte[])}</li>
+ * </ul>
+ *
+ * @author Jonathan Locke
+ * @see ActionCache#withRemote(RemoteActionCache)
+ */
+public interface RemoteActionCache
+{
+    /**
+     * Returns the bundle with the given key
+     *
+     * @param key The action key
+     * @return The bundle, or null if the remote cache doesn't have it, or can't be reached
+     */
+    byte[] bundle(String key);
+
+    /**
+     * Returns the given keys that the remote cache has bundles for
+     *
+     * @param keys The action keys
+     * @return The keys that have bundles, or an empty set if the remote cache can't be reached
+     */
+    Set<String> findBundles(Collection<String> keys);
+
+    /**
+     * Adds the given bundle to the remote cache
+     *
+     * @param key The action key
+     * @param bundle The bundle
+     * @return True if the remote cache has the bundle
+     */
+    boolean putBundle(String key, byte[] bundle);
+}
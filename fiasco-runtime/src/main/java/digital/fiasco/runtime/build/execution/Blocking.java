@@ -0,0 +1,175 @@
+package digital.fiasco.runtime.build.execution;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
+
+/**
+ * Runs operations that block on I/O, such as waiting for artifacts, copying files and running subprocesses, so they
+ * don't reduce the parallelism of a build.
+ *
+ * <p>
+ * A {@link BuildExecutor} runs at most {@link digital.fiasco.runtime.build.settings.BuildSettings#builderThreads()}
+ * builders at once. When {@link digital.fiasco.runtime.build.settings.BuildOption#ELASTIC_IO} is enabled, a builder
+ * that calls {@link #blocking(Callable)} gives up its slot while it is blocked, so another builder can start, and the
+ * builder pool adds a thread to replace the blocked one. When the operation completes, the builder waits for a slot
+ * before it continues. This keeps the number of builders using the processor at the configured number, while any
+ * number of builders can be waiting on I/O, up to the largest size of the pool.
+ * </p>
+ *
+ * <p>
+ * Outside a build executor, or when the option is not enabled, operations are simply run on the calling thread.
+ * </p>
+ *
+ * @author Jonathan Locke
+ * @see ExecutionMetrics
+ */
+public class Blocking
+{
+    /** The builder slot held by the current thread, if it is running a builder */
+    private static final ThreadLocal<Slot> slot = new ThreadLocal<>();
+
+    /**
+     * Runs the given blocking operation
+     *
+     * @param code The operation
+     * @return The value returned by the operation
+     * @throws IllegalStateException Thrown if the operation fails with a checked exception
+     */
+    public static <T> T blocking(Callable<T> code)
+    {
+        var slot = Blocking.slot.get();
+        var started = System.nanoTime();
+        try
+        {
+            // If the current thread is not running a builder that can give up its slot,
+            if (slot == null || !slot.elastic())
+            {
+                // just run the code,
+                return code.call();
+            }
+
+            // otherwise, release the slot, and run the code, allowing the pool to replace this thread while it blocks.
+            slot.permits().release();
+            var blocker = new Blocker<>(code);
+            try
+            {
+                ForkJoinPool.managedBlock(blocker);
+            }
+            finally
+            {
+                var blocked = System.nanoTime();
+                slot.permits().acquireUninterruptibly();
+                slot.metrics().queued(System.nanoTime() - blocked);
+            }
+            return blocker.result();
+        }
+        catch (RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            return illegalState(e, "Blocking operation failed");
+        }
+        finally
+        {
+            if (slot != null)
+            {
+                slot.metrics().blocked(System.nanoTime() - started);
+            }
+        }
+    }
+
+    /**
+     * Runs the given blocking operation
+     *
+     * @param code The operation
+     */
+    public static void blocking(Runnable code)
+    {
+        blocking(() ->
+        {
+            code.run();
+            return null;
+        });
+    }
+
+    /**
+     * Called by {@link BuildExecutor} when the current thread starts running a builder
+     */
+    static void enter(Semaphore permits, ExecutionMetrics metrics, boolean elastic)
+    {
+        slot.set(new Slot(permits, metrics, elastic));
+    }
+
+    /**
+     * Called by {@link BuildExecutor} when the current thread is done running a builder
+     */
+    static void exit()
+    {
+        slot.remove();
+    }
+
+    /**
+     * The builder slot held by a thread
+     *
+     * @param permits The builder slots
+     * @param metrics The metrics to update
+     * @param elastic True if the slot is released while blocked
+     */
+    private record Slot(Semaphore permits, ExecutionMetrics metrics, boolean elastic)
+    {
+    }
+
+    /**
+     * Runs an operation as a {@link ForkJoinPool.ManagedBlocker}
+     */
+    private static class Blocker<T> implements ForkJoinPool.ManagedBlocker
+    {
+        private final Callable<T> code;
+
+        private T result;
+
+        private Exception failure;
+
+        private boolean done;
+
+        Blocker(Callable<T> code)
+        {
+            this.code = code;
+        }
+
+        @Override
+        public boolean block()
+        {
+            try
+            {
+                result = code.call();
+            }
+            catch (Exception e)
+            {
+                failure = e;
+            }
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable()
+        {
+            return done;
+        }
+
+        T result() throws Exception
+        {
+            if (failure != null)
+            {
+                throw failure;
+            }
+            return result;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.telenav.kivakit.core.function.Result;
 import com.telenav.kivakit.core.language.trait.TryTrait;
 import digital.fiasco.runtime.build.Build;
 import digital.fiasco.runtime.build.builder.Builder;
+import digital.fiasco.runtime.build.settings.BuildOption;
 import digital.fiasco.runtime.build.settings.BuildSettings;
 import digital.fiasco.runtime.dependency.Dependency;
 import digital.fiasco.runtime.dependency.artifact.Artifact;
@@ -13,16 +14,26 @@ import digital.fiasco.runtime.dependency.artifact.resolver.ArtifactResolutionTra
 import digital.fiasco.runtime.dependency.artifact.resolver.ArtifactResolver;
 import digital.fiasco.runtime.dependency.collections.ArtifactList;
 import digital.fiasco.runtime.dependency.collections.BaseDependencyList;
+import digital.fiasco.runtime.dependency.collections.CriticalPath;
 import digital.fiasco.runtime.dependency.collections.DependencyQueue;
 import digital.fiasco.runtime.dependency.collections.DependencyTree;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import static com.telenav.kivakit.core.thread.Threads.shutdownAndAwaitTermination;
-import static com.telenav.kivakit.core.thread.Threads.threadPool;
+import static digital.fiasco.runtime.build.execution.Blocking.blocking;
+import static digital.fiasco.runtime.build.execution.BuilderDurations.builderDurations;
+import static digital.fiasco.runtime.dependency.collections.CriticalPath.criticalPath;
+import static digital.fiasco.runtime.build.settings.BuildOption.ELASTIC_IO;
+import static digital.fiasco.runtime.build.settings.BuildOption.VERBOSE;
+import static java.util.concurrent.ForkJoinPool.defaultForkJoinWorkerThreadFactory;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
  * Runs a parallel build for the build tree with the given root builder. The root builder's settings provide the number
@@ -48,6 +59,24 @@ import static com.telenav.kivakit.core.thread.Threads.threadPool;
  * resolved.
  * </p>
  *
+ * <p><b>Scheduling</b></p>
+ *
+ * <p>
+ * Builders run on a work-stealing {@link ForkJoinPool}. A builder is only taken from the queue when a worker is free,
+ * and the ready builder taken is the one with the longest {@link CriticalPath}: the most work, by the time each builder
+ * took in recent builds ({@link BuilderDurations}), between it and the end of the build. This starts long chains of
+ * builders as early as possible, since they bound the time the whole build takes.
+ * </p>
+ *
+ * <p><b>Blocking</b></p>
+ *
+ * <p>
+ * When {@link BuildOption#ELASTIC_IO} is enabled, a builder that blocks on I/O through {@link Blocking} gives up its
+ * slot to another builder, and the pool adds a thread to replace it, so the number of builders using the processor
+ * stays at {@link BuildSettings#builderThreads()}. When the build is verbose, {@link ExecutionMetrics} for the builder
+ * threads are reported at the end of the build.
+ * </p>
+ *
  * @author Jonathan Locke
  * @see ArtifactResolutionTracker
  * @see Result
@@ -62,17 +91,35 @@ import static com.telenav.kivakit.core.thread.Threads.threadPool;
  */
 public class BuildExecutor extends BaseComponent implements TryTrait
 {
+    /** The largest size of the builder pool with elastic I/O, as a multiple of the number of builder threads */
+    private static final int ELASTIC_POOL_FACTOR = 8;
+
     /** The build to execute */
     private final Build build;
 
+    /** The time each builder takes to run */
+    private final BuilderDurations durations;
+
     /**
      * Creates a build executor for the given build
      *
      * @param build The build
      */
     public BuildExecutor(Build build)
+    {
+        this(build, builderDurations());
+    }
+
+    /**
+     * Creates a build executor for the given build
+     *
+     * @param build The build
+     * @param durations The history of builder durations to schedule with, and to update
+     */
+    public BuildExecutor(Build build, BuilderDurations durations)
     {
         this.build = build;
+        this.durations = durations;
 
         build.listenTo(this);
     }
@@ -87,7 +134,7 @@ public class BuildExecutor extends BaseComponent implements TryTrait
         // Start resolving artifacts in the background starting from the root
         // builder's dependencies. Each resolved artifact is added to the
         // resolved set.
-        var resolved = new ArtifactResolutionTracker(this);
+        var resolved = new ArtifactResolutionTracker(this, build.dependencyTree());
         trace("Starting artifact resolver");
         new ArtifactResolver(build, resolved).resolveArtifacts();
 
@@ -98,29 +145,58 @@ public class BuildExecutor extends BaseComponent implements TryTrait
     }
 
     /**
-     * Executes all builders from the root in parallel groups.
+     * Executes all builders from the root in parallel, starting ready builders with the longest critical paths first.
      *
      * @param resolved The resolved artifacts set
      * @return The results for each builder
      */
     private ObjectList<Result<Builder>> build(ArtifactResolutionTracker resolved)
     {
-        // Create a queue of builders from the dependency tree for the build, where builders are
-        // ready for processing once their artifact and builder dependencies have been resolved.
-        var builderQueue = build.dependencyTree().asQueue(Builder.class)
-            .withIsReady((queue, it) -> resolved.isResolved(it.dependencies())
-                && queue.hasCompleted(it.builderDependencies()));
+        // Find the critical path length of each builder, weighted by how long it took last time,
+        var tree = build.dependencyTree();
+        var criticalPath = criticalPath(tree, Builder.class, it -> durations.estimate((Builder) it));
+
+        // and create a queue of builders from the dependency tree for the build, where builders are
+        // ready for processing once their builder dependencies have completed (which the queue
+        // tracks itself) and their artifact dependencies have been resolved, and ready builders are
+        // taken longest critical path first,
+        var builderQueue = tree.asQueue(Builder.class)
+            .withPriority(criticalPath.longestFirst())
+            .withIsReady((queue, it) -> resolved.isResolved(it));
+
+        // then check readiness again whenever the last artifact a dependency needs is resolved.
+        resolved.onReady(it -> builderQueue.readinessChanged());
 
-        // Create a thread pool,
-        var executor = threadPool("FiascoBuild", build.settings().builderThreads());
+        // Create a work-stealing pool, which can add threads to replace builders blocked on I/O
+        // if elastic I/O is enabled,
+        var threads = build.settings().builderThreads().asInt();
+        var elastic = build.settings().isEnabled(ELASTIC_IO);
+        var metrics = new ExecutionMetrics();
+        var executor = new ForkJoinPool(threads, this::newWorker, null, true,
+            threads, elastic ? threads * ELASTIC_POOL_FACTOR : threads, 1, metrics::saturated, 60, SECONDS);
 
         // and while there are builders yet to run,
+        var idle = new Semaphore(threads);
         var futures = new ObjectList<Future<Result<Builder>>>();
-        for (Builder builder = builderQueue.takeNextReady(); builder != null; builder = builderQueue.takeNextReady())
+        while (true)
         {
+            // wait for a worker to be free, so the choice of the next builder is made as late as possible,
+            var waiting = System.nanoTime();
+            idle.acquireUninterruptibly();
+            metrics.queued(System.nanoTime() - waiting);
+            metrics.sampled(executor);
+
+            // take the ready builder with the longest critical path,
+            Builder builder = builderQueue.takeNextReady();
+            if (builder == null)
+            {
+                idle.release();
+                break;
+            }
+
             // submit the builder to the executor,
-            var future = (Future<Result<Builder>>) executor.submit(builderTask(resolved, builderQueue, builder));
-            trace("Submitted: $", builder);
+            var future = executor.submit(builderTask(resolved, builderQueue, builder, idle, metrics, elastic));
+            trace("Submitted: $ (critical path $)", builder, criticalPath.length(builder));
 
             // and add the future to the list of results to wait for.
             futures.add(future);
@@ -135,7 +211,22 @@ public class BuildExecutor extends BaseComponent implements TryTrait
         }
         trace("All builders finished");
 
+        metrics.finished(executor);
         shutdownAndAwaitTermination(executor);
+        if (build.settings().isEnabled(VERBOSE))
+        {
+            information("Builder threads: $", metrics);
+        }
+
+        // Save the time each builder took, so later builds are scheduled with it.
+        try
+        {
+            durations.save();
+        }
+        catch (IllegalStateException e)
+        {
+            problem(e, "Unable to save builder durations");
+        }
 
         return results;
     }
@@ -146,28 +237,55 @@ public class BuildExecutor extends BaseComponent implements TryTrait
      * @param resolved The set of resolved artifacts to wait on, as needed
      * @param queue The dependency queue for marking when the builder completes
      * @param builder The builder to execute
+     * @param idle Released when the builder finishes, to signal that a worker is free
+     * @param metrics The metrics to update
+     * @param elastic True if the builder should give up its slot while blocked on I/O
      * @return The {@link Callable} to execute with {@link ExecutorService#submit(Callable)}
      */
     @NotNull
     private Callable<Result<Builder>> builderTask(ArtifactResolutionTracker resolved,
                                                   DependencyQueue queue,
-                                                  Builder builder)
+                                                  Builder builder,
+                                                  Semaphore idle,
+                                                  ExecutionMetrics metrics,
+                                                  boolean elastic)
     {
         return () ->
         {
-            // Wait for artifact dependencies to be resolved,
-            trace("Waiting for artifacts: $", builder);
-            resolved.waitForResolutionOf(builder.dependencies());
+            Blocking.enter(idle, metrics, elastic);
+            try
+            {
+                // Wait for artifact dependencies to be resolved,
+                trace("Waiting for artifacts: $", builder);
+                blocking(() -> resolved.waitForResolutionOf(builder));
 
-            // run the builder,
-            trace("Building: $", builder);
-            var result = builder.run();
-            trace("Build completed: $", builder);
+                // run the builder, recording how long it took,
+                trace("Building: $", builder);
+                var started = System.nanoTime();
+                var result = builder.run();
+                durations.record(builder, (System.nanoTime() - started) / 1_000_000);
+                trace("Build completed: $", builder);
 
-            // and then mark it as processed.
-            queue.completed(builder);
+                // and then mark it as processed.
+                queue.completed(builder);
 
-            return result;
+                return result;
+            }
+            finally
+            {
+                Blocking.exit();
+                idle.release();
+            }
         };
     }
+
+    /**
+     * Returns a named worker thread for the given pool
+     */
+    private ForkJoinWorkerThread newWorker(ForkJoinPool pool)
+    {
+        var worker = defaultForkJoinWorkerThreadFactory.newThread(pool);
+        worker.setName("FiascoBuild-" + worker.getPoolIndex());
+        return worker;
+    }
 }
@@ -0,0 +1,211 @@
+package digital.fiasco.runtime.build.execution;
+
+import digital.fiasco.runtime.build.builder.Builder;
+import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
+import static digital.fiasco.runtime.FiascoRuntime.fiascoCacheFolder;
+import static digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor.artifactDescriptor;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * The time each builder takes to run. A {@link BuildExecutor} records the time taken by each builder it runs, and uses
+ * the recorded times to estimate which chains of builders will take longest in later builds.
+ *
+ * <p><b>Running Means</b></p>
+ *
+ * <p>
+ * The time recorded for each builder is a running mean of the times it took in its last few runs, so a single slow or
+ * fast run doesn't change how it is scheduled very much, while a lasting change in its duration is picked up after a
+ * few builds. The mean of all builders' times, which is the estimate for builders that have never run, is kept up to
+ * date as times are recorded, so estimates take constant time.
+ * </p>
+ *
+ * <p><b>Persistence</b></p>
+ *
+ * <p>
+ * The history returned by {@link #builderDurations()} is loaded from <i>builder-durations.binary</i> in the Fiasco
+ * cache folder, and {@link #save()} writes it back, so each build is scheduled using the times of earlier builds, even
+ * in a new virtual machine. The file is only a hint. If it can't be read, builds start with no history.
+ * </p>
+ *
+ * @author Jonathan Locke
+ * @see BuildExecutor
+ */
+public class BuilderDurations
+{
+    /** Builder durations for this virtual machine, loaded when first used */
+    private static BuilderDurations history;
+
+    /**
+     * Returns the builder durations shared by all builds in this virtual machine, loading them from the Fiasco cache
+     * folder the first time this method is called
+     */
+    public static synchronized BuilderDurations builderDurations()
+    {
+        if (history == null)
+        {
+            history = new BuilderDurations(Path.of(fiascoCacheFolder().asUri()).resolve("builder-durations.binary"));
+        }
+        return history;
+    }
+
+    /**
+     * The running mean of a builder's duration
+     *
+     * @param runs The number of runs the mean covers, up to {@link #WINDOW}
+     * @param milliseconds The mean time, in milliseconds
+     */
+    private record Duration(int runs, long milliseconds)
+    {
+        /**
+         * Returns this duration with the given time added to its running mean
+         */
+        Duration with(long milliseconds)
+        {
+            var runs = Math.min(WINDOW, runs() + 1);
+            return new Duration(runs, Math.max(1, milliseconds() + (milliseconds - milliseconds()) / runs));
+        }
+    }
+
+    /** The number of recent runs that most of a running mean comes from */
+    private static final int WINDOW = 8;
+
+    /** The file the durations are loaded from and saved to, or null if they are only kept in memory */
+    private final Path path;
+
+    /** The running mean of each builder's duration */
+    private final Map<ArtifactDescriptor, Duration> durations = new HashMap<>();
+
+    /** The total of the running means, so their mean can be found without adding them up */
+    private long total;
+
+    /** True if a duration has been recorded since the durations were loaded or saved */
+    private boolean changed;
+
+    /**
+     * Creates builder durations that are kept only in memory
+     */
+    public BuilderDurations()
+    {
+        this(null);
+    }
+
+    /**
+     * Creates builder durations that are loaded from and saved to the given file
+     *
+     * @param path The file, or null to keep durations only in memory
+     */
+    public BuilderDurations(Path path)
+    {
+        this.path = path;
+        load();
+    }
+
+    /**
+     * Returns an estimate of the time the given builder will take to run, in milliseconds. This is the running mean of
+     * the times it took, if it has run before, or otherwise the mean time of the builders that have run. If no builder
+     * has run, all builders are estimated to take one millisecond.
+     *
+     * @param builder The builder
+     * @return The estimated time
+     */
+    public synchronized long estimate(Builder builder)
+    {
+        var known = durations.get(builder.descriptor());
+        if (known != null)
+        {
+            return known.milliseconds();
+        }
+        return durations.isEmpty() ? 1 : Math.max(1, total / durations.size());
+    }
+
+    /**
+     * Records the time the given builder took to run
+     *
+     * @param builder The builder
+     * @param milliseconds The time the builder took, in milliseconds
+     */
+    public synchronized void record(Builder builder, long milliseconds)
+    {
+        var previous = durations.get(builder.descriptor());
+        var updated = previous == null
+            ? new Duration(1, Math.max(1, milliseconds))
+            : previous.with(milliseconds);
+        durations.put(builder.descriptor(), updated);
+        total += updated.milliseconds() - (previous == null ? 0 : previous.milliseconds());
+        changed = true;
+    }
+
+    /**
+     * Saves these durations, if any have been recorded since they were loaded or last saved, replacing the previous
+     * file atomically
+     *
+     * @throws IllegalStateException Thrown if the durations can't be saved
+     */
+    public synchronized void save()
+    {
+        if (path != null && changed)
+        {
+            var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            try
+            {
+                try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary))))
+                {
+                    out.writeInt(durations.size());
+                    for (var entry : durations.entrySet())
+                    {
+                        out.writeUTF(entry.getKey().name());
+                        out.writeInt(entry.getValue().runs());
+                        out.writeLong(entry.getValue().milliseconds());
+                    }
+                }
+                Files.move(temporary, path, REPLACE_EXISTING, ATOMIC_MOVE);
+                changed = false;
+            }
+            catch (IOException e)
+            {
+                illegalState(e, "Unable to save builder durations: $", path);
+            }
+        }
+    }
+
+    /**
+     * Loads the durations saved by {@link #save()}. If they can't be read, they are ignored.
+     */
+    private void load()
+    {
+        if (path != null && Files.exists(path))
+        {
+            var loaded = new HashMap<ArtifactDescriptor, Duration>();
+            try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path))))
+            {
+                for (var count = in.readInt(); count > 0; count--)
+                {
+                    var descriptor = artifactDescriptor(in.readUTF());
+                    loaded.put(descriptor, new Duration(in.readInt(), in.readLong()));
+                }
+            }
+            catch (Exception ignored)
+            {
+                return;
+            }
+            for (var entry : loaded.entrySet())
+            {
+                durations.put(entry.getKey(), entry.getValue());
+                total += entry.getValue().milliseconds();
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package digital.fiasco.runtime.build.execution;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import static com.telenav.kivakit.core.string.Formatter.format;
+
+/**
+ * Counters that show how the builder threads of a {@link BuildExecutor} spent their time. These are reported when the
+ * build is verbose.
+ *
+ * <ul>
+ *     <li>blocking calls - the number of {@link Blocking} operations, such as artifact waits, copies and subprocesses</li>
+ *     <li>blocked time - the total time spent in blocking operations</li>
+ *     <li>queued time - the total time builders waited for a free slot, after a blocking operation, or before starting</li>
+ *     <li>saturated - the number of times a blocked thread could not be replaced because the pool was at its largest
+ *         size, so a blocking operation held a builder thread</li>
+ *     <li>largest pool - the largest number of threads in the pool, including threads added to replace blocked ones</li>
+ *     <li>steals - the number of tasks taken by one worker from another</li>
+ * </ul>
+ *
+ * @author Jonathan Locke
+ * @see Blocking
+ * @see BuildExecutor
+ */
+public class ExecutionMetrics
+{
+    /** The number of blocking operations */
+    private final AtomicLong blockingCalls = new AtomicLong();
+
+    /** The time spent in blocking operations, in nanoseconds */
+    private final AtomicLong blockedNanoseconds = new AtomicLong();
+
+    /** The time spent waiting for a builder slot, in nanoseconds */
+    private final AtomicLong queuedNanoseconds = new AtomicLong();
+
+    /** The number of times a blocked thread could not be replaced */
+    private final AtomicLong saturated = new AtomicLong();
+
+    /** The largest size of the pool */
+    private final LongAccumulator largestPool = new LongAccumulator(Math::max, 0);
+
+    /** The number of tasks stolen between workers */
+    private volatile long steals;
+
+    /**
+     * Returns the number of blocking operations
+     */
+    public long blockingCalls()
+    {
+        return blockingCalls.get();
+    }
+
+    /**
+     * Returns the time spent in blocking operations, in milliseconds
+     */
+    public long blockedMilliseconds()
+    {
+        return blockedNanoseconds.get() / 1_000_000;
+    }
+
+    /**
+     * Returns the largest number of threads in the pool
+     */
+    public long largestPool()
+    {
+        return largestPool.get();
+    }
+
+    /**
+     * Returns the time spent waiting for a builder slot, in milliseconds
+     */
+    public long queuedMilliseconds()
+    {
+        return queuedNanoseconds.get() / 1_000_000;
+    }
+
+    /**
+     * Returns the number of times a blocked thread could not be replaced
+     */
+    public long saturated()
+    {
+        return saturated.get();
+    }
+
+    /**
+     * Returns the number of tasks stolen between workers
+     */
+    public long steals()
+    {
+        return steals;
+    }
+
+    @Override
+    public String toString()
+    {
+        return format("blocking calls: $, blocked: $ ms, queued: $ ms, saturated: $, largest pool: $, steals: $",
+            blockingCalls(), blockedMilliseconds(), queuedMilliseconds(), saturated(), largestPool(), steals());
+    }
+
+    /**
+     * Records a blocking operation that took the given time
+     */
+    void blocked(long nanoseconds)
+    {
+        blockingCalls.incrementAndGet();
+        blockedNanoseconds.addAndGet(nanoseconds);
+    }
+
+    /**
+     * Records the final state of the given pool
+     */
+    void finished(ForkJoinPool pool)
+    {
+        sampled(pool);
+        steals = pool.getStealCount();
+    }
+
+    /**
+     * Records time spent waiting for a builder slot
+     */
+    void queued(long nanoseconds)
+    {
+        queuedNanoseconds.addAndGet(nanoseconds);
+    }
+
+    /**
+     * Records the size of the given pool
+     */
+    void sampled(ForkJoinPool pool)
+    {
+        largestPool.accumulate(pool.getPoolSize());
+    }
+
+    /**
+     * Records that a blocked thread could not be replaced
+     */
+    boolean saturated(ForkJoinPool pool)
+    {
+        saturated.incrementAndGet();
+
+        // Continue without a replacement thread rather than failing.
+        return true;
+    }
+}
@@ -23,6 +23,15 @@ public enum BuildOption
     /** Build with debug trace output */
     DEBUG("build with debug trace output"),
 
+    /** Let builders that are blocked on I/O give up their thread to other builders */
+    ELASTIC_IO("run more builders while others are blocked on I/O"),
+
+    /** Restore the outputs of tools whose inputs haven't changed instead of running them */
+    ACTION_CACHE("skip tools whose inputs are unchanged, restoring their outputs from a cache"),
+
+    /** Share the action cache with other machines through the Fiasco server */
+    REMOTE_ACTION_CACHE("share cached tool outputs with other machines through the Fiasco server"),
+
     /** Show help */
     HELP("show help");
 
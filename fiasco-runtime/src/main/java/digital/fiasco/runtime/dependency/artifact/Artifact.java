@@ -95,6 +95,7 @@ import static digital.fiasco.runtime.dependency.collections.ArtifactList.artifac
  * <ul>
  *     <li>{@link #dependencies()}</li>
  *     <li>{@link #builderDependencies()}</li>
+ *     <li>{@link #exclusions()}</li>
  *     <li>{@link #isExcluded(ArtifactDescriptor)}</li>
  *     <li>{@link #withDependencies(ArtifactList)}</li>
  *     <li>{@link #excluding(ArtifactDescriptor...)}</li>
@@ -322,6 +323,13 @@ public interface Artifact<A extends Artifact<A>> extends
         return excluding(descriptors(pattern).asArtifacts());
     }
 
+    /**
+     * Returns the descriptors (or descriptor patterns) that this artifact excludes from its dependencies
+     *
+     * @return The exclusions
+     */
+    ArtifactDescriptorList exclusions();
+
     /**
      * Returns true if this artifact excludes the given artifact
      *
@@ -12,6 +12,7 @@ import com.telenav.kivakit.interfaces.object.Copyable;
 import com.telenav.kivakit.resource.Resource;
 import com.telenav.kivakit.resource.ResourceIdentifier;
 
+import java.io.InputStream;
 import java.util.Objects;
 
 import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
@@ -29,6 +30,20 @@ import static com.telenav.kivakit.data.formats.yaml.model.YamlScalar.yamlScalar;
 /**
  * Holds the content for a single artifact attachment, for example the main JAR, Javadoc, or source code.
  *
+ * <p><b>Content</b></p>
+ *
+ * <p>
+ * Artifact content only holds metadata about its bytes. Binding content to a resource with
+ * {@link #withResource(Resource)} records the resource's name, size and last modified time, but doesn't read it. The
+ * bytes are only read when they are needed, by streaming them with {@link #openForReading()}.
+ * </p>
+ *
+ * <ul>
+ *     <li>{@link #openForReading()}</li>
+ *     <li>{@link #resource()}</li>
+ *     <li>{@link #withResource(Resource)}</li>
+ * </ul>
+ *
  * <p><b>YAML</b></p>
  *
  * <ul>
@@ -67,7 +82,7 @@ public class ArtifactContent implements Copyable<ArtifactContent>
 
     @FormatProperty
     @Expose
-    private final ResourceIdentifier resourceIdentifier;
+    private ResourceIdentifier resourceIdentifier;
 
     @FormatProperty
     @Expose
@@ -81,6 +96,9 @@ public class ArtifactContent implements Copyable<ArtifactContent>
     @Expose
     private Bytes size;
 
+    /** The resource this content is bound to, if it can't be resolved from its identifier */
+    private transient Resource resource;
+
     protected ArtifactContent(YamlBlock block)
     {
         name = block.scalar("name").string();
@@ -102,6 +120,7 @@ public class ArtifactContent implements Copyable<ArtifactContent>
         this.offset = that.offset;
         this.lastModified = that.lastModified.roundDown(ONE_SECOND);
         this.size = that.size;
+        this.resource = that.resource;
     }
 
     /**
@@ -174,9 +193,23 @@ public class ArtifactContent implements Copyable<ArtifactContent>
         return offset;
     }
 
+    /**
+     * Opens the bytes of this content for streaming. The caller must close the stream.
+     *
+     * @return The input stream
+     */
+    public InputStream openForReading()
+    {
+        return resource().openForReading();
+    }
+
+    /**
+     * Returns the resource holding this content. This is the resource it was bound to by
+     * {@link #withResource(Resource)}, or the resource its identifier resolves to.
+     */
     public Resource resource()
     {
-        return resourceIdentifier.resolve(throwingListener());
+        return resource != null ? resource : resourceIdentifier.resolve(throwingListener());
     }
 
     @FormatProperty
@@ -185,6 +218,17 @@ public class ArtifactContent implements Copyable<ArtifactContent>
         return resourceIdentifier;
     }
 
+    /**
+     * Returns the SHA-256 hash of this content, if it is known, which identifies the content in a content-addressed
+     * store
+     *
+     * @return The hash as a lowercase hexadecimal string, or null if it is not known
+     */
+    public String sha256()
+    {
+        return signatures == null ? null : signatures.sha256();
+    }
+
     @FormatProperty
     public ArtifactContentSignatures signatures()
     {
@@ -254,19 +298,19 @@ public class ArtifactContent implements Copyable<ArtifactContent>
     }
 
     /**
-     * Returns a copy of this artifact content with the given offset
+     * Returns a copy of this artifact content bound to the given resource. Only the resource's metadata (its name, size
+     * and last modified time) is read. Its bytes can be streamed later with {@link #openForReading()}.
      *
      * @param resource The content
      * @return The new artifact content
      */
     public ArtifactContent withResource(Resource resource)
     {
-        var data = resource.reader().readBytes();
-        var content = new ArtifactContent(name, signatures, resource == null
-            ? null
-            : resource.identifier(), offset, lastModified, size);
-
-        return content
+        return mutated(it ->
+            {
+                it.resourceIdentifier = resource.identifier();
+                it.resource = resource;
+            })
             .withSize(resource.sizeInBytes())
             .withOffset(0)
             .withName(resource.fileName().name())
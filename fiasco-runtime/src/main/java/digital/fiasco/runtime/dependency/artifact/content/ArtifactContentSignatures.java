@@ -16,7 +16,8 @@ import static com.telenav.kivakit.data.formats.yaml.model.YamlBlock.yamlBlock;
 import static com.telenav.kivakit.data.formats.yaml.model.YamlScalar.yamlScalar;
 
 /**
- * Holds ASC, MD5 and SHA-1 hashes for a stored artifact.
+ * Holds ASC, MD5, SHA-1 and SHA-256 hashes for a stored artifact. The SHA-256 hash, when present, identifies the
+ * content itself, and is used by the cache repository to store identical content only once.
  *
  * @author Jonathan Locke
  */
@@ -31,13 +32,14 @@ public record ArtifactContentSignatures
     (
         @FormatProperty @Expose String asc,  // ASC signature text
         @FormatProperty @Expose String md5,  // MD5 hash
-        @FormatProperty @Expose String sha1  // SHA-1 hash
+        @FormatProperty @Expose String sha1,  // SHA-1 hash
+        @FormatProperty @Expose String sha256  // SHA-256 hash
     )
 {
     @MethodQuality(documentation = DOCUMENTATION_NOT_NEEDED, testing = TESTED)
     public static ArtifactContentSignatures signatures()
     {
-        return new ArtifactContentSignatures(null, null, null);
+        return new ArtifactContentSignatures(null, null, null, null);
     }
 
     public static ArtifactContentSignatures signatures(YamlBlock block)
@@ -49,7 +51,8 @@ public record ArtifactContentSignatures
     {
         this(block.scalar("asc").string(),
             block.scalar("md5").string(),
-            block.scalar("sha1").string());
+            block.scalar("sha1").string(),
+            block.has("sha256") ? block.scalar("sha256").string() : null);
     }
 
     @Override
@@ -63,24 +66,31 @@ public record ArtifactContentSignatures
         return yamlBlock("signatures")
             .with(yamlScalar("asc", asc))
             .with(yamlScalar("md5", md5))
-            .with(yamlScalar("sha1", sha1));
+            .with(yamlScalar("sha1", sha1))
+            .with(yamlScalar("sha256", sha256));
     }
 
     @MethodQuality(documentation = DOCUMENTATION_NOT_NEEDED, testing = TESTED)
     public ArtifactContentSignatures withAsc(String asc)
     {
-        return new ArtifactContentSignatures(asc, md5, sha1);
+        return new ArtifactContentSignatures(asc, md5, sha1, sha256);
     }
 
     @MethodQuality(documentation = DOCUMENTATION_NOT_NEEDED, testing = TESTED)
     public ArtifactContentSignatures withMd5(String md5)
     {
-        return new ArtifactContentSignatures(asc, md5, sha1);
+        return new ArtifactContentSignatures(asc, md5, sha1, sha256);
     }
 
     @MethodQuality(documentation = DOCUMENTATION_NOT_NEEDED, testing = TESTED)
     public ArtifactContentSignatures withSha1(String sha1)
     {
-        return new ArtifactContentSignatures(asc, md5, sha1);
+        return new ArtifactContentSignatures(asc, md5, sha1, sha256);
+    }
+
+    @MethodQuality(documentation = DOCUMENTATION_NOT_NEEDED, testing = TESTED)
+    public ArtifactContentSignatures withSha256(String sha256)
+    {
+        return new ArtifactContentSignatures(asc, md5, sha1, sha256);
     }
 }
@@ -9,19 +9,43 @@ import com.telenav.kivakit.resource.Resource;
 import com.telenav.kivakit.resource.compression.archive.ZipArchive;
 import digital.fiasco.runtime.dependency.artifact.content.ArtifactContent;
 import digital.fiasco.runtime.dependency.artifact.content.ArtifactContentSignatures;
+import digital.fiasco.runtime.repository.RandomAccessContent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
 import static com.telenav.kivakit.core.language.Hash.hashMany;
 import static com.telenav.kivakit.core.messaging.Listener.throwingListener;
+import static com.telenav.kivakit.core.value.count.Bytes.bytes;
 import static com.telenav.kivakit.resource.WriteMode.APPEND;
 import static com.telenav.kivakit.resource.compression.archive.ZipArchive.AccessMode.READ;
 import static com.telenav.kivakit.resource.compression.archive.ZipArchive.zipArchive;
 import static digital.fiasco.runtime.dependency.artifact.content.jar.JarEntry.jarEntry;
 import static digital.fiasco.runtime.dependency.artifact.content.jar.JarIndex.jarIndex;
+import static digital.fiasco.runtime.dependency.artifact.content.jar.JarIndex.jarIndexBuilder;
 
 /**
  * JAR artifact content exploded into a {@link JarIndex} of {@link JarEntry}s.
  *
+ * <p><b>Entries</b></p>
+ *
+ * <p>
+ * A single entry can be read with {@link #openEntry(String)} or {@link #entryChannel(String)}. When the content is bound
+ * to a {@link RandomAccessContent} resource, like a section of a cache repository's content log, the entries are stored
+ * uncompressed at the offsets in the {@link JarIndex}, so the entry is read directly, without reading or inflating any
+ * other part of the JAR. Otherwise, the entry is inflated from the JAR file.
+ * </p>
+ *
+ * <ul>
+ *     <li>{@link #entryChannel(String)}</li>
+ *     <li>{@link #openEntry(String)}</li>
+ * </ul>
+ *
  * <p><b>YAML</b></p>
  *
  * <ul>
@@ -39,6 +63,21 @@ public class JarContent extends ArtifactContent
         return new JarContent(zipArchive(throwingListener(), (File) resource, READ));
     }
 
+    /**
+     * Returns JAR content with the given index, whose entries are stored exploded in the given resource, at the
+     * offsets in the index. This allows another process, like the compiler daemon, to read JAR content stored in a
+     * cache repository, given only its index and its section of the content log.
+     *
+     * @param index The JAR index
+     * @param resource The resource holding the exploded entries
+     * @return The JAR content
+     */
+    public static JarContent jarContent(JarIndex index, Resource resource)
+    {
+        ensure(resource instanceof RandomAccessContent, "JAR entries cannot be read directly from: $", resource);
+        return new JarContent(index, resource).withResource(resource);
+    }
+
     public static JarContent jarContent(YamlBlock block)
     {
         return new JarContent(block);
@@ -48,9 +87,8 @@ public class JarContent extends ArtifactContent
     @Expose
     private JarIndex index;
 
-    /** The JAR zip archive */
-    @Expose
-    private ZipArchive archive;
+    /** The JAR zip archive, if it has been opened */
+    private transient ZipArchive archive;
 
     protected JarContent(JarContent that)
     {
@@ -72,15 +110,30 @@ public class JarContent extends ArtifactContent
 
         this.archive = archive;
 
-        this.index = jarIndex();
+        var builder = jarIndexBuilder();
         var offset = 0L;
         for (var at : archive)
         {
             var entry = jarEntry(at)
                 .withOffset(offset);
-            index = index.withEntry(entry);
+            builder.add(entry);
             offset += entry.size().asBytes();
         }
+        this.index = builder.build();
+    }
+
+    /**
+     * Holds the content for a single JAR artifact, whose entries are already exploded into the given resource
+     *
+     * @param index The JAR index
+     * @param resource The resource holding the exploded entries
+     */
+    protected JarContent(JarIndex index, Resource resource)
+    {
+        super(resource.fileName().name(), null, resource.identifier(), -1,
+            resource.lastModified().asLocalTime(), resource.sizeInBytes());
+
+        this.index = index;
     }
 
     protected JarContent(YamlBlock block)
@@ -97,7 +150,39 @@ public class JarContent extends ArtifactContent
      */
     public void appendEntriesTo(File file)
     {
-        archive.forEach(it -> it.safeCopyTo(file, APPEND));
+        archive().forEach(it -> it.safeCopyTo(file, APPEND));
+    }
+
+    /**
+     * Returns the total size of the decompressed JAR entries, which is the number of bytes written by
+     * {@link #writeEntriesTo(OutputStream)}
+     *
+     * @return The size of the entries
+     */
+    public Bytes entriesSize()
+    {
+        var size = 0L;
+        for (var entry : index.entries())
+        {
+            size += entry.size().asBytes();
+        }
+        return bytes(size);
+    }
+
+    /**
+     * Writes all JAR entries to the given output stream, in the order of the {@link JarIndex}
+     *
+     * @param out The output stream
+     */
+    public void writeEntriesTo(OutputStream out) throws IOException
+    {
+        for (var entry : archive())
+        {
+            try (var in = entry.openForReading())
+            {
+                in.transferTo(out);
+            }
+        }
     }
 
     @Override
@@ -122,6 +207,27 @@ public class JarContent extends ArtifactContent
         return hashMany(super.hashCode(), index.hashCode());
     }
 
+    /**
+     * Opens a channel to read the entry with the given path. If this content is stored exploded in a
+     * {@link RandomAccessContent} resource, the channel reads directly from the resource's file.
+     *
+     * @param path The path of the entry, as stored in the {@link JarIndex}
+     * @return The channel, which the caller must close, or null if there is no such entry
+     */
+    public ReadableByteChannel entryChannel(String path)
+    {
+        var entry = index.entry(path);
+        if (entry == null)
+        {
+            return null;
+        }
+        if (resource() instanceof RandomAccessContent content)
+        {
+            return content.openSection(entry.offset(), entry.size().asBytes());
+        }
+        return Channels.newChannel(openEntry(path));
+    }
+
     /**
      * Returns the index for this JAR content
      *
@@ -132,6 +238,36 @@ public class JarContent extends ArtifactContent
         return index;
     }
 
+    /**
+     * Opens the entry with the given path for reading. If this content is stored exploded in a
+     * {@link RandomAccessContent} resource, the entry is read directly from the resource's file. Otherwise, it is
+     * inflated from the JAR.
+     *
+     * @param path The path of the entry, as stored in the {@link JarIndex}
+     * @return The input stream, which the caller must close, or null if there is no such entry
+     * @throws IllegalStateException Thrown if the entry cannot be read
+     */
+    public InputStream openEntry(String path)
+    {
+        var entry = index.entry(path);
+        if (entry == null)
+        {
+            return null;
+        }
+        if (resource() instanceof RandomAccessContent)
+        {
+            return Channels.newInputStream(entryChannel(path));
+        }
+        for (var at : archive())
+        {
+            if (at.jarPath().asString().equals(path))
+            {
+                return at.openForReading();
+            }
+        }
+        return illegalState("JAR entry $ is not in: $", path, resource());
+    }
+
     @Override
     public YamlBlock toYaml()
     {
@@ -160,7 +296,9 @@ public class JarContent extends ArtifactContent
     @Override
     public JarContent withResource(Resource resource)
     {
-        return (JarContent) super.withResource(resource);
+        var content = (JarContent) super.withResource(resource);
+        content.archive = null;
+        return content;
     }
 
     @Override
@@ -174,4 +312,18 @@ public class JarContent extends ArtifactContent
     {
         return (JarContent) super.withSize(size);
     }
+
+    /**
+     * Returns the JAR archive, opening it if necessary
+     */
+    private ZipArchive archive()
+    {
+        if (archive == null)
+        {
+            var resource = resource();
+            ensure(resource instanceof File, "JAR content is not a file: $", resource);
+            archive = zipArchive(throwingListener(), (File) resource, READ);
+        }
+        return archive;
+    }
 }
@@ -6,13 +6,48 @@ import com.telenav.kivakit.core.string.FormatProperty;
 import com.telenav.kivakit.core.string.ObjectFormatter;
 import com.telenav.kivakit.data.formats.yaml.model.YamlArray;
 import com.telenav.kivakit.data.formats.yaml.model.YamlBlock;
+import com.telenav.kivakit.data.formats.yaml.model.YamlNode;
+
+import java.util.HashMap;
+import java.util.Map;
 
 import static com.telenav.kivakit.core.collections.list.ObjectList.list;
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
 import static com.telenav.kivakit.data.formats.yaml.model.YamlArray.yamlArray;
 import static digital.fiasco.runtime.dependency.artifact.content.jar.JarEntry.jarEntry;
+import static digital.fiasco.runtime.dependency.artifact.content.jar.JarIndexColumns.jarIndexColumns;
 
 /**
- * An index of {@link JarEntry}s in a JAR archive.
+ * An index of {@link JarEntry}s in a JAR archive. Entries can be listed in order with {@link #entries()}, or looked up
+ * by path with {@link #entry(String)}, which uses a hash table built the first time it is called.
+ *
+ * <p><b>Creation</b></p>
+ *
+ * <p>
+ * An index is immutable once it is built. Large indexes should be built with a {@link Builder}, which adds each entry
+ * in constant time. {@link #withEntry(JarEntry)} copies the index, so adding entries with it one at a time takes time
+ * proportional to the square of the number of entries.
+ * </p>
+ *
+ * <ul>
+ *     <li>{@link #jarIndex()}</li>
+ *     <li>{@link #jarIndexBuilder()}</li>
+ *     <li>{@link #withEntry(JarEntry)}</li>
+ * </ul>
+ *
+ * <p><b>Entries</b></p>
+ *
+ * <ul>
+ *     <li>{@link #entries()}</li>
+ *     <li>{@link #entry(String)}</li>
+ *     <li>{@link #size()}</li>
+ * </ul>
+ *
+ * <p><b>Columnar Form</b></p>
+ *
+ * <ul>
+ *     <li>{@link #columns()}</li>
+ * </ul>
  *
  * <p><b>YAML</b></p>
  *
@@ -36,10 +71,56 @@ public class JarIndex
         return new JarIndex(array);
     }
 
+    public static Builder jarIndexBuilder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Builds a {@link JarIndex} in time proportional to the number of entries
+     */
+    public static class Builder
+    {
+        /** The entries added so far, or null if the index has been built */
+        private ObjectList<JarEntry> entries = list();
+
+        protected Builder()
+        {
+        }
+
+        /**
+         * Adds the given entry to the end of the index
+         *
+         * @param entry The entry
+         * @return This builder
+         */
+        public Builder add(JarEntry entry)
+        {
+            ensure(entries != null, "Index has already been built");
+            entries.add(entry);
+            return this;
+        }
+
+        /**
+         * Returns the index. This builder cannot be used after this method is called.
+         */
+        public JarIndex build()
+        {
+            ensure(entries != null, "Index has already been built");
+            var index = new JarIndex();
+            index.entries = entries;
+            entries = null;
+            return index;
+        }
+    }
+
     @Expose
     @FormatProperty
     private ObjectList<JarEntry> entries = list();
 
+    /** The entries by path, built lazily by {@link #entry(String)} */
+    private transient volatile Map<String, JarEntry> entryForPath;
+
     protected JarIndex(YamlArray array)
     {
         entries = new ObjectList<>();
@@ -54,7 +135,15 @@ public class JarIndex
     }
 
     /**
-     * Returns the {@link JarEntry}s in this index
+     * Returns the compact, columnar form of this index
+     */
+    public JarIndexColumns columns()
+    {
+        return jarIndexColumns(this);
+    }
+
+    /**
+     * Returns the {@link JarEntry}s in this index, in order. The list must not be modified.
      *
      * @return The entries
      */
@@ -63,6 +152,27 @@ public class JarIndex
         return entries;
     }
 
+    /**
+     * Returns the entry with the given path
+     *
+     * @param path The path of the entry in the JAR
+     * @return The entry, or null if there is no entry with the given path
+     */
+    public JarEntry entry(String path)
+    {
+        var index = entryForPath;
+        if (index == null)
+        {
+            index = new HashMap<>(entries.size() * 2);
+            for (var at : entries)
+            {
+                index.put(at.path(), at);
+            }
+            entryForPath = index;
+        }
+        return index.get(path);
+    }
+
     @Override
     public boolean equals(Object object)
     {
@@ -79,6 +189,14 @@ public class JarIndex
         return entries.hashCode();
     }
 
+    /**
+     * Returns the number of entries in this index
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
     @Override
     public String toString()
     {
@@ -86,18 +204,19 @@ public class JarIndex
     }
 
     /**
-     * Converts this index to YAML
+     * Converts this index to YAML. The elements are collected first and the array is created from them, since adding
+     * elements to a {@link YamlArray} one at a time copies it each time.
      *
      * @return The YAML
      */
     public YamlArray toYaml()
     {
-        var yaml = yamlArray("index");
+        var elements = new ObjectList<YamlNode>();
         for (var at : entries)
         {
-            yaml = yaml.with(at.toYaml());
+            elements.add(at.toYaml());
         }
-        return yaml;
+        return yamlArray("index", elements);
     }
 
     public JarIndex withEntry(JarEntry entry)
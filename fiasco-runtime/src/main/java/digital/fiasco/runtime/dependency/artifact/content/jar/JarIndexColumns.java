@@ -0,0 +1,229 @@
+package digital.fiasco.runtime.dependency.artifact.content.jar;
+
+import com.telenav.kivakit.annotations.code.quality.MethodQuality;
+import com.telenav.kivakit.annotations.code.quality.TypeQuality;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
+import static com.telenav.kivakit.annotations.code.quality.Stability.STABILITY_UNDETERMINED;
+import static com.telenav.kivakit.annotations.code.quality.Testing.TESTED;
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.core.time.Duration.ONE_SECOND;
+import static com.telenav.kivakit.core.time.KivaKitTimeFormats.KIVAKIT_DATE_TIME_SECONDS;
+import static com.telenav.kivakit.core.time.LocalTime.localTime;
+import static com.telenav.kivakit.core.value.count.Bytes.bytes;
+import static digital.fiasco.runtime.dependency.artifact.content.jar.JarEntry.jarEntry;
+import static digital.fiasco.runtime.dependency.artifact.content.jar.JarIndex.jarIndexBuilder;
+
+/**
+ * A compact, columnar form of a {@link JarIndex}. Instead of one {@link JarEntry} object per entry, the properties of
+ * the entries are held in parallel arrays. The folder and last modified time of each entry are stored as references to
+ * tables of unique strings, since most entries in a JAR share their folder with other entries, and often share their
+ * last modified time with every other entry.
+ *
+ * <p><b>Creation</b></p>
+ *
+ * <ul>
+ *     <li>{@link #jarIndexColumns(JarIndex)}</li>
+ *     <li>{@link #read(DataInput)}</li>
+ * </ul>
+ *
+ * <p><b>Access</b></p>
+ *
+ * <ul>
+ *     <li>{@link #entry(int)}</li>
+ *     <li>{@link #size()}</li>
+ *     <li>{@link #toIndex()}</li>
+ * </ul>
+ *
+ * <p><b>Binary Form</b></p>
+ *
+ * <ul>
+ *     <li>{@link #read(DataInput)}</li>
+ *     <li>{@link #write(DataOutput)}</li>
+ * </ul>
+ *
+ * @author Jonathan Locke
+ * @see JarIndex#columns()
+ */
+@SuppressWarnings("unused")
+@TypeQuality(documentation = DOCUMENTED, testing = TESTED, stability = STABILITY_UNDETERMINED)
+public class JarIndexColumns
+{
+    /** Identifies the binary form of an index */
+    private static final int MAGIC = 0x4A415249;
+
+    /**
+     * Returns the columnar form of the given index
+     *
+     * @param index The index
+     * @return The columns
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public static JarIndexColumns jarIndexColumns(JarIndex index)
+    {
+        var size = index.size();
+        var columns = new JarIndexColumns(size);
+        var strings = new HashMap<String, Integer>();
+        var table = new String[size * 2];
+        var tableSize = 0;
+
+        for (var at = 0; at < size; at++)
+        {
+            var entry = index.entries().get(at);
+            var path = entry.path();
+            var slash = path.lastIndexOf('/');
+
+            // Intern the folder and last modified time of the entry,
+            var folder = path.substring(0, slash + 1);
+            var modified = entry.lastModified().asLocalTime().asDateTimeSecondsString();
+            for (var string : new String[] { folder, modified })
+            {
+                if (!strings.containsKey(string))
+                {
+                    strings.put(string, tableSize);
+                    table[tableSize++] = string;
+                }
+            }
+
+            // and store the entry's properties in the columns.
+            columns.folders[at] = strings.get(folder);
+            columns.names[at] = path.substring(slash + 1);
+            columns.lastModified[at] = strings.get(modified);
+            columns.offsets[at] = entry.offset();
+            columns.sizes[at] = entry.size().asBytes();
+        }
+
+        columns.strings = Arrays.copyOf(table, tableSize);
+        return columns;
+    }
+
+    /**
+     * Reads the binary form of an index, as written by {@link #write(DataOutput)}
+     *
+     * @param in The input to read from
+     * @return The columns
+     * @throws IOException Thrown if the input cannot be read
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public static JarIndexColumns read(DataInput in) throws IOException
+    {
+        ensure(in.readInt() == MAGIC, "Not a JAR index");
+
+        var strings = new String[in.readInt()];
+        for (var at = 0; at < strings.length; at++)
+        {
+            strings[at] = in.readUTF();
+        }
+
+        var columns = new JarIndexColumns(in.readInt());
+        columns.strings = strings;
+        for (var at = 0; at < columns.size(); at++)
+        {
+            columns.folders[at] = in.readInt();
+            columns.names[at] = in.readUTF();
+            columns.lastModified[at] = in.readInt();
+            columns.offsets[at] = in.readLong();
+            columns.sizes[at] = in.readLong();
+        }
+        return columns;
+    }
+
+    /** Unique folders and last modified times */
+    private String[] strings;
+
+    /** The folder of each entry, as an index into the string table */
+    private final int[] folders;
+
+    /** The file name of each entry */
+    private final String[] names;
+
+    /** The last modified time of each entry, as an index into the string table */
+    private final int[] lastModified;
+
+    /** The offset of each entry */
+    private final long[] offsets;
+
+    /** The size of each entry */
+    private final long[] sizes;
+
+    protected JarIndexColumns(int size)
+    {
+        folders = new int[size];
+        names = new String[size];
+        lastModified = new int[size];
+        offsets = new long[size];
+        sizes = new long[size];
+    }
+
+    /**
+     * Returns the entry at the given index
+     *
+     * @param index The index of the entry
+     * @return The entry
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public JarEntry entry(int index)
+    {
+        return jarEntry()
+            .withPath(strings[folders[index]] + names[index])
+            .withSize(bytes(sizes[index]))
+            .withLastModified(localTime(KIVAKIT_DATE_TIME_SECONDS, strings[lastModified[index]]).roundDown(ONE_SECOND))
+            .withOffset(offsets[index]);
+    }
+
+    /**
+     * Returns the number of entries
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public int size()
+    {
+        return names.length;
+    }
+
+    /**
+     * Returns the {@link JarIndex} for these columns
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public JarIndex toIndex()
+    {
+        var builder = jarIndexBuilder();
+        for (var at = 0; at < size(); at++)
+        {
+            builder.add(entry(at));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Writes the binary form of this index
+     *
+     * @param out The output to write to
+     * @throws IOException Thrown if the output cannot be written
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public void write(DataOutput out) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(strings.length);
+        for (var string : strings)
+        {
+            out.writeUTF(string);
+        }
+
+        out.writeInt(size());
+        for (var at = 0; at < size(); at++)
+        {
+            out.writeInt(folders[at]);
+            out.writeUTF(names[at]);
+            out.writeInt(lastModified[at]);
+            out.writeLong(offsets[at]);
+            out.writeLong(sizes[at]);
+        }
+    }
+}
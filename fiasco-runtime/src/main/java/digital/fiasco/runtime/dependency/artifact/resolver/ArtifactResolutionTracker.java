@@ -3,11 +3,23 @@ package digital.fiasco.runtime.dependency.artifact.resolver;
 import com.telenav.kivakit.component.BaseComponent;
 import com.telenav.kivakit.core.messaging.Listener;
 import com.telenav.kivakit.core.thread.locks.Lock;
+import com.telenav.kivakit.core.collections.list.ObjectList;
+import digital.fiasco.runtime.dependency.Dependency;
+import digital.fiasco.runtime.dependency.artifact.Artifact;
+import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor;
 import digital.fiasco.runtime.dependency.collections.ArtifactList;
+import digital.fiasco.runtime.dependency.collections.DependencyTree;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.Condition;
-
-import static com.telenav.kivakit.core.time.Duration.milliseconds;
+import java.util.function.Consumer;
 
 /**
  * Tracks the resolution of artifacts.
@@ -16,27 +28,140 @@ import static com.telenav.kivakit.core.time.Duration.milliseconds;
  * Tracks the artifacts being resolved by an {@link ArtifactResolver}. When a new group of one or more artifacts is
  * resolved, they are marked resolved by calling {@link #resolved(ArtifactList)}. A task that can't proceed until its
  * artifact dependencies have all been resolved can wait for that condition by calling
- * {@link #waitForResolutionOf(ArtifactList)}.
+ * {@link #waitForResolutionOf(ArtifactList)}, which wakes as soon as more artifacts are resolved. Code that needs to be
+ * told when more artifacts are resolved, without waiting, can register a callback with {@link #onResolution(Runnable)}.
+ * </p>
+ *
+ * <p><b>Tracking a Dependency Tree</b></p>
+ *
+ * <p>
+ * A tracker created with {@link #ArtifactResolutionTracker(Listener, DependencyTree)} gives each artifact in the tree a
+ * dense integer id, and records which artifacts are resolved in an atomic bitset. Each dependency in the tree has a
+ * count of its artifact dependencies that are not resolved yet. When an artifact is resolved, only the counts of the
+ * dependencies that need it are decremented, and only the dependencies whose counts reach zero are woken, in
+ * {@link #waitForResolutionOf(Dependency)}, and reported to {@link #onReady(Consumer)} callbacks. This makes
+ * {@link #isResolved(Dependency)} a single, lock-free read, no matter how many artifacts the dependency needs.
  * </p>
  *
+ * <p><b>Readiness</b></p>
+ *
+ * <ul>
+ *     <li>{@link #isResolved(ArtifactList)}</li>
+ *     <li>{@link #isResolved(Dependency)}</li>
+ *     <li>{@link #waitForResolutionOf(ArtifactList)}</li>
+ *     <li>{@link #waitForResolutionOf(Dependency)}</li>
+ * </ul>
+ *
+ * <p><b>Resolution</b></p>
+ *
+ * <ul>
+ *     <li>{@link #onReady(Consumer)}</li>
+ *     <li>{@link #onResolution(Runnable)}</li>
+ *     <li>{@link #resolved(ArtifactList)}</li>
+ *     <li>{@link #size()}</li>
+ * </ul>
+ *
  * @author Jonathan Locke
  */
 public class ArtifactResolutionTracker extends BaseComponent
 {
-    /** The set of artifacts that have been resolved */
-    private ArtifactList resolved = ArtifactList.artifacts();
+    /**
+     * A dependency in the tree, with the number of its artifact dependencies that are not resolved yet
+     */
+    private static class Dependent
+    {
+        /** The dependency */
+        private final Dependency dependency;
 
-    /** Read/write lock for accessing the resolved list */
+        /** The number of artifact dependencies that are not resolved yet */
+        private final AtomicInteger missing;
+
+        /** Released when all artifact dependencies are resolved */
+        private final CountDownLatch ready = new CountDownLatch(1);
+
+        Dependent(Dependency dependency, int missing)
+        {
+            this.dependency = dependency;
+            this.missing = new AtomicInteger(missing);
+            if (missing == 0)
+            {
+                ready.countDown();
+            }
+        }
+    }
+
+    /** The dense id of each artifact that has been seen, assigned in order */
+    private final Map<ArtifactDescriptor, Integer> ids = new ConcurrentHashMap<>();
+
+    /** The dependencies that need each artifact, by artifact id, which is only accessed while holding the lock */
+    private final List<List<Dependent>> dependentsOf = new ArrayList<>();
+
+    /** The dependencies in the tree, which don't change after construction */
+    private final Map<Dependency, Dependent> dependents = new HashMap<>();
+
+    /** One bit for each artifact id, set when the artifact is resolved */
+    private volatile AtomicLongArray resolved = new AtomicLongArray(1);
+
+    /** The number of artifacts that have been resolved */
+    private final AtomicInteger resolvedCount = new AtomicInteger();
+
+    /** Lock for resolving artifacts and waiting on lists of artifacts */
     private final Lock lock = new Lock();
 
     /** Condition to signal/await artifact resolution */
     private final Condition resolvedMore = lock.newCondition();
 
+    /** Callbacks to run when more artifacts are resolved */
+    private final ObjectList<Runnable> callbacks = new ObjectList<>();
+
+    /** Callbacks to run when all artifacts needed by a dependency are resolved */
+    private final ObjectList<Consumer<Dependency>> readyCallbacks = new ObjectList<>();
+
     public ArtifactResolutionTracker(Listener listener)
     {
         listener.listenTo(this);
     }
 
+    /**
+     * Creates a tracker for the artifacts in the given tree
+     *
+     * @param listener The listener to report to
+     * @param tree The dependency tree
+     */
+    public ArtifactResolutionTracker(Listener listener, DependencyTree tree)
+    {
+        this(listener);
+
+        // Give each artifact in the tree a dense id, which is only done here and while holding the lock,
+        var dependencies = tree.asDepthFirstList();
+        for (var at : dependencies)
+        {
+            if (at instanceof Artifact<?> artifact)
+            {
+                id(artifact);
+            }
+            for (var artifact : at.dependencies())
+            {
+                id(artifact);
+            }
+        }
+
+        // size the bitset to hold them,
+        resolved = new AtomicLongArray(Math.max(1, (ids.size() + 63) >>> 6));
+
+        // then count the artifacts each dependency needs, and record which dependencies need each artifact.
+        for (var at : dependencies)
+        {
+            var required = at.dependencies().deduplicated();
+            var dependent = new Dependent(at, required.size());
+            dependents.put(at, dependent);
+            for (var artifact : required)
+            {
+                dependentsOf.get(ids.get(artifact.descriptor())).add(dependent);
+            }
+        }
+    }
+
     /**
      * Returns true if all the artifacts in the given list have been resolved
      *
@@ -45,7 +170,52 @@ public class ArtifactResolutionTracker extends BaseComponent
      */
     public boolean isResolved(ArtifactList artifacts)
     {
-        return lock.whileLocked(() -> resolved.containsAll(artifacts));
+        var resolved = this.resolved;
+        for (var artifact : artifacts)
+        {
+            var id = ids.get(artifact.descriptor());
+            if (id == null || !isSet(resolved, id))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if all the artifacts needed by the given dependency have been resolved. For a dependency in the
+     * tree given to the constructor, this doesn't lock and doesn't depend on the number of artifacts.
+     *
+     * @param dependency The dependency
+     * @return True if the dependency's artifacts have been resolved
+     */
+    public boolean isResolved(Dependency dependency)
+    {
+        var dependent = dependents.get(dependency);
+        return dependent != null
+            ? dependent.missing.get() == 0
+            : isResolved(dependency.dependencies());
+    }
+
+    /**
+     * Adds a callback to run when all artifacts needed by a dependency in the tree given to the constructor have been
+     * resolved
+     *
+     * @param callback The callback, which is given the dependency
+     */
+    public void onReady(Consumer<Dependency> callback)
+    {
+        lock.whileLocked(() -> readyCallbacks.add(callback));
+    }
+
+    /**
+     * Adds a callback to run each time more artifacts are resolved
+     *
+     * @param callback The callback
+     */
+    public void onResolution(Runnable callback)
+    {
+        lock.whileLocked(() -> callbacks.add(callback));
     }
 
     /**
@@ -55,15 +225,51 @@ public class ArtifactResolutionTracker extends BaseComponent
      */
     public void resolved(ArtifactList artifacts)
     {
+        var ready = new ObjectList<Dependent>();
         lock.whileLocked(() ->
         {
+            // For each artifact that wasn't resolved yet,
+            for (var artifact : artifacts)
+            {
+                var id = id(artifact);
+                if (set(id))
+                {
+                    // count it as resolved for each dependency that needs it, noting dependencies that are now ready.
+                    resolvedCount.incrementAndGet();
+                    for (var dependent : dependentsOf.get(id))
+                    {
+                        if (dependent.missing.decrementAndGet() == 0)
+                        {
+                            ready.add(dependent);
+                        }
+                    }
+                }
+            }
             if (artifacts.isNonEmpty())
             {
-                this.resolved = resolved.with(artifacts);
-                resolvedMore.signal();
+                resolvedMore.signalAll();
                 trace("Signaled resolution: $", artifacts);
             }
         });
+
+        // Wake exactly the dependencies that are now ready, and run callbacks outside the lock, so they can't
+        // deadlock with threads waiting on resolution.
+        var readyCallbacks = lock.whileLocked(() -> this.readyCallbacks.copy());
+        for (var dependent : ready)
+        {
+            dependent.ready.countDown();
+            for (var callback : readyCallbacks)
+            {
+                callback.accept(dependent.dependency);
+            }
+        }
+        if (artifacts.isNonEmpty())
+        {
+            for (var callback : lock.whileLocked(() -> callbacks.copy()))
+            {
+                callback.run();
+            }
+        }
     }
 
     /**
@@ -71,7 +277,7 @@ public class ArtifactResolutionTracker extends BaseComponent
      */
     public int size()
     {
-        return lock.whileLocked(() -> resolved.size());
+        return resolvedCount.get();
     }
 
     /**
@@ -85,9 +291,94 @@ public class ArtifactResolutionTracker extends BaseComponent
         {
             while (!isResolved(required))
             {
-                trace("Awaiting resolution: $", required.without(resolved));
-                milliseconds(250).await(resolvedMore);
+                trace("Awaiting resolution: $", required.without(this::isArtifactResolved));
+                resolvedMore.awaitUninterruptibly();
+            }
+        });
+    }
+
+    /**
+     * Waits until all artifacts needed by the given dependency are resolved. A dependency in the tree given to the
+     * constructor is woken only when its last artifact is resolved.
+     *
+     * @param dependency The dependency
+     */
+    public void waitForResolutionOf(Dependency dependency)
+    {
+        var dependent = dependents.get(dependency);
+        if (dependent == null)
+        {
+            waitForResolutionOf(dependency.dependencies());
+            return;
+        }
+
+        var interrupted = false;
+        while (dependent.ready.getCount() > 0)
+        {
+            try
+            {
+                dependent.ready.await();
             }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the id of the given artifact, giving it the next id if it doesn't have one
+     */
+    private int id(Artifact<?> artifact)
+    {
+        return ids.computeIfAbsent(artifact.descriptor(), descriptor ->
+        {
+            dependentsOf.add(new ArrayList<>());
+            return dependentsOf.size() - 1;
         });
     }
+
+    /**
+     * Returns true if the given artifact is resolved
+     */
+    private boolean isArtifactResolved(Artifact<?> artifact)
+    {
+        var id = ids.get(artifact.descriptor());
+        return id != null && isSet(resolved, id);
+    }
+
+    /**
+     * Returns true if the bit for the given id is set
+     */
+    private boolean isSet(AtomicLongArray bits, int id)
+    {
+        var word = id >>> 6;
+        return word < bits.length() && (bits.get(word) & (1L << id)) != 0;
+    }
+
+    /**
+     * Sets the bit for the given artifact id, growing the bitset if needed. Must be called while holding the lock.
+     *
+     * @return True if the bit was not already set
+     */
+    private boolean set(int id)
+    {
+        var word = id >>> 6;
+        var bits = resolved;
+        if (word >= bits.length())
+        {
+            var grown = new AtomicLongArray(Math.max(word + 1, bits.length() * 2));
+            for (var index = 0; index < bits.length(); index++)
+            {
+                grown.set(index, bits.get(index));
+            }
+            resolved = bits = grown;
+        }
+        var mask = 1L << id;
+        return (bits.getAndAccumulate(word, mask, (value, bit) -> value | bit) & mask) == 0;
+    }
 }
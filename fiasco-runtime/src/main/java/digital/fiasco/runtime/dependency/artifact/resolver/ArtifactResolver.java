@@ -3,8 +3,10 @@ package digital.fiasco.runtime.dependency.artifact.resolver;
 import com.telenav.kivakit.component.BaseComponent;
 import com.telenav.kivakit.core.function.Result;
 import com.telenav.kivakit.core.language.trait.TryTrait;
+import com.telenav.kivakit.core.value.count.Maximum;
 import com.telenav.kivakit.interfaces.code.Callback;
 import digital.fiasco.runtime.build.Build;
+import digital.fiasco.runtime.build.settings.BuildSettings;
 import digital.fiasco.runtime.build.settings.BuildSettingsObject;
 import digital.fiasco.runtime.dependency.Dependency;
 import digital.fiasco.runtime.dependency.artifact.Artifact;
@@ -20,11 +22,12 @@ import static com.telenav.kivakit.core.function.Result.result;
 import static com.telenav.kivakit.core.thread.KivaKitThread.run;
 import static com.telenav.kivakit.core.thread.Threads.shutdownAndAwaitTermination;
 import static com.telenav.kivakit.core.thread.Threads.threadPool;
+import static com.telenav.kivakit.core.value.count.Maximum.maximum;
 
 /**
  * Resolves artifacts in groups by turning the given root dependency into a {@link DependencyTree}, and then turning
  * that tree into a {@link DependencyQueue}. Groups of dependencies that are ready for resolution are retrieved with
- * {@link DependencyQueue#takeAllReady()}, and then resolved using the {@link RepositorySearchLibrarian} found in the
+ * {@link DependencyQueue#takeReady(Maximum)}, and then resolved using the {@link RepositorySearchLibrarian} found in the
  * {@link BuildSettingsObject}. When a group of dependencies is resolved, the given {@link Callback} is called with the
  * resolution {@link Result}.
  *
@@ -36,6 +39,14 @@ import static com.telenav.kivakit.core.thread.Threads.threadPool;
  * reduces the number of requests that are required for artifact resolution, which speeds up the system.
  * </p>
  *
+ * <p>
+ * Resolution runs on its own pool of {@link BuildSettings#resolverThreads()} threads, separate from the builder
+ * threads. Resolution spends most of its time waiting on the network and disk, so it can use many more threads than
+ * there are processors without slowing down builders. Each thread takes at most 16 ready artifacts at a time, so a
+ * large group of ready artifacts is fetched by several threads at once, while each request still resolves many
+ * artifacts.
+ * </p>
+ *
  * @author Jonathan Locke
  * @see BuildSettingsObject
  * @see DependencyQueue
@@ -44,6 +55,9 @@ import static com.telenav.kivakit.core.thread.Threads.threadPool;
  */
 public class ArtifactResolver extends BaseComponent implements TryTrait
 {
+    /** The largest group of artifacts a resolver thread takes at once */
+    private static final Maximum GROUP_SIZE = maximum(16);
+
     /** The build that this resolver is resolving artifacts for */
     private final Build build;
 
@@ -73,13 +87,14 @@ public class ArtifactResolver extends BaseComponent implements TryTrait
         // Resolve artifacts on a background thread
         run(this, "Resolver", () ->
         {
-            // Create a dependency queue from the build's dependency tree,
-            var artifactQueue = build.dependencyTree().asQueue(Artifact.class)
-                .withIsReady((queue, it) -> resolved.isResolved(it.dependencies()));
+            // Create a dependency queue from the build's dependency tree, where each artifact is ready
+            // as soon as the artifacts it depends on have completed,
+            var artifactQueue = build.dependencyTree().asQueue(Artifact.class);
 
-            // create an executor and completion service,
-            trace("Starting artifact resolver threads");
-            var threads = build.settings().builderThreads();
+            // create a pool of resolver threads, separate from the builder threads, since resolution
+            // waits on network and disk rather than on the processor,
+            var threads = build.settings().resolverThreads();
+            trace("Starting $ artifact resolver threads", threads);
             var executor = threadPool("ResolverPool", threads);
 
             // and submit a resolve artifacts task for each thread.
@@ -103,7 +118,7 @@ public class ArtifactResolver extends BaseComponent implements TryTrait
         {
             // resolve the next group of artifacts that are ready to be resolved.
             trace("Waiting for ready dependencies");
-            var ready = queue.takeAllReady();
+            var ready = queue.takeReady(GROUP_SIZE);
             if (ready.isNonEmpty())
             {
                 trace("Resolving artifacts: $", ready);
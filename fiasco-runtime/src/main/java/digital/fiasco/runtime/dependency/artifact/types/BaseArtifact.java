@@ -333,6 +333,11 @@ public abstract class BaseArtifact<A extends BaseArtifact<A>> implements
         return mutated(it -> it.exclusions = it.exclusions.with(exclusions));
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public ArtifactDescriptorList exclusions()
     {
         if (exclusions == null)
@@ -18,13 +18,18 @@ import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor;
 import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptorList;
 import digital.fiasco.runtime.dependency.artifact.types.Asset;
 import digital.fiasco.runtime.dependency.artifact.types.Library;
+import digital.fiasco.runtime.dependency.collections.persistent.PersistentVector;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.ListIterator;
+import java.util.Set;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTATION_NOT_NEEDED;
 import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
@@ -32,16 +37,35 @@ import static com.telenav.kivakit.annotations.code.quality.Stability.STABILITY_U
 import static com.telenav.kivakit.annotations.code.quality.Testing.TESTED;
 import static com.telenav.kivakit.annotations.code.quality.Testing.TESTING_INSUFFICIENT;
 import static com.telenav.kivakit.annotations.code.quality.Testing.TESTING_NOT_NEEDED;
-import static com.telenav.kivakit.core.collections.list.ObjectList.list;
 import static com.telenav.kivakit.core.collections.list.StringList.stringList;
 import static digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptorList.descriptors;
 import static digital.fiasco.runtime.dependency.collections.AssetList.assets;
 import static digital.fiasco.runtime.dependency.collections.DependencyList.dependencies;
 import static digital.fiasco.runtime.dependency.collections.LibraryList.libraries;
+import static digital.fiasco.runtime.dependency.collections.persistent.PersistentVector.persistentVector;
 
 /**
  * A read-only list of {@link Dependency} objects.
  *
+ * <p><b>Structure Sharing</b></p>
+ *
+ * <p>
+ * Dependencies are held in a {@link PersistentVector}, which is never modified, so copies of a list share it instead of
+ * copying it. A list derived with one of the <i>with</i> methods shares all but the last few nodes of the vector with
+ * the list it was derived from, so adding a dependency takes O(log n) time rather than the O(n) needed to copy a flat
+ * list. To build a large list, a {@link Builder} from {@link #builder()} adds dependencies in place.
+ * </p>
+ *
+ * <p><b>Membership</b></p>
+ *
+ * <p>
+ * Lists with at least {@link #HASHED_MEMBERSHIP_THRESHOLD} dependencies answer membership queries from a hash set of
+ * their dependencies, which is built the first time it is needed and kept for the life of the list. This makes
+ * {@link #contains(Object)} O(1), and {@link #containsAll(Collection)}, {@link #equals(Object)} and the
+ * <i>without</i> methods O(n). Smaller lists are scanned, which is faster than hashing for a handful of dependencies.
+ * The hash code of a list is also computed only once.
+ * </p>
+ *
  * <p><b>Filtering</b></p>
  *
  * <ul>
@@ -85,6 +109,7 @@ import static digital.fiasco.runtime.dependency.collections.LibraryList.librarie
  * <p><b>Functional</b></p>
  *
  * <ul>
+ *     <li>{@link #builder()}</li>
  *     <li>{@link #copy()}</li>
  *     <li>{@link #deduplicated()}</li>
  *     <li>{@link #with(BaseDependencyList)}</li>
@@ -111,9 +136,73 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     Sized,
     Copyable<L>
 {
-    /** The underlying dependencies */
+    /** Lists with at least this many dependencies use a hash set for membership queries */
+    public static final int HASHED_MEMBERSHIP_THRESHOLD = 16;
+
+    /**
+     * Builds a dependency list by adding dependencies in place, without creating a new list for each one
+     *
+     * @param <D> Dependency subtype
+     * @param <L> Dependency list subtype
+     */
+    public static final class Builder<D extends Dependency, L extends BaseDependencyList<D, L>>
+    {
+        /** The list to create built lists from */
+        private final L list;
+
+        /** The dependencies added so far */
+        private final PersistentVector.Builder<D> dependencies;
+
+        private Builder(L list)
+        {
+            this.list = list;
+            this.dependencies = list.dependencies.builder();
+        }
+
+        /**
+         * Adds the given dependency
+         *
+         * @param dependency The dependency
+         * @return This builder, for chaining
+         */
+        public Builder<D, L> add(D dependency)
+        {
+            dependencies.add(dependency);
+            return this;
+        }
+
+        /**
+         * Adds the given dependencies
+         *
+         * @param dependencies The dependencies
+         * @return This builder, for chaining
+         */
+        public Builder<D, L> addAll(Iterable<? extends D> dependencies)
+        {
+            this.dependencies.addAll(dependencies);
+            return this;
+        }
+
+        /**
+         * Returns a list of the dependencies added so far
+         */
+        public L build()
+        {
+            var built = list.newList();
+            built.dependencies = dependencies.build();
+            return built;
+        }
+    }
+
+    /** The underlying dependencies, which are never modified, so they can be shared by copies of this list */
     @FormatProperty
-    ObjectList<D> dependencies = list();
+    PersistentVector<D> dependencies = persistentVector();
+
+    /** The dependencies in this list, for fast lookup, or null if the set hasn't been needed yet */
+    private volatile Set<Object> membership;
+
+    /** The hash code of this list, or zero if it hasn't been computed yet */
+    private int hashCode;
 
     @MethodQuality(documentation = DOCUMENTATION_NOT_NEEDED, testing = TESTING_NOT_NEEDED)
     public BaseDependencyList()
@@ -122,12 +211,12 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
 
     protected BaseDependencyList(L that)
     {
-        this.dependencies = that.dependencies.copy();
+        this.dependencies = that.dependencies;
     }
 
     protected BaseDependencyList(Collection<D> dependencies)
     {
-        this.dependencies.addAll(dependencies);
+        this.dependencies = persistentVector(dependencies);
     }
 
     /**
@@ -138,7 +227,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public ArtifactDescriptorList asDescriptors()
     {
-        return descriptors(dependencies.map(Dependency::descriptor));
+        return descriptors(map(Dependency::descriptor));
     }
 
     /**
@@ -147,15 +236,15 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public ArtifactList asArtifactList()
     {
-        var artifacts = ArtifactList.artifacts();
+        var artifacts = ArtifactList.artifacts().builder();
         for (var at : dependencies)
         {
             if (at instanceof Artifact<?> artifact)
             {
-                artifacts = artifacts.with(artifact);
+                artifacts.add(artifact);
             }
         }
-        return artifacts;
+        return artifacts.build();
     }
 
     /**
@@ -174,12 +263,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
      */
     public DependencyList asDependencyList()
     {
-        var dependencies = dependencies();
-        for (var at : this)
-        {
-            dependencies = dependencies.with(at);
-        }
-        return dependencies;
+        return dependencies().builder().addAll(this).build();
     }
 
     /**
@@ -199,7 +283,9 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public ObjectList<D> asMutableList()
     {
-        return dependencies.copy();
+        var list = new ObjectList<D>();
+        list.addAll(dependencies);
+        return list;
     }
 
     /**
@@ -210,7 +296,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public ObjectSet<D> asMutableSet()
     {
-        return new ObjectSet<>(new LinkedHashSet<>(dependencies.copy()));
+        return new ObjectSet<>(new LinkedHashSet<>(dependencies));
     }
 
     /**
@@ -219,7 +305,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public String asString()
     {
-        return dependencies.asString();
+        return asMutableList().asString();
     }
 
     /**
@@ -228,7 +314,18 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public StringList asStringList()
     {
-        return dependencies.asStringList();
+        return asMutableList().asStringList();
+    }
+
+    /**
+     * Returns a builder that adds dependencies to the end of this list
+     *
+     * @return The builder
+     */
+    @SuppressWarnings("unchecked")
+    public Builder<D, L> builder()
+    {
+        return new Builder<>((L) this);
     }
 
     /**
@@ -239,13 +336,15 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public boolean contains(D dependency)
     {
-        return dependencies.contains(dependency);
+        return contains((Object) dependency);
     }
 
     @Override
     public boolean contains(Object that)
     {
-        return dependencies.contains(that);
+        return isHashed()
+            ? membership().contains(that)
+            : dependencies.contains(that);
     }
 
     /**
@@ -254,13 +353,20 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public boolean containsAll(L dependencies)
     {
-        return this.dependencies.containsAll(dependencies.dependencies);
+        return containsAll(dependencies.dependencies);
     }
 
     @Override
     public boolean containsAll(@NotNull Collection<?> that)
     {
-        return this.dependencies.containsAll(that);
+        for (var at : that)
+        {
+            if (!contains(at))
+            {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -271,7 +377,14 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
      */
     public boolean containsAny(Collection<D> that)
     {
-        return dependencies.containsAny(that);
+        for (var at : that)
+        {
+            if (contains(at))
+            {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -293,20 +406,12 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public Count count()
     {
-        return dependencies.count();
+        return Count.count(dependencies.size());
     }
 
     public L deduplicated()
     {
-        var deduplicated = newList();
-        for (var at : this)
-        {
-            if (!deduplicated.contains(at))
-            {
-                deduplicated = deduplicated.with(at);
-            }
-        }
-        return deduplicated;
+        return newList().builder().addAll(new LinkedHashSet<>(dependencies)).build();
     }
 
     @SuppressWarnings("SuspiciousMethodCalls")
@@ -317,8 +422,8 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
         if (object instanceof BaseDependencyList<?, ?> that)
         {
             return this.dependencies.size() == that.dependencies.size()
-                && this.dependencies.containsAll(that.dependencies)
-                && that.dependencies.containsAll(this.dependencies);
+                && this.containsAll(that.dependencies)
+                && that.containsAll(this.dependencies);
         }
         return false;
     }
@@ -329,7 +434,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public D first()
     {
-        return dependencies.first();
+        return isEmpty() ? null : dependencies.get(0);
     }
 
     /**
@@ -340,9 +445,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
      */
     public L first(Maximum maximum)
     {
-        var copy = copy();
-        copy.dependencies = this.dependencies.first(maximum.count());
-        return copy;
+        return mutated(it -> it.dependencies = dependencies.first(maximum.asInt()));
     }
 
     /**
@@ -366,7 +469,17 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTATION_NOT_NEEDED, testing = TESTED)
     public int hashCode()
     {
-        return dependencies.sorted().hashCode();
+        // The hash code is the sum of the hash codes of the distinct dependencies in this list, so it doesn't depend on
+        // their order, and it is consistent with equals(Object), which ignores order as well.
+        var hashCode = this.hashCode;
+        if (hashCode == 0)
+        {
+            hashCode = isHashed()
+                ? membership().hashCode()
+                : new HashSet<>(dependencies).hashCode();
+            this.hashCode = hashCode;
+        }
+        return hashCode;
     }
 
     /**
@@ -416,7 +529,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public String join(String separator)
     {
-        return dependencies.join(separator);
+        return asMutableList().join(separator);
     }
 
     /**
@@ -425,7 +538,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public D last()
     {
-        return dependencies.last();
+        return isEmpty() ? null : dependencies.get(dependencies.size() - 1);
     }
 
     /**
@@ -466,7 +579,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
      */
     public <To> ObjectList<To> map(Function<D, To> mapper)
     {
-        return dependencies.map(mapper);
+        return asMutableList().map(mapper);
     }
 
     /**
@@ -477,15 +590,15 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
      */
     public DependencyList matching(Class<? extends Dependency> type)
     {
-        var matches = dependencies();
+        var matches = dependencies().builder();
         for (var at : this)
         {
             if (type.isAssignableFrom(at.getClass()))
             {
-                matches = matches.with(at);
+                matches.add(at);
             }
         }
-        return matches;
+        return matches.build();
     }
 
     /**
@@ -497,7 +610,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public L matching(Matcher<D> matcher)
     {
-        return mutated(it -> it.dependencies = dependencies.matching(matcher));
+        return mutated(it -> it.dependencies = filtered(matcher::matches));
     }
 
     /**
@@ -516,8 +629,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public L sorted()
     {
-        var sorted = (L) newList().with(dependencies.sorted());
-        return newList().with(sorted);
+        return mutated(it -> it.dependencies = persistentVector(asMutableList().sorted()));
     }
 
     @NotNull
@@ -552,7 +664,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @Override
     public String toString()
     {
-        return dependencies.join(", ");
+        return join(", ");
     }
 
     /**
@@ -566,11 +678,10 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public L with(D first, D... rest)
     {
-        return mutated(it ->
-        {
-            it.dependencies.add(first);
-            it.dependencies.addAll(rest);
-        });
+        return mutated(it -> it.dependencies = dependencies.builder()
+            .add(first)
+            .addAll(Arrays.asList(rest))
+            .build());
     }
 
     /**
@@ -582,7 +693,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public L with(D inclusion)
     {
-        return mutated(it -> it.dependencies.add(inclusion));
+        return mutated(it -> it.dependencies = dependencies.with(inclusion));
     }
 
     /**
@@ -594,7 +705,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public L with(D[] inclusions)
     {
-        return mutated(it -> it.dependencies.addAll(inclusions));
+        return mutated(it -> it.dependencies = dependencies.withAll(Arrays.asList(inclusions)));
     }
 
     /**
@@ -606,7 +717,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public L with(L inclusions)
     {
-        return mutated(it -> it.dependencies.addAll(inclusions));
+        return mutated(it -> it.dependencies = dependencies.withAll(inclusions.dependencies));
     }
 
     /**
@@ -618,7 +729,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public L with(Collection<D> inclusions)
     {
-        return mutated(it -> it.dependencies.addAll(inclusions));
+        return mutated(it -> it.dependencies = dependencies.withAll(inclusions));
     }
 
     /**
@@ -630,7 +741,10 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public L without(Collection<D> exclusions)
     {
-        return mutated(it -> it.dependencies.removeAll(exclusions));
+        var excluded = exclusions instanceof Set || exclusions.size() < HASHED_MEMBERSHIP_THRESHOLD
+            ? exclusions
+            : new HashSet<>(exclusions);
+        return mutated(it -> it.dependencies = filtered(at -> !excluded.contains(at)));
     }
 
     /**
@@ -642,7 +756,10 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public L without(D exclusion)
     {
-        return mutated(it -> it.dependencies.remove(exclusion));
+        var index = dependencies.indexOf(exclusion);
+        return mutated(it -> it.dependencies = index < 0
+            ? dependencies
+            : dependencies.first(index).withAll(dependencies.subList(index + 1, dependencies.size())));
     }
 
     /**
@@ -654,7 +771,7 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public L without(L exclusions)
     {
-        return mutated(it -> it.dependencies.removeAll(exclusions));
+        return mutated(it -> it.dependencies = filtered(at -> !exclusions.contains(at)));
     }
 
     /**
@@ -666,10 +783,49 @@ public abstract class BaseDependencyList<D extends Dependency, L extends BaseDep
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public L without(Matcher<D> exclusionPattern)
     {
-        return mutated(it -> it.dependencies.removeIf(exclusionPattern::matches));
+        return mutated(it -> it.dependencies = filtered(at -> !exclusionPattern.matches(at)));
     }
 
     protected abstract L newList(L that);
 
     protected abstract L newList();
+
+    /**
+     * Returns the dependencies in this list that satisfy the given predicate, in order
+     */
+    private PersistentVector<D> filtered(Predicate<D> predicate)
+    {
+        var filtered = PersistentVector.<D>persistentVector().builder();
+        for (var at : dependencies)
+        {
+            if (predicate.test(at))
+            {
+                filtered.add(at);
+            }
+        }
+        return filtered.size() == dependencies.size() ? dependencies : filtered.build();
+    }
+
+    /**
+     * Returns true if this list is large enough to use a hash set for membership queries
+     */
+    private boolean isHashed()
+    {
+        return dependencies.size() >= HASHED_MEMBERSHIP_THRESHOLD;
+    }
+
+    /**
+     * Returns the set of dependencies in this list, building it if this is the first time it is needed. Because this
+     * list never changes, the set never needs to be rebuilt. Threads that race to build it build the same set.
+     */
+    private Set<Object> membership()
+    {
+        var membership = this.membership;
+        if (membership == null)
+        {
+            membership = new HashSet<>(dependencies);
+            this.membership = membership;
+        }
+        return membership;
+    }
 }
@@ -0,0 +1,127 @@
+package digital.fiasco.runtime.dependency.collections;
+
+import digital.fiasco.runtime.dependency.Dependency;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * The critical-path length of each dependency of a given type in a {@link DependencyTree}. The critical-path length of
+ * a dependency is its own weight plus the largest critical-path length of the dependencies that depend on it. It
+ * measures how much work stands between finishing the dependency and finishing the whole tree, so processing the
+ * dependencies with the longest critical paths first keeps long chains of work from starting late.
+ *
+ * <p><b>Creation</b></p>
+ *
+ * <ul>
+ *     <li>{@link #criticalPath(DependencyTree, Class, ToLongFunction)}</li>
+ * </ul>
+ *
+ * <p><b>Access</b></p>
+ *
+ * <ul>
+ *     <li>{@link #length(Dependency)}</li>
+ *     <li>{@link #longestFirst()}</li>
+ * </ul>
+ *
+ * @author Jonathan Locke
+ * @see DependencyQueue#withPriority(Comparator)
+ */
+public class CriticalPath
+{
+    /**
+     * Returns the critical path lengths of the dependencies of the given type in the given tree
+     *
+     * @param tree The dependency tree
+     * @param type The type of dependency
+     * @param weight The weight of each dependency, such as an estimate of the time it takes to process
+     * @return The critical path
+     */
+    public static CriticalPath criticalPath(DependencyTree tree,
+                                            Class<? extends Dependency> type,
+                                            ToLongFunction<Dependency> weight)
+    {
+        return new CriticalPath(tree, type, weight);
+    }
+
+    /** The dependencies in the tree that depend on each dependency */
+    private final Map<Dependency, List<Dependency>> dependents = new HashMap<>();
+
+    /** The critical path length of each dependency */
+    private final Map<Dependency, Long> lengths = new HashMap<>();
+
+    /** The weight of each dependency */
+    private final ToLongFunction<Dependency> weight;
+
+    protected CriticalPath(DependencyTree tree, Class<? extends Dependency> type, ToLongFunction<Dependency> weight)
+    {
+        this.weight = weight;
+
+        // Link each dependency of the given type to the dependencies of that type that depend on it,
+        var members = tree.asDepthFirstList().matching(type);
+        for (var at : members)
+        {
+            var above = new ArrayList<Dependency>();
+            for (var dependent : tree.dependents(at))
+            {
+                if (type.isInstance(dependent))
+                {
+                    above.add(dependent);
+                }
+            }
+            dependents.put(at, above);
+        }
+
+        // then compute the length of each path, from the root down, so the recursion in length() is never deep.
+        for (var at = members.size() - 1; at >= 0; at--)
+        {
+            length(members.get(at));
+        }
+    }
+
+    /**
+     * Returns the critical path length of the given dependency, or zero if it is not in the tree
+     *
+     * @param dependency The dependency
+     * @return The length of the longest path from the dependency to the root of the tree
+     */
+    public long length(Dependency dependency)
+    {
+        // If we have already computed the length,
+        var length = lengths.get(dependency);
+        if (length != null)
+        {
+            return length;
+        }
+
+        // or the dependency is not in the tree, we're done.
+        var above = dependents.get(dependency);
+        if (above == null)
+        {
+            return 0;
+        }
+
+        // Otherwise, the length is the dependency's own weight plus the longest path above it.
+        // The tree cannot be cyclic, so this recursion ends.
+        var longest = 0L;
+        for (var at : above)
+        {
+            longest = Math.max(longest, length(at));
+        }
+        length = weight.applyAsLong(dependency) + longest;
+        lengths.put(dependency, length);
+        return length;
+    }
+
+    /**
+     * Returns a comparator that orders dependencies by critical path length, longest first
+     */
+    public Comparator<Dependency> longestFirst()
+    {
+        return Comparator.<Dependency>comparingLong(this::length).reversed();
+    }
+}
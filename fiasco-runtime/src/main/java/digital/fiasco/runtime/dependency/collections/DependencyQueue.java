@@ -9,6 +9,7 @@ import com.telenav.kivakit.core.string.ObjectFormatter;
 import com.telenav.kivakit.core.thread.locks.Lock;
 import com.telenav.kivakit.core.time.Duration;
 import com.telenav.kivakit.core.value.count.Maximum;
+import com.telenav.kivakit.core.collections.list.ObjectList;
 import com.telenav.kivakit.interfaces.object.Copyable;
 import com.telenav.kivakit.interfaces.time.WakeState;
 import digital.fiasco.runtime.dependency.Dependency;
@@ -16,16 +17,23 @@ import digital.fiasco.runtime.repository.remote.RemoteRepository;
 import digital.fiasco.runtime.repository.remote.server.FiascoClient;
 import digital.fiasco.runtime.repository.remote.server.FiascoServer;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.locks.Condition;
 import java.util.function.BiFunction;
 
 import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
 import static com.telenav.kivakit.annotations.code.quality.Stability.STABLE;
 import static com.telenav.kivakit.annotations.code.quality.Testing.TESTED;
-import static com.telenav.kivakit.core.ensure.Ensure.ensure;
 import static com.telenav.kivakit.core.ensure.Ensure.ensureNotNull;
 import static com.telenav.kivakit.core.string.ObjectFormatter.ObjectFormat.MULTILINE;
-import static com.telenav.kivakit.core.time.Duration.milliseconds;
 import static com.telenav.kivakit.core.time.Time.now;
 import static com.telenav.kivakit.core.value.count.Maximum.MAXIMUM;
 import static com.telenav.kivakit.core.value.count.Maximum._1;
@@ -39,10 +47,10 @@ import static digital.fiasco.runtime.dependency.collections.DependencyList.depen
  * <ol>
  *     <li>All dependencies passed to the constructor are added to the "available" set.</li>
  *     <li>The {@link #takeNextReady()} or {@link #takeAllReady()} method is called by a processor
- *         thread to retrieve dependencies that are ready for processing, as determined by the
- *         <i>isReady</i> predicate function defined by {@link #withIsReady(BiFunction)}. The
- *         ready dependencies are moved from the "available" set to the "taken" set, and returned
- *         to the caller.</li>
+ *         thread to retrieve dependencies that are ready for processing. A dependency is ready when
+ *         all of its dependencies that are in this queue have completed, and the optional <i>isReady</i>
+ *         predicate function defined by {@link #withIsReady(BiFunction)} agrees. The ready dependencies
+ *         are moved from the "available" set to the "taken" set, and returned to the caller.</li>
  *     <li>When processing of one or more dependencies completes, a processor thread calls
  *         {@link #completed(Dependency)} or {@link #completed(DependencyList)} to move them from
  *         the "taken" set to the "completed" set.</li>
@@ -56,6 +64,7 @@ import static digital.fiasco.runtime.dependency.collections.DependencyList.depen
  *     <li>{@link #hasAvailable()}</li>
  *     <li>{@link #takeNextReady()}</li>
  *     <li>{@link #takeAllReady()}</li>
+ *     <li>{@link #takeReady(Maximum)}</li>
  * </ul>
  *
  * <p><b>Marking Dependencies as Processed</b></p>
@@ -65,6 +74,14 @@ import static digital.fiasco.runtime.dependency.collections.DependencyList.depen
  *     <li>{@link #completed(DependencyList)}</li>
  * </ul>
  *
+ * <p><b>Readiness and Priority</b></p>
+ *
+ * <ul>
+ *     <li>{@link #readinessChanged()}</li>
+ *     <li>{@link #withIsReady(BiFunction)}</li>
+ *     <li>{@link #withPriority(Comparator)}</li>
+ * </ul>
+ *
  * <p><b>Waiting for Processing to Complete</b></p>
  *
  * <ul>
@@ -87,6 +104,18 @@ import static digital.fiasco.runtime.dependency.collections.DependencyList.depen
  *
  * queue.awaitProcessingFinished(); </pre>
  *
+ * <p><b>Scheduling</b></p>
+ *
+ * <p>
+ * The queue counts the prerequisites of each dependency (its dependencies that are also in this queue) that have not yet
+ * completed. When a dependency completes, the count for each dependency that depends on it is decremented, and any
+ * dependency whose count reaches zero is added to a ready set, ordered by priority (the order of the dependencies given
+ * to the constructor, unless {@link #withPriority(Comparator)} is used). Threads waiting in the take*() methods are
+ * woken immediately, and take work from the ready set, so there is no polling and the queue is never rescanned. If an
+ * <i>isReady</i> function is defined, it is only checked for dependencies in the ready set, and it is checked again
+ * when a dependency completes or {@link #readinessChanged()} is called.
+ * </p>
+ *
  * <p><b>Performance</b></p>
  *
  * <p>
@@ -103,18 +132,33 @@ public class DependencyQueue extends BaseComponent implements
     ConsoleTrait,
     Copyable<DependencyQueue>
 {
-    /** The dependencies that are available to be processed (when ready) */
+    /** The dependencies that are available to be processed (when ready), in priority order */
     @FormatProperty
-    private DependencyList available;
+    private Set<Dependency> available;
 
     /** Any dependencies that are currently being processed */
     @FormatProperty
-    private DependencyList taken;
+    private Set<Dependency> taken;
 
-    /** Any dependencies that have completed processing */
+    /** Any dependencies that have completed processing, in the order they completed */
     @FormatProperty
     private DependencyList completed;
 
+    /** The dependencies that have completed processing, for fast lookup */
+    private Set<Dependency> completedSet;
+
+    /** The priority of each dependency in this queue, where lower numbers are processed first */
+    private final Map<Dependency, Integer> priority;
+
+    /** The dependencies in this queue that depend on each dependency in this queue */
+    private final Map<Dependency, List<Dependency>> dependents;
+
+    /** The number of prerequisites of each available dependency that have not completed */
+    private Map<Dependency, Integer> outstanding;
+
+    /** Available dependencies with no outstanding prerequisites, in priority order */
+    private TreeSet<Dependency> ready;
+
     /** Read/write lock for accessing available, taken and completed lists */
     private final Lock lock = new Lock();
 
@@ -124,7 +168,7 @@ public class DependencyQueue extends BaseComponent implements
     /** The type of dependency in this queue */
     private final Class<? extends Dependency> type;
 
-    /** Matcher to determine when a dependency is ready for processing */
+    /** Optional additional condition that must be met before a dependency is ready for processing */
     private BiFunction<DependencyQueue, Dependency, Boolean> isReady;
 
     /**
@@ -137,9 +181,41 @@ public class DependencyQueue extends BaseComponent implements
     public DependencyQueue(DependencyList initial, Class<? extends Dependency> type)
     {
         this.type = type;
-        this.available = initial.deduplicated().matching(type);
-        this.taken = dependencies();
+        this.available = new LinkedHashSet<>(initial.deduplicated().matching(type));
+        this.taken = new LinkedHashSet<>();
         this.completed = dependencies();
+        this.completedSet = new HashSet<>();
+
+        // Number the dependencies in priority order,
+        priority = new HashMap<>();
+        for (var at : available)
+        {
+            priority.put(at, priority.size());
+        }
+
+        // then count the prerequisites of each dependency, and link each prerequisite to its dependents,
+        dependents = new HashMap<>();
+        outstanding = new HashMap<>();
+        ready = new TreeSet<>(Comparator.comparingInt(priority::get));
+        for (var at : available)
+        {
+            var count = 0;
+            for (var prerequisite : new LinkedHashSet<>(at.allDependencies()))
+            {
+                if (priority.containsKey(prerequisite) && !prerequisite.equals(at))
+                {
+                    dependents.computeIfAbsent(prerequisite, ignored -> new ArrayList<>()).add(at);
+                    count++;
+                }
+            }
+
+            // and put those with no prerequisites in the ready set.
+            outstanding.put(at, count);
+            if (count == 0)
+            {
+                ready.add(at);
+            }
+        }
 
         trace("Created queue with dependencies: $", available);
     }
@@ -147,9 +223,14 @@ public class DependencyQueue extends BaseComponent implements
     private DependencyQueue(DependencyQueue that)
     {
         this.type = that.type;
-        this.available = that.available.copy();
-        this.taken = that.taken.copy();
+        this.available = new LinkedHashSet<>(that.available);
+        this.taken = new LinkedHashSet<>(that.taken);
         this.completed = that.completed.copy();
+        this.completedSet = new HashSet<>(that.completedSet);
+        this.priority = that.priority;
+        this.dependents = that.dependents;
+        this.outstanding = new HashMap<>(that.outstanding);
+        this.ready = new TreeSet<>(that.ready);
         this.isReady = that.isReady;
     }
 
@@ -191,9 +272,25 @@ public class DependencyQueue extends BaseComponent implements
     {
         lock.whileLocked(() ->
         {
-            // Move the given dependencies from 'taken' to 'completed'
-            this.taken = this.taken.without(completed);
-            this.completed = this.completed.with(completed);
+            // Move the given dependencies from 'taken' to 'completed',
+            for (var at : completed)
+            {
+                if (completedSet.add(at))
+                {
+                    taken.remove(at);
+                    this.completed = this.completed.with(at);
+
+                    // decrement the outstanding prerequisites of each dependent, making it ready when none remain,
+                    for (var dependent : dependents.getOrDefault(at, List.of()))
+                    {
+                        var count = outstanding.merge(dependent, -1, Integer::sum);
+                        if (count == 0 && available.contains(dependent))
+                        {
+                            ready.add(dependent);
+                        }
+                    }
+                }
+            }
             trace("Completed $", completed);
 
             // and alert any threads waiting for work in take*() methods.
@@ -233,8 +330,7 @@ public class DependencyQueue extends BaseComponent implements
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public boolean hasAvailable()
     {
-        ensureHasIsReadyFunction();
-        return lock.whileLocked(() -> available.isNonEmpty());
+        return lock.whileLocked(() -> !available.isEmpty());
     }
 
     /**
@@ -245,8 +341,7 @@ public class DependencyQueue extends BaseComponent implements
      */
     public boolean hasCompleted(BaseDependencyList<?, ?> list)
     {
-        ensureHasIsReadyFunction();
-        return completed.containsAll(list.asDependencyList());
+        return lock.whileLocked(() -> completedSet.containsAll(list));
     }
 
     /**
@@ -257,8 +352,7 @@ public class DependencyQueue extends BaseComponent implements
      */
     public boolean hasCompleted(Dependency dependency)
     {
-        ensureHasIsReadyFunction();
-        return completed.contains(dependency);
+        return lock.whileLocked(() -> completedSet.contains(dependency));
     }
 
     /**
@@ -266,8 +360,17 @@ public class DependencyQueue extends BaseComponent implements
      */
     public boolean isCompleted()
     {
-        ensureHasIsReadyFunction();
-        return remaining().isEmpty();
+        return lock.whileLocked(() -> available.isEmpty() && taken.isEmpty());
+    }
+
+    /**
+     * Wakes any threads waiting for ready dependencies, so they check the <i>isReady</i> function again. This must be
+     * called when a condition checked by that function changes, other than the completion of a dependency in this
+     * queue.
+     */
+    public void readinessChanged()
+    {
+        lock.whileLocked(completedMore::signalAll);
     }
 
     /**
@@ -276,10 +379,20 @@ public class DependencyQueue extends BaseComponent implements
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public DependencyList takeAllReady()
     {
-        ensureHasIsReadyFunction();
         return takeAll(MAXIMUM);
     }
 
+    /**
+     * Returns a list of at most the given number of ready dependencies, or an empty list if the queue is empty
+     *
+     * @param maximum The largest number of dependencies to take
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public DependencyList takeReady(Maximum maximum)
+    {
+        return takeAll(maximum);
+    }
+
     /**
      * Returns the next dependency that is ready, or null if the queue is empty.
      */
@@ -287,7 +400,6 @@ public class DependencyQueue extends BaseComponent implements
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public <D extends Dependency> D takeNextReady()
     {
-        ensureHasIsReadyFunction();
         var ready = takeAll(_1);
         return ready.isEmpty() ? null : (D) ready.first();
     }
@@ -299,30 +411,33 @@ public class DependencyQueue extends BaseComponent implements
     }
 
     /**
-     * Returns a copy of this queue with the given <i>isReady</i> predicate function defined. This function is used to
-     * determine when a given dependency is ready for processing.
+     * Returns a copy of this queue that takes ready dependencies in the order defined by the given comparator. Ready
+     * dependencies that the comparator considers equal are taken in the order they were given to the constructor.
      *
-     * @param isReady The predicate function used to determine if a dependency is ready for processing
+     * @param order The order in which to take ready dependencies
      * @return The copy
      */
-    public DependencyQueue withIsReady(BiFunction<DependencyQueue, Dependency, Boolean> isReady)
+    public DependencyQueue withPriority(Comparator<Dependency> order)
     {
-        return mutated(it -> it.isReady = ensureNotNull(isReady));
-    }
-
-    private void ensureHasIsReadyFunction()
-    {
-        ensure(isReady != null, "Must supply isReady function");
+        return mutated(it ->
+        {
+            var ready = new TreeSet<>(order.thenComparingInt(it.priority::get));
+            ready.addAll(it.ready);
+            it.ready = ready;
+        });
     }
 
     /**
-     * Returns the list of dependencies that have yet to be completed
+     * Returns a copy of this queue with the given <i>isReady</i> predicate function defined. This function is an
+     * additional condition that must be met before a dependency is ready for processing. It is only called for
+     * dependencies whose prerequisites in this queue have all completed.
      *
-     * @return The remaining dependencies, either available or taken
+     * @param isReady The predicate function used to determine if a dependency is ready for processing
+     * @return The copy
      */
-    private DependencyList remaining()
+    public DependencyQueue withIsReady(BiFunction<DependencyQueue, Dependency, Boolean> isReady)
     {
-        return available.with(taken);
+        return mutated(it -> it.isReady = ensureNotNull(isReady));
     }
 
     /**
@@ -331,32 +446,44 @@ public class DependencyQueue extends BaseComponent implements
      */
     private DependencyList takeAll(Maximum maximum)
     {
-        ensureHasIsReadyFunction();
-
         return lock.whileLocked(() ->
         {
             // While the queue has incomplete work,
-            while (hasAvailable())
+            while (!available.isEmpty())
             {
-                // collect any dependencies that are ready to be processed,
-                var ready = available
-                    .matching(it -> isReady.apply(this, it))
-                    .first(maximum);
+                // collect the dependencies in the ready set that meet any isReady condition, in priority order,
+                var taking = new ObjectList<Dependency>();
+                for (var at : ready)
+                {
+                    if (taking.size() >= maximum.asInt())
+                    {
+                        break;
+                    }
+                    if (isReady == null || isReady.apply(this, at))
+                    {
+                        taking.add(at);
+                    }
+                }
 
                 // and if there are none ready now,
-                if (ready.isEmpty())
+                if (taking.isEmpty())
                 {
-                    // wait for more dependencies to complete processing,
-                    milliseconds(250).await(completedMore);
+                    // wait until a dependency completes, or readiness changes,
+                    completedMore.awaitUninterruptibly();
                 }
                 else
                 {
                     // otherwise, move the group from the available list to the taken list, and return
                     // the ready dependencies.
-                    available = available.without(ready);
-                    taken = taken.with(ready);
-                    trace("Took dependencies: $\nAvailable dependencies: $", ready, available);
-                    return ready;
+                    for (var at : taking)
+                    {
+                        ready.remove(at);
+                        available.remove(at);
+                        taken.add(at);
+                    }
+                    var group = dependencies(taking);
+                    trace("Took dependencies: $\nAvailable dependencies: $", group, available);
+                    return group;
                 }
             }
 
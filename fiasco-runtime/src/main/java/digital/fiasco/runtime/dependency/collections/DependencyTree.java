@@ -8,19 +8,35 @@ import digital.fiasco.runtime.dependency.artifact.Artifact;
 import digital.fiasco.runtime.dependency.artifact.types.Asset;
 import digital.fiasco.runtime.dependency.artifact.types.Library;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
 import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
 import static com.telenav.kivakit.annotations.code.quality.Stability.STABLE;
 import static com.telenav.kivakit.annotations.code.quality.Testing.TESTED;
 import static com.telenav.kivakit.core.ensure.Ensure.ensure;
-import static digital.fiasco.runtime.dependency.collections.DependencyList.dependencies;
 
 /**
  * A tree of {@link Dependency}s with the root passed to the constructor.
  *
  * <p>
- * The {@link #asDepthFirstList()} method returns the dependencies in the tree as a list, in depth-first order. The
- * {@link #asQueue(Class)} method creates a {@link DependencyQueue} from this list. If the dependency tree is cyclic (if
- * it's actually a graph), a {@link RuntimeException} will be thrown.
+ * Although it's called a tree, the dependencies form a directed acyclic graph, since more than one dependency can
+ * depend on the same dependency (a "diamond"). The constructor interns each distinct dependency as a single node of the
+ * graph, and explores it only once, in an iterative depth-first traversal that marks the dependencies on the current
+ * path. A dependency that is reached again while it is still on the path is part of a cycle, and a
+ * {@link RuntimeException} is thrown. Building the graph and checking it for cycles therefore takes O(V + E) time,
+ * however many paths lead to a shared dependency.
+ * </p>
+ *
+ * <p>
+ * The {@link #asDepthFirstList()} method returns the distinct dependencies in the tree in topological order, where each
+ * dependency comes after all of its dependencies, and the root comes last. The {@link #asQueue(Class)} method creates a
+ * {@link DependencyQueue} from this list. The edges of the graph can be followed in either direction with
+ * {@link #dependencies(Dependency)} and {@link #dependents(Dependency)}.
+ * </p>
  *
  * <p><b>Creation</b></p>
  *
@@ -34,10 +50,21 @@ import static digital.fiasco.runtime.dependency.collections.DependencyList.depen
  *     <li>{@link #asQueue(Class)}</li>
  * </ul>
  *
+ * <p><b>Graph</b></p>
+ *
+ * <ul>
+ *     <li>{@link #contains(Dependency)}</li>
+ *     <li>{@link #dependencies(Dependency)}</li>
+ *     <li>{@link #dependents(Dependency)}</li>
+ *     <li>{@link #root()}</li>
+ *     <li>{@link #size()}</li>
+ * </ul>
+ *
  * <p><b>Traversal</b></p>
  *
  * <ul>
  *     <li>{@link #asDepthFirstList()}</li>
+ *     <li>{@link #visit(DependencyTreeVisitor)}</li>
  * </ul>
  *
  * @author Jonathan Locke
@@ -49,9 +76,42 @@ import static digital.fiasco.runtime.dependency.collections.DependencyList.depen
 @TypeQuality(documentation = DOCUMENTED, testing = TESTED, stability = STABLE)
 public class DependencyTree
 {
-    /** The dependencies of this graph in depth-first-order */
+    /** Marks a dependency that is on the current path of the traversal */
+    private static final int ON_PATH = -1;
+
+    /**
+     * A dependency on the path of the traversal, with the index of the next of its dependencies to explore
+     */
+    private static class Step
+    {
+        /** The dependency */
+        private final Dependency dependency;
+
+        /** The dependency's dependencies */
+        private final DependencyList dependencies;
+
+        /** The index of the next dependency to explore */
+        private int next;
+
+        Step(Dependency dependency)
+        {
+            this.dependency = dependency;
+            this.dependencies = dependency.allDependencies();
+        }
+    }
+
+    /** The distinct dependencies of this graph in topological order, with each dependency after its dependencies */
     private final DependencyList depthFirst;
 
+    /** The index of each dependency in the topological order */
+    private final Map<Dependency, Integer> index;
+
+    /** The indexes of the distinct dependencies of each dependency, by index */
+    private final int[][] dependencies;
+
+    /** The indexes of the dependencies that depend on each dependency, by index */
+    private final int[][] dependents;
+
     /** The root dependency for this tree */
     private final Dependency root;
 
@@ -65,17 +125,89 @@ public class DependencyTree
     public DependencyTree(Dependency root)
     {
         this.root = root;
-        this.depthFirst = depthFirst(root, dependencies());
+
+        // Explore the graph depth-first, giving each dependency its index when all of its dependencies have been
+        // explored, which puts the indexes in topological order,
+        var order = DependencyList.dependencies().builder();
+        var index = new HashMap<Dependency, Integer>();
+        var edges = new ArrayList<int[]>();
+        var path = new ArrayDeque<Step>();
+        index.put(root, ON_PATH);
+        path.push(new Step(root));
+        while (!path.isEmpty())
+        {
+            var step = path.peek();
+            if (step.next < step.dependencies.size())
+            {
+                // If the next dependency hasn't been seen, explore it,
+                var next = step.dependencies.get(step.next++);
+                var at = index.get(next);
+                if (at == null)
+                {
+                    index.put(next, ON_PATH);
+                    path.push(new Step(next));
+                }
+                else
+                {
+                    // and if it is still on the path, it depends on itself.
+                    ensure(at != ON_PATH, "The build dependency tree is cyclic: $ depends on $, which depends on it",
+                        step.dependency, next);
+                }
+            }
+            else
+            {
+                // When all dependencies have been explored, give this one the next index,
+                path.pop();
+                index.put(step.dependency, order.size());
+                order.add(step.dependency);
+                var distinct = new LinkedHashSet<Integer>();
+                for (var dependency : step.dependencies)
+                {
+                    distinct.add(index.get(dependency));
+                }
+                edges.add(distinct.stream().mapToInt(Integer::intValue).toArray());
+            }
+        }
+        this.index = index;
+        this.depthFirst = order.build();
+        this.dependencies = edges.toArray(new int[0][]);
+
+        // then reverse the edges to find the dependents of each dependency.
+        var counts = new int[dependencies.length];
+        for (var at : dependencies)
+        {
+            for (var dependency : at)
+            {
+                counts[dependency]++;
+            }
+        }
+        dependents = new int[dependencies.length][];
+        for (var at = 0; at < dependencies.length; at++)
+        {
+            dependents[at] = new int[counts[at]];
+            counts[at] = 0;
+        }
+        for (var at = 0; at < dependencies.length; at++)
+        {
+            for (var dependency : dependencies[at])
+            {
+                dependents[dependency][counts[dependency]++] = at;
+            }
+        }
     }
 
     public DependencyTree(DependencyTree that)
     {
-        this.depthFirst = that.depthFirst.copy();
+        this.depthFirst = that.depthFirst;
+        this.index = that.index;
+        this.dependencies = that.dependencies;
+        this.dependents = that.dependents;
         this.root = that.root;
     }
 
     /**
-     * Returns the dependencies in this tree in depth-first order
+     * Returns the distinct dependencies in this tree in topological order, where each dependency comes after all of its
+     * dependencies, as they are found in a depth-first traversal
      */
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public DependencyList asDepthFirstList()
@@ -89,7 +221,40 @@ public class DependencyTree
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public DependencyQueue asQueue(Class<? extends Dependency> type)
     {
-        return new DependencyQueue(asDepthFirstList().deduplicated(), type);
+        return new DependencyQueue(asDepthFirstList(), type);
+    }
+
+    /**
+     * Returns true if the given dependency is in this tree
+     *
+     * @param dependency The dependency
+     * @return True if the dependency is in the tree
+     */
+    public boolean contains(Dependency dependency)
+    {
+        return index.containsKey(dependency);
+    }
+
+    /**
+     * Returns the distinct dependencies of the given dependency, as they are interned in this tree
+     *
+     * @param dependency The dependency
+     * @return The dependencies, or an empty list if the dependency is not in this tree
+     */
+    public DependencyList dependencies(Dependency dependency)
+    {
+        return nodes(dependencies, dependency);
+    }
+
+    /**
+     * Returns the dependencies in this tree that directly depend on the given dependency
+     *
+     * @param dependency The dependency
+     * @return The dependents, or an empty list if the dependency is not in this tree
+     */
+    public DependencyList dependents(Dependency dependency)
+    {
+        return nodes(dependents, dependency);
     }
 
     /**
@@ -103,7 +268,15 @@ public class DependencyTree
     }
 
     /**
-     * Visits the dependencies in depth-first order, calling the given visitor for each dependency
+     * Returns the number of distinct dependencies in this tree
+     */
+    public int size()
+    {
+        return depthFirst.size();
+    }
+
+    /**
+     * Visits the dependencies in topological order, calling the given visitor for each dependency
      *
      * @param visitor The visitor
      */
@@ -132,29 +305,23 @@ public class DependencyTree
     }
 
     /**
-     * Returns a list of dependencies in this tree in depth-first order
+     * Returns the dependencies at the given edges of the given dependency
      *
-     * @param at The dependency to explore
-     * @param explored The list of dependencies already explored (for cycle detection)
-     * @throws RuntimeException Thrown if a cycle is detected in the given root
+     * @param edges The edges of each dependency, by index
+     * @param dependency The dependency
      */
-    private DependencyList depthFirst(Dependency at, DependencyList explored)
+    private DependencyList nodes(int[][] edges, Dependency dependency)
     {
-        // Check for cycles (which should not be possible in our functional api)
-        ensure(!(at instanceof Builder)
-            || !explored.containsAny(at.builderDependencies().asDependencyList()),
-            "The build dependency tree is cyclic: $ was already explored", at);
-
-        // Add the given dependency as explored.
-        explored = explored.with(at);
-
-        // Go through each child of the root,
-        for (var child : at.allDependencies())
+        var at = index.get(dependency);
+        if (at == null)
         {
-            // and explore the child (in a depth-first traversal)
-            explored = depthFirst(child, explored);
+            return DependencyList.dependencies();
         }
-
-        return explored;
+        var nodes = DependencyList.dependencies().builder();
+        for (var node : edges[at])
+        {
+            nodes.add(depthFirst.get(node));
+        }
+        return nodes.build();
     }
 }
@@ -0,0 +1,384 @@
+package digital.fiasco.runtime.dependency.collections.persistent;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list that shares structure with the lists it was derived from. Elements are held in a trie of 32-way
+ * nodes, with the last (up to) 32 elements in a separate tail array. Adding an element with {@link #with(Object)}
+ * copies only the tail, or the path from the root to the new tail, so it takes O(log<sub>32</sub> n) time and space
+ * instead of the O(n) needed to copy a flat list. Lookup by index also takes O(log<sub>32</sub> n) time, which is at
+ * most 6 steps for any list that fits in memory.
+ *
+ * <p><b>Bulk Construction</b></p>
+ *
+ * <p>
+ * When many elements are added at once, a {@link Builder} from {@link #builder()} fills a private tail array in place,
+ * and only copies a path into the trie once for every 32 elements. The builder never modifies nodes that are shared with
+ * a persistent vector, so it is safe to keep adding to a builder after calling {@link Builder#build()}.
+ * </p>
+ *
+ * <p><b>Creation</b></p>
+ *
+ * <ul>
+ *     <li>{@link #persistentVector()}</li>
+ *     <li>{@link #persistentVector(Iterable)}</li>
+ * </ul>
+ *
+ * <p><b>Functional</b></p>
+ *
+ * <ul>
+ *     <li>{@link #builder()}</li>
+ *     <li>{@link #first(int)}</li>
+ *     <li>{@link #with(Object)}</li>
+ *     <li>{@link #withAll(Iterable)}</li>
+ * </ul>
+ *
+ * @param <T> The element type
+ * @author Jonathan Locke
+ */
+public final class PersistentVector<T> extends AbstractList<T> implements RandomAccess
+{
+    /** The number of bits of an index used at each level of the trie */
+    private static final int BITS = 5;
+
+    /** The number of children of each node */
+    private static final int WIDTH = 1 << BITS;
+
+    /** Mask for the bits of an index used at one level */
+    private static final int MASK = WIDTH - 1;
+
+    /** The empty vector */
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, BITS, new Object[WIDTH], new Object[0]);
+
+    /**
+     * The root and depth of a trie
+     *
+     * @param shift The number of bits to shift an index by to find the child of the root that holds it
+     * @param root The root node
+     */
+    private record Trie(int shift, Object[] root)
+    {
+        /**
+         * Returns a copy of this trie with the given full leaf added after the given number of elements
+         *
+         * @param size The number of elements in the trie and the leaf
+         * @param leaf The full leaf to add
+         */
+        Trie with(int size, Object[] leaf)
+        {
+            // If the root is full, add a level above it,
+            if ((size >>> BITS) > (1 << shift))
+            {
+                var root = new Object[WIDTH];
+                root[0] = this.root;
+                root[1] = path(shift, leaf);
+                return new Trie(shift + BITS, root);
+            }
+
+            // otherwise, copy the path down to the leaf.
+            return new Trie(shift, with(size, shift, this.root, leaf));
+        }
+
+        private static Object[] path(int level, Object[] leaf)
+        {
+            if (level == 0)
+            {
+                return leaf;
+            }
+            var node = new Object[WIDTH];
+            node[0] = path(level - BITS, leaf);
+            return node;
+        }
+
+        private static Object[] with(int size, int level, Object[] parent, Object[] leaf)
+        {
+            var index = ((size - 1) >>> level) & MASK;
+            var node = parent.clone();
+            if (level == BITS)
+            {
+                node[index] = leaf;
+            }
+            else
+            {
+                var child = (Object[]) parent[index];
+                node[index] = child != null
+                    ? with(size, level - BITS, child, leaf)
+                    : path(level - BITS, leaf);
+            }
+            return node;
+        }
+    }
+
+    /**
+     * Builds a {@link PersistentVector} by adding elements in place
+     *
+     * @param <T> The element type
+     */
+    public static final class Builder<T>
+    {
+        /** The number of elements added so far */
+        private int size;
+
+        /** The trie holding all elements but those in the tail */
+        private Trie trie;
+
+        /** The tail, which is owned by this builder */
+        private Object[] tail = new Object[WIDTH];
+
+        /** The number of elements in the tail */
+        private int tailSize;
+
+        private Builder(PersistentVector<T> vector)
+        {
+            size = vector.size;
+            trie = new Trie(vector.shift, vector.root);
+            System.arraycopy(vector.tail, 0, tail, 0, vector.tail.length);
+            tailSize = vector.tail.length;
+        }
+
+        /**
+         * Adds the given element
+         *
+         * @param value The element
+         * @return This builder, for chaining
+         */
+        public Builder<T> add(T value)
+        {
+            // If the tail is full, move it into the trie and start a new one,
+            if (tailSize == WIDTH)
+            {
+                trie = trie.with(size, tail);
+                tail = new Object[WIDTH];
+                tailSize = 0;
+            }
+
+            // then add the value to the tail.
+            tail[tailSize++] = value;
+            size++;
+            return this;
+        }
+
+        /**
+         * Adds the given elements
+         *
+         * @param values The elements
+         * @return This builder, for chaining
+         */
+        public Builder<T> addAll(Iterable<? extends T> values)
+        {
+            for (var value : values)
+            {
+                add(value);
+            }
+            return this;
+        }
+
+        /**
+         * Returns a vector of the elements added so far
+         */
+        public PersistentVector<T> build()
+        {
+            return size == 0
+                ? persistentVector()
+                : new PersistentVector<>(size, trie.shift(), trie.root(), Arrays.copyOf(tail, tailSize));
+        }
+
+        /**
+         * Returns the number of elements added so far
+         */
+        public int size()
+        {
+            return size;
+        }
+    }
+
+    /**
+     * Returns the empty vector
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentVector<T> persistentVector()
+    {
+        return (PersistentVector<T>) EMPTY;
+    }
+
+    /**
+     * Returns a vector of the given elements
+     *
+     * @param values The elements
+     * @return The vector
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentVector<T> persistentVector(Iterable<? extends T> values)
+    {
+        if (values instanceof PersistentVector<?> vector)
+        {
+            return (PersistentVector<T>) vector;
+        }
+        return PersistentVector.<T>persistentVector().builder().addAll(values).build();
+    }
+
+    /** The number of elements */
+    private final int size;
+
+    /** The number of bits to shift an index by to find the child of the root that holds it */
+    private final int shift;
+
+    /** The root of the trie */
+    private final Object[] root;
+
+    /** The last elements, which are not in the trie */
+    private final Object[] tail;
+
+    private PersistentVector(int size, int shift, Object[] root, Object[] tail)
+    {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * Returns a builder that adds elements to the end of this vector
+     */
+    public Builder<T> builder()
+    {
+        return new Builder<>(this);
+    }
+
+    /**
+     * Returns a vector of up to the first given number of elements of this vector
+     *
+     * @param count The maximum number of elements
+     * @return The vector
+     */
+    public PersistentVector<T> first(int count)
+    {
+        if (count >= size)
+        {
+            return this;
+        }
+        var builder = PersistentVector.<T>persistentVector().builder();
+        for (var index = 0; index < count; index++)
+        {
+            builder.add(get(index));
+        }
+        return builder.build();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + size);
+        }
+        return (T) leaf(index)[index & MASK];
+    }
+
+    @Override
+    @NotNull
+    public Iterator<T> iterator()
+    {
+        return new Iterator<>()
+        {
+            private int index;
+
+            private Object[] leaf;
+
+            @Override
+            public boolean hasNext()
+            {
+                return index < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next()
+            {
+                if (index >= size)
+                {
+                    throw new NoSuchElementException();
+                }
+
+                // Find the next leaf only when crossing into it.
+                if ((index & MASK) == 0 || leaf == null)
+                {
+                    leaf = leaf(index);
+                }
+                return (T) leaf[index++ & MASK];
+            }
+        };
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns a vector with the given element added to the end of this one
+     *
+     * @param value The element
+     * @return The new vector
+     */
+    public PersistentVector<T> with(T value)
+    {
+        // If there is room in the tail, copy it with the value added,
+        if (size - tailOffset() < WIDTH)
+        {
+            var tail = Arrays.copyOf(this.tail, this.tail.length + 1);
+            tail[this.tail.length] = value;
+            return new PersistentVector<>(size + 1, shift, root, tail);
+        }
+
+        // otherwise, move the tail into the trie and start a new tail.
+        var trie = new Trie(shift, root).with(size, tail);
+        return new PersistentVector<>(size + 1, trie.shift(), trie.root(), new Object[] { value });
+    }
+
+    /**
+     * Returns a vector with the given elements added to the end of this one
+     *
+     * @param values The elements
+     * @return The new vector
+     */
+    public PersistentVector<T> withAll(Iterable<? extends T> values)
+    {
+        return isEmpty()
+            ? persistentVector(values)
+            : builder().addAll(values).build();
+    }
+
+    /**
+     * Returns the array that holds the element at the given index
+     */
+    private Object[] leaf(int index)
+    {
+        if (index >= tailOffset())
+        {
+            return tail;
+        }
+        var node = root;
+        for (var level = shift; level > 0; level -= BITS)
+        {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    /**
+     * Returns the index of the first element in the tail
+     */
+    private int tailOffset()
+    {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+}
@@ -10,6 +10,7 @@ package digital.fiasco.runtime.librarian;
 import com.telenav.kivakit.component.BaseComponent;
 import com.telenav.kivakit.core.collections.list.ObjectList;
 import com.telenav.kivakit.core.collections.map.ObjectMap;
+import com.telenav.kivakit.core.progress.ProgressReporter;
 import com.telenav.kivakit.core.version.Version;
 import com.telenav.kivakit.interfaces.object.Copyable;
 import digital.fiasco.runtime.dependency.artifact.Artifact;
@@ -22,11 +23,22 @@ import digital.fiasco.runtime.repository.local.cache.FiascoCacheRepository;
 import digital.fiasco.runtime.repository.maven.MavenRepository;
 import digital.fiasco.runtime.repository.remote.RemoteRepository;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static com.telenav.kivakit.core.collections.list.ObjectList.list;
 import static com.telenav.kivakit.core.ensure.Ensure.ensure;
 import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
 import static com.telenav.kivakit.core.progress.reporters.BroadcastingProgressReporter.progressReporter;
 import static com.telenav.kivakit.core.string.Formatter.format;
+import static com.telenav.kivakit.core.thread.Threads.shutdownAndAwaitTermination;
+import static com.telenav.kivakit.core.thread.Threads.threadPool;
 import static digital.fiasco.runtime.build.environment.BuildRepositoriesTrait.MAVEN_CENTRAL;
 import static digital.fiasco.runtime.build.environment.BuildRepositoriesTrait.MAVEN_LOCAL;
 import static digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptorList.descriptors;
@@ -38,6 +50,38 @@ import static digital.fiasco.runtime.dependency.collections.ArtifactList.artifac
  * {@link RemoteRepository} or a remote {@link MavenRepository}, they are added to a download cache, which is first in
  * the search order for artifacts.
  *
+ * <p><b>Search Order</b></p>
+ *
+ * <p>
+ * Repositories are searched in the order they were added. Each repository is only asked for the descriptors that
+ * earlier repositories could not resolve, and the search stops as soon as all descriptors are resolved, so artifacts
+ * found in the local repositories never reach a remote repository. When {@link #withParallelSearch(boolean)} is
+ * enabled, all repositories are searched at the same time instead, and the results are merged in search order, so an
+ * artifact still comes from the first repository that has it. This trades extra queries for less latency when most
+ * artifacts must come from slow repositories.
+ * </p>
+ *
+ * <p><b>Memoized Resolution</b></p>
+ *
+ * <p>
+ * The result of {@link #resolve(Artifact)} is remembered for each descriptor, after any pinned version is applied, and
+ * the artifact's {@link Artifact#exclusions()}, so a dependency that is shared by many artifacts is only resolved once,
+ * however many paths lead to it, while the same dependency with different exclusions is resolved separately. If
+ * another thread is already resolving the same artifact, the caller waits for that thread's result instead of
+ * querying the repositories again. Failed resolutions are not remembered, so they can be retried. A copy of a
+ * librarian, such as one made by {@link #withRepository(Repository)}, starts with nothing remembered, and each build
+ * has its own librarian, so results never leak between builds. The number of lookups that were and were not
+ * remembered is available from {@link #resolutionHits()} and {@link #resolutionMisses()}.
+ * </p>
+ *
+ * <p><b>Cycles</b></p>
+ *
+ * <p>
+ * A thread that would wait for a resolution that is waiting for the thread itself, directly or through other waiting
+ * threads, has found a cycle in the dependency graph. Instead of waiting forever, it fails with an
+ * {@link IllegalStateException}. This is so whether the cycle was followed by one thread or by several.
+ * </p>
+ *
  * <p><b>Finding Libraries</b></p>
  *
  * <ul>
@@ -46,9 +90,17 @@ import static digital.fiasco.runtime.dependency.collections.ArtifactList.artifac
  *         Dependent libraries are resolved in depth-first order.</li>
  *     <li>{@link #withRepository(Repository)} - Adds a repository to look in when resolving libraries</li>
  *     <li>{@link #repositories()} - The list of repositories to search</li>
+ *     <li>{@link #withParallelSearch(boolean)} - Searches all repositories at the same time</li>
  *     <li>{@link #withPinnedVersion(ArtifactDescriptor, Version)} - Pins the given artifact to the specified version</li>
  * </ul>
  *
+ * <p><b>Statistics</b></p>
+ *
+ * <ul>
+ *     <li>{@link #resolutionHits()} - The number of artifacts resolved from memory</li>
+ *     <li>{@link #resolutionMisses()} - The number of artifacts resolved from repositories</li>
+ * </ul>
+ *
  * @author Jonathan Locke
  */
 @SuppressWarnings({ "unused", "UnusedReturnValue" })
@@ -56,16 +108,62 @@ public class RepositorySearchLibrarian extends BaseComponent implements
     Librarian,
     Copyable<RepositorySearchLibrarian>
 {
+    /**
+     * Identifies the resolution of an artifact
+     *
+     * @param descriptor The artifact's descriptor, with any pinned version
+     * @param exclusions The artifact's exclusions, which are applied to all of its dependencies
+     */
+    private record Key(ArtifactDescriptor descriptor, ArtifactDescriptorList exclusions)
+    {
+    }
+
+    /**
+     * The resolution of an artifact, which may still be in progress
+     *
+     * @param owner The thread resolving the artifact
+     * @param result The resolved artifact and its dependencies
+     */
+    private record Resolution(Thread owner, CompletableFuture<ArtifactList> result)
+    {
+    }
+
     /** The repositories that this librarian searches */
     private ObjectList<Repository> repositories = list();
 
     /** A map from group:artifact-id to version */
     private ObjectMap<ArtifactDescriptor, Version> pinnedVersions = new ObjectMap<>();
 
+    /** True if repositories should be searched at the same time */
+    private boolean parallelSearch;
+
+    /** The resolution of each version-resolved artifact descriptor and its exclusions */
+    private final Map<Key, Resolution> resolutions = new ConcurrentHashMap<>();
+
+    /** The resolution each thread is waiting for another thread to finish, guarded by itself */
+    private final Map<Thread, Resolution> waits = new HashMap<>();
+
+    /** The number of artifacts resolved from memory */
+    private final AtomicLong resolutionHits = new AtomicLong();
+
+    /** The number of artifacts resolved from repositories */
+    private final AtomicLong resolutionMisses = new AtomicLong();
+
     public RepositorySearchLibrarian(RepositorySearchLibrarian that)
     {
         this.repositories = that.repositories.copy();
         this.pinnedVersions = that.pinnedVersions.copy();
+        this.parallelSearch = that.parallelSearch;
+    }
+
+    /**
+     * Creates a librarian that searches only the given repositories, in order
+     *
+     * @param repositories The repositories to search
+     */
+    public RepositorySearchLibrarian(ObjectList<Repository> repositories)
+    {
+        this.repositories = repositories.copy();
     }
 
     public RepositorySearchLibrarian()
@@ -92,7 +190,8 @@ public class RepositorySearchLibrarian extends BaseComponent implements
             Librarian
               repositories: $
               pinned versions: $
-            """, repositories, pinnedVersions);
+              parallel search: $
+            """, repositories, pinnedVersions, parallelSearch);
     }
 
     /**
@@ -103,6 +202,22 @@ public class RepositorySearchLibrarian extends BaseComponent implements
         return repositories.copy();
     }
 
+    /**
+     * Returns the number of times {@link #resolve(Artifact)} used the result of an earlier or concurrent resolution
+     */
+    public long resolutionHits()
+    {
+        return resolutionHits.get();
+    }
+
+    /**
+     * Returns the number of times {@link #resolve(Artifact)} had to search the repositories
+     */
+    public long resolutionMisses()
+    {
+        return resolutionMisses.get();
+    }
+
     /**
      * Resolves the given artifact descriptors using this librarian's repositories
      *
@@ -112,23 +227,16 @@ public class RepositorySearchLibrarian extends BaseComponent implements
     @Override
     public ArtifactList resolve(ArtifactDescriptorList descriptors)
     {
-        var artifacts = artifacts();
-
         var progress = progressReporter(this, "dependencies", descriptors.count());
         progress.start("Resolving $", descriptors.count());
 
-        // Go through each repository,
-        for (var repository : repositories())
-        {
-            // and resolve as many descriptors as possible from the repository,
-            var resolved = repository.resolveArtifacts(descriptors);
-
-            // adding the resolved artifacts to the result.
-            artifacts = artifacts.with(resolved);
-            progress.next(resolved.count());
-        }
+        // Search the repositories one after another, or all at once,
+        var artifacts = parallelSearch
+            ? resolveInParallel(descriptors, progress)
+            : resolveInOrder(descriptors, progress);
         progress.end();
 
+        // then check that every descriptor was resolved.
         var resolved = artifacts.asDescriptors();
         for (var at : descriptors)
         {
@@ -140,13 +248,152 @@ public class RepositorySearchLibrarian extends BaseComponent implements
 
     /**
      * Resolves the given artifact in the repositories managed by this librarian. Resolution of dependent artifacts
-     * occurs in depth-first order.
+     * occurs in depth-first order. Each artifact is only resolved once, even when several threads ask for it at the
+     * same time.
      *
      * @param artifact The artifact
      * @return The artifact and all of its dependencies
+     * @throws IllegalStateException Thrown if the artifact can't be resolved, or its dependency graph is cyclic
      */
     @Override
     public ArtifactList resolve(Artifact<?> artifact)
+    {
+        // Claim the resolution of the version-resolved descriptor and exclusions, unless it has already been claimed,
+        var descriptor = resolveArtifactVersion(artifact.descriptor());
+        var key = new Key(descriptor, artifact.exclusions());
+        var resolution = new Resolution(Thread.currentThread(), new CompletableFuture<>());
+        var existing = resolutions.putIfAbsent(key, resolution);
+        if (existing != null)
+        {
+            // in which case, use the result of the thread that claimed it.
+            resolutionHits.incrementAndGet();
+            return await(existing, descriptor);
+        }
+
+        // Otherwise, resolve the artifact, and share the result with any threads waiting for it.
+        resolutionMisses.incrementAndGet();
+        try
+        {
+            var resolved = resolveFromRepositories(artifact, descriptor);
+            resolution.result().complete(resolved);
+            return resolved;
+        }
+        catch (RuntimeException e)
+        {
+            resolutions.remove(key, resolution);
+            resolution.result().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Globally pins the given artifact descriptor (without a version), to the specified version. All artifacts with the
+     * descriptor will be assigned the version.
+     *
+     * @param descriptor The group and artifact (but no version)
+     * @param version The version to enforce for the descriptor
+     */
+    @Override
+    public Librarian withPinnedVersion(ArtifactDescriptor descriptor, Version version)
+    {
+        ensure(descriptor.version() == null);
+
+        return mutated(it -> it.pinnedVersions.put(descriptor, version));
+    }
+
+    /**
+     * Returns a copy of this librarian that searches all of its repositories at the same time, or one after another
+     *
+     * @param parallelSearch True to search repositories at the same time
+     */
+    public RepositorySearchLibrarian withParallelSearch(boolean parallelSearch)
+    {
+        return mutated(it -> it.parallelSearch = parallelSearch);
+    }
+
+    /**
+     * Adds a repository to the search path of the librarian
+     *
+     * @param repository The repository to search
+     */
+    public Librarian withRepository(Repository repository)
+    {
+        return mutated(it -> it.repositories.add(repository));
+    }
+
+    /**
+     * Returns the result of the given resolution, waiting for it if it is still in progress
+     *
+     * @param resolution The resolution
+     * @param descriptor The descriptor being resolved
+     * @return The resolved artifacts
+     * @throws IllegalStateException Thrown if waiting would never end, because the dependency graph is cyclic
+     */
+    private ArtifactList await(Resolution resolution, ArtifactDescriptor descriptor)
+    {
+        var current = Thread.currentThread();
+        synchronized (waits)
+        {
+            // Follow the chain of threads waiting for each other, starting with the owner of the resolution, and if
+            // it leads back to this thread, waiting would never end,
+            for (var waited = resolution;
+                 waited != null && !waited.result().isDone();
+                 waited = waits.get(waited.owner()))
+            {
+                if (waited.owner() == current)
+                {
+                    return illegalState("The artifact dependency graph is cyclic: $ depends on itself", descriptor);
+                }
+            }
+
+            // otherwise, record that this thread is waiting,
+            waits.put(current, resolution);
+        }
+
+        // and wait.
+        try
+        {
+            return join(resolution.result());
+        }
+        finally
+        {
+            synchronized (waits)
+            {
+                waits.remove(current);
+            }
+        }
+    }
+
+    /**
+     * Returns the result of a resolution by another thread, waiting for it if necessary
+     *
+     * @param result The result
+     * @return The resolved artifacts
+     */
+    private ArtifactList join(CompletableFuture<ArtifactList> result)
+    {
+        try
+        {
+            return result.join();
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof RuntimeException cause)
+            {
+                throw cause;
+            }
+            return illegalState(e, "Unable to resolve artifact");
+        }
+    }
+
+    /**
+     * Resolves the given artifact and its dependencies by searching the repositories
+     *
+     * @param artifact The artifact
+     * @param descriptor The artifact's descriptor, with any pinned version
+     * @return The artifact and all of its dependencies
+     */
+    private ArtifactList resolveFromRepositories(Artifact<?> artifact, ArtifactDescriptor descriptor)
     {
         var dependencies = artifacts();
 
@@ -157,7 +404,7 @@ public class RepositorySearchLibrarian extends BaseComponent implements
             for (var resolved : resolve(dependency))
             {
                 // and if it is not excluded by the library,
-                if (resolved != null && artifact.isExcluded(resolved.descriptor()))
+                if (resolved != null && !artifact.isExcluded(resolved.descriptor()))
                 {
                     // add it to the dependencies list.
                     dependencies = dependencies.with(resolved);
@@ -165,56 +412,101 @@ public class RepositorySearchLibrarian extends BaseComponent implements
             }
         }
 
-        // For each repository,
-        var found = false;
+        // then add the artifact itself, from the first repository that has it.
         for (var repository : repositories)
         {
-            // resolve the library's descriptor to an artifact,
-            var descriptor = resolveArtifactVersion(artifact.descriptor());
             var resolved = repository.resolveArtifacts(descriptors(descriptor));
-            if (resolved != null)
+            if (resolved != null && resolved.isNonEmpty())
             {
-                // and if it isn't excluded,
-                if (resolved.first().isExcluded(resolved.first().descriptor()))
-                {
-                    // add it to the dependencies.
-                    dependencies = dependencies.with(resolved.first());
-                    found = true;
-                }
+                return dependencies.with(resolved.first());
             }
         }
 
-        if (!found)
-        {
-            illegalState("Could not resolve: $", artifact);
-        }
-
-        return dependencies;
+        return illegalState("Could not resolve: $", artifact);
     }
 
     /**
-     * Globally pins the given artifact descriptor (without a version), to the specified version. All artifacts with the
-     * descriptor will be assigned the version.
+     * Searches all repositories at the same time for the given descriptors, then merges the results in search order,
+     * so each artifact comes from the first repository that has it
      *
-     * @param descriptor The group and artifact (but no version)
-     * @param version The version to enforce for the descriptor
+     * @param descriptors The descriptors to resolve
+     * @param progress The progress reporter to update
+     * @return The resolved artifacts
      */
-    @Override
-    public Librarian withPinnedVersion(ArtifactDescriptor descriptor, Version version)
+    private ArtifactList resolveInParallel(ArtifactDescriptorList descriptors, ProgressReporter progress)
     {
-        ensure(descriptor.version() == null);
+        // Query every repository on its own thread,
+        var executor = threadPool("RepositorySearch", repositories.count());
+        var searches = new ObjectList<Future<ArtifactList>>();
+        for (var repository : repositories)
+        {
+            searches.add(executor.submit(() -> repository.resolveArtifacts(descriptors)));
+        }
 
-        return mutated(it -> it.pinnedVersions.put(descriptor, version));
+        // and go through the results in search order,
+        var artifacts = artifacts();
+        var unresolved = descriptors;
+        try
+        {
+            for (var search : searches)
+            {
+                // adding the artifacts that no earlier repository resolved.
+                var resolved = search.get();
+                if (resolved != null && !unresolved.isEmpty())
+                {
+                    var remaining = unresolved;
+                    var found = resolved.matching(it -> remaining.contains(it.descriptor()));
+                    artifacts = artifacts.with(found);
+                    unresolved = unresolved.without(found.asDescriptors()::contains);
+                    progress.next(found.count());
+                }
+            }
+        }
+        catch (InterruptedException | ExecutionException e)
+        {
+            return illegalState(e, "Unable to search repositories for: $", descriptors);
+        }
+        finally
+        {
+            shutdownAndAwaitTermination(executor);
+        }
+
+        return artifacts;
     }
 
     /**
-     * Adds a repository to the search path of the librarian
+     * Searches the repositories one after another, asking each only for the descriptors that earlier repositories did
+     * not resolve, and stopping once all descriptors are resolved
      *
-     * @param repository The repository to search
+     * @param descriptors The descriptors to resolve
+     * @param progress The progress reporter to update
+     * @return The resolved artifacts
      */
-    public Librarian withRepository(Repository repository)
+    private ArtifactList resolveInOrder(ArtifactDescriptorList descriptors, ProgressReporter progress)
     {
-        return mutated(it -> it.repositories.add(repository));
+        var artifacts = artifacts();
+        var unresolved = descriptors;
+
+        // Go through each repository until everything is resolved,
+        for (var repository : repositories)
+        {
+            if (unresolved.isEmpty())
+            {
+                break;
+            }
+
+            // resolve as many of the remaining descriptors as possible from the repository,
+            var resolved = repository.resolveArtifacts(unresolved);
+            if (resolved != null)
+            {
+                // adding the resolved artifacts to the result, and leaving the rest for later repositories.
+                artifacts = artifacts.with(resolved);
+                unresolved = unresolved.without(resolved.asDescriptors()::contains);
+                progress.next(resolved.count());
+            }
+        }
+
+        return artifacts;
     }
 
     /**
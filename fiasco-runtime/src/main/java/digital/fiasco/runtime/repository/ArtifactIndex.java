@@ -0,0 +1,310 @@
+package digital.fiasco.runtime.repository;
+
+import com.telenav.kivakit.annotations.code.quality.MethodQuality;
+import com.telenav.kivakit.annotations.code.quality.TypeQuality;
+import com.telenav.kivakit.core.collections.list.ObjectList;
+import com.telenav.kivakit.core.collections.map.ObjectMap;
+import com.telenav.kivakit.core.collections.set.ObjectSet;
+import digital.fiasco.runtime.dependency.artifact.Artifact;
+import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor;
+import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactGroup;
+import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactName;
+import digital.fiasco.runtime.dependency.collections.ArtifactList;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
+import static com.telenav.kivakit.annotations.code.quality.Stability.STABLE;
+import static com.telenav.kivakit.annotations.code.quality.Testing.TESTED;
+import static com.telenav.kivakit.core.ensure.Ensure.ensureNotNull;
+import static digital.fiasco.runtime.dependency.collections.ArtifactList.artifacts;
+
+/**
+ * A multi-level, in-memory index of the artifacts in a {@link BaseRepository}. The index allows both exact and wildcard
+ * {@link ArtifactDescriptor}s to be resolved without scanning every artifact in the repository.
+ *
+ * <p><b>Index Levels</b></p>
+ *
+ * <ul>
+ *     <li>Exact - A hash map from a complete {@link ArtifactDescriptor} to its {@link Artifact}</li>
+ *     <li>Group - {@link ArtifactGroup} to {@link ArtifactName} to artifacts sorted by version</li>
+ *     <li>Type - The artifact type (library or asset) to the descriptors of that type</li>
+ * </ul>
+ *
+ * <p><b>Queries</b></p>
+ *
+ * <p>
+ * A complete descriptor is resolved with a single hash lookup. A descriptor with a group and artifact name but no
+ * version, like "library:com.telenav.kivakit:kivakit-core:", visits only the versions of that artifact. A descriptor
+ * with a version but no artifact name, like ":com.telenav.kivakit::1.8", visits only the versions in the group that
+ * start with "1.8". In all cases, candidates are checked with {@link ArtifactDescriptor#matches(ArtifactDescriptor)},
+ * so the results are the same as a linear scan.
+ * </p>
+ *
+ * <p><b>Updating</b></p>
+ *
+ * <ul>
+ *     <li>{@link #add(Artifact)}</li>
+ *     <li>{@link #clear()}</li>
+ *     <li>{@link #remove(ArtifactDescriptor)}</li>
+ * </ul>
+ *
+ * <p><b>Lookup</b></p>
+ *
+ * <ul>
+ *     <li>{@link #all()}</li>
+ *     <li>{@link #contains(ArtifactDescriptor)}</li>
+ *     <li>{@link #get(ArtifactDescriptor)}</li>
+ *     <li>{@link #matching(ArtifactDescriptor)}</li>
+ *     <li>{@link #size()}</li>
+ * </ul>
+ *
+ * <p>
+ * This class is not thread-safe. {@link BaseRepository} guards access with its read/write lock.
+ * </p>
+ *
+ * @author Jonathan Locke
+ * @see BaseRepository
+ * @see ArtifactDescriptor
+ */
+@SuppressWarnings({ "unused", "rawtypes" })
+@TypeQuality(documentation = DOCUMENTED, testing = TESTED, stability = STABLE)
+public class ArtifactIndex
+{
+    /** Exact descriptor to artifact */
+    private final ObjectMap<ArtifactDescriptor, Artifact<?>> descriptorToArtifact = new ObjectMap<>();
+
+    /** Group to artifact name to artifact version to artifacts with that version (a library and an asset can share one) */
+    private final ObjectMap<ArtifactGroup, ObjectMap<ArtifactName, NavigableMap<String, ObjectSet<Artifact<?>>>>> groupToNames = new ObjectMap<>();
+
+    /** Artifact type to the descriptors of that type */
+    private final ObjectMap<Class<?>, ObjectSet<ArtifactDescriptor>> typeToDescriptors = new ObjectMap<>();
+
+    /**
+     * Adds the given artifact to this index, replacing any artifact with the same descriptor
+     *
+     * @param artifact The artifact to add
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public void add(Artifact<?> artifact)
+    {
+        var descriptor = ensureNotNull(ensureNotNull(artifact).descriptor());
+
+        // Remove any previous artifact with the same descriptor,
+        var previous = descriptorToArtifact.put(descriptor, artifact);
+        if (previous != null)
+        {
+            versions(descriptor).get(versionKey(descriptor)).remove(previous);
+        }
+
+        // then index the artifact by group, name and version,
+        versions(descriptor)
+            .computeIfAbsent(versionKey(descriptor), ignored -> new ObjectSet<>())
+            .add(artifact);
+
+        // and by type.
+        typeToDescriptors
+            .computeIfAbsent(descriptor.type(), ignored -> new ObjectSet<>())
+            .add(descriptor);
+    }
+
+    /**
+     * Returns all artifacts in this index
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public ArtifactList all()
+    {
+        var all = new ObjectList<Artifact>();
+        all.addAll(descriptorToArtifact.values());
+        return artifacts(all);
+    }
+
+    /**
+     * Removes all artifacts from this index
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public void clear()
+    {
+        descriptorToArtifact.clear();
+        groupToNames.clear();
+        typeToDescriptors.clear();
+    }
+
+    /**
+     * Returns true if this index contains an artifact with exactly the given descriptor
+     *
+     * @param descriptor The descriptor
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public boolean contains(ArtifactDescriptor descriptor)
+    {
+        return descriptorToArtifact.containsKey(descriptor);
+    }
+
+    /**
+     * Returns the artifact with exactly the given descriptor, or null if there is none
+     *
+     * @param descriptor The descriptor
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public Artifact<?> get(ArtifactDescriptor descriptor)
+    {
+        return descriptorToArtifact.get(descriptor);
+    }
+
+    /**
+     * Returns all artifacts in this index that are matched by the given (possibly wildcard) descriptor
+     *
+     * @param descriptor The descriptor to match against
+     * @return The matching artifacts
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public ArtifactList matching(ArtifactDescriptor descriptor)
+    {
+        // If the descriptor is complete, we can look up the artifact directly,
+        if (descriptor.isComplete())
+        {
+            var artifact = descriptorToArtifact.get(descriptor);
+            if (artifact != null)
+            {
+                return artifacts(artifact);
+            }
+        }
+
+        var matches = new ObjectList<Artifact>();
+
+        // otherwise, if there's a group, we can restrict the search to that group,
+        if (descriptor.hasGroup())
+        {
+            var names = groupToNames.get(descriptor.group());
+            if (names != null)
+            {
+                // and if there's an artifact name, to that artifact, or if not, to every artifact in the group.
+                if (descriptor.hasArtifact())
+                {
+                    var versions = names.get(descriptor.artifactName());
+                    if (versions != null)
+                    {
+                        addMatches(matches, descriptor, versions);
+                    }
+                }
+                else
+                {
+                    for (var versions : names.values())
+                    {
+                        addMatches(matches, descriptor, versions);
+                    }
+                }
+            }
+        }
+        else if (descriptor.hasType())
+        {
+            // If there's no group, but there is a type, search the artifacts of that type,
+            var descriptors = typeToDescriptors.get(descriptor.type());
+            if (descriptors != null)
+            {
+                for (var at : descriptors)
+                {
+                    addMatches(matches, descriptor, descriptorToArtifact.get(at));
+                }
+            }
+        }
+        else
+        {
+            // and finally, if there's neither a group nor a type, check everything.
+            for (var at : descriptorToArtifact.values())
+            {
+                addMatches(matches, descriptor, at);
+            }
+        }
+
+        return artifacts(matches);
+    }
+
+    /**
+     * Removes the artifact with exactly the given descriptor from this index
+     *
+     * @param descriptor The descriptor
+     * @return The artifact that was removed, or null if there was none
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public Artifact<?> remove(ArtifactDescriptor descriptor)
+    {
+        var removed = descriptorToArtifact.remove(descriptor);
+        if (removed != null)
+        {
+            // Remove the artifact from the group index,
+            var versions = versions(descriptor);
+            var artifacts = versions.get(versionKey(descriptor));
+            artifacts.remove(removed);
+            if (artifacts.isEmpty())
+            {
+                versions.remove(versionKey(descriptor));
+            }
+
+            // and from the type index.
+            typeToDescriptors.get(descriptor.type()).remove(descriptor);
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the number of artifacts in this index
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public int size()
+    {
+        return descriptorToArtifact.size();
+    }
+
+    /**
+     * Adds the given artifact to the list of matches if the given descriptor matches it
+     */
+    private void addMatches(ObjectList<Artifact> matches, ArtifactDescriptor descriptor, Artifact<?> artifact)
+    {
+        if (descriptor.matches(artifact.descriptor()))
+        {
+            matches.add(artifact);
+        }
+    }
+
+    /**
+     * Adds the artifacts in the given version map that match the given descriptor to the list of matches. If the
+     * descriptor has a version, only the versions that start with that version's text are checked.
+     */
+    private void addMatches(ObjectList<Artifact> matches,
+                            ArtifactDescriptor descriptor,
+                            NavigableMap<String, ObjectSet<Artifact<?>>> versions)
+    {
+        var candidates = descriptor.hasVersion()
+            ? versions.subMap(versionKey(descriptor), true, versionKey(descriptor) + Character.MAX_VALUE, true)
+            : versions;
+
+        for (var artifacts : candidates.values())
+        {
+            for (var at : artifacts)
+            {
+                addMatches(matches, descriptor, at);
+            }
+        }
+    }
+
+    /**
+     * Returns the text used to sort the given descriptor's version
+     */
+    private String versionKey(ArtifactDescriptor descriptor)
+    {
+        return descriptor.hasVersion() ? descriptor.version().toString() : "";
+    }
+
+    /**
+     * Returns the sorted map of versions for the group and artifact name of the given descriptor
+     */
+    private NavigableMap<String, ObjectSet<Artifact<?>>> versions(ArtifactDescriptor descriptor)
+    {
+        return groupToNames
+            .computeIfAbsent(descriptor.group(), ignored -> new ObjectMap<>())
+            .computeIfAbsent(descriptor.artifactName(), ignored -> new TreeMap<>());
+    }
+}
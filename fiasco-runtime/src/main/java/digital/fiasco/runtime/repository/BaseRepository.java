@@ -3,9 +3,9 @@ package digital.fiasco.runtime.repository;
 import com.google.gson.annotations.Expose;
 import com.telenav.kivakit.annotations.code.quality.MethodQuality;
 import com.telenav.kivakit.component.BaseComponent;
-import com.telenav.kivakit.core.collections.map.ObjectMap;
 import com.telenav.kivakit.core.string.FormatProperty;
 import com.telenav.kivakit.core.string.ObjectFormatter;
+import com.telenav.kivakit.core.thread.locks.Lock;
 import com.telenav.kivakit.core.thread.locks.ReadWriteLock;
 import digital.fiasco.runtime.dependency.artifact.Artifact;
 import digital.fiasco.runtime.dependency.artifact.content.ArtifactContent;
@@ -25,6 +25,7 @@ import java.util.Objects;
 import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTATION_NOT_NEEDED;
 import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
 import static com.telenav.kivakit.annotations.code.quality.Testing.TESTED;
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
 import static com.telenav.kivakit.core.ensure.Ensure.ensureNotNull;
 import static digital.fiasco.runtime.dependency.collections.ArtifactList.artifacts;
 
@@ -42,8 +43,8 @@ import static digital.fiasco.runtime.dependency.collections.ArtifactList.artifac
  *
  * <p>
  * {@link FiascoUserRepository} is used to store artifacts and metadata on the local filesystem. Artifact
- * metadata is stored in JSON format in an append-only text file called <i>artifacts.txt</i>, which allows
- * it to be searched with grep or viewed in a text editor. The artifact content attachments are stored
+ * metadata is stored in JSON format in an append-only, memory-mapped binary file called <i>artifacts.binary</i>,
+ * which allows a repository to be opened quickly, no matter how large it is. The artifact content attachments are stored
  * on the filesystem in a hierarchical format similar to a Maven repository.
  * </p>
  *
@@ -59,14 +60,14 @@ import static digital.fiasco.runtime.dependency.collections.ArtifactList.artifac
  * <p>
  * {@link FiascoCacheRepository} is used to store artifacts and their metadata in a single file to allow
  * high-performance, random access. As with a {@link FiascoUserRepository}, metadata is stored in a single append-only
- * text file, but artifact content attachments are stored end-to-end in a single file, <i>attachments.binary</i>.
+ * binary file, but artifact content attachments are stored end-to-end in a single file, <i>attachments.binary</i>.
  * </p>
  *
  * <p>
  * An instance of {@link FiascoCacheRepository} is used as an artifact cache to avoid unnecessary downloads when a user wipes
  * out their {@link FiascoUserRepository}, causing it to repopulate. Instead of repopulating from Maven Central or another
  * remote repository, the artifacts in this repository can be used since artifacts and their metadata are never altered,
- * only appended to their respective <i>artifacts.txt</i> and <i>artifact-content.binary</i>files. Because remote
+ * only appended to their respective <i>artifacts.binary</i> and <i>artifact-content.binary</i>files. Because remote
  * artifacts are guaranteed by Maven Central (and other remote repositories) to be immutable, it should rarely be
  * necessary to remove a download cache repository.
  * </p>
@@ -83,6 +84,27 @@ import static digital.fiasco.runtime.dependency.collections.ArtifactList.artifac
  * Internally, this repository uses {@link FiascoClient} to communicate with the server.
  * </p>
  *
+ * <p><b>Exact Lookups</b></p>
+ *
+ * <p>
+ * The artifact index holds every artifact in the repository, so loading it takes time in proportion to the size of the
+ * repository. A repository that can find an artifact by its complete descriptor without the index, such as one with a
+ * descriptor index on disk, overrides {@link #isIndexedOnDisk()} and {@link #artifact(ArtifactDescriptor)}. Resolving
+ * complete descriptors, and checking whether the repository contains an artifact, then never loads the index. It is
+ * only loaded when a wildcard descriptor is resolved or all artifacts are listed, and until then, adding and removing
+ * artifacts doesn't change it, since it will be loaded from the repository's metadata when it is needed.
+ * </p>
+ *
+ * <p><b>Locking</b></p>
+ *
+ * <p>
+ * The artifact index is guarded by a read/write lock, which is only held while the index is searched or changed.
+ * Installing an artifact holds one of a set of striped locks, chosen by the artifact's descriptor (see
+ * {@link #installLock(ArtifactDescriptor)}), while its content is saved. The write lock is only taken to publish the
+ * artifact's metadata, so installs of unrelated artifacts run in parallel, and readers never wait for content to be
+ * copied.
+ * </p>
+ *
  * <p><b>Properties</b></p>
  *
  * <ul>
@@ -120,12 +142,18 @@ public abstract class BaseRepository extends BaseComponent implements Repository
     @FormatProperty
     private final URI uri;
 
-    /** The cached artifact entries */
-    private transient ObjectMap<ArtifactDescriptor, Artifact<?>> descriptorToArtifact;
+    /** Index of the artifacts in this repository, loaded lazily by {@link #loadAllArtifactMetadata()} */
+    private transient volatile ArtifactIndex index;
+
+    /** The index while it is being loaded by {@link #loadAllArtifactMetadata()} */
+    private transient ArtifactIndex loadingIndex;
 
     /** Cache lock (filesystem locking not yet supported) */
     private transient final ReadWriteLock lock = new ReadWriteLock();
 
+    /** Locks that serialize installation of each artifact, without serializing installation of unrelated artifacts */
+    private transient final StripedLock installLocks = new StripedLock(64);
+
     /**
      * Creates a maven repository
      */
@@ -141,7 +169,14 @@ public abstract class BaseRepository extends BaseComponent implements Repository
     @Override
     public BaseRepository clear()
     {
-        lock().write(() -> descriptorToArtifact = null);
+        lock().write(() ->
+        {
+            // If the index has been loaded, clear it (if it hasn't, it will be loaded when it is first used).
+            if (index != null)
+            {
+                index.clear();
+            }
+        });
         return this;
     }
 
@@ -154,7 +189,7 @@ public abstract class BaseRepository extends BaseComponent implements Repository
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public boolean contains(Artifact<?> artifact)
     {
-        return lock().read(() -> descriptorToArtifact().containsValue(artifact));
+        return lock().read(() -> artifact(artifact.descriptor()) != null);
     }
 
     /**
@@ -207,9 +242,64 @@ public abstract class BaseRepository extends BaseComponent implements Repository
         return uri;
     }
 
+    /**
+     * Adds the given artifact to the index for this repository. Wildcard lookups of the artifact by group, name,
+     * version and type are kept up to date as artifacts are added.
+     *
+     * @param descriptor The artifact's descriptor
+     * @param artifact The artifact
+     */
     protected void add(ArtifactDescriptor descriptor, Artifact<?> artifact)
     {
-        descriptorToArtifact().put(ensureNotNull(descriptor), ensureNotNull(artifact));
+        ensure(ensureNotNull(descriptor).equals(ensureNotNull(artifact).descriptor()),
+            "Descriptor $ does not match artifact $", descriptor, artifact);
+        var index = loadedIndex();
+        if (index != null)
+        {
+            index.add(artifact);
+        }
+    }
+
+    /**
+     * Returns all artifacts in this repository
+     */
+    protected ArtifactList allArtifacts()
+    {
+        return lock().read(() -> index().all());
+    }
+
+    /**
+     * Returns the artifact with the given complete descriptor, or null if this repository doesn't have it. By default,
+     * the artifact is found in the index, which is loaded if necessary.
+     *
+     * @param descriptor The complete descriptor
+     * @return The artifact, or null if there is none
+     */
+    protected Artifact<?> artifact(ArtifactDescriptor descriptor)
+    {
+        return lock().read(() -> index().get(descriptor));
+    }
+
+    /**
+     * Returns the lock that must be held while the artifact with the given descriptor is installed. Installations of
+     * the same artifact are serialized, so its content is only saved once, while unrelated artifacts can be installed in
+     * parallel.
+     *
+     * @param descriptor The descriptor of the artifact being installed
+     * @return The lock
+     */
+    protected Lock installLock(ArtifactDescriptor descriptor)
+    {
+        return installLocks.lock(descriptor);
+    }
+
+    /**
+     * Returns true if this repository can find artifacts by complete descriptor with
+     * {@link #artifact(ArtifactDescriptor)} without loading the index
+     */
+    protected boolean isIndexedOnDisk()
+    {
+        return false;
     }
 
     protected abstract void loadAllArtifactMetadata();
@@ -222,42 +312,115 @@ public abstract class BaseRepository extends BaseComponent implements Repository
         return lock;
     }
 
+    /**
+     * Removes the artifact with the given descriptor from the index for this repository
+     *
+     * @param descriptor The artifact's descriptor
+     */
+    protected void remove(ArtifactDescriptor descriptor)
+    {
+        ensureNotNull(descriptor);
+        var index = loadedIndex();
+        if (index != null)
+        {
+            index.remove(descriptor);
+        }
+    }
+
     protected ArtifactList resolve(ArtifactDescriptorList descriptors)
     {
         return lock().read(() ->
         {
-            var resolved = artifacts();
+            var resolved = artifacts().builder();
             for (var descriptor : descriptors)
             {
-                resolved = resolved.with(matching(descriptor));
+                // Look up complete descriptors directly, and search the index for wildcards.
+                if (descriptor.isComplete())
+                {
+                    var artifact = artifact(descriptor);
+                    if (artifact != null)
+                    {
+                        resolved.add(artifact);
+                    }
+                }
+                else
+                {
+                    resolved.addAll(matching(descriptor));
+                }
             }
-            return resolved;
+            return resolved.build();
         });
     }
 
-    private synchronized ObjectMap<ArtifactDescriptor, Artifact<?>> descriptorToArtifact()
+    /**
+     * Returns the artifact index for this repository, loading artifact metadata if it has not yet been loaded. Once the
+     * index is loaded, this method doesn't synchronize, so readers don't contend with each other.
+     */
+    private ArtifactIndex index()
     {
-        if (descriptorToArtifact == null)
+        var index = this.index;
+        if (index == null)
         {
-            descriptorToArtifact = new ObjectMap<>();
-            loadAllArtifactMetadata();
+            synchronized (this)
+            {
+                // If this thread is loading the index, return the partially loaded index to it,
+                if (loadingIndex != null)
+                {
+                    return loadingIndex;
+                }
+
+                // otherwise, if no other thread loaded the index while we waited, load it,
+                if (this.index == null)
+                {
+                    loadingIndex = new ArtifactIndex();
+                    try
+                    {
+                        loadAllArtifactMetadata();
+                        this.index = loadingIndex;
+                    }
+                    finally
+                    {
+                        loadingIndex = null;
+                    }
+                }
+
+                // and return the loaded index.
+                index = this.index;
+            }
         }
-        return descriptorToArtifact;
+        return index;
     }
 
-    private ArtifactList matching(ArtifactDescriptor descriptor)
+    /**
+     * Returns the index, if it has been loaded or is being loaded by this thread. For a repository that is indexed on
+     * disk, returns null if the index hasn't been loaded, rather than loading it. If another thread is loading the
+     * index, this waits for it, so a change made while the index was loading isn't lost.
+     */
+    private ArtifactIndex loadedIndex()
     {
-        return lock().read(() ->
+        if (!isIndexedOnDisk())
         {
-            var matches = artifacts();
-            for (var at : descriptorToArtifact().values())
+            return index();
+        }
+        var index = this.index;
+        if (index == null)
+        {
+            synchronized (this)
             {
-                if (descriptor.matches(at.descriptor()))
-                {
-                    matches = matches.with(at);
-                }
+                index = loadingIndex != null ? loadingIndex : this.index;
             }
-            return matches;
-        });
+        }
+        return index;
+    }
+
+    /**
+     * Returns the artifacts in this repository that are matched by the given descriptor
+     *
+     * @param descriptor The (possibly wildcard) descriptor
+     * @return The matching artifacts
+     */
+    private ArtifactList matching(ArtifactDescriptor descriptor)
+    {
+        return lock().read(() -> index().matching(descriptor));
     }
 }
@@ -0,0 +1,148 @@
+package digital.fiasco.runtime.repository;
+
+import com.telenav.kivakit.core.value.count.Bytes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.Selector;
+import java.nio.channels.WritableByteChannel;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+
+/**
+ * A {@link RepositoryContentReader} that can also read content directly from a range of a file. When a repository
+ * stores content in files, it passes the file channel to {@link #read(FileChannel, long, Bytes)} instead of opening an
+ * input stream, so the reader can move the bytes with {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+ * On Linux, this is done by the kernel (with sendfile or copy_file_range), so the content is never copied onto the
+ * heap.
+ *
+ * <p>
+ * The target channel may be a non-blocking socket channel. When it can't accept more bytes, the reader waits for it to
+ * become writable, instead of spinning or failing.
+ * </p>
+ *
+ * <p><b>Creation</b></p>
+ *
+ * <ul>
+ *     <li>{@link #transferringContentReader(WritableByteChannel)} - Moves content to a file or socket channel</li>
+ * </ul>
+ *
+ * @author Jonathan Locke
+ */
+public interface ChannelContentReader extends RepositoryContentReader
+{
+    /**
+     * Returns a content reader that moves content to the given channel. Content in files is transferred directly.
+     * Content that arrives as a stream is copied through a direct buffer.
+     *
+     * @param target The channel to write to, like a {@link FileChannel} or a socket channel
+     * @return The content reader
+     */
+    static ChannelContentReader transferringContentReader(WritableByteChannel target)
+    {
+        return new ChannelContentReader()
+        {
+            @Override
+            public void read(FileChannel channel, long position, Bytes length)
+            {
+                transfer(channel, position, length.asBytes(), target);
+            }
+
+            @Override
+            public void read(InputStream in, Bytes length)
+            {
+                try
+                {
+                    var source = Channels.newChannel(in);
+                    var buffer = ByteBuffer.allocateDirect(64 * 1024);
+                    for (var remaining = length.asBytes(); remaining > 0; )
+                    {
+                        buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                        var read = source.read(buffer);
+                        ensure(read >= 0, "Content ended $ bytes early", remaining);
+                        remaining -= read;
+                        buffer.flip();
+                        while (buffer.hasRemaining())
+                        {
+                            if (target.write(buffer) == 0)
+                            {
+                                awaitWritable(target);
+                            }
+                        }
+                    }
+                }
+                catch (IOException e)
+                {
+                    illegalState(e, "Unable to copy $ of content", length);
+                }
+            }
+        };
+    }
+
+    /**
+     * Transfers the given range of the given file channel to the given target channel
+     *
+     * @param channel The channel to read from
+     * @param position The position of the content in the channel
+     * @param length The length of the content
+     * @param target The channel to write to
+     * @throws IllegalStateException Thrown if the content cannot be transferred
+     */
+    static void transfer(FileChannel channel, long position, long length, WritableByteChannel target)
+    {
+        try
+        {
+            // Transfer until all bytes have moved, since a single transfer can move fewer than requested.
+            for (var transferred = 0L; transferred < length; )
+            {
+                var count = channel.transferTo(position + transferred, length - transferred, target);
+                if (count == 0)
+                {
+                    // If nothing moved, either the content ended early, or a non-blocking target is full.
+                    ensure(position + transferred < channel.size(), "Content ended $ bytes early",
+                        length - transferred);
+                    awaitWritable(target);
+                }
+                transferred += count;
+            }
+        }
+        catch (IOException e)
+        {
+            illegalState(e, "Unable to transfer $ bytes of content", length);
+        }
+    }
+
+    /**
+     * Waits for the given non-blocking channel to become writable
+     *
+     * @param target The channel
+     * @throws IllegalStateException Thrown if the channel is blocking, since a blocking channel that accepts no bytes
+     * will never accept more
+     */
+    private static void awaitWritable(WritableByteChannel target) throws IOException
+    {
+        ensure(target instanceof SelectableChannel selectable && !selectable.isBlocking(),
+            "Target channel accepted no bytes: $", target);
+        try (var selector = Selector.open())
+        {
+            ((SelectableChannel) target).register(selector, OP_WRITE);
+            selector.select();
+        }
+    }
+
+    /**
+     * Callback method to read the given range of a file. The reader must not close the channel or change its
+     * position.
+     *
+     * @param channel The file channel holding the content
+     * @param position The position of the content in the file
+     * @param length The length of the content
+     */
+    void read(FileChannel channel, long position, Bytes length);
+}
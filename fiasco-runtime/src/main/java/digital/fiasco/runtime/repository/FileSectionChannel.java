@@ -0,0 +1,144 @@
+package digital.fiasco.runtime.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * A read-only {@link SeekableByteChannel} over a section of a file. Positions are relative to the start of the section,
+ * and the channel ends at the end of the section. Reads are positional, so the underlying file channel is never moved.
+ *
+ * @author Jonathan Locke
+ * @see RandomAccessContent
+ */
+public class FileSectionChannel implements SeekableByteChannel
+{
+    /**
+     * Opens a channel over the given section of the given file
+     *
+     * @param file The file
+     * @param start The position of the section in the file
+     * @param length The length of the section
+     * @return The channel, which the caller must close
+     * @throws IOException Thrown if the file cannot be opened
+     */
+    public static FileSectionChannel fileSectionChannel(Path file, long start, long length) throws IOException
+    {
+        return new FileSectionChannel(FileChannel.open(file, READ), start, length);
+    }
+
+    /** The file */
+    private final FileChannel channel;
+
+    /** The position of the section in the file */
+    private final long start;
+
+    /** The length of the section */
+    private final long length;
+
+    /** The position in the section */
+    private long position;
+
+    protected FileSectionChannel(FileChannel channel, long start, long length)
+    {
+        ensure(start >= 0 && length >= 0);
+        this.channel = channel;
+        this.start = start;
+        this.length = length;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return channel.isOpen();
+    }
+
+    @Override
+    public long position() throws IOException
+    {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long position) throws IOException
+    {
+        ensureOpen();
+        ensure(position >= 0, "Negative position: $", position);
+        this.position = position;
+        return this;
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException
+    {
+        ensureOpen();
+        var remaining = length - position;
+        if (remaining <= 0)
+        {
+            return -1;
+        }
+
+        // Limit the read to the end of the section,
+        var limit = buffer.limit();
+        if (buffer.remaining() > remaining)
+        {
+            buffer.limit(buffer.position() + (int) remaining);
+        }
+
+        // and read from the file without moving its position.
+        try
+        {
+            var read = channel.read(buffer, start + position);
+            if (read > 0)
+            {
+                position += read;
+            }
+            return read;
+        }
+        finally
+        {
+            buffer.limit(limit);
+        }
+    }
+
+    @Override
+    public long size() throws IOException
+    {
+        ensureOpen();
+        return length;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size)
+    {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public int write(ByteBuffer source)
+    {
+        throw new NonWritableChannelException();
+    }
+
+    private void ensureOpen() throws ClosedChannelException
+    {
+        if (!channel.isOpen())
+        {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package digital.fiasco.runtime.repository;
+
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A content resource stored uncompressed in a file, so any part of it can be read without reading what comes before
+ * it. This allows a single entry of an exploded JAR to be read straight from a repository's content file.
+ *
+ * @author Jonathan Locke
+ * @see FileSectionChannel
+ */
+public interface RandomAccessContent
+{
+    /**
+     * Opens a read-only channel over the given part of this content
+     *
+     * @param offset The offset of the part, relative to the start of this content
+     * @param length The length of the part
+     * @return The channel, which the caller must close
+     * @throws IllegalStateException Thrown if the part is not within this content, or cannot be opened
+     */
+    SeekableByteChannel openSection(long offset, long length);
+}
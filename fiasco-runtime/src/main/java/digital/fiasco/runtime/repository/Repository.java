@@ -36,8 +36,8 @@ import static digital.fiasco.runtime.repository.RepositoryContentReader.nullCont
  *
  * <p>
  * {@link FiascoUserRepository} is used to store artifacts and metadata on the local filesystem. Artifact
- * metadata is stored in JSON format in an append-only text file called <i>artifacts.txt</i>, which allows
- * it to be searched with grep or viewed in a text editor. The artifact content attachments are stored
+ * metadata is stored in JSON format in an append-only, memory-mapped binary file called <i>artifacts.binary</i>,
+ * which allows a repository to be opened quickly, no matter how large it is. The artifact content attachments are stored
  * on the filesystem in a hierarchical format similar to a Maven repository.
  * </p>
  *
@@ -53,14 +53,14 @@ import static digital.fiasco.runtime.repository.RepositoryContentReader.nullCont
  * <p>
  * {@link FiascoCacheRepository} is used to store artifacts and their metadata in a single file to allow
  * high-performance, random access. As with a {@link FiascoUserRepository}, metadata is stored in a single append-only
- * text file, but artifact content attachments are stored end-to-end in a single file, <i>attachments.binary</i>.
+ * binary file, but artifact content attachments are stored end-to-end in a single file, <i>attachments.binary</i>.
  * </p>
  *
  * <p>
  * An instance of {@link FiascoCacheRepository} is used as an artifact cache to avoid unnecessary downloads when a user wipes
  * out their {@link FiascoUserRepository}, causing it to repopulate. Instead of repopulating from Maven Central or another
  * remote repository, the artifacts in this repository can be used since artifacts and their metadata are never altered,
- * only appended to their respective <i>artifacts.txt</i> and <i>artifact-content.binary</i>files. Because remote
+ * only appended to their respective <i>artifacts.binary</i> and <i>artifact-content.binary</i>files. Because remote
  * artifacts are guaranteed by Maven Central (and other remote repositories) to be immutable, it should rarely be
  * necessary to remove a download cache repository.
  * </p>
@@ -0,0 +1,46 @@
+package digital.fiasco.runtime.repository;
+
+import com.telenav.kivakit.core.thread.locks.Lock;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+
+/**
+ * A fixed set of {@link Lock}s, selected by the hash code of a key. Threads working on the same key always share a
+ * lock, while threads working on different keys usually do not, so unrelated work can proceed in parallel without
+ * keeping a lock for every key.
+ *
+ * @author Jonathan Locke
+ * @see BaseRepository#installLock(digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor)
+ */
+public class StripedLock
+{
+    /** The locks */
+    private final Lock[] stripes;
+
+    /**
+     * @param stripes The number of locks, which must be a power of two
+     */
+    public StripedLock(int stripes)
+    {
+        ensure(stripes > 0 && Integer.bitCount(stripes) == 1, "Stripes must be a power of two: $", stripes);
+        this.stripes = new Lock[stripes];
+        for (var at = 0; at < stripes; at++)
+        {
+            this.stripes[at] = new Lock();
+        }
+    }
+
+    /**
+     * Returns the lock for the given key
+     *
+     * @param key The key
+     * @return The lock
+     */
+    public Lock lock(Object key)
+    {
+        // Spread the high bits of the hash code into the low bits that select the stripe.
+        var hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return stripes[hash & (stripes.length - 1)];
+    }
+}
@@ -0,0 +1,381 @@
+package digital.fiasco.runtime.repository.local.cache;
+
+import com.telenav.kivakit.annotations.code.quality.MethodQuality;
+import com.telenav.kivakit.annotations.code.quality.TypeQuality;
+import com.telenav.kivakit.component.BaseComponent;
+import com.telenav.kivakit.core.collections.map.ObjectMap;
+import com.telenav.kivakit.filesystem.Folder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
+import static com.telenav.kivakit.annotations.code.quality.Stability.STABILITY_UNDETERMINED;
+import static com.telenav.kivakit.annotations.code.quality.Testing.TESTED;
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * An index from the SHA-256 hash of a piece of content to the {@link Blob} in the {@link ContentLog} that holds it. It
+ * allows {@link FiascoCacheRepository} to store identical content only once, no matter how many artifacts refer to it.
+ *
+ * <p><b>File Format</b></p>
+ *
+ * <p>
+ * The index is stored in <i>[name].blobs</i> as fixed-size records: the 32 byte SHA-256 hash, followed by the logical
+ * offset and size of the blob in the content log. Records are appended as blobs are added, and the whole file is
+ * replaced atomically by {@link #replaceAll(Map)} when the content log is compacted. A partial record at the end of the
+ * file (from a process that was killed) is ignored. The index is only a hint used to avoid storing content twice, so
+ * it is not forced to disk. If an entry is lost, the content is just stored again.
+ * </p>
+ *
+ * <p><b>Access</b></p>
+ *
+ * <ul>
+ *     <li>{@link #add(String, Blob)}</li>
+ *     <li>{@link #blob(String)}</li>
+ *     <li>{@link #replaceAll(Map)}</li>
+ *     <li>{@link #size()}</li>
+ * </ul>
+ *
+ * <p><b>Hashing</b></p>
+ *
+ * <ul>
+ *     <li>{@link #hex(MessageDigest)}</li>
+ *     <li>{@link #normalizedSha256(String)}</li>
+ *     <li>{@link #sha256(InputStream)}</li>
+ *     <li>{@link #sha256Digest()}</li>
+ * </ul>
+ *
+ * <p><b>Lifecycle</b></p>
+ *
+ * <ul>
+ *     <li>{@link #close()}</li>
+ *     <li>{@link #delete()}</li>
+ * </ul>
+ *
+ * @author Jonathan Locke
+ * @see FiascoCacheRepository
+ */
+@SuppressWarnings("unused")
+@TypeQuality(documentation = DOCUMENTED, testing = TESTED, stability = STABILITY_UNDETERMINED)
+public class ContentBlobIndex extends BaseComponent
+{
+    /**
+     * The location of a unique piece of content in the content log
+     *
+     * @param offset The logical offset of the content
+     * @param size The size of the content
+     */
+    public record Blob(long offset, long size)
+    {
+    }
+
+    /** The size of a SHA-256 hash */
+    private static final int HASH_SIZE = 32;
+
+    /** The size of each record (hash, offset and size) */
+    private static final int RECORD_SIZE = HASH_SIZE + Long.BYTES * 2;
+
+    /**
+     * Completes the given digest, returning its hash
+     *
+     * @param digest The digest
+     * @return The hash as a lowercase hexadecimal string
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public static String hex(MessageDigest digest)
+    {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Returns the SHA-256 hash in the given signature, as a lowercase hexadecimal string. Signature files published
+     * alongside artifacts are often followed by whitespace and the name of the file that was signed, and may be in
+     * uppercase, so the hash is taken from the first token.
+     *
+     * @param signature The signature text, or null
+     * @return The hash, or null if there is no signature, or it is not a SHA-256 hash
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public static String normalizedSha256(String signature)
+    {
+        if (signature == null)
+        {
+            return null;
+        }
+        var tokens = signature.strip().split("\\s+", 2);
+        var hash = tokens[0].toLowerCase(Locale.ROOT);
+        if (hash.length() != HASH_SIZE * 2 || !hash.chars().allMatch(HexFormat::isHexDigit))
+        {
+            return null;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the SHA-256 hash of the given stream, reading it to the end and closing it
+     *
+     * @param in The stream
+     * @return The hash as a lowercase hexadecimal string
+     * @throws IllegalStateException Thrown if the stream cannot be read
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public static String sha256(InputStream in)
+    {
+        try (var digested = new DigestInputStream(in, sha256Digest()))
+        {
+            digested.transferTo(OutputStream.nullOutputStream());
+            return hex(digested.getMessageDigest());
+        }
+        catch (IOException e)
+        {
+            return illegalState(e, "Unable to compute SHA-256 hash");
+        }
+    }
+
+    /**
+     * Returns a new SHA-256 message digest
+     *
+     * @throws IllegalStateException Thrown if the platform doesn't support SHA-256
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public static MessageDigest sha256Digest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            return illegalState(e, "SHA-256 is not available");
+        }
+    }
+
+    /** The index file */
+    private final Path path;
+
+    /** Hash to blob */
+    private final ObjectMap<String, Blob> blobs = new ObjectMap<>();
+
+    /** The index file, open for appending, or null if the index is not open */
+    private FileChannel channel;
+
+    /**
+     * Creates a blob index
+     *
+     * @param folder The folder holding the index
+     * @param name The name of the index, used to name its file
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public ContentBlobIndex(Folder folder, String name)
+    {
+        this.path = Path.of(folder.asUri()).resolve(name + ".blobs");
+    }
+
+    /**
+     * Adds the given blob to this index
+     *
+     * @param sha256 The SHA-256 hash of the blob's content
+     * @param blob The blob
+     * @throws IllegalStateException Thrown if the blob cannot be written to the index file
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public synchronized void add(String sha256, Blob blob)
+    {
+        open();
+        try
+        {
+            write(channel, sha256, blob);
+            blobs.put(sha256, blob);
+        }
+        catch (IOException e)
+        {
+            illegalState(e, "Unable to add blob $ to: $", sha256, path);
+        }
+    }
+
+    /**
+     * Returns the blob with the given hash, or null if there is none
+     *
+     * @param sha256 The SHA-256 hash of the content
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public synchronized Blob blob(String sha256)
+    {
+        open();
+        return sha256 == null ? null : blobs.get(sha256);
+    }
+
+    /**
+     * Closes this index. It will be re-opened if it is used again.
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public synchronized void close()
+    {
+        try
+        {
+            if (channel != null)
+            {
+                channel.close();
+            }
+        }
+        catch (IOException e)
+        {
+            problem(e, "Unable to close blob index: $", path);
+        }
+        finally
+        {
+            channel = null;
+            blobs.clear();
+        }
+    }
+
+    /**
+     * Closes this index and deletes its file
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public synchronized void delete()
+    {
+        close();
+        try
+        {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException e)
+        {
+            illegalState(e, "Unable to delete blob index: $", path);
+        }
+    }
+
+    /**
+     * Replaces all blobs in this index with the given blobs, atomically replacing the index file
+     *
+     * @param blobs The new blobs, by hash
+     * @throws IllegalStateException Thrown if the index file cannot be replaced
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public synchronized void replaceAll(Map<String, Blob> blobs)
+    {
+        close();
+
+        // Write the blobs to a temporary file,
+        var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (var out = FileChannel.open(temporary, CREATE, WRITE, TRUNCATE_EXISTING))
+        {
+            for (var entry : blobs.entrySet())
+            {
+                write(out, entry.getKey(), entry.getValue());
+            }
+            out.force(false);
+        }
+        catch (IOException e)
+        {
+            illegalState(e, "Unable to write blob index: $", temporary);
+        }
+
+        // then move it into place.
+        try
+        {
+            Files.move(temporary, path, REPLACE_EXISTING, ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            illegalState(e, "Unable to replace blob index: $", path);
+        }
+    }
+
+    /**
+     * Returns the number of blobs in this index
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public synchronized int size()
+    {
+        open();
+        return blobs.size();
+    }
+
+    /**
+     * Opens the index file, reading all of its blobs into memory
+     */
+    private void open()
+    {
+        if (channel == null)
+        {
+            try
+            {
+                Files.createDirectories(path.getParent());
+
+                // Read every complete record,
+                if (Files.exists(path))
+                {
+                    try (var in = FileChannel.open(path, READ))
+                    {
+                        var count = in.size() / RECORD_SIZE;
+                        var buffer = ByteBuffer.allocate((int) (count * RECORD_SIZE));
+                        while (buffer.hasRemaining() && in.read(buffer) >= 0)
+                        {
+                        }
+                        buffer.flip();
+
+                        var hash = new byte[HASH_SIZE];
+                        for (var at = 0; at < count; at++)
+                        {
+                            buffer.get(hash);
+                            blobs.put(HexFormat.of().formatHex(hash), new Blob(buffer.getLong(), buffer.getLong()));
+                        }
+
+                        // and drop any partial record at the end.
+                        if (in.size() > count * RECORD_SIZE)
+                        {
+                            try (var truncate = FileChannel.open(path, WRITE))
+                            {
+                                truncate.truncate(count * RECORD_SIZE);
+                            }
+                        }
+                    }
+                }
+
+                channel = FileChannel.open(path, CREATE, WRITE, APPEND);
+            }
+            catch (IOException e)
+            {
+                blobs.clear();
+                illegalState(e, "Unable to open blob index: $", path);
+            }
+        }
+    }
+
+    /**
+     * Writes a blob record to the given channel
+     */
+    private void write(FileChannel channel, String sha256, Blob blob) throws IOException
+    {
+        var record = ByteBuffer.allocate(RECORD_SIZE)
+            .put(HexFormat.of().parseHex(sha256))
+            .putLong(blob.offset())
+            .putLong(blob.size())
+            .flip();
+        while (record.hasRemaining())
+        {
+            channel.write(record);
+        }
+    }
+}
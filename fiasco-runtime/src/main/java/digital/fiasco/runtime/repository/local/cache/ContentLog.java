@@ -0,0 +1,1033 @@
+package digital.fiasco.runtime.repository.local.cache;
+
+import com.telenav.kivakit.annotations.code.quality.MethodQuality;
+import com.telenav.kivakit.annotations.code.quality.TypeQuality;
+import com.telenav.kivakit.component.BaseComponent;
+import com.telenav.kivakit.core.collections.map.ObjectMap;
+import com.telenav.kivakit.core.thread.locks.Lock;
+import com.telenav.kivakit.filesystem.Folder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Condition;
+import java.util.zip.CRC32C;
+
+import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
+import static com.telenav.kivakit.annotations.code.quality.Stability.STABILITY_UNDETERMINED;
+import static com.telenav.kivakit.annotations.code.quality.Testing.TESTED;
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
+import static digital.fiasco.runtime.repository.ChannelContentReader.transfer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A crash-safe, segmented, append-only log of artifact content, used by {@link FiascoCacheRepository}.
+ *
+ * <p><b>File Format</b></p>
+ *
+ * <p>
+ * The log is a series of segment files named <i>[name]-00000.binary</i>, <i>[name]-00001.binary</i>, and so on. When
+ * the current segment reaches its maximum size, a new segment is started. Each segment holds records laid out
+ * end-to-end. A record is a {@link #HEADER_SIZE} byte header followed by its payload:
+ * </p>
+ *
+ * <ul>
+ *     <li>magic (int) - {@link #MAGIC}</li>
+ *     <li>kind (int) - {@link #CONTENT_RECORD}, or {@link #PADDING_RECORD} for space that was reserved by a write that failed</li>
+ *     <li>length (long) - The length of the payload</li>
+ *     <li>checksum (int) - The CRC32C of the payload</li>
+ *     <li>reserved (int) - Zero</li>
+ *     <li>descriptor hash (long) - A hash of the descriptor of the artifact that owns the content</li>
+ * </ul>
+ *
+ * <p><b>Offsets</b></p>
+ *
+ * <p>
+ * The offset returned by {@link #append(long, long, PayloadWriter)} is a logical offset that encodes both the segment
+ * number and the position of the payload in the segment (segment * {@link #SEGMENT_SPACING} + position). The offset is
+ * stored in {@link digital.fiasco.runtime.dependency.artifact.content.ArtifactContent#offset()} and is turned back into
+ * a readable resource by {@link #content(long, long)}.
+ * </p>
+ *
+ * <p><b>Concurrency</b></p>
+ *
+ * <p>
+ * Space for a record is reserved under a short lock, and the record is then written with positional writes outside the
+ * lock, so any number of threads can append at the same time. As soon as space is reserved, a padding header with the
+ * length of the reservation is written to it, so recovery can always step over the space, even if the record is never
+ * finished. The content header is only written after the payload, so a record with a content header has a complete
+ * payload (which is confirmed by its checksum).
+ * </p>
+ *
+ * <p><b>Durability</b></p>
+ *
+ * <p>
+ * {@link #sync(long)} makes all records up to a given offset durable. It waits for any earlier writes that are still in
+ * progress, and then forces the log to disk. Writers that call sync at about the same time share a single force
+ * (group commit). Once forced, the durable offset is written to <i>[name].checkpoint</i>. A repository must only publish
+ * metadata that refers to content after that content has been synced.
+ * </p>
+ *
+ * <p><b>Recovery</b></p>
+ *
+ * <p>
+ * When the log is opened, records after the checkpoint are checked. Each segment is truncated at the first record with
+ * a bad header, a length that runs past the end of the file, or a payload that doesn't match its checksum. Because
+ * metadata is only published for synced records, and sync waits for all earlier writes, a record that is lost this way
+ * can never be referenced by metadata.
+ * </p>
+ *
+ * <p>
+ * If the padding header for a reservation can't be written, recovery would stop at the reservation and lose any
+ * records after it. So the log fails instead. It refuses to append or sync until it is closed and opened again,
+ * which keeps records after the reservation from ever being synced and referenced by metadata.
+ * </p>
+ *
+ * <p><b>Compaction</b></p>
+ *
+ * <p>
+ * The log can be compacted while it is being read and written. {@link #startSegment()} starts a new segment, and live
+ * records in earlier segments are copied forward with {@link #copy(long, long, long)}. The earlier segments are then
+ * retired with {@link #retire(int)}. A retired segment is not deleted right away, because readers may still be reading
+ * content they resolved before compaction. Instead, it is deleted by the next call to {@link #retire(int)}, or when the
+ * log is next opened. The first live segment is recorded in <i>[name].retired</i>.
+ * </p>
+ *
+ * <p><b>Access</b></p>
+ *
+ * <ul>
+ *     <li>{@link #append(long, long, PayloadWriter)}</li>
+ *     <li>{@link #content(long, long)}</li>
+ *     <li>{@link #sync(long)}</li>
+ * </ul>
+ *
+ * <p><b>Compaction</b></p>
+ *
+ * <ul>
+ *     <li>{@link #copy(long, long, long)}</li>
+ *     <li>{@link #firstSegment()}</li>
+ *     <li>{@link #isRetired(long)}</li>
+ *     <li>{@link #retire(int)}</li>
+ *     <li>{@link #size()}</li>
+ *     <li>{@link #startSegment()}</li>
+ * </ul>
+ *
+ * <p><b>Lifecycle</b></p>
+ *
+ * <ul>
+ *     <li>{@link #close()}</li>
+ *     <li>{@link #delete()}</li>
+ * </ul>
+ *
+ * @author Jonathan Locke
+ * @see FiascoCacheRepository
+ */
+@SuppressWarnings("unused")
+@TypeQuality(documentation = DOCUMENTED, testing = TESTED, stability = STABILITY_UNDETERMINED)
+public class ContentLog extends BaseComponent
+{
+    /**
+     * Writes the payload of a record
+     */
+    @FunctionalInterface
+    public interface PayloadWriter
+    {
+        /**
+         * Writes exactly the number of bytes that were reserved to the given output stream
+         *
+         * @param out The stream to write to
+         */
+        void write(OutputStream out) throws IOException;
+    }
+
+    /** Magic number at the start of each record header ("FIAL") */
+    public static final int MAGIC = 0x4649414C;
+
+    /** Record kind for artifact content */
+    public static final int CONTENT_RECORD = 1;
+
+    /** Record kind for reserved space that was abandoned when a write failed */
+    public static final int PADDING_RECORD = 2;
+
+    /** The size of a record header */
+    public static final int HEADER_SIZE = 32;
+
+    /** The distance between the logical offsets of two segments */
+    public static final long SEGMENT_SPACING = 1L << 40;
+
+    /** The default maximum size of a segment */
+    public static final long DEFAULT_MAXIMUM_SEGMENT_SIZE = 1L << 30;
+
+    /** The size of the buffer used to write and check payloads */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Returns a 64-bit FNV-1a hash of the given text, used to tag records with the descriptor of their artifact
+     *
+     * @param text The text to hash
+     * @return The hash
+     */
+    public static long hash(String text)
+    {
+        var hash = 0xcbf29ce484222325L;
+        for (var at : text.getBytes(UTF_8))
+        {
+            hash ^= at & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the position in its segment of the given logical offset
+     */
+    public static long position(long offset)
+    {
+        return offset % SEGMENT_SPACING;
+    }
+
+    /**
+     * Returns the segment number of the given logical offset
+     */
+    public static int segment(long offset)
+    {
+        return (int) (offset / SEGMENT_SPACING);
+    }
+
+    /** The folder holding the log */
+    private final Folder folder;
+
+    /** The name of the log, used to name its files */
+    private final String name;
+
+    /** The size at which a new segment is started */
+    private final long maximumSegmentSize;
+
+    /** Lock for the reservation state */
+    private final Lock lock = new Lock();
+
+    /** Condition signaled when a write completes */
+    private final Condition completed = lock.newCondition();
+
+    /** Lock that allows only one thread at a time to force the log to disk */
+    private final Lock syncLock = new Lock();
+
+    /** The open segment files, by segment number */
+    private final ObjectMap<Integer, FileChannel> channels = new ObjectMap<>();
+
+    /** The logical offsets of records that are being written */
+    private final TreeSet<Long> inFlight = new TreeSet<>();
+
+    /** The first segment that has not been retired */
+    private int firstSegment;
+
+    /** The current segment */
+    private int segment;
+
+    /** The position in the current segment where the next record will go */
+    private long end;
+
+    /** The logical offset up to which the log is known to be on disk */
+    private volatile long durable;
+
+    /** True if the log has been opened and recovered */
+    private boolean open;
+
+    /** True if a reservation could not be marked as padding, so the log can't be used until it is reopened */
+    private boolean failed;
+
+    /**
+     * Creates a content log with the default maximum segment size
+     *
+     * @param folder The folder to hold the log
+     * @param name The name of the log
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public ContentLog(Folder folder, String name)
+    {
+        this(folder, name, DEFAULT_MAXIMUM_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates a content log
+     *
+     * @param folder The folder to hold the log
+     * @param name The name of the log
+     * @param maximumSegmentSize The size at which a new segment is started
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public ContentLog(Folder folder, String name, long maximumSegmentSize)
+    {
+        ensure(maximumSegmentSize > 0 && maximumSegmentSize < SEGMENT_SPACING, "Invalid segment size: $", maximumSegmentSize);
+        this.folder = folder;
+        this.name = name;
+        this.maximumSegmentSize = maximumSegmentSize;
+    }
+
+    /**
+     * Appends a content record of the given length to this log. The payload is written by the given writer, which must
+     * write exactly the given number of bytes. The record is not durable until {@link #sync(long)} has been called.
+     *
+     * @param descriptorHash The hash of the artifact descriptor that owns the content (see {@link #hash(String)})
+     * @param length The length of the payload
+     * @param writer The code that writes the payload
+     * @return The logical offset of the payload
+     * @throws IllegalStateException Thrown if the record cannot be written
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public long append(long descriptorHash, long length, PayloadWriter writer)
+    {
+        ensure(length >= 0, "Invalid record length: $", length);
+
+        // Reserve space for the record,
+        var start = reserve(HEADER_SIZE + length);
+        var position = position(start);
+
+        try
+        {
+            // and mark it as padding, so recovery can step over it if the record is never finished.
+            FileChannel channel;
+            try
+            {
+                channel = channel(segment(start));
+                writeHeader(channel, position, PADDING_RECORD, length, 0, descriptorHash);
+            }
+            catch (Exception e)
+            {
+                // If that fails, recovery would stop here, so fail the log before anything after it can be synced.
+                lock.whileLocked(() -> { failed = true; });
+                return illegalState(e, "Unable to reserve $ bytes in content log, which must be reopened: $",
+                    length, name);
+            }
+
+            // Write the payload, computing its checksum as we go,
+            var out = new PayloadOutputStream(channel, position + HEADER_SIZE, length);
+            writer.write(out);
+            out.flush();
+            ensure(out.written() == length, "Payload was $ bytes, not $", out.written(), length);
+
+            // and only then write the content header, which makes the record valid.
+            writeHeader(channel, position, CONTENT_RECORD, length, out.checksum(), descriptorHash);
+            return start + HEADER_SIZE;
+        }
+        catch (IllegalStateException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            // If the payload could not be written, the reserved space is left as padding.
+            return illegalState(e, "Unable to append $ bytes to content log: $", length, name);
+        }
+        finally
+        {
+            complete(start);
+        }
+    }
+
+    /**
+     * Closes this log, forcing it to disk. The log will be re-opened if it is used again.
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public void close()
+    {
+        lock.whileLocked(() ->
+        {
+            try
+            {
+                for (var channel : channels.values())
+                {
+                    channel.force(false);
+                    channel.close();
+                }
+            }
+            catch (IOException e)
+            {
+                problem(e, "Unable to close content log: $", name);
+            }
+            finally
+            {
+                channels.clear();
+                inFlight.clear();
+                open = false;
+                failed = false;
+            }
+        });
+    }
+
+    /**
+     * Returns the payload of the record at the given logical offset as a resource, which can be read as a stream or
+     * transferred directly to a file or socket
+     *
+     * @param offset The logical offset returned by {@link #append(long, long, PayloadWriter)}
+     * @param length The length of the payload
+     * @return The content
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public ContentLogSection content(long offset, long length)
+    {
+        var segment = segment(offset);
+        return new ContentLogSection(folder.file(segmentFileName(segment)), segmentPath(segment), position(offset), length);
+    }
+
+    /**
+     * Appends a copy of the record payload at the given logical offset to the end of this log. The copy is not durable
+     * until {@link #sync(long)} has been called.
+     *
+     * @param descriptorHash The hash of the artifact descriptor that owns the content
+     * @param offset The logical offset of the payload to copy
+     * @param length The length of the payload
+     * @return The logical offset of the copy
+     * @throws IllegalStateException Thrown if the record cannot be copied
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public long copy(long descriptorHash, long offset, long length)
+    {
+        return append(descriptorHash, length, out ->
+        {
+            // The source segment may have been retired, so it is opened separately, for reading only.
+            try (var source = FileChannel.open(segmentPath(segment(offset)), READ))
+            {
+                transfer(source, position(offset), length, Channels.newChannel(out));
+            }
+        });
+    }
+
+    /**
+     * Closes this log and deletes its files
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public void delete()
+    {
+        close();
+        try
+        {
+            var first = readRetired();
+            deleteSegmentsBefore(first);
+            for (var at = first; Files.exists(segmentPath(at)); at++)
+            {
+                Files.delete(segmentPath(at));
+            }
+            Files.deleteIfExists(checkpointPath());
+            Files.deleteIfExists(retiredPath());
+            durable = 0;
+        }
+        catch (IOException e)
+        {
+            illegalState(e, "Unable to delete content log: $", name);
+        }
+    }
+
+    /**
+     * Returns the logical offset up to which this log is known to be on disk
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public long durable()
+    {
+        return durable;
+    }
+
+    /**
+     * Returns the first segment that has not been retired
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public int firstSegment()
+    {
+        return lock.whileLocked(() ->
+        {
+            open();
+            return firstSegment;
+        });
+    }
+
+    /**
+     * Returns true if the payload at the given logical offset is in a segment that has been retired
+     *
+     * @param offset The logical offset
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public boolean isRetired(long offset)
+    {
+        return segment(offset) < firstSegment();
+    }
+
+    /**
+     * Retires all segments before the given segment, which must not hold any live records. The segments retired by
+     * the previous call to this method are deleted.
+     *
+     * @param segment The first segment to keep
+     * @throws IllegalStateException Thrown if the segments cannot be retired
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public void retire(int segment)
+    {
+        lock.whileLocked(() ->
+        {
+            open();
+            ensure(segment <= this.segment, "Cannot retire the current segment");
+            ensure(inFlight.isEmpty() || segment(inFlight.first()) >= segment, "Cannot retire a segment that is being written");
+
+            try
+            {
+                // Delete the segments that were retired last time,
+                deleteSegmentsBefore(firstSegment);
+
+                // force and close the segments being retired,
+                for (var at = firstSegment; at < segment; at++)
+                {
+                    var channel = channels.remove(at);
+                    if (channel != null)
+                    {
+                        channel.force(false);
+                        channel.close();
+                    }
+                }
+
+                // and record the new first segment.
+                firstSegment = Math.max(firstSegment, segment);
+                durable = Math.max(durable, offset(firstSegment, 0));
+                Files.write(retiredPath(), ByteBuffer.allocate(Integer.BYTES).putInt(firstSegment).array());
+            }
+            catch (IOException e)
+            {
+                illegalState(e, "Unable to retire content log segments before $", segment);
+            }
+        });
+    }
+
+    /**
+     * Returns the total size of the segments in this log that have not been retired
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public long size()
+    {
+        return lock.whileLocked(() ->
+        {
+            open();
+            var size = 0L;
+            for (var at = firstSegment; at < segment; at++)
+            {
+                size += segmentPath(at).toFile().length();
+            }
+            return size + end;
+        });
+    }
+
+    /**
+     * Starts a new segment, unless the current segment is empty, and waits for any records that are being written to
+     * earlier segments. After this method returns, all new records are appended to the returned segment or later ones.
+     *
+     * @return The new segment
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public int startSegment()
+    {
+        return lock.whileLocked(() ->
+        {
+            open();
+            if (end > 0)
+            {
+                segment++;
+                end = 0;
+            }
+            while (!inFlight.isEmpty() && segment(inFlight.first()) < segment)
+            {
+                completed.awaitUninterruptibly();
+            }
+            return segment;
+        });
+    }
+
+    /**
+     * Returns the logical offset where the next record will be appended
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public long end()
+    {
+        return lock.whileLocked(() ->
+        {
+            open();
+            return offset(segment, end);
+        });
+    }
+
+    /**
+     * Ensures that all records before the given logical offset are on disk. If another thread has already forced the
+     * log past the offset, this method returns right away.
+     *
+     * @param offset The logical offset
+     * @throws IllegalStateException Thrown if the log cannot be forced to disk
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public void sync(long offset)
+    {
+        if (durable >= offset)
+        {
+            return;
+        }
+
+        syncLock.whileLocked(() ->
+        {
+            // If another thread forced the log while we were waiting, we're done,
+            if (durable >= offset)
+            {
+                return;
+            }
+
+            // otherwise, wait for any records before the offset that are still being written,
+            var target = lock.whileLocked(() ->
+            {
+                while (!inFlight.isEmpty() && inFlight.first() < offset)
+                {
+                    completed.awaitUninterruptibly();
+                }
+                ensureUsable();
+
+                // and then force everything up to the first record that is still being written.
+                return inFlight.isEmpty() ? offset(segment, end) : inFlight.first();
+            });
+
+            try
+            {
+                for (var at = Math.max(segment(durable), firstSegment()); at <= segment(target); at++)
+                {
+                    channel(at).force(false);
+                }
+                durable = target;
+                writeCheckpoint(target);
+            }
+            catch (IOException e)
+            {
+                illegalState(e, "Unable to sync content log: $", name);
+            }
+        });
+    }
+
+    /**
+     * Returns the open channel for the given segment, opening it if necessary
+     */
+    private FileChannel channel(int segment)
+    {
+        return lock.whileLocked(() ->
+        {
+            open();
+            ensure(segment >= firstSegment, "Content log segment $ has been retired", segment);
+            var channel = channels.get(segment);
+            if (channel == null)
+            {
+                try
+                {
+                    channel = FileChannel.open(segmentPath(segment), CREATE, READ, WRITE);
+                    channels.put(segment, channel);
+                }
+                catch (IOException e)
+                {
+                    return illegalState(e, "Unable to open content log segment: $", segmentPath(segment));
+                }
+            }
+            return channel;
+        });
+    }
+
+    /**
+     * Returns the path to the checkpoint file
+     */
+    private Path checkpointPath()
+    {
+        return root().resolve(name + ".checkpoint");
+    }
+
+    /**
+     * Marks the write of the record at the given logical offset as finished, and wakes any threads waiting in
+     * {@link #sync(long)}
+     */
+    private void complete(long start)
+    {
+        lock.whileLocked(() ->
+        {
+            inFlight.remove(start);
+            completed.signalAll();
+        });
+    }
+
+    /**
+     * Deletes all segment files before the given segment
+     */
+    private void deleteSegmentsBefore(int segment) throws IOException
+    {
+        for (var at = 0; at < segment; at++)
+        {
+            Files.deleteIfExists(segmentPath(at));
+        }
+    }
+
+    /**
+     * Throws an {@link IllegalStateException} if this log has failed. Must be called with the lock held.
+     */
+    private void ensureUsable()
+    {
+        ensure(!failed, "Content log failed to mark a reservation as padding, and must be reopened: $", name);
+    }
+
+    /**
+     * Returns the logical offset of the given position in the given segment
+     */
+    private long offset(int segment, long position)
+    {
+        return segment * SEGMENT_SPACING + position;
+    }
+
+    /**
+     * Opens the log, recovering any segments written after the last checkpoint. Must be called with the lock held.
+     */
+    private void open()
+    {
+        if (!open)
+        {
+            open = true;
+            try
+            {
+                Files.createDirectories(root());
+
+                // Delete any retired segments, since no one can be reading them now,
+                firstSegment = readRetired();
+                deleteSegmentsBefore(firstSegment);
+
+                // find the last segment,
+                segment = firstSegment;
+                while (Files.exists(segmentPath(segment + 1)))
+                {
+                    segment++;
+                }
+
+                // read the checkpoint,
+                var checkpoint = Math.max(readCheckpoint(), offset(firstSegment, 0));
+
+                // and check the records in each segment after the checkpoint, truncating at the first bad record.
+                for (var at = segment(checkpoint); at <= segment; at++)
+                {
+                    var from = at == segment(checkpoint) ? position(checkpoint) : 0L;
+                    var recovered = recover(at, from);
+                    if (at == segment)
+                    {
+                        end = recovered;
+                    }
+                }
+
+                durable = offset(segment, end);
+                writeCheckpoint(durable);
+            }
+            catch (IOException e)
+            {
+                open = false;
+                illegalState(e, "Unable to open content log: $", name);
+            }
+        }
+    }
+
+    /**
+     * Returns the checkpoint recorded in the checkpoint file, or zero if there is none
+     */
+    private long readCheckpoint() throws IOException
+    {
+        var path = checkpointPath();
+        if (Files.exists(path) && Files.size(path) == Long.BYTES)
+        {
+            return ByteBuffer.wrap(Files.readAllBytes(path)).getLong();
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the first segment that has not been retired, as recorded in the retired file, or zero if there is none
+     */
+    private int readRetired() throws IOException
+    {
+        var path = retiredPath();
+        if (Files.exists(path) && Files.size(path) == Integer.BYTES)
+        {
+            return ByteBuffer.wrap(Files.readAllBytes(path)).getInt();
+        }
+        return 0;
+    }
+
+    /**
+     * Checks the records in the given segment starting at the given position, and truncates the segment at the first
+     * record that is not valid
+     *
+     * @param segment The segment number
+     * @param from The position of the first record to check
+     * @return The end of the last valid record in the segment
+     */
+    private long recover(int segment, long from) throws IOException
+    {
+        var channel = channel(segment);
+        var size = channel.size();
+
+        // If the checkpoint is beyond the end of the file, the file has been changed, so check all of it.
+        var position = from <= size ? from : 0L;
+
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= size)
+        {
+            // Read the next header,
+            readFully(channel, header.clear(), position);
+            header.flip();
+            var magic = header.getInt();
+            var kind = header.getInt();
+            var length = header.getLong();
+            var checksum = header.getInt();
+            header.getInt();
+
+            // and if it's not valid, stop.
+            if (magic != MAGIC
+                    || (kind != CONTENT_RECORD && kind != PADDING_RECORD)
+                    || length < 0
+                    || position + HEADER_SIZE + length > size)
+            {
+                break;
+            }
+
+            // If it's content with a bad checksum, stop.
+            if (kind == CONTENT_RECORD && checksum(channel, position + HEADER_SIZE, length) != checksum)
+            {
+                break;
+            }
+
+            position += HEADER_SIZE + length;
+        }
+
+        if (position < size)
+        {
+            warning("Truncating content log segment $ from $ to $ bytes", segmentFileName(segment), size, position);
+            channel.truncate(position);
+            channel.force(false);
+        }
+        return position;
+    }
+
+    /**
+     * Returns the CRC32C checksum of the given range of the given channel
+     */
+    private int checksum(FileChannel channel, long position, long length) throws IOException
+    {
+        var crc = new CRC32C();
+        var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        for (var remaining = length; remaining > 0; )
+        {
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, remaining));
+            readFully(channel, buffer, position + length - remaining);
+            crc.update(buffer.flip());
+            remaining -= buffer.limit();
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Reads the given buffer fully from the given channel at the given position
+     */
+    private void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            var read = channel.read(buffer, position);
+            ensure(read >= 0, "Unexpected end of content log segment");
+            position += read;
+        }
+    }
+
+    /**
+     * Reserves space for a record of the given size (including its header), starting a new segment if the current one
+     * is full
+     *
+     * @param size The size of the record
+     * @return The logical offset of the record header
+     */
+    private long reserve(long size)
+    {
+        return lock.whileLocked(() ->
+        {
+            open();
+            ensureUsable();
+
+            // If the record won't fit in the current (non-empty) segment, start a new one,
+            if (end > 0 && end + size > maximumSegmentSize)
+            {
+                segment++;
+                end = 0;
+            }
+
+            // then claim the space and remember that it's being written.
+            var start = offset(segment, end);
+            end += size;
+            inFlight.add(start);
+            return start;
+        });
+    }
+
+    /**
+     * Returns the path to the file that records the first segment that has not been retired
+     */
+    private Path retiredPath()
+    {
+        return root().resolve(name + ".retired");
+    }
+
+    /**
+     * Returns the path of the folder holding the log
+     */
+    private Path root()
+    {
+        return Path.of(folder.asUri());
+    }
+
+    /**
+     * Returns the name of the file for the given segment
+     */
+    private String segmentFileName(int segment)
+    {
+        return String.format("%s-%05d.binary", name, segment);
+    }
+
+    /**
+     * Returns the path of the file for the given segment
+     */
+    private Path segmentPath(int segment)
+    {
+        return root().resolve(segmentFileName(segment));
+    }
+
+    /**
+     * Records the given durable offset in the checkpoint file. The checkpoint is only a hint that limits how much of
+     * the log is checked on recovery, so it is not forced to disk.
+     */
+    private void writeCheckpoint(long offset) throws IOException
+    {
+        Files.write(checkpointPath(), ByteBuffer.allocate(Long.BYTES).putLong(offset).array());
+    }
+
+    /**
+     * Writes the given buffer fully to the given channel at the given position
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Writes a record header
+     */
+    private void writeHeader(FileChannel channel,
+                             long position,
+                             int kind,
+                             long length,
+                             int checksum,
+                             long descriptorHash) throws IOException
+    {
+        writeFully(channel, ByteBuffer.allocate(HEADER_SIZE)
+            .putInt(MAGIC)
+            .putInt(kind)
+            .putLong(length)
+            .putInt(checksum)
+            .putInt(0)
+            .putLong(descriptorHash)
+            .flip(), position);
+    }
+
+    /**
+     * An output stream that writes to a channel at a given position, computing a CRC32C checksum as it goes. The stream
+     * refuses to write past the space that was reserved for it, so a faulty writer can't overwrite the next record.
+     */
+    private static class PayloadOutputStream extends OutputStream
+    {
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private final CRC32C crc = new CRC32C();
+
+        private final long limit;
+
+        private long position;
+
+        private long written;
+
+        PayloadOutputStream(FileChannel channel, long position, long limit)
+        {
+            this.channel = channel;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            var length = buffer.remaining();
+            writeFully(channel, buffer, position);
+            position += length;
+            buffer.clear();
+        }
+
+        @Override
+        public void write(int value) throws IOException
+        {
+            checkLimit(1);
+            if (!buffer.hasRemaining())
+            {
+                flush();
+            }
+            buffer.put((byte) value);
+            written++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException
+        {
+            checkLimit(length);
+            while (length > 0)
+            {
+                if (!buffer.hasRemaining())
+                {
+                    flush();
+                }
+                var count = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, count);
+                offset += count;
+                length -= count;
+                written += count;
+            }
+        }
+
+        private void checkLimit(long length) throws IOException
+        {
+            if (written + length > limit)
+            {
+                throw new IOException("Payload is larger than the " + limit + " bytes reserved for it");
+            }
+        }
+
+        int checksum()
+        {
+            return (int) crc.getValue();
+        }
+
+        long written()
+        {
+            return written;
+        }
+    }
+}
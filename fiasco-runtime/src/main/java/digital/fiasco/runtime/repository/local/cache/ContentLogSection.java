@@ -0,0 +1,225 @@
+package digital.fiasco.runtime.repository.local.cache;
+
+import com.telenav.kivakit.annotations.code.quality.MethodQuality;
+import com.telenav.kivakit.annotations.code.quality.TypeQuality;
+import com.telenav.kivakit.filesystem.File;
+import com.telenav.kivakit.resource.resources.ResourceSection;
+import digital.fiasco.runtime.repository.ChannelContentReader;
+import digital.fiasco.runtime.repository.RandomAccessContent;
+import digital.fiasco.runtime.repository.RepositoryContentReader;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
+import static com.telenav.kivakit.annotations.code.quality.Stability.STABILITY_UNDETERMINED;
+import static com.telenav.kivakit.annotations.code.quality.Testing.TESTED;
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
+import static com.telenav.kivakit.core.value.count.Bytes.bytes;
+import static com.telenav.kivakit.filesystem.Folder.folder;
+import static digital.fiasco.runtime.repository.ChannelContentReader.transfer;
+import static digital.fiasco.runtime.repository.FileSectionChannel.fileSectionChannel;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * The payload of a {@link ContentLog} record. This is a normal {@link ResourceSection}, so it can be read as a stream,
+ * but it can also be moved straight from the log segment to a file or socket, without copying it onto the heap. Since
+ * the payload is stored uncompressed, any part of it can be read directly, for example a single entry of an exploded
+ * JAR.
+ *
+ * <p><b>Creation</b></p>
+ *
+ * <p>
+ * Sections are normally created by {@link ContentLog#content(long, long)}. Another process (like the
+ * {@link digital.fiasco.runtime.build.builder.tools.compile.java.CompilerDaemon}) can read the same content with
+ * {@link #contentLogSection(Path, long, long)}, given the {@link #segmentPath()}, {@link #segmentPosition()}
+ * and {@link #sectionLength()} of a section.
+ * </p>
+ *
+ * <ul>
+ *     <li>{@link #contentLogSection(Path, long, long)}</li>
+ *     <li>{@link #sectionLength()}</li>
+ *     <li>{@link #segmentPath()}</li>
+ *     <li>{@link #segmentPosition()}</li>
+ * </ul>
+ *
+ * <p><b>Transferring Content</b></p>
+ *
+ * <ul>
+ *     <li>{@link #openSection(long, long)}</li>
+ *     <li>{@link #read(RepositoryContentReader)}</li>
+ *     <li>{@link #transferTo(Path)}</li>
+ *     <li>{@link #transferTo(WritableByteChannel)}</li>
+ * </ul>
+ *
+ * @author Jonathan Locke
+ * @see ContentLog#content(long, long)
+ * @see ChannelContentReader
+ */
+@SuppressWarnings("unused")
+@TypeQuality(documentation = DOCUMENTED, testing = TESTED, stability = STABILITY_UNDETERMINED)
+public class ContentLogSection extends ResourceSection implements RandomAccessContent
+{
+    /**
+     * Returns a section of the given content log segment, for reading only
+     *
+     * @param segment The path to the segment file
+     * @param position The position of the content in the segment
+     * @param length The length of the content
+     * @return The section
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public static ContentLogSection contentLogSection(Path segment, long position, long length)
+    {
+        var file = folder(segment.getParent().toUri()).file(segment.getFileName().toString());
+        return new ContentLogSection(file, segment, position, length);
+    }
+
+    /** The segment file holding the content */
+    private final Path segment;
+
+    /** The position of the content in the segment */
+    private final long position;
+
+    /** The length of the content */
+    private final long length;
+
+    /**
+     * @param file The segment file
+     * @param segment The path to the segment file
+     * @param position The position of the content in the segment
+     * @param length The length of the content
+     */
+    ContentLogSection(File file, Path segment, long position, long length)
+    {
+        super(file, position, position + length);
+        this.segment = segment;
+        this.position = position;
+        this.length = length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public SeekableByteChannel openSection(long offset, long length)
+    {
+        ensure(offset >= 0 && length >= 0 && offset + length <= this.length,
+            "Section $ + $ is outside of content of length $", offset, length, this.length);
+        try
+        {
+            return fileSectionChannel(segment, position + offset, length);
+        }
+        catch (IOException e)
+        {
+            return illegalState(e, "Unable to open section of: $", segment);
+        }
+    }
+
+    /**
+     * Passes this content to the given reader. A {@link ChannelContentReader} is given the segment file's channel, so
+     * it can transfer the content directly. Any other reader is given an input stream.
+     *
+     * @param reader The reader
+     * @throws IllegalStateException Thrown if the content cannot be read
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public void read(RepositoryContentReader reader)
+    {
+        if (reader instanceof ChannelContentReader channelReader)
+        {
+            try (var channel = FileChannel.open(segment, READ))
+            {
+                channelReader.read(channel, position, bytes(length));
+            }
+            catch (IOException e)
+            {
+                illegalState(e, "Unable to read content from: $", segment);
+            }
+        }
+        else
+        {
+            try (var in = openForReading())
+            {
+                reader.read(in, bytes(length));
+            }
+            catch (IOException e)
+            {
+                illegalState(e, "Unable to read content from: $", segment);
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the content
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public long sectionLength()
+    {
+        return length;
+    }
+
+    /**
+     * Returns the path to the segment file holding the content
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public Path segmentPath()
+    {
+        return segment;
+    }
+
+    /**
+     * Returns the position of the content in its segment file
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public long segmentPosition()
+    {
+        return position;
+    }
+
+    /**
+     * Transfers this content to the given file, replacing anything in it
+     *
+     * @param target The file to write to
+     * @throws IllegalStateException Thrown if the content cannot be transferred
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public void transferTo(Path target)
+    {
+        try (var channel = FileChannel.open(target, CREATE, WRITE, TRUNCATE_EXISTING))
+        {
+            transferTo(channel);
+        }
+        catch (IOException e)
+        {
+            illegalState(e, "Unable to transfer content to: $", target);
+        }
+    }
+
+    /**
+     * Transfers this content to the given channel, like a file or socket channel
+     *
+     * @param target The channel to write to
+     * @throws IllegalStateException Thrown if the content cannot be transferred
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public void transferTo(WritableByteChannel target)
+    {
+        try (var channel = FileChannel.open(segment, READ))
+        {
+            transfer(channel, position, length, target);
+        }
+        catch (IOException e)
+        {
+            illegalState(e, "Unable to transfer content from: $", segment);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package digital.fiasco.runtime.repository.local.cache;
+
+import com.telenav.kivakit.annotations.code.quality.MethodQuality;
+import com.telenav.kivakit.annotations.code.quality.TypeQuality;
+import com.telenav.kivakit.core.collections.list.ObjectList;
+import com.telenav.kivakit.core.collections.set.ObjectSet;
+import com.telenav.kivakit.core.string.FormatProperty;
+import com.telenav.kivakit.core.string.ObjectFormatter;
+import com.telenav.kivakit.core.time.Duration;
+import com.telenav.kivakit.core.value.count.Bytes;
+import com.telenav.kivakit.interfaces.object.Copyable;
+import digital.fiasco.runtime.dependency.artifact.Artifact;
+import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor;
+
+import java.util.Comparator;
+import java.util.function.Function;
+
+import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
+import static com.telenav.kivakit.annotations.code.quality.Stability.STABILITY_UNDETERMINED;
+import static com.telenav.kivakit.annotations.code.quality.Testing.TESTED;
+import static com.telenav.kivakit.core.time.Duration.milliseconds;
+
+/**
+ * Decides which artifacts a {@link FiascoCacheRepository} evicts when it is compacted.
+ *
+ * <p>
+ * Artifacts are considered in least-recently-resolved order. Any artifact that has not been resolved for longer than
+ * the maximum age is evicted. Then, if the content of the remaining artifacts is larger than the maximum size, the
+ * least recently resolved artifacts are evicted until it fits. A policy with neither limit retains everything.
+ * </p>
+ *
+ * <p><b>Creation</b></p>
+ *
+ * <ul>
+ *     <li>{@link #retainAll()}</li>
+ *     <li>{@link #withMaximumAge(Duration)}</li>
+ *     <li>{@link #withMaximumSize(Bytes)}</li>
+ * </ul>
+ *
+ * <p><b>Eviction</b></p>
+ *
+ * <ul>
+ *     <li>{@link #evictions(ObjectList, Function, long)}</li>
+ * </ul>
+ *
+ * @author Jonathan Locke
+ * @see FiascoCacheRepository#compact(ContentRetentionPolicy)
+ */
+@SuppressWarnings("unused")
+@TypeQuality(documentation = DOCUMENTED, testing = TESTED, stability = STABILITY_UNDETERMINED)
+public class ContentRetentionPolicy implements Copyable<ContentRetentionPolicy>
+{
+    /**
+     * Returns a policy that retains all artifacts. Compaction with this policy only reclaims space from content that is
+     * no longer referenced.
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public static ContentRetentionPolicy retainAll()
+    {
+        return new ContentRetentionPolicy();
+    }
+
+    /** The longest time an artifact can go without being resolved, or null for no limit */
+    @FormatProperty
+    private Duration maximumAge;
+
+    /** The largest total size of retained content, or null for no limit */
+    @FormatProperty
+    private Bytes maximumSize;
+
+    protected ContentRetentionPolicy()
+    {
+    }
+
+    protected ContentRetentionPolicy(ContentRetentionPolicy that)
+    {
+        this.maximumAge = that.maximumAge;
+        this.maximumSize = that.maximumSize;
+    }
+
+    @Override
+    public ContentRetentionPolicy copy()
+    {
+        return new ContentRetentionPolicy(this);
+    }
+
+    /**
+     * Returns the descriptors of the artifacts that should be evicted under this policy
+     *
+     * @param artifacts The artifacts in the repository
+     * @param lastResolved The time each artifact was last resolved, in milliseconds since the epoch
+     * @param now The current time, in milliseconds since the epoch
+     * @return The descriptors of the artifacts to evict
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public ObjectSet<ArtifactDescriptor> evictions(ObjectList<Artifact<?>> artifacts,
+                                                   Function<ArtifactDescriptor, Long> lastResolved,
+                                                   long now)
+    {
+        var evictions = new ObjectSet<ArtifactDescriptor>();
+
+        // Sort the artifacts from least to most recently resolved,
+        var oldestFirst = artifacts.sorted(Comparator.comparingLong(it -> lastResolved.apply(it.descriptor())));
+
+        // evict any that are too old,
+        var total = 0L;
+        for (var artifact : oldestFirst)
+        {
+            if (maximumAge != null && milliseconds(now - lastResolved.apply(artifact.descriptor())).isGreaterThan(maximumAge))
+            {
+                evictions.add(artifact.descriptor());
+            }
+            else
+            {
+                total += size(artifact);
+            }
+        }
+
+        // and then evict the oldest of the rest until the content fits.
+        if (maximumSize != null)
+        {
+            for (var artifact : oldestFirst)
+            {
+                if (total <= maximumSize.asBytes())
+                {
+                    break;
+                }
+                if (evictions.add(artifact.descriptor()))
+                {
+                    total -= size(artifact);
+                }
+            }
+        }
+
+        return evictions;
+    }
+
+    /**
+     * Returns the longest time an artifact can go without being resolved, or null if there is no limit
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public Duration maximumAge()
+    {
+        return maximumAge;
+    }
+
+    /**
+     * Returns the largest total size of retained content, or null if there is no limit
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public Bytes maximumSize()
+    {
+        return maximumSize;
+    }
+
+    @Override
+    public String toString()
+    {
+        return new ObjectFormatter(this).toString();
+    }
+
+    /**
+     * Returns a copy of this policy that evicts artifacts that have not been resolved for longer than the given age
+     *
+     * @param maximumAge The maximum age
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public ContentRetentionPolicy withMaximumAge(Duration maximumAge)
+    {
+        return mutated(it -> it.maximumAge = maximumAge);
+    }
+
+    /**
+     * Returns a copy of this policy that evicts the least recently resolved artifacts until the total size of the
+     * retained content is no more than the given size
+     *
+     * @param maximumSize The maximum size
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public ContentRetentionPolicy withMaximumSize(Bytes maximumSize)
+    {
+        return mutated(it -> it.maximumSize = maximumSize);
+    }
+
+    /**
+     * Returns the total size of the given artifact's content
+     */
+    private long size(Artifact<?> artifact)
+    {
+        var size = 0L;
+        for (var attachment : artifact.attachments())
+        {
+            size += attachment.content().size().asBytes();
+        }
+        return size;
+    }
+}
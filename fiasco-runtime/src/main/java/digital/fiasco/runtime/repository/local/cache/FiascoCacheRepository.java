@@ -1,30 +1,59 @@
 package digital.fiasco.runtime.repository.local.cache;
 
 import com.telenav.kivakit.annotations.code.quality.MethodQuality;
+import com.telenav.kivakit.core.collections.list.ObjectList;
 import com.telenav.kivakit.core.progress.ProgressReporter;
-import com.telenav.kivakit.filesystem.File;
+import com.telenav.kivakit.core.thread.locks.Lock;
+import com.telenav.kivakit.core.value.count.Bytes;
 import com.telenav.kivakit.filesystem.Folder;
-import com.telenav.kivakit.resource.resources.InputResource;
-import com.telenav.kivakit.resource.resources.ResourceSection;
 import digital.fiasco.runtime.dependency.artifact.Artifact;
 import digital.fiasco.runtime.dependency.artifact.content.ArtifactAttachment;
 import digital.fiasco.runtime.dependency.artifact.content.ArtifactContent;
+import digital.fiasco.runtime.dependency.artifact.content.ArtifactContentSignatures;
 import digital.fiasco.runtime.dependency.artifact.content.jar.JarContent;
+import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor;
 import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptorList;
 import digital.fiasco.runtime.dependency.collections.ArtifactList;
+import digital.fiasco.runtime.repository.ChannelContentReader;
 import digital.fiasco.runtime.repository.Repository;
 import digital.fiasco.runtime.repository.RepositoryContentReader;
 import digital.fiasco.runtime.repository.local.user.FiascoUserRepository;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
 import static com.telenav.kivakit.annotations.code.quality.Testing.TESTED;
 import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
+import static com.telenav.kivakit.core.value.count.Count.count;
 import static com.telenav.kivakit.filesystem.Folder.folder;
-import static com.telenav.kivakit.resource.WriteMode.APPEND;
 import static digital.fiasco.runtime.FiascoRuntime.fiascoCacheFolder;
+import static digital.fiasco.runtime.dependency.artifact.content.ArtifactContentSignatures.signatures;
+import static digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor.artifactDescriptor;
+import static digital.fiasco.runtime.repository.local.cache.ContentBlobIndex.hex;
+import static digital.fiasco.runtime.repository.local.cache.ContentBlobIndex.normalizedSha256;
+import static digital.fiasco.runtime.repository.local.cache.ContentBlobIndex.sha256;
+import static digital.fiasco.runtime.repository.local.cache.ContentBlobIndex.sha256Digest;
+import static digital.fiasco.runtime.repository.local.cache.ContentLog.hash;
+import static digital.fiasco.runtime.repository.local.cache.ContentLog.segment;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 
 /**
  * A high-performance repository of artifacts and their metadata.
@@ -35,7 +64,7 @@ import static digital.fiasco.runtime.FiascoRuntime.fiascoCacheFolder;
  * An instance of {@link FiascoCacheRepository} is used as an artifact cache to avoid unnecessary downloads when a user
  * wipes out their {@link FiascoUserRepository}, causing it to repopulate. Instead of repopulating from Maven Central or
  * another remote repository, the artifacts in this repository can be used since artifacts and their metadata are never
- * altered, only appended to their respective <i>artifacts.txt</i> and <i>artifact-content.binary</i>files. Because
+ * altered, only appended to their respective <i>artifacts.binary</i> and <i>artifact-content</i> files. Because
  * remote artifacts are guaranteed by Maven Central (and other remote repositories) to be immutable, it should rarely be
  * necessary to remove a download cache repository.
  * </p>
@@ -49,9 +78,61 @@ import static digital.fiasco.runtime.FiascoRuntime.fiascoCacheFolder;
  *
  * <p>
  * This class inherits metadata storage from {@link FiascoUserRepository}, but instead of storing content in a folder
- * tree, {@link FiascoCacheRepository} stores content end-to-end in a single, randomly-accessed binary file to increase
- * performance. The metadata for an artifact includes the offset and size of each content attachment in the binary
- * content file.
+ * tree, {@link FiascoCacheRepository} stores content end-to-end in a segmented, append-only {@link ContentLog} of
+ * randomly-accessed <i>artifact-content-[segment].binary</i> files to increase performance. The metadata for an
+ * artifact includes the (logical) offset and size of each content attachment in the log.
+ * </p>
+ *
+ * <p><b>Crash Safety</b></p>
+ *
+ * <p>
+ * Each content record in the log has a header with its length, a CRC32C checksum, and a hash of its artifact's
+ * descriptor. Content is written without holding the repository lock, so artifacts can be installed concurrently. Once
+ * an artifact's content has been written, the log is synced to disk, and only then is the artifact's metadata
+ * published. When the log is opened, any torn or partially written records at its end are truncated, so metadata never
+ * refers to content that isn't on disk, even if the process is killed.
+ * </p>
+ *
+ * <p><b>Content Deduplication</b></p>
+ *
+ * <p>
+ * Content is addressed by its SHA-256 hash, which is recorded in the artifact's metadata. A {@link ContentBlobIndex}
+ * maps each hash to the one place in the content log where that content is stored, so when an artifact is installed
+ * with content that is already in the log (for example, the same JAR under relocated coordinates, or a snapshot
+ * republished without changes), its metadata simply refers to the existing content, and nothing is written.
+ * </p>
+ *
+ * <p>
+ * The SHA-256 signature that comes with content is never trusted on its own. It is only used to find content that may
+ * already be in the log, and the content is hashed to confirm the match before it is shared. Content that is not
+ * already in the log is hashed as it is appended, so it is read only once. If the hash doesn't match the signature,
+ * a warning is broadcast, and the content is recorded under the hash that was computed.
+ * </p>
+ *
+ * <p><b>Zero-Copy Content</b></p>
+ *
+ * <p>
+ * The content resources of resolved artifacts are {@link ContentLogSection}s, which can be transferred directly from the
+ * content log to a file or socket with {@link java.nio.channels.FileChannel#transferTo(long, long,
+ * java.nio.channels.WritableByteChannel)}. {@link #readContent(ArtifactList, RepositoryContentReader)} passes the content
+ * of a list of artifacts to a {@link RepositoryContentReader}. If the reader is a {@link ChannelContentReader}, it is
+ * given the log's file channel, so the content never passes through the heap.
+ * </p>
+ *
+ * <p><b>Compaction</b></p>
+ *
+ * <p>
+ * Because the content log is append-only, it only grows. {@link #compact(ContentRetentionPolicy)} evicts the artifacts
+ * chosen by a {@link ContentRetentionPolicy} (for example, those least recently resolved), and copies the content of
+ * the remaining artifacts into a new segment (content shared by several artifacts is copied once). Each moved artifact's metadata is then updated by appending a new
+ * metadata record, which atomically supersedes the old one. Reads and installs continue while the repository is being
+ * compacted. The old segments are retired, and are deleted by the next compaction (or when the repository is next
+ * opened), so content that was resolved before compaction can still be read.
+ * </p>
+ *
+ * <p>
+ * The time each artifact was last resolved is tracked in memory, and is saved to <i>artifact-resolve-times.binary</i>
+ * when the repository is compacted.
  * </p>
  *
  * <p><b>Properties</b></p>
@@ -67,19 +148,47 @@ import static digital.fiasco.runtime.FiascoRuntime.fiascoCacheFolder;
  *     <li>{@link Repository#resolveArtifacts(ArtifactDescriptorList, ProgressReporter, RepositoryContentReader)}  - Resolves the given descriptors to a list of {@link Artifact}s, complete with {@link ArtifactContent} attachments</li>
  * </ul>
  *
+ * <ul>
+ *     <li>{@link #readContent(ArtifactList, RepositoryContentReader)} - Passes artifact content to a content reader, without copying it if possible</li>
+ * </ul>
+ *
  * <p><b>Installing Artifacts</b></p>
  *
  * <ul>
  *     <li>{@link #installArtifact(Artifact)} - Adds the given artifact with the given attached resources</li>
  * </ul>
  *
+ * <p><b>Compaction</b></p>
+ *
+ * <ul>
+ *     <li>{@link #compact(ContentRetentionPolicy)} - Evicts artifacts and reclaims space from the content log</li>
+ * </ul>
+ *
  * @author Jonathan Locke
  */
 @SuppressWarnings("unused")
 public class FiascoCacheRepository extends FiascoUserRepository
 {
-    /** The binary file containing artifacts, laid out end-to-end */
-    private final File artifactContentFile = repositoryFile("artifact-content.binary");
+    /** The log containing artifact content, laid out end-to-end */
+    private final ContentLog contentLog = listenTo(new ContentLog(rootFolder(), "artifact-content"));
+
+    /** The location of each unique piece of content in the content log, by SHA-256 hash */
+    private final ContentBlobIndex blobs = listenTo(new ContentBlobIndex(rootFolder(), "artifact-content"));
+
+    /** The time each artifact was last resolved, in milliseconds since the epoch */
+    private final Map<ArtifactDescriptor, Long> lastResolved = new ConcurrentHashMap<>();
+
+    /** The time this repository was created, used for artifacts that have no resolve time */
+    private final long createdAt = System.currentTimeMillis();
+
+    /** True once resolve times have been loaded from disk */
+    private volatile boolean resolveTimesLoaded;
+
+    /** Lock that allows only one compaction at a time */
+    private final Lock compactionLock = new Lock();
+
+    /** The descriptors of artifacts published while a compaction is running, or null if none is running */
+    private volatile Set<ArtifactDescriptor> publishedDuringCompaction;
 
     /**
      * Creates a cache repository in the Fiasco cache folder
@@ -114,14 +223,155 @@ public class FiascoCacheRepository extends FiascoUserRepository
         super(name, folder);
     }
 
+    @Override
+    public FiascoCacheRepository clear()
+    {
+        contentLog.delete();
+        blobs.delete();
+        lastResolved.clear();
+        super.clear();
+        return this;
+    }
+
+    /**
+     * Compacts this repository while it continues to be used. Artifacts chosen by the given retention policy are
+     * removed, and the content of the remaining artifacts is copied out of the existing content log segments into a new
+     * segment. The existing segments are then retired.
+     *
+     * <p><b>Steps</b></p>
+     * <ol>
+     *     <li>Starts a new content log segment</li>
+     *     <li>Removes the artifacts chosen by the retention policy</li>
+     *     <li>Copies the content of each remaining artifact to the new segment, and publishes its new offsets</li>
+     *     <li>Retires the old segments, and rebuilds the blob index from the remaining artifacts</li>
+     * </ol>
+     *
+     * <p>
+     * Readers and installs are only blocked briefly: while each artifact's new offsets are published, and at the end,
+     * while the artifacts installed since compaction started are moved forward and the old segments are retired.
+     * </p>
+     *
+     * @param policy The policy that decides which artifacts to evict
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public void compact(ContentRetentionPolicy policy)
+    {
+        compactionLock.whileLocked(() ->
+        {
+            loadResolveTimes();
+
+            // Start recording the artifacts that are published from now on, and a new segment, so all content before
+            // it is either copied forward or evicted,
+            publishedDuringCompaction = ConcurrentHashMap.newKeySet();
+            try
+            {
+                var before = contentLog.size();
+                var boundary = contentLog.startSegment();
+
+                // decode the metadata for every artifact,
+                var artifacts = new ObjectList<Artifact<?>>();
+                for (var at : allArtifacts())
+                {
+                    artifacts.add(loadMetadata(at));
+                }
+
+                // remove the artifacts that the policy evicts,
+                var evictions = policy.evictions(artifacts, this::lastResolved, System.currentTimeMillis());
+                for (var descriptor : evictions)
+                {
+                    lock().write(() ->
+                    {
+                        removeArtifactMetadata(descriptor);
+                        remove(descriptor);
+                    });
+                    lastResolved.remove(descriptor);
+                }
+
+                // copy the content of the rest forward, publishing each artifact as we go, so readers are only
+                // blocked briefly, and index the content that remains,
+                var moved = new HashMap<Long, Long>();
+                var remaining = new HashMap<String, ContentBlobIndex.Blob>();
+                for (var artifact : artifacts)
+                {
+                    if (!evictions.contains(artifact.descriptor()))
+                    {
+                        var relocated = relocate(artifact, boundary, moved);
+                        republish(artifact, relocated);
+                        addBlobs(relocated, remaining);
+                    }
+                }
+
+                // and then, with writers blocked, move any artifacts installed during compaction, retire the old
+                // segments, and replace the blob index.
+                lock().write(() ->
+                {
+                    for (var descriptor : publishedDuringCompaction)
+                    {
+                        var installed = artifact(descriptor);
+                        if (installed != null)
+                        {
+                            var artifact = loadMetadata(installed);
+                            var relocated = relocate(artifact, boundary, moved);
+                            republish(artifact, relocated);
+                            addBlobs(relocated, remaining);
+                        }
+                    }
+                    contentLog.retire(boundary);
+                    blobs.replaceAll(remaining);
+                });
+
+                saveResolveTimes();
+                information("Compacted $: evicted $ artifacts, reduced content from $ to $ bytes",
+                    name(), evictions.size(), before, contentLog.size());
+            }
+            finally
+            {
+                publishedDuringCompaction = null;
+            }
+        });
+    }
+
+    /**
+     * Passes the content of each attachment of the given artifacts, in order, to the given reader. If the reader is a
+     * {@link ChannelContentReader}, the content is read directly from the content log's file channel.
+     *
+     * @param artifacts The artifacts, as resolved by this repository
+     * @param reader The content reader
+     * @throws IllegalStateException Thrown if content cannot be read
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public void readContent(ArtifactList artifacts, RepositoryContentReader reader)
+    {
+        for (var artifact : artifacts)
+        {
+            // Resolved content is bound to a resource, so get the content offsets from the artifact's metadata.
+            for (var attachment : loadMetadata(artifact).attachments())
+            {
+                var content = attachment.content();
+                contentLog.content(content.offset(), content.size().asBytes()).read(reader);
+            }
+        }
+    }
+
     @Override
     public ArtifactList resolveArtifacts(ArtifactDescriptorList descriptors,
                                          ProgressReporter reporter,
                                          RepositoryContentReader reader)
     {
-        // Resolve artifacts and append them to the artifact content file.
-        return super.resolveArtifacts(descriptors, reporter, (in, length) ->
-            artifactContentFile.copyFrom(new InputResource(in), APPEND, reporter.steps(length)));
+        // Resolve artifacts and append them to the artifact content log, reporting progress as content arrives,
+        var resolved = super.resolveArtifacts(descriptors, reporter, (in, length) ->
+        {
+            var progress = reporter.steps(length);
+            contentLog.sync(contentLog.append(0, length.asBytes(), out -> copy(in, out, progress)) + length.asBytes());
+        });
+
+        // then record when they were resolved, for the retention policy.
+        var now = System.currentTimeMillis();
+        for (var artifact : resolved)
+        {
+            lastResolved.put(artifact.descriptor(), now);
+        }
+        return resolved;
     }
 
     /**
@@ -136,21 +386,42 @@ public class FiascoCacheRepository extends FiascoUserRepository
         for (var attachment : artifact.attachments())
         {
             var content = attachment.content();
-            var start = content.offset();
-            var end = start + content.size().asBytes();
 
             artifact = artifact.withAttachment(attachment
-                .withContent(attachment.content()
-                    .withResource(new ResourceSection(artifactContentFile, start, end))));
+                .withContent(content
+                    .withResource(contentLog.content(content.offset(), content.size().asBytes()))));
         }
         return artifact;
     }
 
     /**
-     * Saves the given content attachment into the omnibus content file, returning the given {@link ArtifactContent}
-     * with the offset, size, and last modified time populated.
+     * Publishes the given artifact. If compaction retired the content log segment holding the artifact's content while
+     * it was being saved, the content is first copied forward.
+     *
+     * @param artifact The artifact being installed
+     * @param saved The artifact with its attachments saved by {@link #saveAttachments(Artifact)}
+     * @return The result of installation
+     */
+    @Override
+    protected InstallationResult publishArtifact(Artifact<?> artifact, Artifact<?> saved)
+    {
+        var result = super.publishArtifact(artifact, relocate(saved, contentLog.firstSegment(), new HashMap<>()));
+        lastResolved.put(artifact.descriptor(), System.currentTimeMillis());
+        var published = publishedDuringCompaction;
+        if (published != null)
+        {
+            published.add(artifact.descriptor());
+        }
+        return result;
+    }
+
+    /**
+     * Saves the given content attachment into the content log, returning the given {@link ArtifactContent} with the
+     * offset, size, last modified time, and SHA-256 hash populated. If the content is already in the log, it is not
+     * written again. The recorded hash is always computed from the content, never taken from its signature. New
+     * content is not durable until it has been synced by {@link #saveAttachments(Artifact)}.
      *
-     * @param attachment The artifact attachment to append to the attachments file
+     * @param attachment The artifact attachment to append to the content log
      * @throws IllegalStateException Thrown if the content cannot be attached
      */
     @Override
@@ -160,29 +431,66 @@ public class FiascoCacheRepository extends FiascoUserRepository
 
         try
         {
-            // Get the start of this content in the attachments file,
-            var start = artifactContentFile.sizeInBytes().asLong();
-
-            // get the size of the content and its time of last modification,
-            var size = content.resource().sizeInBytes();
+            var descriptorHash = hash(attachment.artifact().descriptor().name());
             var lastModified = content.lastModified();
 
-            // and if the content is a JAR file,
-            if (content instanceof JarContent jarContent)
+            // Get the hash claimed by the content's signature, if it has a usable one. The log holds the exploded
+            // entries of a JAR, not its bytes, so a JAR can't be hashed as it is appended, and is hashed up front.
+            var claimed = normalizedSha256(content.sha256());
+            var sha256 = content instanceof JarContent ? sha256(content.openForReading()) : null;
+
+            // If content with the claimed (or computed) hash is already in the content log,
+            long offset;
+            Bytes size;
+            var blob = blobs.blob(blobKey(content, sha256 != null ? sha256 : claimed));
+            if (blob != null && !contentLog.isRetired(blob.offset()) && sha256 == null)
+            {
+                // confirm that the content really has the claimed hash,
+                sha256 = sha256(content.openForReading());
+                if (!sha256.equals(claimed))
+                {
+                    blob = blobs.blob(blobKey(content, sha256));
+                }
+            }
+            if (blob != null && !contentLog.isRetired(blob.offset()))
             {
-                // explode the JAR entries and append them to the artifact content file,
-                jarContent.appendEntriesTo(artifactContentFile);
+                // and refer to it instead of storing it again.
+                offset = blob.offset();
+                size = Bytes.bytes(blob.size());
+            }
+            else if (content instanceof JarContent jarContent)
+            {
+                // If the content is a JAR file, explode its entries and append them to the content log,
+                size = jarContent.entriesSize();
+                offset = contentLog.append(descriptorHash, size.asBytes(), jarContent::writeEntriesTo);
             }
             else
             {
-                // otehrwise, append the content as-is to the content file,
-                content.resource().copyTo(artifactContentFile, APPEND);
+                // otherwise, append the content as-is to the content log, hashing it as it is written.
+                var digest = sha256Digest();
+                size = content.resource().sizeInBytes();
+                offset = contentLog.append(descriptorHash, size.asBytes(), out ->
+                {
+                    try (var in = new DigestInputStream(content.openForReading(), digest))
+                    {
+                        in.transferTo(out);
+                    }
+                });
+                sha256 = hex(digest);
             }
 
+            // Record the computed hash, warning if the signature claimed a different one,
+            if (claimed != null && !claimed.equals(sha256))
+            {
+                warning("SHA-256 of $ is $, not $ as signed", content, sha256, claimed);
+            }
+            var signed = (content.signatures() == null ? signatures() : content.signatures()).withSha256(sha256);
+
             // and return the artifact with its new content information.
             return attachment.withContent(content
-                .withOffset(start)
+                .withOffset(offset)
                 .withLastModified(lastModified.asLocalTime())
+                .withSignatures(signed)
                 .withSize(size));
         }
         catch (Exception e)
@@ -190,4 +498,209 @@ public class FiascoCacheRepository extends FiascoUserRepository
             return illegalState(e, "Unable to attach content: $", content);
         }
     }
+
+    /**
+     * Saves the attachments of the given artifact to the content log, and then syncs the log, so the content is on disk
+     * before the artifact's metadata is published. Once the content is on disk, it is added to the blob index, so later
+     * artifacts with the same content can share it.
+     *
+     * @param artifact The artifact
+     * @return The artifact with its saved attachments
+     */
+    @Override
+    protected Artifact<?> saveAttachments(Artifact<?> artifact)
+    {
+        var saved = super.saveAttachments(artifact);
+
+        var end = 0L;
+        for (var attachment : saved.attachments())
+        {
+            var content = attachment.content();
+            end = Math.max(end, content.offset() + content.size().asBytes());
+        }
+        contentLog.sync(end);
+
+        for (var attachment : saved.attachments())
+        {
+            var content = attachment.content();
+            var key = blobKey(content, content.sha256());
+            var blob = new ContentBlobIndex.Blob(content.offset(), content.size().asBytes());
+            if (key != null && !blob.equals(blobs.blob(key)))
+            {
+                blobs.add(key, blob);
+            }
+        }
+
+        return saved;
+    }
+
+    /**
+     * Adds the location of each attachment of the given artifact to the given blob index entries
+     */
+    private void addBlobs(Artifact<?> artifact, Map<String, ContentBlobIndex.Blob> blobs)
+    {
+        for (var attachment : artifact.attachments())
+        {
+            var content = attachment.content();
+            var key = blobKey(content, content.sha256());
+            if (key != null)
+            {
+                blobs.put(key, new ContentBlobIndex.Blob(content.offset(), content.size().asBytes()));
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the given content in the blob index. The content of a JAR is stored as its exploded entries,
+     * not as the JAR's bytes, so its key is derived from its SHA-256 hash. This keeps it from being confused with
+     * unexploded content that has the same bytes.
+     *
+     * @param content The content
+     * @param sha256 The SHA-256 hash of the content, or null if it is not known
+     * @return The key, or null if the content has no hash
+     */
+    private String blobKey(ArtifactContent content, String sha256)
+    {
+        sha256 = normalizedSha256(sha256);
+        if (sha256 != null && content instanceof JarContent)
+        {
+            return sha256(new ByteArrayInputStream(("jar-entries:" + sha256).getBytes(UTF_8)));
+        }
+        return sha256;
+    }
+
+    /**
+     * Copies the given input to the given output, advancing the given progress reporter by the number of bytes copied
+     */
+    private void copy(InputStream in, OutputStream out, ProgressReporter progress) throws IOException
+    {
+        var buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) >= 0)
+        {
+            out.write(buffer, 0, read);
+            progress.next(count(read));
+        }
+    }
+
+    /**
+     * Returns the time the given artifact was last resolved, in milliseconds since the epoch
+     */
+    private long lastResolved(ArtifactDescriptor descriptor)
+    {
+        return lastResolved.getOrDefault(descriptor, createdAt);
+    }
+
+    /**
+     * Loads the resolve times saved by {@link #saveResolveTimes()}, keeping any later times recorded in memory
+     */
+    private void loadResolveTimes()
+    {
+        if (!resolveTimesLoaded)
+        {
+            resolveTimesLoaded = true;
+            var path = resolveTimesPath();
+            if (Files.exists(path))
+            {
+                try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path))))
+                {
+                    for (var count = in.readInt(); count > 0; count--)
+                    {
+                        var descriptor = artifactDescriptor(in.readUTF());
+                        lastResolved.merge(descriptor, in.readLong(), Math::max);
+                    }
+                }
+                catch (IOException e)
+                {
+                    problem(e, "Unable to read artifact resolve times: $", path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the given artifact with any attachments in content log segments before the given segment copied to the
+     * end of the log. Content that has already been moved (because it is shared with another artifact) is not copied
+     * again. The copies are synced before this method returns.
+     *
+     * @param artifact The artifact, with its metadata
+     * @param segment The first segment that content can stay in
+     * @param moved The new offset of content that has already been moved, by its old offset
+     * @return The relocated artifact, or the given artifact if no content was moved
+     */
+    private Artifact<?> relocate(Artifact<?> artifact, int segment, Map<Long, Long> moved)
+    {
+        var relocated = artifact;
+        var end = 0L;
+        for (var attachment : artifact.attachments())
+        {
+            var content = attachment.content();
+            if (segment(content.offset()) < segment)
+            {
+                var size = content.size().asBytes();
+                var offset = moved.computeIfAbsent(content.offset(), at ->
+                    contentLog.copy(hash(artifact.descriptor().name()), at, size));
+                relocated = relocated.withAttachment(attachment.withContent(content.withOffset(offset)));
+                end = Math.max(end, offset + size);
+            }
+        }
+        contentLog.sync(end);
+        return relocated;
+    }
+
+    /**
+     * Publishes new metadata for an artifact whose content has been moved, unless the artifact has been removed
+     *
+     * @param artifact The artifact
+     * @param relocated The artifact with its new content offsets
+     */
+    private void republish(Artifact<?> artifact, Artifact<?> relocated)
+    {
+        if (relocated != artifact)
+        {
+            lock().write(() ->
+            {
+                if (contains(artifact))
+                {
+                    saveArtifactMetadata(relocated);
+                    add(relocated.descriptor(), relocated);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the path of the file holding artifact resolve times
+     */
+    private Path resolveTimesPath()
+    {
+        return Path.of(rootFolder().asUri()).resolve("artifact-resolve-times.binary");
+    }
+
+    /**
+     * Saves the time each artifact was last resolved, replacing the previous file atomically
+     */
+    private void saveResolveTimes()
+    {
+        var path = resolveTimesPath();
+        var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try
+        {
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary))))
+            {
+                var times = Map.copyOf(lastResolved);
+                out.writeInt(times.size());
+                for (var entry : times.entrySet())
+                {
+                    out.writeUTF(entry.getKey().name());
+                    out.writeLong(entry.getValue());
+                }
+            }
+            Files.move(temporary, path, REPLACE_EXISTING, ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            problem(e, "Unable to save artifact resolve times: $", path);
+        }
+    }
 }
@@ -1,22 +1,328 @@
 package digital.fiasco.runtime.repository.local.cache;
 
+import com.telenav.kivakit.core.collections.list.ObjectList;
+import digital.fiasco.runtime.dependency.artifact.content.jar.JarContent;
+import digital.fiasco.runtime.dependency.artifact.content.jar.JarEntry;
+import digital.fiasco.runtime.dependency.artifact.content.jar.JarIndex;
+import digital.fiasco.runtime.dependency.collections.ArtifactList;
+
 import javax.tools.FileObject;
 import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-public class FiascoJavaFileManager extends ForwardingJavaFileManager
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
+import static digital.fiasco.runtime.dependency.artifact.content.ArtifactAttachmentType.JAR_ATTACHMENT;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.tools.StandardLocation.CLASS_PATH;
+
+/**
+ * A {@link JavaFileManager} that serves the classpath from JARs stored exploded in a {@link FiascoCacheRepository}.
+ *
+ * <p>
+ * A standard file manager opens each JAR on the classpath and reads its central directory before it can find a single
+ * class, and it does this again for every compile. This file manager instead finds classpath entries with an index of
+ * the {@link JarIndex} entries of every JAR, by package, and reads each class file directly from its offset in the
+ * repository's content log. The index is built once for each distinct classpath, and is shared by all file managers
+ * for that classpath.
+ * </p>
+ *
+ * <p>
+ * Only {@link javax.tools.StandardLocation#CLASS_PATH} is served from the index, and the JARs in it come after the
+ * classpath of the wrapped file manager. So a class in a folder or JAR file on the wrapped file manager's classpath,
+ * such as a sibling module's freshly compiled class, is found instead of a class with the same name in a cache
+ * repository JAR. All other locations are forwarded to the wrapped file manager.
+ * </p>
+ *
+ * <p><b>Creation</b></p>
+ *
+ * <ul>
+ *     <li>{@link #fiascoJavaFileManager(JavaFileManager, ArtifactList)}</li>
+ *     <li>{@link #fiascoJavaFileManager(JavaFileManager, ObjectList)}</li>
+ * </ul>
+ *
+ * @author Jonathan Locke
+ * @see FiascoCacheRepository
+ * @see JarContent
+ * @see JarIndex
+ */
+public class FiascoJavaFileManager extends ForwardingJavaFileManager<JavaFileManager>
 {
+    /** The maximum number of classpath indexes to keep */
+    private static final int MAXIMUM_INDEXES = 64;
+
+    /** Indexes of recently used classpaths, by classpath key */
+    private static final Map<String, ClasspathIndex> indexes = new LinkedHashMap<>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ClasspathIndex> eldest)
+        {
+            return size() > MAXIMUM_INDEXES;
+        }
+    };
+
     /**
-     * Creates a new instance of {@code ForwardingJavaFileManager}.
+     * Returns a file manager that serves the JAR attachments of the given artifacts as the classpath
      *
-     * @param fileManager delegate to this file manager
+     * @param fileManager The file manager to forward to
+     * @param artifacts The artifacts, as resolved by a {@link FiascoCacheRepository}
+     * @return The file manager
+     */
+    public static FiascoJavaFileManager fiascoJavaFileManager(JavaFileManager fileManager, ArtifactList artifacts)
+    {
+        var jars = new ObjectList<JarContent>();
+        for (var artifact : artifacts)
+        {
+            for (var attachment : artifact.attachments())
+            {
+                if (attachment.attachmentType() == JAR_ATTACHMENT && attachment.content() instanceof JarContent jar)
+                {
+                    jars.add(jar);
+                }
+            }
+        }
+        return fiascoJavaFileManager(fileManager, jars);
+    }
+
+    /**
+     * Returns a file manager that serves the given JARs as the classpath, in order
+     *
+     * @param fileManager The file manager to forward to
+     * @param classpath The JARs on the classpath
+     * @return The file manager
+     */
+    public static FiascoJavaFileManager fiascoJavaFileManager(JavaFileManager fileManager,
+                                                              ObjectList<JarContent> classpath)
+    {
+        // Identify the classpath by the name, location, size and hash of each JAR,
+        var key = new StringBuilder();
+        for (var jar : classpath)
+        {
+            key.append(jar.name()).append('@').append(jar.offset()).append(':').append(jar.size())
+                .append(':').append(jar.sha256()).append('\n');
+        }
+
+        // and index it, unless it has been indexed already.
+        ClasspathIndex index;
+        synchronized (indexes)
+        {
+            index = indexes.get(key.toString());
+        }
+        if (index == null)
+        {
+            index = new ClasspathIndex(classpath);
+            synchronized (indexes)
+            {
+                indexes.put(key.toString(), index);
+            }
+        }
+        return new FiascoJavaFileManager(fileManager, index);
+    }
+
+    /**
+     * Classpath entries, by package and by path
      */
-    protected FiascoJavaFileManager(JavaFileManager fileManager)
+    static class ClasspathIndex
+    {
+        /** The entries in each package, in classpath order */
+        private final Map<String, List<EntryFileObject>> packages = new HashMap<>();
+
+        /** The entry for each path, without a leading slash, from the first JAR on the classpath that has it */
+        private final Map<String, EntryFileObject> paths = new HashMap<>();
+
+        ClasspathIndex(ObjectList<JarContent> classpath)
+        {
+            for (var jar : classpath)
+            {
+                for (var entry : jar.index().entries())
+                {
+                    // Skip folders,
+                    var path = relativePath(entry.path());
+                    if (path.isEmpty() || path.endsWith("/"))
+                    {
+                        continue;
+                    }
+
+                    // and index the first file with each path.
+                    var file = new EntryFileObject(jar, entry, path);
+                    if (paths.putIfAbsent(path, file) == null)
+                    {
+                        packages.computeIfAbsent(file.packageName(), ignored -> new ArrayList<>()).add(file);
+                    }
+                }
+            }
+        }
+
+        EntryFileObject file(String path)
+        {
+            return paths.get(path);
+        }
+
+        void list(String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse, List<JavaFileObject> files)
+        {
+            if (recurse)
+            {
+                var prefix = packageName.isEmpty() ? "" : packageName + ".";
+                for (var entry : packages.entrySet())
+                {
+                    if (entry.getKey().equals(packageName) || entry.getKey().startsWith(prefix))
+                    {
+                        add(entry.getValue(), kinds, files);
+                    }
+                }
+            }
+            else
+            {
+                add(packages.getOrDefault(packageName, List.of()), kinds, files);
+            }
+        }
+
+        private void add(List<EntryFileObject> entries, Set<JavaFileObject.Kind> kinds, List<JavaFileObject> files)
+        {
+            for (var file : entries)
+            {
+                if (kinds.contains(file.getKind()))
+                {
+                    files.add(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * A file in an exploded JAR
+     */
+    static class EntryFileObject extends SimpleJavaFileObject
+    {
+        /** The JAR */
+        private final JarContent jar;
+
+        /** The JAR entry */
+        private final JarEntry entry;
+
+        /** The path of the entry, without a leading slash */
+        private final String path;
+
+        EntryFileObject(JarContent jar, JarEntry entry, String path)
+        {
+            super(uri(jar, path), kind(path));
+            this.jar = jar;
+            this.entry = entry;
+            this.path = path;
+        }
+
+        /**
+         * Returns the binary name of the class in this file
+         */
+        public String binaryName()
+        {
+            var end = path.length() - getKind().extension.length();
+            return path.substring(0, end).replace('/', '.');
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException
+        {
+            try (var in = openInputStream())
+            {
+                return new String(in.readAllBytes(), UTF_8);
+            }
+        }
+
+        @Override
+        public String getName()
+        {
+            return jar.name() + "(" + path + ")";
+        }
+
+        @Override
+        public boolean isNameCompatible(String simpleName, JavaFileObject.Kind kind)
+        {
+            var name = simpleName + kind.extension;
+            return path.equals(name) || path.endsWith("/" + name);
+        }
+
+        @Override
+        public InputStream openInputStream()
+        {
+            return jar.openEntry(entry.path());
+        }
+
+        /**
+         * Returns the name of the package this file is in
+         */
+        public String packageName()
+        {
+            var slash = path.lastIndexOf('/');
+            return slash < 0 ? "" : path.substring(0, slash).replace('/', '.');
+        }
+
+        private static JavaFileObject.Kind kind(String path)
+        {
+            for (var kind : JavaFileObject.Kind.values())
+            {
+                if (kind != JavaFileObject.Kind.OTHER && path.endsWith(kind.extension))
+                {
+                    return kind;
+                }
+            }
+            return JavaFileObject.Kind.OTHER;
+        }
+
+        private static URI uri(JarContent jar, String path)
+        {
+            try
+            {
+                return new URI("fiasco", null, "/" + jar.name() + "/" + path, null);
+            }
+            catch (URISyntaxException e)
+            {
+                return illegalState(e, "Invalid JAR entry path: $", path);
+            }
+        }
+    }
+
+    /**
+     * Returns the given JAR entry path without any leading slash
+     */
+    private static String relativePath(String path)
+    {
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    /** The index of the classpath served by this file manager */
+    private final ClasspathIndex index;
+
+    /**
+     * @param fileManager The file manager to forward to
+     * @param index The classpath index
+     */
+    protected FiascoJavaFileManager(JavaFileManager fileManager, ClasspathIndex index)
     {
         super(fileManager);
+        this.index = index;
+    }
+
+    @Override
+    public boolean contains(Location location, FileObject file) throws IOException
+    {
+        if (file instanceof EntryFileObject)
+        {
+            return location == CLASS_PATH;
+        }
+        return super.contains(location, file);
     }
 
     @Override
@@ -24,15 +330,55 @@ public class FiascoJavaFileManager extends ForwardingJavaFileManager
                                       String packageName,
                                       String relativeName) throws IOException
     {
-        return super.getFileForInput(location, packageName, relativeName);
+        var file = super.getFileForInput(location, packageName, relativeName);
+        if (file == null && location == CLASS_PATH)
+        {
+            var path = packageName.isEmpty() ? relativeName : packageName.replace('.', '/') + "/" + relativeName;
+            return index.file(path);
+        }
+        return file;
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForInput(Location location,
+                                              String className,
+                                              JavaFileObject.Kind kind) throws IOException
+    {
+        var file = super.getJavaFileForInput(location, className, kind);
+        if (file == null && location == CLASS_PATH)
+        {
+            return index.file(className.replace('.', '/') + kind.extension);
+        }
+        return file;
+    }
+
+    @Override
+    public String inferBinaryName(Location location, JavaFileObject file)
+    {
+        if (file instanceof EntryFileObject entry)
+        {
+            return entry.binaryName();
+        }
+        return super.inferBinaryName(location, file);
+    }
+
+    @Override
+    public boolean isSameFile(FileObject a, FileObject b)
+    {
+        if (a instanceof EntryFileObject || b instanceof EntryFileObject)
+        {
+            return a.equals(b);
+        }
+        return super.isSameFile(a, b);
     }
 
     /**
-     * {@inheritDoc}
+     * Lists the files in the given package. Files on the wrapped file manager's classpath are listed first, followed by
+     * the entries of cache repository JARs, leaving out classes that the wrapped file manager already listed.
      *
      * @param location {@inheritDoc}
      * @param packageName {@inheritDoc}
-     * @param set {@inheritDoc}
+     * @param kinds {@inheritDoc}
      * @param recurse {@inheritDoc}
      * @return {@inheritDoc}
      * @throws IOException {@inheritDoc}
@@ -40,9 +386,32 @@ public class FiascoJavaFileManager extends ForwardingJavaFileManager
     @Override
     public Iterable<JavaFileObject> list(Location location,
                                          String packageName,
-                                         Set set,
+                                         Set<JavaFileObject.Kind> kinds,
                                          boolean recurse) throws IOException
     {
-        return super.list(location, packageName, set, recurse);
+        if (location == CLASS_PATH)
+        {
+            // List the wrapped file manager's files,
+            var files = new ArrayList<JavaFileObject>();
+            var listed = new HashSet<String>();
+            for (var file : super.list(location, packageName, kinds, recurse))
+            {
+                files.add(file);
+                listed.add(super.inferBinaryName(location, file) + file.getKind().extension);
+            }
+
+            // then the JAR entries they don't hide.
+            var entries = new ArrayList<JavaFileObject>();
+            index.list(packageName, kinds, recurse, entries);
+            for (var entry : entries)
+            {
+                if (!listed.contains(((EntryFileObject) entry).binaryName() + entry.getKind().extension))
+                {
+                    files.add(entry);
+                }
+            }
+            return files;
+        }
+        return super.list(location, packageName, kinds, recurse);
     }
 }
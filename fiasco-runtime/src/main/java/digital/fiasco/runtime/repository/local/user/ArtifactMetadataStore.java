@@ -0,0 +1,915 @@
+package digital.fiasco.runtime.repository.local.user;
+
+import com.telenav.kivakit.annotations.code.quality.MethodQuality;
+import com.telenav.kivakit.annotations.code.quality.TypeQuality;
+import com.telenav.kivakit.component.BaseComponent;
+import com.telenav.kivakit.core.thread.locks.Lock;
+import com.telenav.kivakit.filesystem.Folder;
+import digital.fiasco.runtime.dependency.artifact.Artifact;
+import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
+import static com.telenav.kivakit.annotations.code.quality.Stability.STABILITY_UNDETERMINED;
+import static com.telenav.kivakit.annotations.code.quality.Testing.TESTED;
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
+import static digital.fiasco.runtime.dependency.artifact.Artifact.artifactFromJson;
+import static digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor.artifactDescriptor;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A compact, append-only binary store of artifact metadata that is read through memory-mapped buffers.
+ *
+ * <p><b>File Format</b></p>
+ *
+ * <p>
+ * The store consists of two files in the repository folder:
+ * </p>
+ *
+ * <ul>
+ *     <li><i>artifacts.binary</i> - An 8 byte header (magic number and format version), followed by records laid out
+ *     end-to-end. Each record is the length of the descriptor, the length of the metadata, the descriptor text, and
+ *     the artifact metadata in JSON format, all encoded in UTF-8.</li>
+ *     <li><i>artifacts.offsets</i> - The offset table. A long for each record, giving the offset of the record in
+ *     <i>artifacts.binary</i>. The number of records is the size of this file divided by 8.</li>
+ *     <li><i>artifacts.index</i> - The descriptor index. A header (magic number, format version, number of slots,
+ *     number of used slots and number of records indexed), followed by an open-addressing hash table of long slots.
+ *     Each used slot holds the hash of a descriptor in its upper 32 bits and one more than the number of the latest
+ *     record for the descriptor in its lower 32 bits.</li>
+ * </ul>
+ *
+ * <p>
+ * Records are never changed. When an artifact's metadata changes, a new record is appended for it, which supersedes the
+ * earlier one. An artifact is removed by appending a removal record, which has a metadata length of -1 and no metadata.
+ * </p>
+ *
+ * <p>
+ * A record is written to <i>artifacts.binary</i> before its offset is appended to the offset table, so a record that
+ * was only partially written when a process died is never visible. A record's slot in the descriptor index is forced to
+ * disk before the index header counts the record as indexed, so when the store is opened, only records after the
+ * indexed count need to be indexed again. If the descriptor index is missing or damaged, it is rebuilt from the
+ * records.
+ * </p>
+ *
+ * <p>
+ * The metadata file is read through a single mapping, so it can't grow beyond 2GB. An append that would exceed this
+ * limit fails with an {@link IllegalStateException}.
+ * </p>
+ *
+ * <p><b>Lazy Decoding</b></p>
+ *
+ * <p>
+ * Opening the store maps its files, which takes constant time. Nothing is decoded until it is first touched.
+ * {@link #record(ArtifactDescriptor)} finds the latest record for a descriptor by probing the descriptor index, and
+ * decodes only the descriptors of the records whose hashes match. The (much larger) JSON metadata for an artifact is
+ * decoded by {@link #artifact(int)} only when the artifact is resolved, and is then remembered.
+ * </p>
+ *
+ * <p><b>Concurrency</b></p>
+ *
+ * <p>
+ * Lookups hold a shared read lock, so they run concurrently with each other. Appends are serialized by a separate
+ * lock, and write and force the new record and its offset to disk before taking the exclusive write lock, which is held
+ * only while the record is counted and its slot in the descriptor index is written. The index is forced to disk after
+ * the write lock is released, so lookups never wait for a disk flush, except when the store is opened or the index is
+ * grown.
+ * </p>
+ *
+ * <p><b>Access</b></p>
+ *
+ * <ul>
+ *     <li>{@link #append(Artifact)}</li>
+ *     <li>{@link #artifact(int)}</li>
+ *     <li>{@link #descriptor(int)}</li>
+ *     <li>{@link #exists()}</li>
+ *     <li>{@link #isRemoval(int)}</li>
+ *     <li>{@link #record(ArtifactDescriptor)}</li>
+ *     <li>{@link #remove(ArtifactDescriptor)}</li>
+ *     <li>{@link #size()}</li>
+ * </ul>
+ *
+ * <p><b>Lifecycle</b></p>
+ *
+ * <ul>
+ *     <li>{@link #close()}</li>
+ *     <li>{@link #delete()}</li>
+ * </ul>
+ *
+ * @author Jonathan Locke
+ * @see FiascoUserRepository
+ */
+@SuppressWarnings("unused")
+@TypeQuality(documentation = DOCUMENTED, testing = TESTED, stability = STABILITY_UNDETERMINED)
+public class ArtifactMetadataStore extends BaseComponent
+{
+    /** Magic number at the start of the metadata file ("FIAM") */
+    private static final int MAGIC = 0x4649414D;
+
+    /** The version of the metadata file format */
+    private static final int FORMAT_VERSION = 1;
+
+    /** The size of the metadata file header (magic number and format version) */
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+
+    /** Magic number at the start of the descriptor index file ("FIAI") */
+    private static final int INDEX_MAGIC = 0x46494149;
+
+    /** The size of the descriptor index header (magic number, format version, slots, used slots and records indexed) */
+    private static final int INDEX_HEADER_SIZE = Integer.BYTES * 4 + Long.BYTES;
+
+    /** The position of the number of used slots in the descriptor index header */
+    private static final int INDEX_USED = Integer.BYTES * 3;
+
+    /** The position of the number of records indexed in the descriptor index header */
+    private static final int INDEX_INDEXED = Integer.BYTES * 4;
+
+    /** The smallest number of slots in the descriptor index */
+    private static final int MINIMUM_SLOTS = 1024;
+
+    /** The largest number of slots in the descriptor index, which keeps it within a single mapping */
+    private static final int MAXIMUM_SLOTS = 1 << 27;
+
+    /** The largest size of the metadata file, which is read through a single mapping */
+    private static final long MAXIMUM_METADATA_SIZE = Integer.MAX_VALUE;
+
+    /** Metadata length of a record that removes an artifact */
+    private static final int REMOVED = -1;
+
+    /** The size of each record header (descriptor length and metadata length) */
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES * 2;
+
+    /** The file holding metadata records */
+    private final Path metadataPath;
+
+    /** The file holding the offset of each record */
+    private final Path offsetsPath;
+
+    /** The file holding the descriptor index */
+    private final Path indexPath;
+
+    /** The open metadata file, or null if the store is not open */
+    private FileChannel metadata;
+
+    /** The open offsets file, or null if the store is not open */
+    private FileChannel offsets;
+
+    /** The open descriptor index file, or null if the store is not open */
+    private FileChannel index;
+
+    /** Read-only mapping of the metadata file, remapped as the file grows */
+    private volatile MappedByteBuffer metadataMap;
+
+    /** Read-only mapping of the offsets file, remapped as the file grows */
+    private volatile MappedByteBuffer offsetsMap;
+
+    /** Read-write mapping of the descriptor index file, which is replaced when the index grows */
+    private MappedByteBuffer indexMap;
+
+    /** The number of slots in the descriptor index, which is a power of two */
+    private int slots;
+
+    /** The number of used slots in the descriptor index */
+    private int used;
+
+    /** The number of records in this store */
+    private int size;
+
+    /** Artifacts that have been decoded, by record number */
+    private final Map<Integer, Artifact<?>> recordToArtifact = new ConcurrentHashMap<>();
+
+    /** Lock that is shared by lookups, and held exclusively while the store is opened, closed or indexed */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Lock that allows only one thread at a time to append a record */
+    private final Lock appendLock = new Lock();
+
+    /**
+     * Creates a metadata store in the given folder
+     *
+     * @param folder The repository folder
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public ArtifactMetadataStore(Folder folder)
+    {
+        var root = Path.of(folder.asUri());
+        this.metadataPath = root.resolve("artifacts.binary");
+        this.offsetsPath = root.resolve("artifacts.offsets");
+        this.indexPath = root.resolve("artifacts.index");
+    }
+
+    /**
+     * Appends the given artifact's metadata to this store. If the store already has a record for the artifact, the new
+     * record supersedes it.
+     *
+     * @param artifact The artifact
+     * @return The record number of the artifact
+     * @throws IllegalStateException Thrown if the metadata cannot be written
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public int append(Artifact<?> artifact)
+    {
+        var number = appendRecord(artifact.descriptor(), artifact.toJson().getBytes(UTF_8));
+        recordToArtifact.put(number, artifact);
+        return number;
+    }
+
+    /**
+     * Returns the artifact stored in the given record, decoding its metadata if it has not been decoded before
+     *
+     * @param record The record number
+     * @return The artifact
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public Artifact<?> artifact(int record)
+    {
+        var artifact = recordToArtifact.get(record);
+        if (artifact == null)
+        {
+            artifact = read(() ->
+            {
+                var buffer = record(record);
+                var descriptorLength = buffer.getInt();
+                var metadataLength = buffer.getInt();
+                ensure(metadataLength != REMOVED, "Metadata record $ is a removal", record);
+                buffer.position(buffer.position() + descriptorLength);
+                return artifactFromJson(string(buffer, metadataLength));
+            });
+            recordToArtifact.put(record, artifact);
+        }
+        return artifact;
+    }
+
+    /**
+     * Closes this store. The store will be re-opened if it is used again.
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public void close()
+    {
+        appendLock.whileLocked(() -> write(this::closeFiles));
+    }
+
+    /**
+     * Closes this store and deletes its files
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public void delete()
+    {
+        appendLock.whileLocked(() -> write(() ->
+        {
+            closeFiles();
+            try
+            {
+                Files.deleteIfExists(metadataPath);
+                Files.deleteIfExists(offsetsPath);
+                Files.deleteIfExists(indexPath);
+            }
+            catch (IOException e)
+            {
+                illegalState(e, "Unable to delete metadata store: $", metadataPath);
+            }
+        }));
+    }
+
+    /**
+     * Returns the descriptor of the artifact in the given record. Only the descriptor is decoded.
+     *
+     * @param record The record number
+     * @return The artifact descriptor
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public ArtifactDescriptor descriptor(int record)
+    {
+        return read(() -> decodeDescriptor(record));
+    }
+
+    /**
+     * Returns true if this store has been created on disk
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public boolean exists()
+    {
+        return Files.exists(metadataPath) && Files.exists(offsetsPath);
+    }
+
+    /**
+     * Returns true if the given record is a removal, written by {@link #remove(ArtifactDescriptor)}
+     *
+     * @param record The record number
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public boolean isRemoval(int record)
+    {
+        return read(() -> removal(record));
+    }
+
+    /**
+     * Returns the number of the latest record for the given descriptor, found in the descriptor index
+     *
+     * @param descriptor The descriptor
+     * @return The record number, or null if the store has no artifact with the descriptor, or it has been removed
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public Integer record(ArtifactDescriptor descriptor)
+    {
+        return read(() ->
+        {
+            var slot = slot(descriptor);
+            var value = indexMap.getLong(slotPosition(slot));
+            if (value == 0)
+            {
+                return null;
+            }
+            var record = recordOf(value);
+            return removal(record) ? null : record;
+        });
+    }
+
+    /**
+     * Appends a removal record for the given descriptor, which supersedes any earlier record for the descriptor
+     *
+     * @param descriptor The descriptor of the artifact to remove
+     * @throws IllegalStateException Thrown if the removal cannot be written
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public void remove(ArtifactDescriptor descriptor)
+    {
+        appendRecord(descriptor, null);
+    }
+
+    /**
+     * Returns the number of records in this store
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public int size()
+    {
+        return read(() -> size);
+    }
+
+    /**
+     * Appends a record to the metadata file, and then publishes it by appending its offset to the offset table. The
+     * record and its offset are forced to disk before the write lock is taken, and the descriptor index is forced to
+     * disk after it has been released, so lookups don't wait for either.
+     *
+     * @param descriptor The artifact descriptor
+     * @param json The artifact metadata, or null for a removal record
+     * @return The record number
+     */
+    private int appendRecord(ArtifactDescriptor descriptor, byte[] json)
+    {
+        return appendLock.whileLocked(() ->
+        {
+            write(this::open);
+
+            var descriptorBytes = descriptor.name().getBytes(UTF_8);
+            var jsonLength = json == null ? 0 : json.length;
+
+            try
+            {
+                // Check that the record fits in the mapped metadata file,
+                var offset = metadata.size();
+                var recordSize = RECORD_HEADER_SIZE + descriptorBytes.length + (long) jsonLength;
+                ensure(offset + recordSize <= MAXIMUM_METADATA_SIZE,
+                    "Artifact metadata store $ is full: $ cannot be added", metadataPath, descriptor);
+
+                // write the record to the end of the metadata file,
+                var record = ByteBuffer.allocate((int) recordSize)
+                    .putInt(descriptorBytes.length)
+                    .putInt(json == null ? REMOVED : jsonLength)
+                    .put(descriptorBytes);
+                if (json != null)
+                {
+                    record.put(json);
+                }
+                writeFully(metadata, record.flip(), offset);
+                metadata.force(false);
+
+                // append its offset to the offset table,
+                var number = size;
+                writeFully(offsets, ByteBuffer.allocate(Long.BYTES).putLong(offset).flip(), (long) number * Long.BYTES);
+                offsets.force(false);
+
+                // publish it by pointing the descriptor's slot in the index at it and counting it,
+                lock.writeLock().lock();
+                try
+                {
+                    putSlot(number, descriptor);
+                    size = number + 1;
+                }
+                finally
+                {
+                    lock.writeLock().unlock();
+                }
+
+                // and count it as indexed once the index is on disk.
+                publishIndexed(number + 1);
+                return number;
+            }
+            catch (IOException e)
+            {
+                return illegalState(e, "Unable to append metadata for: $", descriptor);
+            }
+        });
+    }
+
+    /**
+     * Closes the store's files and forgets everything that was read from them
+     */
+    private void closeFiles()
+    {
+        try
+        {
+            if (metadata != null)
+            {
+                metadata.close();
+                offsets.close();
+            }
+            if (index != null)
+            {
+                index.close();
+            }
+        }
+        catch (IOException e)
+        {
+            problem(e, "Unable to close metadata store");
+        }
+        finally
+        {
+            metadata = null;
+            offsets = null;
+            index = null;
+            metadataMap = null;
+            offsetsMap = null;
+            indexMap = null;
+            slots = 0;
+            used = 0;
+            size = 0;
+            recordToArtifact.clear();
+        }
+    }
+
+    /**
+     * Returns the number of used slots in the descriptor index, counted by scanning it. This is only needed after a
+     * process died while updating the index, when the number in the header may not be right.
+     */
+    private int countUsedSlots()
+    {
+        var count = 0;
+        for (var slot = 0; slot < slots; slot++)
+        {
+            if (indexMap.getLong(slotPosition(slot)) != 0)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the descriptor of the artifact in the given record
+     */
+    private ArtifactDescriptor decodeDescriptor(int record)
+    {
+        var buffer = record(record);
+        var descriptorLength = buffer.getInt();
+        buffer.getInt();
+        return artifactDescriptor(string(buffer, descriptorLength));
+    }
+
+    /**
+     * Returns the hash of the given descriptor that is stored in the descriptor index. {@link String#hashCode()} is
+     * specified by the Java language, so it is stable across processes.
+     */
+    private int hash(ArtifactDescriptor descriptor)
+    {
+        return descriptor.name().hashCode();
+    }
+
+    /**
+     * Points the descriptor's slot in the descriptor index at the given record, and then counts the record as indexed
+     *
+     * @param record The record number
+     * @param descriptor The record's descriptor
+     */
+    private void indexRecord(int record, ArtifactDescriptor descriptor) throws IOException
+    {
+        putSlot(record, descriptor);
+        publishIndexed(record + 1);
+    }
+
+    /**
+     * Indexes the records from the given record to the end of the store, and then counts them as indexed
+     *
+     * @param from The first record to index
+     */
+    private void indexRecords(int from) throws IOException
+    {
+        for (var at = from; at < size; at++)
+        {
+            putSlot(at, decodeDescriptor(at));
+        }
+        publishIndexed(size);
+    }
+
+    /**
+     * Maps the descriptor index file, if it exists and matches this store
+     *
+     * @return True if the index was mapped, false if it must be rebuilt
+     */
+    private boolean mapIndex() throws IOException
+    {
+        if (!Files.exists(indexPath))
+        {
+            return false;
+        }
+
+        // Map the index file,
+        index = FileChannel.open(indexPath, READ, WRITE);
+        var fileSize = index.size();
+        if (fileSize >= INDEX_HEADER_SIZE && fileSize <= MAXIMUM_METADATA_SIZE)
+        {
+            indexMap = index.map(READ_WRITE, 0, fileSize);
+
+            // and if its header is valid, and it doesn't index records this store doesn't have, use it.
+            slots = indexMap.getInt(Integer.BYTES * 2);
+            used = indexMap.getInt(INDEX_USED);
+            if (indexMap.getInt(0) == INDEX_MAGIC
+                && indexMap.getInt(Integer.BYTES) == FORMAT_VERSION
+                && slots >= MINIMUM_SLOTS
+                && Integer.bitCount(slots) == 1
+                && fileSize == INDEX_HEADER_SIZE + (long) slots * Long.BYTES
+                && indexMap.getLong(INDEX_INDEXED) <= size)
+            {
+                return true;
+            }
+        }
+
+        // Otherwise, the index is damaged.
+        warning("Rebuilding damaged artifact descriptor index: $", indexPath);
+        index.close();
+        index = null;
+        indexMap = null;
+        return false;
+    }
+
+    /**
+     * Opens the store's files, creating them if necessary, and maps them into memory
+     *
+     * @throws IllegalStateException Thrown if the store cannot be opened or is not a metadata store
+     */
+    private void open()
+    {
+        if (metadata == null)
+        {
+            try
+            {
+                Files.createDirectories(metadataPath.getParent());
+                metadata = FileChannel.open(metadataPath, CREATE, READ, WRITE);
+                offsets = FileChannel.open(offsetsPath, CREATE, READ, WRITE);
+
+                // If the metadata file is new, write its header,
+                if (metadata.size() == 0)
+                {
+                    writeFully(metadata, ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).flip(), 0);
+                    metadata.force(false);
+                }
+
+                // then check the header and size,
+                var header = ByteBuffer.allocate(HEADER_SIZE);
+                metadata.read(header, 0);
+                header.flip();
+                ensure(header.getInt() == MAGIC, "Not an artifact metadata file: $", metadataPath);
+                ensure(header.getInt() == FORMAT_VERSION, "Unsupported artifact metadata format: $", metadataPath);
+                ensure(metadata.size() <= MAXIMUM_METADATA_SIZE, "Artifact metadata file is too large: $", metadataPath);
+
+                // ignore any offset that was only partially written,
+                size = (int) (offsets.size() / Long.BYTES);
+                offsets.truncate((long) size * Long.BYTES);
+
+                // map both files,
+                remap();
+
+                // and map the descriptor index, rebuilding it if it's missing or damaged, and indexing any records
+                // that were appended after it was last updated.
+                if (!mapIndex())
+                {
+                    rebuildIndex(slotsFor(size), false);
+                }
+                var indexed = (int) indexMap.getLong(INDEX_INDEXED);
+                if (indexed < size)
+                {
+                    used = countUsedSlots();
+                    indexRecords(indexed);
+                }
+            }
+            catch (IOException e)
+            {
+                close();
+                illegalState(e, "Unable to open metadata store: $", metadataPath);
+            }
+        }
+    }
+
+    /**
+     * Forces the slots of the descriptor index to disk, and only then writes the number of records indexed to the
+     * header, so a slot is never lost for a record that the header counts as indexed
+     *
+     * @param indexed The number of records indexed
+     */
+    private void publishIndexed(int indexed)
+    {
+        indexMap.force();
+        indexMap.putInt(INDEX_USED, used);
+        indexMap.putLong(INDEX_INDEXED, indexed);
+    }
+
+    /**
+     * Points the descriptor's slot in the descriptor index at the given record, doubling the size of the index first if
+     * it would be more than half full
+     *
+     * @param record The record number
+     * @param descriptor The record's descriptor
+     */
+    private void putSlot(int record, ArtifactDescriptor descriptor) throws IOException
+    {
+        // If the index would be more than half full, double its size,
+        if ((used + 1) * 2L > slots)
+        {
+            rebuildIndex(slots * 2, true);
+        }
+
+        // then write the descriptor's slot, counting it if it wasn't used before.
+        var position = slotPosition(slot(descriptor));
+        if (indexMap.getLong(position) == 0)
+        {
+            used++;
+        }
+        indexMap.putLong(position, ((long) hash(descriptor) << 32) | (record + 1L));
+    }
+
+    /**
+     * Runs the given code while holding the read lock, and returns its result. If the store is not open, it is opened
+     * while holding the write lock, which is then downgraded to the read lock.
+     *
+     * @param code The code to run
+     * @return The value returned by the code
+     */
+    private <T> T read(Supplier<T> code)
+    {
+        // If the store isn't open,
+        lock.readLock().lock();
+        if (metadata == null)
+        {
+            // trade the read lock for the write lock, open the store, and then downgrade to the read lock.
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+            try
+            {
+                open();
+                lock.readLock().lock();
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+
+        // Run the code while holding the read lock.
+        try
+        {
+            return code.get();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a new descriptor index with the given number of slots to a temporary file, and then moves it into place
+     *
+     * @param slots The number of slots
+     * @param copy True to copy the slots of the current index, false to start with an empty index
+     */
+    private void rebuildIndex(int slots, boolean copy) throws IOException
+    {
+        ensure(slots <= MAXIMUM_SLOTS, "Artifact descriptor index is full: $", indexPath);
+
+        // Create the new index with a header,
+        var temporary = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, READ, WRITE))
+        {
+            var map = channel.map(READ_WRITE, 0, INDEX_HEADER_SIZE + (long) slots * Long.BYTES);
+            map.putInt(0, INDEX_MAGIC);
+            map.putInt(Integer.BYTES, FORMAT_VERSION);
+            map.putInt(Integer.BYTES * 2, slots);
+
+            // and copy the slots of the current index into it, using the hashes in the slots.
+            var used = 0;
+            var indexed = 0L;
+            if (copy)
+            {
+                for (var slot = 0; slot < this.slots; slot++)
+                {
+                    var value = indexMap.getLong(slotPosition(slot));
+                    if (value != 0)
+                    {
+                        var at = spread((int) (value >>> 32)) & (slots - 1);
+                        while (map.getLong(slotPosition(at)) != 0)
+                        {
+                            at = (at + 1) & (slots - 1);
+                        }
+                        map.putLong(slotPosition(at), value);
+                        used++;
+                    }
+                }
+                indexed = indexMap.getLong(INDEX_INDEXED);
+            }
+            map.putInt(INDEX_USED, used);
+            map.putLong(INDEX_INDEXED, indexed);
+            map.force();
+        }
+
+        // Replace the current index with the new one,
+        if (index != null)
+        {
+            index.close();
+        }
+        Files.move(temporary, indexPath, REPLACE_EXISTING, ATOMIC_MOVE);
+
+        // then map it, indexing every record if it started out empty.
+        ensure(mapIndex(), "Unable to map artifact descriptor index: $", indexPath);
+        if (!copy)
+        {
+            indexRecords(0);
+        }
+    }
+
+    /**
+     * Returns a buffer positioned at the start of the given record
+     *
+     * @param record The record number
+     * @return The buffer
+     */
+    private ByteBuffer record(int record)
+    {
+        ensure(record >= 0 && record < size, "No metadata record $", record);
+
+        try
+        {
+            // If the record is beyond what has been mapped, the files have grown, so remap them,
+            if ((long) (record + 1) * Long.BYTES > offsetsMap.capacity())
+            {
+                remap();
+            }
+            var offset = offsetsMap.getLong(record * Long.BYTES);
+            ensure(offset <= MAXIMUM_METADATA_SIZE, "Metadata record $ is beyond the end of the store", record);
+            var mapped = metadataMap;
+            if (offset + RECORD_HEADER_SIZE > mapped.capacity())
+            {
+                remap();
+                mapped = metadataMap;
+            }
+
+            // then return a view of the mapped metadata starting at the record.
+            return mapped.duplicate().position((int) offset);
+        }
+        catch (IOException e)
+        {
+            return illegalState(e, "Unable to read metadata record $", record);
+        }
+    }
+
+    /**
+     * Returns the record number stored in the given slot value
+     */
+    private int recordOf(long slotValue)
+    {
+        return (int) (slotValue & 0xffff_ffffL) - 1;
+    }
+
+    /**
+     * Maps the metadata and offsets files into memory, read-only. This may be called by concurrent lookups, since a
+     * new mapping covers at least as much as the one it replaces.
+     */
+    private void remap() throws IOException
+    {
+        offsetsMap = offsets.map(READ_ONLY, 0, (long) size * Long.BYTES);
+        metadataMap = metadata.map(READ_ONLY, 0, metadata.size());
+    }
+
+    /**
+     * Returns true if the given record is a removal
+     */
+    private boolean removal(int record)
+    {
+        var buffer = record(record);
+        buffer.getInt();
+        return buffer.getInt() == REMOVED;
+    }
+
+    /**
+     * Returns the slot in the descriptor index for the given descriptor. This is the slot holding its latest record, or
+     * if it has no record, the empty slot where its first record belongs.
+     */
+    private int slot(ArtifactDescriptor descriptor)
+    {
+        var hash = hash(descriptor);
+        var mask = slots - 1;
+        var slot = spread(hash) & mask;
+        for (var probes = 0; probes < slots; probes++, slot = (slot + 1) & mask)
+        {
+            // If the slot is empty, or holds a record with the same descriptor, it's the descriptor's slot.
+            var value = indexMap.getLong(slotPosition(slot));
+            if (value == 0 || ((int) (value >>> 32) == hash && decodeDescriptor(recordOf(value)).equals(descriptor)))
+            {
+                return slot;
+            }
+        }
+        return illegalState("Artifact descriptor index is full: $", indexPath);
+    }
+
+    /**
+     * Returns the position of the given slot in the descriptor index file
+     */
+    private int slotPosition(int slot)
+    {
+        return INDEX_HEADER_SIZE + slot * Long.BYTES;
+    }
+
+    /**
+     * Returns the number of slots for a new descriptor index holding the given number of records
+     */
+    private int slotsFor(int records)
+    {
+        var slots = MINIMUM_SLOTS;
+        while (slots < records * 2L && slots < MAXIMUM_SLOTS)
+        {
+            slots *= 2;
+        }
+        return slots;
+    }
+
+    /**
+     * Spreads the high bits of the given hash into the low bits that choose a slot
+     */
+    private int spread(int hash)
+    {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Decodes a UTF-8 string of the given length from the given buffer
+     */
+    private String string(ByteBuffer buffer, int length)
+    {
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Runs the given code while holding the write lock
+     */
+    private void write(Runnable code)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            code.run();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the given buffer to the given channel at the given position
+     */
+    private void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            position += channel.write(buffer, position);
+        }
+    }
+}
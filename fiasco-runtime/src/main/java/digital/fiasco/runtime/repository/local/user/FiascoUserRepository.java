@@ -7,30 +7,34 @@ import com.telenav.kivakit.core.progress.ProgressReporter;
 import com.telenav.kivakit.core.registry.Register;
 import com.telenav.kivakit.filesystem.File;
 import com.telenav.kivakit.filesystem.Folder;
-import com.telenav.kivakit.resource.resources.StringResource;
 import digital.fiasco.runtime.dependency.artifact.Artifact;
 import digital.fiasco.runtime.dependency.artifact.content.ArtifactAttachment;
 import digital.fiasco.runtime.dependency.artifact.content.ArtifactContent;
 import digital.fiasco.runtime.dependency.artifact.content.ArtifactContentSignatures;
+import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor;
 import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptorList;
 import digital.fiasco.runtime.dependency.collections.ArtifactList;
 import digital.fiasco.runtime.repository.BaseRepository;
 import digital.fiasco.runtime.repository.Repository;
 import digital.fiasco.runtime.repository.RepositoryContentReader;
+import digital.fiasco.runtime.repository.local.cache.ContentLogSection;
 import digital.fiasco.runtime.repository.local.cache.FiascoCacheRepository;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
 import static com.telenav.kivakit.annotations.code.quality.Stability.STABLE;
 import static com.telenav.kivakit.annotations.code.quality.Testing.TESTED;
 import static com.telenav.kivakit.core.collections.list.ObjectList.list;
 import static com.telenav.kivakit.core.ensure.Ensure.ensureNotNull;
+import static com.telenav.kivakit.core.ensure.Ensure.illegalState;
 import static com.telenav.kivakit.core.object.Lazy.lazy;
 import static com.telenav.kivakit.core.string.AsciiArt.repeat;
 import static com.telenav.kivakit.filesystem.Folder.folder;
-import static com.telenav.kivakit.resource.WriteMode.APPEND;
 import static com.telenav.kivakit.resource.WriteMode.OVERWRITE;
 import static digital.fiasco.runtime.FiascoRuntime.fiascoCacheFolder;
 import static digital.fiasco.runtime.dependency.artifact.Artifact.artifactFromJson;
@@ -38,13 +42,15 @@ import static digital.fiasco.runtime.dependency.collections.ArtifactList.artifac
 import static digital.fiasco.runtime.repository.Repository.InstallationResult.ALREADY_INSTALLED;
 import static digital.fiasco.runtime.repository.Repository.InstallationResult.INSTALLATION_FAILED;
 import static digital.fiasco.runtime.repository.Repository.InstallationResult.INSTALLED;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 
 /**
  * A repository of artifacts and their metadata on the local filesystem.
  *
  * <p>
- * All artifact metadata is stored in a single human-readable text file called <i>artifacts.txt</i> at the root of the
- * repository. This file is loaded into memory for fast resolution of artifacts. Artifact content attachments are stored
+ * All artifact metadata is stored in a compact, memory-mapped {@link ArtifactMetadataStore} at the root of the
+ * repository. The store has a descriptor index on disk, so artifacts are resolved without first loading the metadata
+ * of every artifact in the repository. Artifact content attachments are stored
  * in a Maven-like folder hierarchy based on the artifact descriptor. For example, the artifact attachments for
  * <i>com.telenav.kivakit:kivakit-application:1.11.0</i> would be stored in
  * <i>com/telenav/kivakit/kivakit-application/1.11.0</i>.
@@ -53,9 +59,17 @@ import static digital.fiasco.runtime.repository.Repository.InstallationResult.IN
  * <p><b>Artifact Metadata</b></p>
  *
  * <p>
- * The artifact metadata stored in <i>artifacts.txt</i> is in JSON format, separated by <i>========</i> bars. Since the
- * metadata in this file is relatively small, it is loaded into a memory index, where it can be used to quickly locate
- * artifact metadata and content attachments, including library, Javadoc, and source code JARs.
+ * The artifact metadata is stored in JSON format in <i>artifacts.binary</i>, with an offset table in
+ * <i>artifacts.offsets</i> and a descriptor hash index in <i>artifacts.index</i>. Opening the repository decodes
+ * nothing. Resolving a complete descriptor probes the descriptor index, and the full metadata for an artifact, including
+ * its library, Javadoc, and source code JAR attachments, is decoded the first time the artifact is resolved. Only
+ * wildcard lookups, and listing all artifacts, decode every descriptor to build an index in memory.
+ * </p>
+ *
+ * <p>
+ * Older repositories stored metadata in a text file called <i>artifacts.txt</i>, separated by <i>--------</i> bars. If
+ * this file exists when the repository is first loaded, its contents are migrated to the binary store, and the file is
+ * renamed to <i>artifacts.txt.migrated</i>.
  * </p>
  *
  * <p><b>Properties</b></p>
@@ -87,15 +101,21 @@ import static digital.fiasco.runtime.repository.Repository.InstallationResult.IN
 @Register
 public class FiascoUserRepository extends BaseRepository
 {
-    /** Separator to use between artifact entries in the artifacts.txt file */
+    /** Separator between artifact entries in the legacy artifacts.txt file */
     private final String ARTIFACT_SEPARATOR = repeat(40, "-");
 
     /** The root folder of this repository */
     private final Folder rootFolder;
 
-    /** The file for storing all artifact metadata in JSON format */
+    /** The legacy text file that stored all artifact metadata, which is migrated to the metadata store */
     private final File metadataFile;
 
+    /** The binary store for artifact metadata */
+    private final ArtifactMetadataStore metadataStore;
+
+    /** True once any legacy metadata file has been migrated to the metadata store */
+    private volatile boolean migrated;
+
     /** The append-only download cache repository */
     private final Lazy<FiascoCacheRepository> cacheRepository = lazy(() -> new FiascoCacheRepository("cache-repository"));
 
@@ -111,6 +131,7 @@ public class FiascoUserRepository extends BaseRepository
         super(name, uri);
         this.rootFolder = folder(uri);
         metadataFile = repositoryFile("artifacts.txt");
+        metadataStore = listenTo(new ArtifactMetadataStore(rootFolder));
     }
 
     /**
@@ -143,6 +164,7 @@ public class FiascoUserRepository extends BaseRepository
     public FiascoUserRepository clear()
     {
         super.clear();
+        metadataStore.delete();
         metadataFile.delete();
         rootFolder.clearAllAndDelete();
         return this;
@@ -152,9 +174,9 @@ public class FiascoUserRepository extends BaseRepository
      * {@inheritDoc}
      * <p><b>Steps</b></p>
      * <ol>
-     *     <li>Adds the {@link Artifact} metadata to artifacts.txt in JSON format</li>
-     *     <li>Resolves the artifact in the repository</li>
-     *     <li>Saves the artifact's content by calling {@link #saveAttachment(ArtifactAttachment)}</li>
+     *     <li>Takes the artifact's install lock, so that the same artifact isn't saved twice by concurrent installs</li>
+     *     <li>Saves the artifact's content by calling {@link #saveAttachments(Artifact)}, without holding the repository lock</li>
+     *     <li>Publishes the artifact by calling {@link #publishArtifact(Artifact, Artifact)}, while holding the write lock</li>
      * </ol>
      *
      * @param artifact The artifact to install
@@ -163,36 +185,34 @@ public class FiascoUserRepository extends BaseRepository
     @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
     public InstallationResult installArtifact(Artifact<?> artifact)
     {
-        return lock().write(() ->
+        // If we already have this artifact installed, there's nothing to do,
+        if (contains(artifact))
         {
-            // If we don't already have this artifact installed,
-            if (!contains(artifact))
-            {
-                try
-                {
-                    // append each attachment to the attachments file,
-                    var source = artifact;
-                    for (var attachment : source.attachments())
-                    {
-                        source = source.withAttachment(saveAttachment(attachment));
-                    }
+            return ALREADY_INSTALLED;
+        }
 
-                    // save metadata,
-                    saveArtifactMetadata(source);
+        // otherwise, take the artifact's install lock,
+        return installLock(artifact.descriptor()).whileLocked(() ->
+        {
+            // and if another thread didn't install the artifact while we waited for the lock,
+            if (contains(artifact))
+            {
+                return ALREADY_INSTALLED;
+            }
 
-                    // and add the artifact to the map.
-                    add(artifact.descriptor(), artifact);
+            try
+            {
+                // save its attachments, which can take a while, without blocking readers or unrelated installs,
+                var saved = saveAttachments(artifact);
 
-                    trace("Installed $ in $", artifact, name());
-                    return INSTALLED;
-                }
-                catch (Exception e)
-                {
-                    problem(e, "Unable to install artifact: $", artifact);
-                    return INSTALLATION_FAILED;
-                }
+                // then publish it to readers.
+                return lock().write(() -> publishArtifact(artifact, saved));
+            }
+            catch (Exception e)
+            {
+                problem(e, "Unable to install artifact: $", artifact);
+                return INSTALLATION_FAILED;
             }
-            return ALREADY_INSTALLED;
         });
     }
 
@@ -208,47 +228,72 @@ public class FiascoUserRepository extends BaseRepository
                                          ProgressReporter reporter,
                                          RepositoryContentReader reader)
     {
-        return lock().read(() ->
+        // Find the artifacts that are in this repository (holding the read lock only while the index is searched),
+        var resolvedArtifacts = resolve(descriptors);
+        var resolvedDescriptors = resolvedArtifacts.asDescriptors();
+
+        // and those that are not added yet.
+        var unresolvedDescriptors = descriptors.without(resolvedDescriptors::contains);
+
+        // Install and resolve any unresolved artifacts that are in the downloads cache, without holding the
+        // repository lock, so other readers aren't blocked while content is copied.
+        if (!(this instanceof FiascoCacheRepository))
         {
-            // Find the artifacts that are in this repository,
-            var resolvedArtifacts = resolve(descriptors);
-            var resolvedDescriptors = resolvedArtifacts.asDescriptors();
+            var downloadedArtifacts = cacheRepository.get().resolveArtifacts(unresolvedDescriptors, reporter, reader);
+            downloadedArtifacts.forEach(this::installArtifact);
+            resolvedArtifacts = resolvedArtifacts.with(downloadedArtifacts);
+        }
 
-            // and those that are not added yet.
-            var unresolvedDescriptors = descriptors.without(resolvedDescriptors::contains);
+        // Return the resolved artifacts with their metadata decoded and their content attached. The metadata store is
+        // thread-safe, so this doesn't need the repository lock either.
+        return artifacts(resolvedArtifacts.map(it -> loadAttachments(loadMetadata(it))));
+    }
 
-            // Install and resolve any unresolved artifacts that are in the downloads cache.
-            if (!(this instanceof FiascoCacheRepository))
-            {
-                var downloadedArtifacts = cacheRepository.get().resolveArtifacts(unresolvedDescriptors, reporter, reader);
-                downloadedArtifacts.forEach(this::installArtifact);
-                resolvedArtifacts = resolvedArtifacts.with(downloadedArtifacts);
-            }
+    /**
+     * Returns a placeholder for the artifact with the given descriptor, found in the metadata store's descriptor index,
+     * without loading the repository index
+     *
+     * @param descriptor The complete descriptor
+     * @return The artifact, or null if it is not in this repository
+     */
+    @Override
+    protected Artifact<?> artifact(ArtifactDescriptor descriptor)
+    {
+        return metadataStore().record(descriptor) == null
+            ? null
+            : descriptor.asArtifact();
+    }
 
-            // Return the resolved artifacts with their content attached.
-            return artifacts(resolvedArtifacts.map(this::loadAttachments));
-        });
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isIndexedOnDisk()
+    {
+        return true;
     }
 
     /**
-     * Loads the metadata in <i>artifacts.txt</i> into the artifacts map
+     * Indexes all artifacts in the metadata store in memory, which is only needed for wildcard lookups and listing all
+     * artifacts. Only the descriptor of each artifact is decoded here. The rest of its metadata is decoded by
+     * {@link #loadMetadata(Artifact)} when the artifact is resolved.
      */
     @Override
     protected void loadAllArtifactMetadata()
     {
-        if (metadataFile.exists())
+        // Add a placeholder artifact for each descriptor in the store to the index, removing any artifact that was
+        // later removed from the store.
+        var metadataStore = metadataStore();
+        for (int record = 0, size = metadataStore.size(); record < size; record++)
         {
-            // Read the file,
-            var text = metadataFile.reader().readText();
-
-            // split it into chunks,
-            for (var at : text.split(ARTIFACT_SEPARATOR))
+            var descriptor = metadataStore.descriptor(record);
+            if (metadataStore.isRemoval(record))
             {
-                // convert the chunk to a cache entry,
-                var entry = artifactFromJson(at);
-
-                // and put the entry into the entries map.
-                add(entry.descriptor(), entry);
+                remove(descriptor);
+            }
+            else
+            {
+                add(descriptor, descriptor.asArtifact());
             }
         }
     }
@@ -275,6 +320,56 @@ public class FiascoUserRepository extends BaseRepository
         return artifact;
     }
 
+    /**
+     * Returns the artifact with all of its metadata decoded from the metadata store. Artifacts in the repository index
+     * are only placeholders for their descriptors until this method is called.
+     *
+     * @param artifact The artifact from the repository index
+     * @return The artifact with its metadata
+     */
+    protected Artifact<?> loadMetadata(Artifact<?> artifact)
+    {
+        var record = metadataStore().record(artifact.descriptor());
+        return record == null ? artifact : metadataStore().artifact(record);
+    }
+
+    /**
+     * Makes an installed artifact visible to readers by saving its metadata and adding it to the repository index.
+     * Called with the write lock held. If another thread installed the same artifact while this one was saving its
+     * attachments, the artifact is not published again.
+     *
+     * @param artifact The artifact being installed
+     * @param saved The artifact with its attachments saved by {@link #saveAttachments(Artifact)}
+     * @return The result of installation
+     */
+    protected InstallationResult publishArtifact(Artifact<?> artifact, Artifact<?> saved)
+    {
+        // If another thread installed the artifact first, we're done,
+        if (contains(artifact))
+        {
+            return ALREADY_INSTALLED;
+        }
+
+        // otherwise, save its metadata,
+        saveArtifactMetadata(saved);
+
+        // and add the artifact to the index.
+        add(artifact.descriptor(), artifact);
+
+        trace("Installed $ in $", artifact, name());
+        return INSTALLED;
+    }
+
+    /**
+     * Removes the metadata for the artifact with the given descriptor from the metadata store
+     *
+     * @param descriptor The descriptor of the artifact
+     */
+    protected void removeArtifactMetadata(ArtifactDescriptor descriptor)
+    {
+        metadataStore().remove(descriptor);
+    }
+
     /**
      * Returns a cache file for the given name
      *
@@ -287,36 +382,115 @@ public class FiascoUserRepository extends BaseRepository
     }
 
     /**
-     * Adds artifact metadata to metadata.txt file
+     * Returns the root folder of this repository
+     */
+    protected Folder rootFolder()
+    {
+        return ensureNotNull(rootFolder);
+    }
+
+    /**
+     * Adds artifact metadata to the metadata store
      *
      * @param artifact The artifact to add
      */
     protected void saveArtifactMetadata(Artifact<?> artifact)
     {
-        // Get JSON for artifact metadata,
-        var text = artifact.toYaml().toString();
+        metadataStore().append(artifact);
+    }
 
-        // add a separator if necessary,
-        if (metadataFile.exists())
+    /**
+     * Saves each attachment of the given artifact by calling {@link #saveAttachment(ArtifactAttachment)}
+     *
+     * @param artifact The artifact
+     * @return The artifact with its saved attachments
+     */
+    protected Artifact<?> saveAttachments(Artifact<?> artifact)
+    {
+        var saved = artifact;
+        for (var attachment : artifact.attachments())
         {
-            text = ARTIFACT_SEPARATOR + "\n" + text.trim();
+            saved = saved.withAttachment(saveAttachment(attachment));
         }
-
-        // then append the JSON to the metadata file.
-        new StringResource(text + "\n").copyTo(metadataFile, APPEND);
+        return saved;
     }
 
     /**
      * Saves the given attachment into this repository. {@link FiascoUserRepository} stores the attachment in the file
-     * returned by {@link #artifactAttachmentFile(ArtifactAttachment)}.
+     * returned by {@link #artifactAttachmentFile(ArtifactAttachment)}. Content from a {@link FiascoCacheRepository} is
+     * transferred straight from the cache's content log to the file, without being copied onto the heap.
      */
     protected ArtifactAttachment saveAttachment(ArtifactAttachment attachment)
     {
         var resource = attachment.content().resource();
-        resource.safeCopyTo(artifactAttachmentFile(attachment), OVERWRITE);
+        var file = artifactAttachmentFile(attachment);
+        if (resource instanceof ContentLogSection section)
+        {
+            section.transferTo(file.asJavaFile().toPath());
+        }
+        else
+        {
+            resource.safeCopyTo(file, OVERWRITE);
+        }
         return attachment;
     }
 
+    /**
+     * Returns the metadata store, migrating any legacy <i>artifacts.txt</i> file to it first
+     */
+    private ArtifactMetadataStore metadataStore()
+    {
+        if (!migrated)
+        {
+            synchronized (metadataStore)
+            {
+                if (!migrated)
+                {
+                    if (metadataFile.exists())
+                    {
+                        migrateLegacyMetadata();
+                    }
+                    migrated = true;
+                }
+            }
+        }
+        return metadataStore;
+    }
+
+    /**
+     * Copies each artifact in the legacy <i>artifacts.txt</i> file into the metadata store, and then renames the legacy
+     * file, so the migration only happens once
+     */
+    private void migrateLegacyMetadata()
+    {
+        information("Migrating $ to binary metadata store", metadataFile);
+
+        // Read the file,
+        var text = metadataFile.reader().readText();
+
+        // split it into chunks,
+        for (var at : text.split(ARTIFACT_SEPARATOR))
+        {
+            // and if the chunk isn't blank,
+            if (!at.isBlank())
+            {
+                // convert it to an artifact and save it to the metadata store.
+                metadataStore.append(artifactFromJson(at));
+            }
+        }
+
+        // Rename the legacy file out of the way.
+        try
+        {
+            var path = Path.of(rootFolder.asUri()).resolve(metadataFile.fileName().name());
+            Files.move(path, path.resolveSibling(path.getFileName() + ".migrated"), REPLACE_EXISTING);
+        }
+        catch (IOException e)
+        {
+            illegalState(e, "Unable to rename migrated metadata file: $", metadataFile);
+        }
+    }
+
     /**
      * Returns the file where a given artifact attachment is stored
      *
@@ -358,7 +532,8 @@ public class FiascoUserRepository extends BaseRepository
         var asc = readSignature(artifact, content, "asc");
         var md5 = readSignature(artifact, content, "md5");
         var sha1 = readSignature(artifact, content, "sha1");
-        return new ArtifactContentSignatures(asc, md5, sha1);
+        var sha256 = readSignature(artifact, content, "sha256");
+        return new ArtifactContentSignatures(asc, md5, sha1, sha256);
     }
 
     /**
@@ -285,7 +285,7 @@ public class MavenRepository extends BaseRepository implements TryCatchTrait
 
             if (asc != null && md5 != null && sha1 != null)
             {
-                content = content.withSignatures(new ArtifactContentSignatures(asc, md5, sha1));
+                content = content.withSignatures(new ArtifactContentSignatures(asc, md5, sha1, null));
             }
 
             return content;
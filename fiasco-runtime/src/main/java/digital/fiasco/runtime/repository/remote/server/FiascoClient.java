@@ -7,6 +7,8 @@ import com.telenav.kivakit.core.version.Version;
 import com.telenav.kivakit.microservice.protocols.rest.http.RestClient;
 import com.telenav.kivakit.serialization.gson.GsonObjectSerializer;
 import com.telenav.kivakit.settings.SettingsTrait;
+import digital.fiasco.runtime.build.cache.ActionCache;
+import digital.fiasco.runtime.build.cache.RemoteActionCache;
 import digital.fiasco.runtime.dependency.artifact.Artifact;
 import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor;
 import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptorList;
@@ -14,14 +16,24 @@ import digital.fiasco.runtime.dependency.collections.ArtifactList;
 import digital.fiasco.runtime.repository.Repository.InstallationResult;
 import digital.fiasco.runtime.repository.RepositoryContentReader;
 import digital.fiasco.runtime.repository.remote.RemoteRepository;
+import digital.fiasco.runtime.repository.remote.server.api.FindActionOutputsRequest;
+import digital.fiasco.runtime.repository.remote.server.api.FindActionOutputsResponse;
+import digital.fiasco.runtime.repository.remote.server.api.GetActionOutputsRequest;
+import digital.fiasco.runtime.repository.remote.server.api.GetActionOutputsResponse;
+import digital.fiasco.runtime.repository.remote.server.api.PutActionOutputsRequest;
+import digital.fiasco.runtime.repository.remote.server.api.PutActionOutputsResponse;
 import digital.fiasco.runtime.repository.remote.server.api.ResolveArtifactResponse;
 import digital.fiasco.runtime.repository.remote.server.api.ResolveArtifactsRequest;
 import digital.fiasco.runtime.repository.remote.server.serialization.FiascoGsonFactory;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
 import static com.telenav.kivakit.core.ensure.Ensure.unsupported;
 import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressReporter;
 import static com.telenav.kivakit.core.version.Version.version;
-import static com.telenav.kivakit.network.core.LocalHost.localhost;
+import static com.telenav.kivakit.network.core.Host.parseHost;
 import static digital.fiasco.runtime.repository.RepositoryContentReader.nullContentReader;
 
 /**
@@ -31,12 +43,37 @@ import static digital.fiasco.runtime.repository.RepositoryContentReader.nullCont
  *
  * <p>
  * {@link ResolveArtifactsRequest} allows the {@link FiascoClient} to resolve multiple {@link ArtifactDescriptor}s in a
+ * single request. {@link FindActionOutputsRequest} allows the client to check for many {@link ActionCache} bundles in a
  * single request.
  * </p>
  *
+ * <p><b>Artifacts</b></p>
+ *
+ * <ul>
+ *     <li>{@link #installArtifact(Artifact)}</li>
+ *     <li>{@link #resolveArtifacts(ArtifactDescriptorList)}</li>
+ *     <li>{@link #resolveArtifacts(ArtifactDescriptorList, ProgressReporter, RepositoryContentReader)}</li>
+ * </ul>
+ *
+ * <p><b>Build Cache</b></p>
+ *
+ * <p>
+ * The client is a {@link RemoteActionCache} for the server's action cache, so build outputs can be shared by CI agents
+ * and developer machines. The server only accepts bundles from {@link #putBundle(String, byte[])} if it is configured
+ * to trust its clients (see {@link FiascoServerSettings}).
+ * </p>
+ *
+ * <ul>
+ *     <li>{@link #bundle(String)}</li>
+ *     <li>{@link #findBundles(Collection)}</li>
+ *     <li>{@link #putBundle(String, byte[])}</li>
+ * </ul>
+ *
  * @author Jonathan Locke
  */
-public class FiascoClient extends BaseComponent implements SettingsTrait
+public class FiascoClient extends BaseComponent implements
+    RemoteActionCache,
+    SettingsTrait
 {
     /**
      * Returns an instance of {@link FiascoClient}
@@ -49,11 +86,44 @@ public class FiascoClient extends BaseComponent implements SettingsTrait
     /** The API version of the {@link FiascoServer} that this client connects to */
     private final Version API_VERSION = version("0.1.0");
 
+    /** The REST client for the server, shared by all requests */
+    private RestClient restClient;
+
     private FiascoClient()
     {
         register(new FiascoGsonFactory());
     }
 
+    /**
+     * Returns the bundle of action outputs with the given key from the {@link FiascoServer} specified in
+     * {@link FiascoServerSettings}
+     *
+     * @param key The action key
+     * @return The bundle, or null if the server doesn't have it, or can't be reached
+     */
+    @Override
+    public byte[] bundle(String key)
+    {
+        var response = restClient().post("get-action-outputs", new GetActionOutputsRequest(key),
+            GetActionOutputsResponse.class);
+        return response != null ? response.bundle() : null;
+    }
+
+    /**
+     * Returns the given keys that the {@link FiascoServer} specified in {@link FiascoServerSettings} has bundles for,
+     * in a single request
+     *
+     * @param keys The action keys
+     * @return The keys that have bundles, or an empty set if the server can't be reached
+     */
+    @Override
+    public Set<String> findBundles(Collection<String> keys)
+    {
+        var response = restClient().post("find-action-outputs", new FindActionOutputsRequest(List.copyOf(keys)),
+            FindActionOutputsResponse.class);
+        return response != null ? Set.copyOf(response.found()) : Set.of();
+    }
+
     /**
      * Installs the given artifact on the {@link FiascoServer} specified in {@link FiascoServerSettings}
      *
@@ -65,6 +135,21 @@ public class FiascoClient extends BaseComponent implements SettingsTrait
         return unsupported();
     }
 
+    /**
+     * Adds the given bundle of action outputs to the {@link FiascoServer} specified in {@link FiascoServerSettings}
+     *
+     * @param key The action key
+     * @param bundle The bundle
+     * @return True if the server has the bundle, false if it could not be reached or does not accept action outputs
+     */
+    @Override
+    public boolean putBundle(String key, byte[] bundle)
+    {
+        var response = restClient().post("put-action-outputs", new PutActionOutputsRequest(key, bundle),
+            PutActionOutputsResponse.class);
+        return response != null && response.stored();
+    }
+
     /**
      * Resolves the given artifact descriptors by posting a request to the {@link FiascoServer} specified in
      * {@link FiascoServerSettings}. No content is read.
@@ -91,19 +176,31 @@ public class FiascoClient extends BaseComponent implements SettingsTrait
                                          ProgressReporter reporter,
                                          RepositoryContentReader reader)
     {
-        // Get the port of the Fiasco server,
-        var port = localhost().http(requireSettings(FiascoServerSettings.class).port());
-
-        // create a client to talk to it via REST,
-        var restClient = listenTo(new RestClient(new GsonObjectSerializer(), port, API_VERSION));
-
-        // then issue a ResolveArtifactsRequest and read the response. The reader callback will be called with the
-        // input that trails the JSON header, in this case the artifact content).
-        var response = restClient.postAndReadContent("resolve-artifacts/pretty/true",
+        // Issue a ResolveArtifactsRequest to the Fiasco server and read the response. The reader callback will be
+        // called with the input that trails the JSON header, in this case the artifact content).
+        var response = restClient().postAndReadContent("resolve-artifacts/pretty/true",
             new ResolveArtifactsRequest(descriptors), ResolveArtifactResponse.class, reader::read);
         trace("response => $", response);
 
         // If we got a response, then return the artifacts.
         return response != null ? response.artifacts() : null;
     }
+
+    /**
+     * Returns the REST client for the {@link FiascoServer} specified in {@link FiascoServerSettings}, creating it the
+     * first time it is needed
+     */
+    private synchronized RestClient restClient()
+    {
+        if (restClient == null)
+        {
+            // Get the host and port of the Fiasco server,
+            var settings = requireSettings(FiascoServerSettings.class);
+            var port = parseHost(this, settings.host()).http(settings.port());
+
+            // and create a client to talk to it via REST.
+            restClient = listenTo(new RestClient(new GsonObjectSerializer(), port, API_VERSION));
+        }
+        return restClient;
+    }
 }
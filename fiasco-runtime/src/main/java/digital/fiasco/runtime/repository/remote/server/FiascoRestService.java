@@ -2,22 +2,30 @@ package digital.fiasco.runtime.repository.remote.server;
 
 import com.telenav.kivakit.core.version.Version;
 import com.telenav.kivakit.microservice.protocols.rest.http.RestService;
+import digital.fiasco.runtime.repository.remote.server.api.FindActionOutputsRequest;
+import digital.fiasco.runtime.repository.remote.server.api.GetActionOutputsRequest;
 import digital.fiasco.runtime.repository.remote.server.api.InstallArtifactRequest;
+import digital.fiasco.runtime.repository.remote.server.api.PutActionOutputsRequest;
 import digital.fiasco.runtime.repository.remote.server.api.ResolveArtifactsRequest;
 
 import static com.telenav.kivakit.core.version.Version.version;
 import static com.telenav.kivakit.network.http.HttpMethod.POST;
 
 /**
- * The {@link FiascoServer}'s {@link RestService}.
+ * The {@link FiascoServer}'s {@link RestService}. Requests to store action outputs are only served if the server
+ * accepts them (see {@link FiascoServerSettings}).
  *
  * @author Jonathan Locke
  */
 public class FiascoRestService extends RestService
 {
+    /** The server this service belongs to */
+    private final FiascoServer server;
+
     public FiascoRestService(FiascoServer server)
     {
         super(server);
+        this.server = server;
     }
 
     @Override
@@ -31,5 +39,11 @@ public class FiascoRestService extends RestService
     {
         mount(apiVersion(), "resolve-artifacts", POST, ResolveArtifactsRequest.class);
         mount(apiVersion(), "install-artifact", POST, InstallArtifactRequest.class);
+        mount(apiVersion(), "get-action-outputs", POST, GetActionOutputsRequest.class);
+        if (server.acceptsActionOutputs())
+        {
+            mount(apiVersion(), "put-action-outputs", POST, PutActionOutputsRequest.class);
+        }
+        mount(apiVersion(), "find-action-outputs", POST, FindActionOutputsRequest.class);
     }
 }
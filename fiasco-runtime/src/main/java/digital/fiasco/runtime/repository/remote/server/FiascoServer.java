@@ -2,11 +2,20 @@ package digital.fiasco.runtime.repository.remote.server;
 
 import com.telenav.kivakit.microservice.Microservice;
 import com.telenav.kivakit.microservice.MicroserviceMetadata;
+import com.telenav.kivakit.settings.SettingsTrait;
+import digital.fiasco.runtime.build.cache.ActionCache;
 import digital.fiasco.runtime.repository.local.user.FiascoUserRepository;
+import digital.fiasco.runtime.repository.remote.server.api.FindActionOutputsRequest;
+import digital.fiasco.runtime.repository.remote.server.api.GetActionOutputsRequest;
 import digital.fiasco.runtime.repository.remote.server.api.InstallArtifactRequest;
+import digital.fiasco.runtime.repository.remote.server.api.PutActionOutputsRequest;
 import digital.fiasco.runtime.repository.remote.server.api.ResolveArtifactsRequest;
 import digital.fiasco.runtime.repository.remote.server.serialization.FiascoGsonFactory;
 
+import java.nio.file.Path;
+
+import static digital.fiasco.runtime.FiascoRuntime.fiascoCacheFolder;
+
 /**
  * A microservice that responds to JSON-encoded requests:
  *
@@ -15,9 +24,29 @@ import digital.fiasco.runtime.repository.remote.server.serialization.FiascoGsonF
  *     <li>{@link InstallArtifactRequest}</li>
  * </ul>
  *
+ * <p>
+ * It also serves a shared build cache of action outputs, so CI agents and developer machines can reuse each other's
+ * build outputs:
+ * </p>
+ *
+ * <ul>
+ *     <li>{@link GetActionOutputsRequest}</li>
+ *     <li>{@link PutActionOutputsRequest}</li>
+ *     <li>{@link FindActionOutputsRequest}</li>
+ * </ul>
+ *
+ * <p><b>Trust</b></p>
+ *
+ * <p>
+ * The server does not authenticate its clients. Any client that can reach it can resolve artifacts and fetch action
+ * outputs, and builds restore fetched outputs into their root folders. So {@link PutActionOutputsRequest} is only
+ * served when {@link FiascoServerSettings#acceptsActionOutputs()} is true, which should only be the case when every
+ * client that can reach the server is trusted.
+ * </p>
+ *
  * @author Jonathan Locke
  */
-public class FiascoServer extends Microservice<Void>
+public class FiascoServer extends Microservice<Void> implements SettingsTrait
 {
     public static void main(String[] arguments)
     {
@@ -36,6 +65,14 @@ public class FiascoServer extends Microservice<Void>
             .withVersion(restService().apiVersion());
     }
 
+    /**
+     * Returns true if this server accepts action outputs from its clients
+     */
+    public boolean acceptsActionOutputs()
+    {
+        return requireSettings(FiascoServerSettings.class).acceptsActionOutputs();
+    }
+
     @Override
     public void onInitialize()
     {
@@ -43,6 +80,10 @@ public class FiascoServer extends Microservice<Void>
         {
             register(new FiascoUserRepository("server-repository"));
         }
+        if (lookup(ActionCache.class) == null)
+        {
+            register(new ActionCache(Path.of(fiascoCacheFolder().folder("server-action-cache").mkdirs().asUri())));
+        }
     }
 
     /**
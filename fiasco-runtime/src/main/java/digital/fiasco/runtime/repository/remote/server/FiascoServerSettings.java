@@ -5,8 +5,80 @@ import com.telenav.kivakit.microservice.MicroserviceSettings;
 /**
  * {@link FiascoServer} settings
  *
+ * <p><b>Clients</b></p>
+ *
+ * <p>
+ * A {@link FiascoClient} connects to the server on {@link #host()} at the port in these settings, so the same settings
+ * can be used by the server and its clients.
+ * </p>
+ *
+ * <ul>
+ *     <li>{@link #host()}</li>
+ *     <li>{@link #host(String)}</li>
+ * </ul>
+ *
+ * <p><b>Action Outputs</b></p>
+ *
+ * <p>
+ * The server does not authenticate its clients, and a build restores the outputs in a bundle into its root folder,
+ * where they can replace any file, including sources. So a client that can store bundles can change what other
+ * builds compile and package. The server only accepts bundles when {@link #acceptsActionOutputs()} is true, which
+ * should only be the case when every client that can reach the server is trusted, for example CI agents on a private
+ * network. Bundles can be fetched by any client either way.
+ * </p>
+ *
+ * <ul>
+ *     <li>{@link #acceptActionOutputs(boolean)}</li>
+ *     <li>{@link #acceptsActionOutputs()}</li>
+ * </ul>
+ *
  * @author Jonathan Locke
  */
 public class FiascoServerSettings extends MicroserviceSettings
 {
+    /** The name of the host the server runs on */
+    private String host = "localhost";
+
+    /** True if the server accepts action outputs from clients */
+    private boolean acceptActionOutputs;
+
+    /**
+     * Sets whether the server accepts action outputs from clients. See the class documentation before enabling this.
+     *
+     * @param accept True to accept action outputs
+     * @return These settings, for chaining
+     */
+    public FiascoServerSettings acceptActionOutputs(boolean accept)
+    {
+        this.acceptActionOutputs = accept;
+        return this;
+    }
+
+    /**
+     * Returns true if the server accepts action outputs from clients
+     */
+    public boolean acceptsActionOutputs()
+    {
+        return acceptActionOutputs;
+    }
+
+    /**
+     * Returns the name of the host the server runs on, by default the local host
+     */
+    public String host()
+    {
+        return host;
+    }
+
+    /**
+     * Sets the name of the host the server runs on
+     *
+     * @param host The host name
+     * @return These settings, for chaining
+     */
+    public FiascoServerSettings host(String host)
+    {
+        this.host = host;
+        return this;
+    }
 }
@@ -0,0 +1,73 @@
+package digital.fiasco.runtime.repository.remote.server.api;
+
+import com.google.gson.annotations.Expose;
+import com.telenav.kivakit.microservice.microservlet.BaseMicroservletRequest;
+import com.telenav.kivakit.microservice.microservlet.MicroservletResponse;
+import digital.fiasco.runtime.build.cache.ActionCache;
+import digital.fiasco.runtime.repository.remote.server.FiascoClient;
+import digital.fiasco.runtime.repository.remote.server.FiascoServer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <b>Not public API</b>
+ *
+ * <p>
+ * A request to a {@link FiascoServer} to find out which of a list of action keys have bundles in its
+ * {@link ActionCache}.
+ * </p>
+ *
+ * <p><b>Performance</b></p>
+ *
+ * <p>
+ * {@link FindActionOutputsRequest} allows the {@link FiascoClient} to check for many bundles in a single request.
+ * </p>
+ *
+ * @author Jonathan Locke
+ * @see FiascoClient
+ * @see FindActionOutputsResponse
+ */
+public class FindActionOutputsRequest extends BaseMicroservletRequest
+{
+    /** The action keys */
+    @Expose
+    private final List<String> keys;
+
+    public FindActionOutputsRequest(List<String> keys)
+    {
+        this.keys = new ArrayList<>(keys);
+    }
+
+    public FindActionOutputsRequest()
+    {
+        this.keys = new ArrayList<>();
+    }
+
+    @Override
+    public MicroservletResponse onRespond()
+    {
+        var cache = require(ActionCache.class);
+        var found = new ArrayList<String>();
+        for (var key : keys)
+        {
+            if (cache.contains(key))
+            {
+                found.add(key);
+            }
+        }
+        return new FindActionOutputsResponse(found);
+    }
+
+    @Override
+    public Class<? extends MicroservletResponse> responseType()
+    {
+        return FindActionOutputsResponse.class;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.join(", ", keys);
+    }
+}
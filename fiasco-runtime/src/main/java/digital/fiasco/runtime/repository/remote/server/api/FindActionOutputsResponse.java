@@ -0,0 +1,38 @@
+package digital.fiasco.runtime.repository.remote.server.api;
+
+import com.google.gson.annotations.Expose;
+import com.telenav.kivakit.microservice.microservlet.BaseMicroservletResponse;
+import digital.fiasco.runtime.repository.remote.server.FiascoClient;
+
+import java.util.List;
+
+/**
+ * <b>Not public API</b>
+ *
+ * <p>
+ * Response to a {@link FindActionOutputsRequest}, listing the requested keys that the server has bundles for.
+ * </p>
+ *
+ * @author Jonathan Locke
+ * @see FiascoClient
+ * @see FindActionOutputsRequest
+ */
+public class FindActionOutputsResponse extends BaseMicroservletResponse
+{
+    /** The keys that have bundles */
+    @Expose
+    private final List<String> found;
+
+    public FindActionOutputsResponse(List<String> found)
+    {
+        this.found = found;
+    }
+
+    /**
+     * Returns the keys that the server has bundles for
+     */
+    public List<String> found()
+    {
+        return found;
+    }
+}
@@ -0,0 +1,55 @@
+package digital.fiasco.runtime.repository.remote.server.api;
+
+import com.google.gson.annotations.Expose;
+import com.telenav.kivakit.microservice.microservlet.BaseMicroservletRequest;
+import com.telenav.kivakit.microservice.microservlet.MicroservletResponse;
+import digital.fiasco.runtime.build.cache.ActionCache;
+import digital.fiasco.runtime.repository.remote.server.FiascoClient;
+import digital.fiasco.runtime.repository.remote.server.FiascoServer;
+
+/**
+ * <b>Not public API</b>
+ *
+ * <p>
+ * A request to a {@link FiascoServer} for the bundle of build action outputs in its {@link ActionCache} with a given
+ * key.
+ * </p>
+ *
+ * @author Jonathan Locke
+ * @see FiascoClient
+ * @see GetActionOutputsResponse
+ */
+public class GetActionOutputsRequest extends BaseMicroservletRequest
+{
+    /** The action key */
+    @Expose
+    private final String key;
+
+    public GetActionOutputsRequest(String key)
+    {
+        this.key = key;
+    }
+
+    public GetActionOutputsRequest()
+    {
+        this.key = null;
+    }
+
+    @Override
+    public MicroservletResponse onRespond()
+    {
+        return new GetActionOutputsResponse(require(ActionCache.class).bundle(key));
+    }
+
+    @Override
+    public Class<? extends MicroservletResponse> responseType()
+    {
+        return GetActionOutputsResponse.class;
+    }
+
+    @Override
+    public String toString()
+    {
+        return key;
+    }
+}
@@ -0,0 +1,39 @@
+package digital.fiasco.runtime.repository.remote.server.api;
+
+import com.google.gson.annotations.Expose;
+import com.telenav.kivakit.microservice.microservlet.BaseMicroservletResponse;
+import digital.fiasco.runtime.repository.remote.server.FiascoClient;
+
+import java.util.Base64;
+
+/**
+ * <b>Not public API</b>
+ *
+ * <p>
+ * Response to a {@link GetActionOutputsRequest}, containing the requested bundle encoded in Base64, or nothing if the
+ * server has no bundle with the requested key.
+ * </p>
+ *
+ * @author Jonathan Locke
+ * @see FiascoClient
+ * @see GetActionOutputsRequest
+ */
+public class GetActionOutputsResponse extends BaseMicroservletResponse
+{
+    /** The bundle, encoded in Base64, or null if there is no such bundle */
+    @Expose
+    private final String bundle;
+
+    public GetActionOutputsResponse(byte[] bundle)
+    {
+        this.bundle = bundle == null ? null : Base64.getEncoder().encodeToString(bundle);
+    }
+
+    /**
+     * Returns the bundle, or null if the server doesn't have it
+     */
+    public byte[] bundle()
+    {
+        return bundle == null ? null : Base64.getDecoder().decode(bundle);
+    }
+}
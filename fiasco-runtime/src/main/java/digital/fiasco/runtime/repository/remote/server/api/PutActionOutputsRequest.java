@@ -0,0 +1,74 @@
+package digital.fiasco.runtime.repository.remote.server.api;
+
+import com.google.gson.annotations.Expose;
+import com.telenav.kivakit.microservice.microservlet.BaseMicroservletRequest;
+import com.telenav.kivakit.microservice.microservlet.MicroservletResponse;
+import digital.fiasco.runtime.build.cache.ActionCache;
+import digital.fiasco.runtime.repository.remote.server.FiascoClient;
+import digital.fiasco.runtime.repository.remote.server.FiascoServer;
+import digital.fiasco.runtime.repository.remote.server.FiascoServerSettings;
+
+import java.util.Base64;
+
+/**
+ * <b>Not public API</b>
+ *
+ * <p>
+ * A request to a {@link FiascoServer} to add a bundle of build action outputs to its {@link ActionCache}. Builds
+ * restore these outputs into their root folders, and the request is not authenticated, so it is only served by servers
+ * that trust all their clients (see {@link FiascoServerSettings}).
+ * </p>
+ *
+ * @author Jonathan Locke
+ * @see FiascoClient
+ * @see PutActionOutputsResponse
+ */
+public class PutActionOutputsRequest extends BaseMicroservletRequest
+{
+    /** The action key */
+    @Expose
+    private final String key;
+
+    /** The bundle, encoded in Base64 */
+    @Expose
+    private final String bundle;
+
+    public PutActionOutputsRequest(String key, byte[] bundle)
+    {
+        this.key = key;
+        this.bundle = Base64.getEncoder().encodeToString(bundle);
+    }
+
+    public PutActionOutputsRequest()
+    {
+        this.key = null;
+        this.bundle = null;
+    }
+
+    @Override
+    public MicroservletResponse onRespond()
+    {
+        try
+        {
+            require(ActionCache.class).putBundle(key, Base64.getDecoder().decode(bundle));
+            return new PutActionOutputsResponse(true);
+        }
+        catch (IllegalStateException | IllegalArgumentException e)
+        {
+            problem("Rejected action outputs $: $", key, e.getMessage());
+            return new PutActionOutputsResponse(false);
+        }
+    }
+
+    @Override
+    public Class<? extends MicroservletResponse> responseType()
+    {
+        return PutActionOutputsResponse.class;
+    }
+
+    @Override
+    public String toString()
+    {
+        return key;
+    }
+}
@@ -0,0 +1,36 @@
+package digital.fiasco.runtime.repository.remote.server.api;
+
+import com.google.gson.annotations.Expose;
+import com.telenav.kivakit.microservice.microservlet.BaseMicroservletResponse;
+import digital.fiasco.runtime.repository.remote.server.FiascoClient;
+
+/**
+ * <b>Not public API</b>
+ *
+ * <p>
+ * Response to a {@link PutActionOutputsRequest}.
+ * </p>
+ *
+ * @author Jonathan Locke
+ * @see FiascoClient
+ * @see PutActionOutputsRequest
+ */
+public class PutActionOutputsResponse extends BaseMicroservletResponse
+{
+    /** True if the bundle was stored, or was already stored */
+    @Expose
+    private final boolean stored;
+
+    public PutActionOutputsResponse(boolean stored)
+    {
+        this.stored = stored;
+    }
+
+    /**
+     * Returns true if the server has the bundle
+     */
+    public boolean stored()
+    {
+        return stored;
+    }
+}
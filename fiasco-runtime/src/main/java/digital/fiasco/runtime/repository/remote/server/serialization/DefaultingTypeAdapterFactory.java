@@ -0,0 +1,151 @@
+package digital.fiasco.runtime.repository.remote.server.serialization;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.typeadapters.RuntimeTypeAdapterFactory;
+import com.telenav.kivakit.annotations.code.quality.MethodQuality;
+import com.telenav.kivakit.annotations.code.quality.TypeQuality;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTATION_NOT_NEEDED;
+import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
+import static com.telenav.kivakit.annotations.code.quality.Stability.STABLE;
+import static com.telenav.kivakit.annotations.code.quality.Testing.TESTED;
+
+/**
+ * Serializes a base type with its runtime type, like {@link RuntimeTypeAdapterFactory}, but reads JSON objects without
+ * a type field as a default subtype, instead of rejecting them. This allows JSON written before the base type was
+ * serialized with its runtime type (or by clients that don't write the field) to be read.
+ *
+ * <p>
+ * The type field is written first, with the simple name of the runtime type, just as {@link RuntimeTypeAdapterFactory}
+ * writes it, so JSON written by either factory can be read by the other.
+ * </p>
+ *
+ * @author Jonathan Locke
+ */
+@TypeQuality(documentation = DOCUMENTED, testing = TESTED, stability = STABLE)
+public class DefaultingTypeAdapterFactory<T> implements TypeAdapterFactory
+{
+    /**
+     * Returns a factory for the given base type
+     *
+     * @param baseType The base type
+     * @param typeField The name of the type field
+     * @param defaultSubtype The subtype to read when there is no type field
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public static <T> DefaultingTypeAdapterFactory<T> defaultingTypeAdapterFactory(Class<T> baseType,
+                                                                                   String typeField,
+                                                                                   Class<? extends T> defaultSubtype)
+    {
+        return new DefaultingTypeAdapterFactory<>(baseType, typeField, defaultSubtype)
+            .registerSubtype(defaultSubtype);
+    }
+
+    /** The base type */
+    private final Class<T> baseType;
+
+    /** The name of the type field */
+    private final String typeField;
+
+    /** The subtype to read when there is no type field */
+    private final Class<? extends T> defaultSubtype;
+
+    /** Subtypes by label */
+    private final Map<String, Class<? extends T>> subtypes = new HashMap<>();
+
+    /** Labels by subtype */
+    private final Map<Class<?>, String> labels = new HashMap<>();
+
+    protected DefaultingTypeAdapterFactory(Class<T> baseType, String typeField, Class<? extends T> defaultSubtype)
+    {
+        this.baseType = baseType;
+        this.typeField = typeField;
+        this.defaultSubtype = defaultSubtype;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @MethodQuality(documentation = DOCUMENTATION_NOT_NEEDED, testing = TESTED)
+    public <R> TypeAdapter<R> create(Gson gson, TypeToken<R> type)
+    {
+        if (type.getRawType() != baseType)
+        {
+            return null;
+        }
+
+        var elements = gson.getAdapter(JsonElement.class);
+        var factory = this;
+        return new TypeAdapter<R>()
+        {
+            @Override
+            @SuppressWarnings("unchecked")
+            public R read(JsonReader in) throws IOException
+            {
+                // Read the object and remove its type field,
+                var object = elements.read(in).getAsJsonObject();
+                var label = object.remove(typeField);
+
+                // find the subtype it names, or the default subtype if it has none,
+                var subtype = label == null ? defaultSubtype : subtypes.get(label.getAsString());
+                if (subtype == null)
+                {
+                    throw new JsonParseException("Unregistered subtype of " + baseType.getSimpleName() + ": " + label);
+                }
+
+                // and read the object as that subtype.
+                return (R) gson.getDelegateAdapter(factory, TypeToken.get(subtype)).fromJsonTree(object);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void write(JsonWriter out, R value) throws IOException
+            {
+                // Find the label of the value's subtype,
+                var subtype = value.getClass();
+                var label = labels.get(subtype);
+                if (label == null)
+                {
+                    throw new JsonParseException("Unregistered subtype of " + baseType.getSimpleName() + ": " + subtype);
+                }
+
+                // and write the value with its label first.
+                var delegate = (TypeAdapter<Object>) gson.getDelegateAdapter(factory, TypeToken.get(subtype));
+                var labeled = new JsonObject();
+                labeled.addProperty(typeField, label);
+                for (var entry : delegate.toJsonTree(value).getAsJsonObject().entrySet())
+                {
+                    labeled.add(entry.getKey(), entry.getValue());
+                }
+                elements.write(out, labeled);
+            }
+        }.nullSafe();
+    }
+
+    /**
+     * Registers the given subtype under its simple name
+     *
+     * @param subtype The subtype
+     * @return This factory, for chaining
+     */
+    @MethodQuality(documentation = DOCUMENTED, testing = TESTED)
+    public DefaultingTypeAdapterFactory<T> registerSubtype(Class<? extends T> subtype)
+    {
+        subtypes.put(subtype.getSimpleName(), subtype);
+        labels.put(subtype, subtype.getSimpleName());
+        return this;
+    }
+}
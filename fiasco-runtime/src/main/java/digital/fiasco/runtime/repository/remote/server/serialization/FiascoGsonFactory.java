@@ -10,6 +10,8 @@ import com.telenav.kivakit.serialization.gson.KivaKitCoreGsonFactory;
 import com.telenav.kivakit.serialization.gson.serializers.primitive.ByteArrayGsonSerializer;
 import digital.fiasco.runtime.dependency.artifact.Artifact;
 import digital.fiasco.runtime.dependency.artifact.content.ArtifactAttachmentType;
+import digital.fiasco.runtime.dependency.artifact.content.ArtifactContent;
+import digital.fiasco.runtime.dependency.artifact.content.jar.JarContent;
 import digital.fiasco.runtime.dependency.artifact.types.Asset;
 import digital.fiasco.runtime.dependency.artifact.types.Library;
 import digital.fiasco.runtime.repository.Repository;
@@ -26,6 +28,7 @@ import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMEN
 import static com.telenav.kivakit.annotations.code.quality.Documentation.DOCUMENTED;
 import static com.telenav.kivakit.annotations.code.quality.Stability.STABLE;
 import static com.telenav.kivakit.annotations.code.quality.Testing.TESTED;
+import static digital.fiasco.runtime.repository.remote.server.serialization.DefaultingTypeAdapterFactory.defaultingTypeAdapterFactory;
 
 /**
  * Adds Gson serialization support to {@link KivaKitCoreGsonFactory} for Fiasco objects.
@@ -59,6 +62,10 @@ public class FiascoGsonFactory extends KivaKitCoreGsonFactory
             .registerSubtype(Asset.class)
             .registerSubtype(Library.class));
 
+        // Content without a type (from before it was serialized with its runtime type) is plain ArtifactContent.
+        addGsonTypeAdapterFactory(defaultingTypeAdapterFactory(ArtifactContent.class, "type", ArtifactContent.class)
+            .registerSubtype(JarContent.class));
+
         lenient(true);
         requireExposeAnnotation(true);
         prettyPrinting(true);
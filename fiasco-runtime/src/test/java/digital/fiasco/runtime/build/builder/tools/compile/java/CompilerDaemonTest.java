@@ -0,0 +1,238 @@
+package digital.fiasco.runtime.build.builder.tools.compile.java;
+
+import digital.fiasco.runtime.FiascoTest;
+import digital.fiasco.runtime.build.builder.tools.compile.java.CompilerDaemon.Request;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static java.net.StandardProtocolFamily.UNIX;
+
+public class CompilerDaemonTest extends FiascoTest
+{
+    @Test
+    public void testChangedJar() throws IOException, InterruptedException
+    {
+        var sources = Files.createTempDirectory("sources");
+        var target = Files.createTempDirectory("target");
+        var socket = Files.createTempDirectory("daemon").resolve("compiler.socket");
+        var jar = Files.createTempDirectory("jars").resolve("lib.jar");
+
+        // Start a daemon,
+        startDaemon(socket);
+
+        try
+        {
+            // compile against a JAR,
+            var client = new CompilerDaemonClient(socket);
+            writeJar(client, jar, "public class Lib { public static void a() { } }");
+            var a = Files.writeString(sources.resolve("A.java"), "public class A { void x() { Lib.a(); } }");
+            ensure(client.compile(request(target, a, jar)).succeeded());
+
+            // then rebuild the JAR in place and check that the daemon sees the new classes.
+            var modified = Files.getLastModifiedTime(jar).toMillis();
+            writeJar(client, jar, "public class Lib { public static void b() { } }");
+            Files.setLastModifiedTime(jar, FileTime.fromMillis(modified + 2_000));
+            var b = Files.writeString(sources.resolve("B.java"), "public class B { void x() { Lib.b(); } }");
+            ensure(client.compile(request(target, b, jar)).succeeded());
+        }
+        finally
+        {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    @Test
+    public void testClasspathPerRequest() throws IOException, InterruptedException
+    {
+        var sources = Files.createTempDirectory("sources");
+        var library = Files.createTempDirectory("library");
+        var socket = Files.createTempDirectory("daemon").resolve("compiler.socket");
+
+        // Start a daemon,
+        startDaemon(socket);
+
+        try
+        {
+            // compile a class into a classpath folder,
+            var client = new CompilerDaemonClient(socket);
+            var lib = Files.writeString(Files.createTempDirectory("library-sources").resolve("Lib.java"),
+                "public class Lib { }");
+            ensure(client.compile(request(library, lib)).succeeded());
+
+            // compile a source file that uses it, with the folder on the classpath,
+            var a = Files.writeString(sources.resolve("A.java"), "public class A { Lib lib; }");
+            ensure(client.compile(request(Files.createTempDirectory("target"), a, library)).succeeded());
+
+            // then check that a request without a classpath doesn't see the previous request's classpath.
+            var b = Files.writeString(sources.resolve("B.java"), "public class B { Lib lib; }");
+            var response = client.compile(request(Files.createTempDirectory("target"), b));
+            ensure(!response.succeeded());
+            ensureEqual(response.problems().get(0).kind(), "ERROR");
+        }
+        finally
+        {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    @Test
+    public void testCompile() throws IOException, InterruptedException
+    {
+        var sources = Files.createTempDirectory("sources");
+        var target = Files.createTempDirectory("target");
+        var socket = Files.createTempDirectory("daemon").resolve("compiler.socket");
+
+        // Start a daemon,
+        startDaemon(socket);
+
+        try
+        {
+            // compile a good source file with it,
+            var client = new CompilerDaemonClient(socket);
+            var a = Files.writeString(sources.resolve("A.java"), "public class A { class B { } }");
+            var good = client.compile(request(target, a));
+            ensure(good.succeeded());
+            ensure(good.problems().isEmpty());
+            ensureEqual(good.classToSource().get("A"), a.toString());
+            ensureEqual(good.classToSource().get("A$B"), a.toString());
+            ensure(Files.exists(target.resolve("A.class")));
+
+            // then a bad one, reusing the daemon's file manager.
+            var c = Files.writeString(sources.resolve("C.java"), "public class C { int x() { return y; } }");
+            var bad = client.compile(request(target, c));
+            ensure(!bad.succeeded());
+            ensureEqual(bad.problems().size(), 1);
+            ensureEqual(bad.problems().get(0).kind(), "ERROR");
+            ensureEqual(bad.problems().get(0).line(), 1L);
+        }
+        finally
+        {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    @Test
+    public void testProtocolMismatch() throws IOException, InterruptedException
+    {
+        var socket = Files.createTempDirectory("daemon").resolve("compiler.socket");
+
+        // Start a daemon,
+        var daemon = startDaemon(socket);
+
+        try
+        {
+            // connect to it with a newer version of the protocol,
+            try (var connection = SocketChannel.open(UNIX))
+            {
+                connection.connect(UnixDomainSocketAddress.of(socket));
+                var out = new DataOutputStream(Channels.newOutputStream(connection));
+                out.writeInt(CompilerDaemon.MAGIC);
+                out.writeInt(CompilerDaemon.PROTOCOL_VERSION + 1);
+                out.flush();
+
+                // check that it replies with its own version,
+                var in = new DataInputStream(Channels.newInputStream(connection));
+                ensureEqual(in.readInt(), CompilerDaemon.MAGIC);
+                ensureEqual(in.readInt(), CompilerDaemon.PROTOCOL_VERSION);
+            }
+
+            // and then exits, removing its socket.
+            daemon.join(10_000);
+            ensure(!daemon.isAlive());
+            ensure(!Files.exists(socket));
+            ensure(Files.readString(CompilerDaemon.logFile(socket)).contains("protocol"));
+        }
+        finally
+        {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    @Test
+    public void testSingleDaemon() throws IOException, InterruptedException
+    {
+        var sources = Files.createTempDirectory("sources");
+        var target = Files.createTempDirectory("target");
+        var socket = Files.createTempDirectory("daemon").resolve("compiler.socket");
+
+        // Start a daemon,
+        startDaemon(socket);
+
+        try
+        {
+            // then check that a second daemon exits without taking over the socket,
+            new CompilerDaemon(socket).run();
+            ensure(Files.exists(socket));
+            ensure(Files.readString(CompilerDaemon.logFile(socket)).contains("already running"));
+
+            // and that the first daemon still serves it.
+            var a = Files.writeString(sources.resolve("A.java"), "public class A { }");
+            ensure(new CompilerDaemonClient(socket).compile(request(target, a)).succeeded());
+        }
+        finally
+        {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    private Request request(Path target, Path source)
+    {
+        return new Request(List.of("-d", target.toString()), List.of(source.toString()), List.of(), "UTF-8", "en-US",
+            true);
+    }
+
+    private Request request(Path target, Path source, Path classpath)
+    {
+        return new Request(List.of("-d", target.toString(), "-classpath", classpath.toString()),
+            List.of(source.toString()), List.of(), "UTF-8", "en-US", true);
+    }
+
+    private Thread startDaemon(Path socket) throws InterruptedException
+    {
+        var daemon = new Thread(() ->
+        {
+            try
+            {
+                new CompilerDaemon(socket).run();
+            }
+            catch (IOException ignored)
+            {
+            }
+        });
+        daemon.setDaemon(true);
+        daemon.start();
+        for (var wait = 0; !Files.exists(socket) && wait < 100; wait++)
+        {
+            Thread.sleep(50);
+        }
+        return daemon;
+    }
+
+    /**
+     * Compiles the given source for the class Lib with the given daemon client, and writes it to the given JAR
+     */
+    private void writeJar(CompilerDaemonClient client, Path jar, String source) throws IOException
+    {
+        var classes = Files.createTempDirectory("classes");
+        var lib = Files.writeString(Files.createTempDirectory("library-sources").resolve("Lib.java"), source);
+        ensure(client.compile(request(classes, lib)).succeeded());
+        try (var out = new JarOutputStream(Files.newOutputStream(jar)))
+        {
+            out.putNextEntry(new JarEntry("Lib.class"));
+            out.write(Files.readAllBytes(classes.resolve("Lib.class")));
+            out.closeEntry();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package digital.fiasco.runtime.build.builder.tools.compile.java;
+
+import digital.fiasco.runtime.FiascoTest;
+import org.junit.Test;
+
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static digital.fiasco.runtime.build.builder.tools.compile.java.ClassSummary.classSummary;
+import static digital.fiasco.runtime.build.builder.tools.compile.java.ClasspathAbi.classpathAbi;
+
+public class IncrementalCompilationTest extends FiascoTest
+{
+    @Test
+    public void testAbi() throws IOException
+    {
+        var folder = Files.createTempDirectory("abi");
+
+        var first = compileOne(folder, "public class A { public int x() { return 1; } private void y() {} }");
+        var body = compileOne(folder, "public class A { public int x() { return 2; } }");
+        var api = compileOne(folder, "public class A { public long x() { return 2; } }");
+        var constant = compileOne(folder,
+            "public class A { public static final int X = 3; public long x() { return 2; } }");
+
+        ensureEqual(first.name(), "A");
+        ensureEqual(first.abi(), body.abi());
+        ensure(!body.abi().equals(api.abi()));
+        ensure(!api.constants().equals(constant.constants()));
+
+        // Throws clauses and annotations are part of the ABI.
+        var throwing = compileOne(folder, "public class A { public int x() throws Exception { return 2; } }");
+        var annotated = compileOne(folder, "public class A { @Deprecated public int x() { return 2; } }");
+        ensure(!body.abi().equals(throwing.abi()));
+        ensure(!body.abi().equals(annotated.abi()));
+    }
+
+    @Test
+    public void testClasspathAbi() throws IOException
+    {
+        var folder = Files.createTempDirectory("classpath");
+
+        // The classpath fingerprint ignores changes to method bodies,
+        compileOne(folder, "public class A { public int x() { return 1; } }");
+        var first = classpathAbi(List.of(folder), List.of());
+        compileOne(folder, "public class A { public int x() { return 2; } }");
+        ensureEqual(classpathAbi(List.of(folder), List.of()), first);
+
+        // but not changes to the ABI.
+        compileOne(folder, "public class A { public long x() { return 2; } }");
+        ensure(!classpathAbi(List.of(folder), List.of()).equals(first));
+
+        // A JAR changes it too.
+        ensure(!classpathAbi(List.of(folder), List.of("library.jar:1")).equals(
+            classpathAbi(List.of(folder), List.of("library.jar:2"))));
+    }
+
+    @Test
+    public void testIncremental() throws IOException
+    {
+        var sources = Files.createTempDirectory("sources");
+        var target = Files.createTempDirectory("target");
+        var a = write(sources, "A", "public class A { public int x() { return 1; } }");
+        var b = write(sources, "B", "public class B { Object y() { return new A().x(); } }");
+        var c = write(sources, "C", "public class C { }");
+
+        var compiled = new ArrayList<String>();
+        var compilation = new IncrementalCompilation(target, "options", (group, classToSource) ->
+            compile(group, target, classToSource, compiled));
+
+        // The first compile compiles everything,
+        ensure(compilation.compile(List.of(a, b, c)));
+        ensureEqual(compiled.size(), 3);
+
+        // an unchanged compile compiles nothing, but keeps the classes of every source file,
+        compiled.clear();
+        ensure(compilation.compile(List.of(a, b, c)));
+        ensure(compiled.isEmpty());
+        ensureEqual(Set.copyOf(compilation.classes()), Set.of("A", "B", "C"));
+
+        // a change to a method body compiles only that file,
+        compiled.clear();
+        write(sources, "A", "public class A { public int x() { return 2; } }");
+        ensure(compilation.compile(List.of(a, b, c)));
+        ensureEqual(compiled, List.of("A"));
+
+        // a change to the ABI also compiles the files that use it,
+        compiled.clear();
+        write(sources, "A", "public class A { public long x() { return 2; } }");
+        ensure(compilation.compile(List.of(a, b, c)));
+        ensureEqual(compiled, List.of("A", "B"));
+
+        // and removing a source file deletes its classes.
+        compiled.clear();
+        ensure(compilation.compile(List.of(a, b)));
+        ensure(compiled.isEmpty());
+        ensure(!Files.exists(target.resolve("C.class")));
+    }
+
+    @Test
+    public void testInterrupted() throws IOException
+    {
+        var sources = Files.createTempDirectory("sources");
+        var target = Files.createTempDirectory("target");
+        var a = write(sources, "A", "public class A { public int x() { return 1; } }");
+        var b = write(sources, "B", "public class B { Object y() { return new A().x(); } }");
+
+        var compiled = new ArrayList<String>();
+        ensure(new IncrementalCompilation(target, "options", (group, classToSource) ->
+            compile(group, target, classToSource, compiled)).compile(List.of(a, b)));
+
+        // If the process dies while compiling the files that use a changed ABI, after their classes were deleted,
+        write(sources, "A", "public class A { public long x() { return 2; } }");
+        ensureThrows(() -> new IncrementalCompilation(target, "options", (group, classToSource) ->
+        {
+            if (group.contains(b))
+            {
+                throw new IllegalStateException("Process died");
+            }
+            return compile(group, target, classToSource, compiled);
+        }).compile(List.of(a, b)));
+        ensure(!Files.exists(target.resolve("B.class")));
+
+        // the next compile compiles everything.
+        compiled.clear();
+        ensure(new IncrementalCompilation(target, "options", (group, classToSource) ->
+            compile(group, target, classToSource, compiled)).compile(List.of(a, b)));
+        ensureEqual(compiled, List.of("A", "B"));
+        ensure(Files.exists(target.resolve("B.class")));
+    }
+
+    @Test
+    public void testThrowsClause() throws IOException
+    {
+        var sources = Files.createTempDirectory("sources");
+        var target = Files.createTempDirectory("target");
+        var a = write(sources, "A", "public class A { public void x() { } }");
+        var b = write(sources, "B", "public class B { void y() { new A().x(); } }");
+
+        var compiled = new ArrayList<String>();
+        var compilation = new IncrementalCompilation(target, "options", (group, classToSource) ->
+            compile(group, target, classToSource, compiled));
+        ensure(compilation.compile(List.of(a, b)));
+
+        // Adding a checked exception to a method compiles the files that call it, which then fail, as they would in a
+        // full compile.
+        compiled.clear();
+        write(sources, "A", "public class A { public void x() throws Exception { } }");
+        ensure(!compilation.compile(List.of(a, b)));
+        ensureEqual(compiled, List.of("A", "B"));
+    }
+
+    private boolean compile(List<File> sources,
+                            Path target,
+                            Map<String, String> classToSource,
+                            List<String> compiled)
+    {
+        var arguments = new ArrayList<String>(List.of("-d", target.toString(), "-classpath", target.toString()));
+        for (var source : sources)
+        {
+            var name = source.getName().replace(".java", "");
+            arguments.add(source.getPath());
+            classToSource.put(name, source.getAbsolutePath());
+            compiled.add(name);
+        }
+        compiled.sort(String::compareTo);
+        return ToolProvider.getSystemJavaCompiler().run(null, null, null, arguments.toArray(String[]::new)) == 0;
+    }
+
+    private ClassSummary compileOne(Path folder, String code) throws IOException
+    {
+        var source = write(folder, "A", code);
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        ensure(compiler.run(null, null, null, "-d", folder.toString(), source.getPath()) == 0);
+        return classSummary(folder.resolve("A.class"));
+    }
+
+    private File write(Path folder, String name, String code) throws IOException
+    {
+        return Files.writeString(folder.resolve(name + ".java"), code).toFile();
+    }
+}
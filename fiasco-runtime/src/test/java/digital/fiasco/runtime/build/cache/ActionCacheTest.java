@@ -0,0 +1,175 @@
+package digital.fiasco.runtime.build.cache;
+
+import digital.fiasco.runtime.FiascoTest;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static digital.fiasco.runtime.build.cache.ActionKey.actionKey;
+
+public class ActionCacheTest extends FiascoTest
+{
+    @Test
+    public void testCanStore() throws IOException
+    {
+        var cache = new ActionCache(Files.createTempDirectory("cache"));
+        var root = project("A");
+        var outside = Files.createTempDirectory("install").resolve("A.jar");
+
+        ensure(cache.canStore(root, List.of(root.resolve("target/classes/A.class"))));
+        ensure(!cache.canStore(root, List.of(root.resolve("target/classes/A.class"), outside)));
+        ensure(!cache.canStore(root, List.of(root.resolve("../elsewhere/A.class"))));
+    }
+
+    @Test
+    public void testKey() throws IOException
+    {
+        var first = project("A");
+        var second = project("A");
+        var changed = project("B");
+
+        // The same inputs in different folders have the same key,
+        ensureEqual(key(first), key(second));
+
+        // a change to an input changes the key,
+        ensure(!key(first).equals(key(changed)));
+
+        // and the order of unordered settings doesn't matter.
+        ensureEqual(actionKey(first, "test").withAll("flags", List.of("a", "b")).key(),
+            actionKey(first, "test").withAll("flags", List.of("b", "a")).key());
+    }
+
+    @Test
+    public void testKeyOutsideRoot() throws IOException
+    {
+        var first = project("A");
+        var second = project("A");
+
+        // Files outside the root folder are keyed by their contents, not their absolute paths,
+        var jar = Files.writeString(Files.createTempDirectory("repository").resolve("library.jar"), "jar");
+        var copy = Files.writeString(Files.createTempDirectory("repository").resolve("library.jar"), "jar");
+        var changed = Files.writeString(Files.createTempDirectory("repository").resolve("library.jar"), "changed");
+        ensureEqual(actionKey(first, "test").withFile(jar).key(), actionKey(second, "test").withFile(copy).key());
+        ensure(!actionKey(first, "test").withFile(jar).key().equals(actionKey(first, "test").withFile(changed).key()));
+
+        // and so are folders outside the root folder.
+        var classes = Files.createTempDirectory("classes");
+        var classesCopy = Files.createTempDirectory("classes");
+        Files.writeString(classes.resolve("A.class"), "class");
+        Files.writeString(classesCopy.resolve("A.class"), "class");
+        ensureEqual(actionKey(first, "test").withFolder(classes).key(),
+            actionKey(second, "test").withFolder(classesCopy).key());
+    }
+
+    @Test
+    public void testRemote() throws IOException
+    {
+        var remote = new ActionCache(Files.createTempDirectory("remote"));
+        var shared = new RemoteActionCache()
+        {
+            @Override
+            public byte[] bundle(String key)
+            {
+                return remote.bundle(key);
+            }
+
+            @Override
+            public Set<String> findBundles(Collection<String> keys)
+            {
+                return keys.stream().filter(remote::contains).collect(Collectors.toSet());
+            }
+
+            @Override
+            public boolean putBundle(String key, byte[] bundle)
+            {
+                remote.putBundle(key, bundle);
+                return true;
+            }
+        };
+        var first = new ActionCache(Files.createTempDirectory("first")).withRemote(shared);
+        var second = new ActionCache(Files.createTempDirectory("second")).withRemote(shared);
+
+        // Outputs stored on one machine are shared with the remote cache,
+        var built = project("A");
+        var key = key(built);
+        var output = Files.writeString(built.resolve("target/classes/A.class"), "class");
+        first.store(key, built, List.of(output));
+        ensure(remote.contains(key));
+
+        // so another machine can restore them, keeping a local copy.
+        var clean = project("A");
+        ensure(!second.contains(key));
+        ensure(second.restore(key, clean));
+        ensure(second.contains(key));
+        ensureEqual(Files.readString(clean.resolve("target/classes/A.class")), "class");
+    }
+
+    @Test
+    public void testRestore() throws IOException
+    {
+        var cache = new ActionCache(Files.createTempDirectory("cache"));
+        var built = project("A");
+        var key = key(built);
+
+        // Nothing is cached at first,
+        var clean = project("A");
+        ensure(!cache.contains(key));
+        ensure(!cache.restore(key, clean));
+
+        // but once the outputs are stored,
+        var output = Files.writeString(built.resolve("target/classes/A.class"), "class");
+        cache.store(key, built, List.of(output));
+        ensure(cache.contains(key));
+
+        // they can be restored into another copy of the project.
+        ensure(cache.restore(key, clean));
+        ensureEqual(Files.readString(clean.resolve("target/classes/A.class")), "class");
+    }
+
+    @Test
+    public void testInvalidBundle() throws IOException
+    {
+        var cache = new ActionCache(Files.createTempDirectory("cache"));
+        var key = key(project("A"));
+
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes))
+        {
+            out.writeInt(0x46414342);
+            out.writeInt(1);
+            out.writeInt(1);
+            out.writeUTF("../outside");
+            out.writeInt(0);
+        }
+
+        ensureThrows(() -> cache.putBundle(key, bytes.toByteArray()));
+        ensureThrows(() -> cache.putBundle(key, new byte[] { 1, 2, 3 }));
+        ensure(!cache.contains(key));
+    }
+
+    private String key(Path root)
+    {
+        return actionKey(root, "test")
+            .with("release", 17)
+            .withFolder(root.resolve("src"))
+            .withPath("target", root.resolve("target/classes"))
+            .key();
+    }
+
+    private Path project(String code) throws IOException
+    {
+        var root = Files.createTempDirectory("project");
+        Files.createDirectories(root.resolve("src"));
+        Files.createDirectories(root.resolve("target/classes"));
+        Files.writeString(root.resolve("src/A.java"), code);
+        return root;
+    }
+}
@@ -0,0 +1,57 @@
+package digital.fiasco.runtime.build.execution;
+
+import digital.fiasco.runtime.FiascoTest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+import static digital.fiasco.runtime.build.execution.Blocking.blocking;
+
+public class BlockingTest extends FiascoTest
+{
+    @Test
+    public void testDirect()
+    {
+        ensureEqual(blocking(() -> 7), 7);
+        ensureThrows(() -> blocking(() ->
+        {
+            throw new IOException("failed");
+        }));
+    }
+
+    @Test
+    public void testElastic()
+    {
+        var permits = new Semaphore(1);
+        var metrics = new ExecutionMetrics();
+        var pool = new ForkJoinPool(1);
+        try
+        {
+            var result = pool.submit(() ->
+            {
+                permits.acquireUninterruptibly();
+                Blocking.enter(permits, metrics, true);
+                try
+                {
+                    // While blocked, the slot is free for another builder
+                    return blocking(() -> permits.availablePermits());
+                }
+                finally
+                {
+                    Blocking.exit();
+                    permits.release();
+                }
+            }).join();
+
+            ensureEqual(result, 1);
+            ensureEqual(permits.availablePermits(), 1);
+            ensureEqual(metrics.blockingCalls(), 1L);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+}
@@ -5,10 +5,23 @@ import com.telenav.kivakit.core.time.Time;
 import digital.fiasco.runtime.FiascoTest;
 import org.junit.Test;
 
+import java.io.IOException;
+
 import static com.telenav.kivakit.core.value.count.Bytes.bytes;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class ArtifactContentTest extends FiascoTest
 {
+    @Test
+    public void testOpenForReading() throws IOException
+    {
+        var content = fileContent();
+        try (var in = content.openForReading())
+        {
+            ensureEqual(new String(in.readAllBytes(), UTF_8), content.resource().reader().readText());
+        }
+    }
+
     @Test
     public void testResource()
     {
@@ -20,6 +33,13 @@ public class ArtifactContentTest extends FiascoTest
             var resource = fileContent().resource();
             ensure(resource.lastModified().equals(fileContent().lastModified()));
         }
+        {
+            var resource = fileContent().resource();
+            var content = ArtifactContent.content(resource);
+            ensure(content.resource() == resource);
+            ensureEqual(content.size(), resource.sizeInBytes());
+            ensureEqual(content.name(), resource.fileName().name());
+        }
     }
 
     @Test
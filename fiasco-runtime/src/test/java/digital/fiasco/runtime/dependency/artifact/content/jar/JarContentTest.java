@@ -3,6 +3,9 @@ package digital.fiasco.runtime.dependency.artifact.content.jar;
 import digital.fiasco.runtime.FiascoTest;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 import static com.telenav.kivakit.filesystem.Folder.FolderType.CLEAN_UP_ON_EXIT;
 import static com.telenav.kivakit.filesystem.Folder.temporaryFolderForProcess;
 import static com.telenav.kivakit.resource.WriteMode.OVERWRITE;
@@ -22,4 +25,33 @@ public class JarContentTest extends FiascoTest
         var deserialized = jarContent(yaml);
         ensureEqual(content, deserialized);
     }
+
+    @Test
+    public void testOpenEntry() throws IOException
+    {
+        var jar = packageResource("test.jar");
+        var file = temporaryFolderForProcess(CLEAN_UP_ON_EXIT).file("test.jar");
+        jar.copyTo(file, OVERWRITE);
+        var content = jarContent(file);
+
+        for (var entry : content.index().entries())
+        {
+            var size = (int) entry.size().asBytes();
+            try (var in = content.openEntry(entry.path()))
+            {
+                ensureEqual(in.readAllBytes().length, size);
+            }
+            try (var channel = content.entryChannel(entry.path()))
+            {
+                var buffer = ByteBuffer.allocate(size + 1);
+                while (channel.read(buffer) >= 0 && buffer.hasRemaining())
+                {
+                }
+                ensureEqual(buffer.position(), size);
+            }
+        }
+
+        ensure(content.openEntry("/does/not/exist") == null);
+        ensure(content.entryChannel("/does/not/exist") == null);
+    }
 }
@@ -5,11 +5,18 @@ import com.telenav.kivakit.core.value.count.Bytes;
 import digital.fiasco.runtime.FiascoTest;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 import static com.telenav.kivakit.core.time.Duration.ONE_SECOND;
 import static com.telenav.kivakit.core.time.Duration.seconds;
 import static com.telenav.kivakit.core.value.count.Count._10;
 import static digital.fiasco.runtime.dependency.artifact.content.jar.JarEntry.jarEntry;
 import static digital.fiasco.runtime.dependency.artifact.content.jar.JarIndex.jarIndex;
+import static digital.fiasco.runtime.dependency.artifact.content.jar.JarIndex.jarIndexBuilder;
 
 public class JarIndexTest extends FiascoTest
 {
@@ -35,4 +42,71 @@ public class JarIndexTest extends FiascoTest
 
         ensureEqual(index, deserialized);
     }
+
+    @Test
+    public void testBuilder()
+    {
+        var builder = jarIndexBuilder();
+        var index = jarIndex();
+        for (var i : _10.ints())
+        {
+            var entry = entry(i);
+            builder.add(entry);
+            index = index.withEntry(entry);
+        }
+
+        var built = builder.build();
+        ensureEqual(built, index);
+        ensureEqual(built.size(), 10);
+        ensureThrows(() -> builder.add(entry(10)));
+    }
+
+    @Test
+    public void testColumns() throws IOException
+    {
+        var builder = jarIndexBuilder();
+        for (var i : _10.ints())
+        {
+            builder.add(entry(i));
+        }
+        var index = builder.build();
+
+        // Convert the index to columns and back,
+        var columns = index.columns();
+        ensureEqual(columns.size(), 10);
+        ensureEqual(columns.entry(3), index.entries().get(3));
+        ensureEqual(columns.toIndex(), index);
+
+        // and through the binary form.
+        var bytes = new ByteArrayOutputStream();
+        columns.write(new DataOutputStream(bytes));
+        var read = JarIndexColumns.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        ensureEqual(read.toIndex(), index);
+    }
+
+    @Test
+    public void testEntry()
+    {
+        var index = jarIndex();
+        for (var i : _10.ints())
+        {
+            index = index.withEntry(jarEntry()
+                .withPath("/test/path/" + i)
+                .withSize(Bytes.kilobytes(i))
+                .withLastModified(LocalTime.now())
+                .withOffset(i * 1024L));
+        }
+
+        ensureEqual(index.entry("/test/path/7").offset(), 7 * 1024L);
+        ensure(index.entry("/test/path/10") == null);
+    }
+
+    private JarEntry entry(int i)
+    {
+        return jarEntry()
+            .withPath("/test/" + (i % 3) + "/entry-" + i)
+            .withSize(Bytes.kilobytes(i))
+            .withLastModified(LocalTime.now().roundDown(ONE_SECOND))
+            .withOffset(i * 1024L);
+    }
 }
@@ -2,8 +2,12 @@ package digital.fiasco.runtime.dependency.artifact.resolver;
 
 import com.telenav.kivakit.core.thread.KivaKitThread;
 import digital.fiasco.runtime.FiascoTest;
+import digital.fiasco.runtime.dependency.Dependency;
+import digital.fiasco.runtime.dependency.collections.DependencyTree;
 import org.junit.Test;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 import static com.telenav.kivakit.core.time.Duration.seconds;
 import static digital.fiasco.runtime.dependency.collections.ArtifactList.artifacts;
 
@@ -34,4 +38,26 @@ public class ArtifactResolutionTrackerTest extends FiascoTest
         resolved.waitForResolutionOf(kivakitLibraries());
         ensure(resolved.isResolved(kivakitLibraries()));
     }
+
+    @Test
+    public void testTree()
+    {
+        var application = kivakitApplication();
+        var resolved = new ArtifactResolutionTracker(this, new DependencyTree(application));
+        var ready = new ConcurrentLinkedQueue<Dependency>();
+        resolved.onReady(ready::add);
+
+        // The application isn't ready until all of its artifacts are resolved,
+        resolved.resolved(artifacts(kivakitCore(), kivakitResource()));
+        ensure(!resolved.isResolved(application));
+        ensure(!ready.contains(application));
+        resolved.resolved(artifacts(kivakitIcons(), kivakitLogos()));
+        ensure(resolved.isResolved(application));
+        resolved.waitForResolutionOf(application);
+
+        // and it is only reported as ready once.
+        resolved.resolved(artifacts(kivakitIcons()));
+        ensureEqual(ready.stream().filter(application::equals).count(), 1L);
+        ensureEqual(resolved.size(), 4);
+    }
 }
@@ -0,0 +1,86 @@
+package digital.fiasco.runtime.dependency.collections;
+
+import digital.fiasco.runtime.FiascoTest;
+import digital.fiasco.runtime.dependency.artifact.types.Library;
+import org.junit.Test;
+
+import static digital.fiasco.runtime.dependency.artifact.types.Library.library;
+import static digital.fiasco.runtime.dependency.collections.CriticalPath.criticalPath;
+
+public class CriticalPathTest extends FiascoTest
+{
+    Library a = library("a:a:1");
+
+    Library b = library("b:b:1");
+
+    Library c = library("c:c:1");
+
+    Library d = library("d:d:1");
+
+    Library e = library("e:e:1");
+
+    Library f = library("f:f:1");
+
+    @Test
+    public void testLength()
+    {
+        var path = criticalPath(tree(), Library.class, it -> 1);
+
+        ensureEqual(path.length(a), 1L);
+        ensureEqual(path.length(b), 2L);
+        ensureEqual(path.length(c), 3L);
+        ensureEqual(path.length(d), 2L);
+        ensureEqual(path.length(e), 3L);
+        ensureEqual(path.length(f), 3L);
+        ensureEqual(path.length(library("x:x:1")), 0L);
+    }
+
+    @Test
+    public void testPriority()
+    {
+        var tree = tree();
+        var path = criticalPath(tree, Library.class, it -> it.equals(d) ? 10 : 1);
+
+        ensureEqual(path.length(d), 11L);
+        ensureEqual(path.length(e), 12L);
+
+        // Without priorities, c is taken first, but e and f lead to the longer chain through d
+        var queue = tree.asQueue(Library.class).withPriority(path.longestFirst());
+        ensureEqual(queue.takeNextReady(), e);
+        ensureEqual(queue.takeNextReady(), f);
+        ensureEqual(queue.takeNextReady(), c);
+    }
+
+    @Test
+    public void testShared()
+    {
+        //       a
+        //      / \
+        //     b   d
+        //      \ /
+        //       c
+
+        b = b.withDependencies(c);
+        d = d.withDependencies(c);
+        a = a.withDependencies(b, d);
+
+        var path = criticalPath(new DependencyTree(a), Library.class, it -> it.equals(d) ? 5 : 1);
+        ensureEqual(path.length(c), 7L);
+        ensureEqual(path.length(b), 2L);
+    }
+
+    private DependencyTree tree()
+    {
+        //       a
+        //      / \
+        //     b   d
+        //    /   / \
+        //   c   e   f
+
+        b = b.withDependencies(c);
+        d = d.withDependencies(e, f);
+        a = a.withDependencies(b, d);
+
+        return new DependencyTree(a);
+    }
+}
@@ -0,0 +1,120 @@
+package digital.fiasco.runtime.dependency.collections;
+
+import digital.fiasco.runtime.dependency.artifact.Artifact;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static digital.fiasco.runtime.dependency.artifact.types.Library.library;
+import static digital.fiasco.runtime.dependency.collections.ArtifactList.artifacts;
+import static digital.fiasco.runtime.dependency.collections.BaseDependencyList.HASHED_MEMBERSHIP_THRESHOLD;
+
+/**
+ * A timing harness for dependency list membership queries, used to choose
+ * {@link BaseDependencyList#HASHED_MEMBERSHIP_THRESHOLD}. For each list size, it times {@link List#contains(Object)}
+ * on an array list (a scan), {@link HashSet#contains(Object)} (a hashed lookup) and
+ * {@link BaseDependencyList#contains(Object)}, which switches from scanning to hashing at the threshold. Half of the
+ * queries are for dependencies in the list and half are not, since misses are the worst case for a scan.
+ *
+ * <p>
+ * This is not a unit test, so it is not run by the build. Run its main method, with the test classpath, on an idle
+ * machine. The threshold should be near the smallest size at which the hashed lookup is faster than the scan.
+ * </p>
+ *
+ * @author Jonathan Locke
+ */
+public class DependencyListMembershipBenchmark
+{
+    /** The list sizes to time */
+    private static final int[] SIZES = { 2, 4, 8, 12, 16, 24, 32, 64, 128 };
+
+    /** The number of queries in each timed round */
+    private static final int QUERIES = 1_000_000;
+
+    /** The number of untimed rounds that let the JIT compile the code being timed */
+    private static final int WARMUP_ROUNDS = 5;
+
+    /** The number of timed rounds, of which the fastest is reported */
+    private static final int ROUNDS = 10;
+
+    /** Consumes query results, so the JIT can't remove the queries */
+    private static int sink;
+
+    public static void main(String[] arguments)
+    {
+        System.out.printf("Threshold: %d%n%n", HASHED_MEMBERSHIP_THRESHOLD);
+        System.out.printf("%6s %12s %12s %12s%n", "size", "scan ns", "hashed ns", "list ns");
+        for (var size : SIZES)
+        {
+            // Create the dependencies in a list, and the same number that aren't in it,
+            var members = dependencies("member", size);
+            var others = dependencies("other", size);
+            var queries = new ArrayList<Artifact>();
+            for (var at = 0; at < size; at++)
+            {
+                queries.add(members.get(at));
+                queries.add(others.get(at));
+            }
+
+            // then time each way of answering membership queries.
+            var scanned = new ArrayList<>(members);
+            var hashed = new HashSet<>(members);
+            var list = artifacts(members);
+            System.out.printf("%6d %12.1f %12.1f %12.1f%n", size,
+                time(queries, scanned::contains),
+                time(queries, hashed::contains),
+                time(queries, list::contains));
+        }
+        System.out.printf("%nDependencies found: %d%n", sink);
+    }
+
+    /**
+     * Returns the given number of distinct dependencies, with the given prefix on their artifact names
+     */
+    private static List<Artifact> dependencies(String prefix, int count)
+    {
+        var dependencies = new ArrayList<Artifact>();
+        for (var at = 0; at < count; at++)
+        {
+            dependencies.add(library("com.telenav.kivakit:" + prefix + "-" + at + ":1.8.5"));
+        }
+        return dependencies;
+    }
+
+    /**
+     * Returns the fastest time per query, in nanoseconds, of answering the given queries with the given membership
+     * test
+     */
+    private static double time(List<Artifact> queries, Membership membership)
+    {
+        var fastest = Long.MAX_VALUE;
+        for (var round = 0; round < WARMUP_ROUNDS + ROUNDS; round++)
+        {
+            var start = System.nanoTime();
+            var found = 0;
+            for (var query = 0; query < QUERIES; query++)
+            {
+                if (membership.contains(queries.get(query % queries.size())))
+                {
+                    found++;
+                }
+            }
+            var elapsed = System.nanoTime() - start;
+            sink += found;
+            if (round >= WARMUP_ROUNDS)
+            {
+                fastest = Math.min(fastest, elapsed);
+            }
+        }
+        return (double) fastest / QUERIES;
+    }
+
+    /**
+     * A membership query
+     */
+    private interface Membership
+    {
+        boolean contains(Object dependency);
+    }
+}
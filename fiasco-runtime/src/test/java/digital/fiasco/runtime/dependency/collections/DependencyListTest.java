@@ -3,6 +3,8 @@ package digital.fiasco.runtime.dependency.collections;
 import digital.fiasco.runtime.FiascoTest;
 import org.junit.Test;
 
+import static com.telenav.kivakit.core.value.count.Maximum.maximum;
+import static digital.fiasco.runtime.dependency.artifact.types.Library.library;
 import static digital.fiasco.runtime.dependency.collections.ArtifactList.artifacts;
 import static digital.fiasco.runtime.dependency.collections.DependencyList.dependencies;
 
@@ -31,6 +33,33 @@ public class DependencyListTest extends FiascoTest
                 .equals(dependencies(kivakitIcons(), kivakitCore())));
     }
 
+    @Test
+    public void testLargeListMembership()
+    {
+        // Build lists large enough to use hashed membership,
+        var all = artifacts();
+        var reversed = artifacts();
+        for (var i = 0; i < 100; i++)
+        {
+            all = all.with(library("com.telenav.kivakit:kivakit-" + i + ":1.8.5"));
+            reversed = artifacts(library("com.telenav.kivakit:kivakit-" + i + ":1.8.5")).with(reversed);
+        }
+        ensure(all.size() >= BaseDependencyList.HASHED_MEMBERSHIP_THRESHOLD);
+
+        // then check that membership, equality and hashing ignore order,
+        ensure(all.contains(library("com.telenav.kivakit:kivakit-42:1.8.5")));
+        ensure(!all.contains(kivakitCore()));
+        ensure(all.containsAll(reversed));
+        ensureEqual(all, reversed);
+        ensureEqual(all.hashCode(), reversed.hashCode());
+
+        // and that removal uses the same lookup.
+        var without = all.without(reversed.first(maximum(50)));
+        ensureEqual(without.size(), 50);
+        ensure(without.contains(library("com.telenav.kivakit:kivakit-0:1.8.5")));
+        ensure(!without.contains(library("com.telenav.kivakit:kivakit-99:1.8.5")));
+    }
+
     @Test
     public void testWith()
     {
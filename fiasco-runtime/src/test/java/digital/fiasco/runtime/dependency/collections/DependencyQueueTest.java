@@ -6,15 +6,21 @@ import digital.fiasco.runtime.dependency.artifact.types.Library;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
 import static com.telenav.kivakit.core.thread.Threads.threadPool;
 import static com.telenav.kivakit.core.time.Duration.milliseconds;
 import static com.telenav.kivakit.core.time.Duration.minutes;
 import static com.telenav.kivakit.core.value.count.Count._5;
 import static com.telenav.kivakit.core.value.count.Count._6;
+import static com.telenav.kivakit.core.value.count.Maximum.maximum;
 import static com.telenav.kivakit.core.value.count.Minimum._10;
 import static com.telenav.kivakit.interfaces.time.WakeState.COMPLETED;
 import static digital.fiasco.runtime.dependency.artifact.types.Library.library;
 import static digital.fiasco.runtime.dependency.collections.LibraryList.libraries;
+import static java.util.concurrent.TimeUnit.MINUTES;
 
 public class DependencyQueueTest extends FiascoTest
 {
@@ -67,6 +73,31 @@ public class DependencyQueueTest extends FiascoTest
         });
     }
 
+    @Test
+    public void testReadinessChanged() throws InterruptedException
+    {
+        var gate = new AtomicBoolean();
+        var queue = testDependencies().asQueue(Library.class)
+            .withIsReady((ignored, it) -> gate.get());
+
+        var taken = new AtomicReference<Library>();
+        var done = new CountDownLatch(1);
+        KivaKitThread.run(this, "processor", () ->
+        {
+            taken.set(queue.takeNextReady());
+            done.countDown();
+        });
+
+        milliseconds(50).sleep();
+        ensure(taken.get() == null);
+
+        gate.set(true);
+        queue.readinessChanged();
+        ensure(done.await(1, MINUTES));
+
+        ensureEqual(taken.get(), c);
+    }
+
     @Test
     public void testTakeAll()
     {
@@ -158,6 +189,43 @@ public class DependencyQueueTest extends FiascoTest
         });
     }
 
+    @Test
+    public void testTakeReady()
+    {
+        var queue = testDependencyQueue();
+
+        var group1 = queue.takeReady(maximum(2));
+        ensure(group1.equals(libraries(c, e)));
+
+        var group2 = queue.takeReady(maximum(2));
+        ensure(group2.equals(libraries(f)));
+        queue.completed(group1);
+        queue.completed(group2);
+
+        ensure(queue.takeReady(maximum(5)).equals(libraries(b, d)));
+    }
+
+    @Test
+    public void testTakeAllWithoutIsReady()
+    {
+        var queue = testDependencies().asQueue(Library.class);
+
+        var group1 = queue.takeAllReady();
+        ensure(group1.equals(libraries(c, e, f)));
+        queue.completed(group1);
+
+        var group2 = queue.takeAllReady();
+        ensure(group2.equals(libraries(b, d)));
+        queue.completed(group2);
+
+        var group3 = queue.takeAllReady();
+        ensure(group3.equals(libraries(a)));
+        queue.completed(group3);
+
+        ensure(queue.takeAllReady().isEmpty());
+        ensure(queue.isCompleted());
+    }
+
     @Test
     public void testToString()
     {
@@ -41,6 +41,27 @@ public class DependencyTreeTest extends FiascoTest
         queue.completed(group3);
     }
 
+    @Test
+    public void testCyclic()
+    {
+        // The inner a is the same dependency as the root, since they have the same descriptor.
+        var root = a.withDependencies(b.withDependencies(c.withDependencies(a)));
+        ensureThrows(() -> new DependencyTree(root));
+    }
+
+    @Test
+    public void testDependents()
+    {
+        var tree = libraryTree();
+        ensureEqual(tree.dependents(c), dependencies(b));
+        ensureEqual(tree.dependents(e), dependencies(d));
+        ensureEqual(tree.dependents(b), dependencies(a));
+        ensure(tree.dependents(a).isEmpty());
+        ensureEqual(tree.dependencies(d), dependencies(e, f));
+        ensure(tree.dependencies(c).isEmpty());
+        ensure(!tree.contains(library("x:x:1")));
+    }
+
     @Test
     public void testDepthFirst()
     {
@@ -49,6 +70,48 @@ public class DependencyTreeTest extends FiascoTest
         ensureEqual(depthFirst, dependencies(c, b, e, f, d, a));
     }
 
+    @Test
+    public void testDiamond()
+    {
+        //       a
+        //      / \
+        //     b   d
+        //      \ /
+        //       c
+
+        b = b.withDependencies(c);
+        d = d.withDependencies(c);
+        a = a.withDependencies(b, d);
+        var tree = new DependencyTree(a);
+
+        // The shared dependency is in the tree once, before everything that depends on it,
+        var order = tree.asDepthFirstList();
+        ensureEqual(tree.size(), 4);
+        ensureEqual(order.get(0), c);
+        ensureEqual(order.last(), a);
+        ensureEqual(tree.dependents(c), dependencies(b, d));
+    }
+
+    @Test
+    public void testWideDiamonds()
+    {
+        // Each level depends on both dependencies of the level below, so there are 2^n paths to the bottom,
+        var left = library("l:l:0");
+        var right = library("r:r:0");
+        for (var level = 1; level <= 64; level++)
+        {
+            var nextLeft = library("l:l:" + level).withDependencies(left, right);
+            var nextRight = library("r:r:" + level).withDependencies(left, right);
+            left = nextLeft;
+            right = nextRight;
+        }
+
+        // but the tree only explores each dependency once.
+        var tree = new DependencyTree(a.withDependencies(left, right));
+        ensureEqual(tree.size(), 131);
+        ensureEqual(tree.asDepthFirstList().last(), a);
+    }
+
     @NotNull
     private DependencyTree libraryTree()
     {
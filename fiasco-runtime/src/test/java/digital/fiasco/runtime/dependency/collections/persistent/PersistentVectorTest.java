@@ -0,0 +1,65 @@
+package digital.fiasco.runtime.dependency.collections.persistent;
+
+import digital.fiasco.runtime.FiascoTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static digital.fiasco.runtime.dependency.collections.persistent.PersistentVector.persistentVector;
+
+public class PersistentVectorTest extends FiascoTest
+{
+    @Test
+    public void testBuilder()
+    {
+        var expected = new ArrayList<Integer>();
+        var builder = PersistentVector.<Integer>persistentVector().builder();
+        for (var i = 0; i < 5_000; i++)
+        {
+            builder.add(i);
+            expected.add(i);
+        }
+        var vector = builder.build();
+        ensureEqual(vector, expected);
+
+        // Adding to the builder after building doesn't change the vector that was built.
+        builder.add(-1);
+        ensureEqual(vector.size(), 5_000);
+        ensureEqual(builder.build().size(), 5_001);
+    }
+
+    @Test
+    public void testFirst()
+    {
+        var vector = persistentVector(List.of(1, 2, 3, 4));
+        ensureEqual(vector.first(2), List.of(1, 2));
+        ensureEqual(vector.first(10), vector);
+        ensureEqual(vector.first(0), List.of());
+    }
+
+    @Test
+    public void testSharing()
+    {
+        // Derived vectors don't change the vectors they were derived from,
+        var base = persistentVector(List.of(1, 2, 3));
+        var left = base.with(4);
+        var right = base.with(5);
+        ensureEqual(base, List.of(1, 2, 3));
+        ensureEqual(left, List.of(1, 2, 3, 4));
+        ensureEqual(right, List.of(1, 2, 3, 5));
+
+        // even across a full trie level.
+        var expected = new ArrayList<Integer>();
+        var vector = PersistentVector.<Integer>persistentVector();
+        for (var i = 0; i < 2_000; i++)
+        {
+            var next = vector.with(i);
+            ensureEqual(vector.size(), i);
+            vector = next;
+            expected.add(i);
+        }
+        ensureEqual(vector, expected);
+        ensureEqual(vector.withAll(List.of(-1, -2)).get(2_001), -2);
+    }
+}
@@ -0,0 +1,284 @@
+package digital.fiasco.runtime.librarian;
+
+import com.telenav.kivakit.component.BaseComponent;
+import com.telenav.kivakit.core.collections.list.ObjectList;
+import com.telenav.kivakit.core.progress.ProgressReporter;
+import digital.fiasco.runtime.FiascoTest;
+import digital.fiasco.runtime.dependency.artifact.Artifact;
+import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor;
+import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptorList;
+import digital.fiasco.runtime.dependency.collections.ArtifactList;
+import digital.fiasco.runtime.repository.Repository;
+import digital.fiasco.runtime.repository.RepositoryContentReader;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptorList.descriptors;
+import static digital.fiasco.runtime.dependency.artifact.types.Library.library;
+
+public class RepositorySearchLibrarianTest extends FiascoTest
+{
+    /**
+     * A repository that has only the given artifacts, and records the descriptors it is asked for
+     */
+    private static class TestRepository extends BaseComponent implements Repository
+    {
+        private final ArtifactDescriptorList has;
+
+        private final ObjectList<ArtifactDescriptorList> requests = new ObjectList<>();
+
+        TestRepository(ArtifactDescriptor... has)
+        {
+            this.has = descriptors(List.of(has));
+        }
+
+        @Override
+        public Repository clear()
+        {
+            return this;
+        }
+
+        @Override
+        public InstallationResult installArtifact(Artifact<?> artifact)
+        {
+            return InstallationResult.INSTALLATION_FAILED;
+        }
+
+        @Override
+        public String name()
+        {
+            return "test";
+        }
+
+        @Override
+        public synchronized ArtifactList resolveArtifacts(ArtifactDescriptorList descriptors,
+                                                          ProgressReporter reporter,
+                                                          RepositoryContentReader reader)
+        {
+            requests.add(descriptors);
+            return descriptors.without(it -> !has.contains(it)).asArtifacts();
+        }
+
+        @Override
+        public URI uri()
+        {
+            return URI.create("test:/repository");
+        }
+    }
+
+    @Test
+    public void testCycle()
+    {
+        // An artifact that depends on itself through another artifact
+        var b = library("b:b:1").withDependencies(library("a:a:1"));
+        var a = library("a:a:1").withDependencies(b);
+        var librarian = librarian(new TestRepository(a.descriptor(), b.descriptor()));
+
+        // can't be resolved.
+        ensureThrows(() -> librarian.resolve(a));
+    }
+
+    @Test
+    public void testCycleAcrossThreads() throws Exception
+    {
+        // Two threads that each start down a different side of a cycle, a -> b -> a and b -> a -> b,
+        var x = library("x:x:1");
+        var y = library("y:y:1");
+        var a = library("a:a:1").withDependencies(x, library("b:b:1").withDependencies(library("a:a:1")));
+        var b = library("b:b:1").withDependencies(y, library("a:a:1").withDependencies(library("b:b:1")));
+
+        // and meet once each has claimed its side,
+        var barrier = new CyclicBarrier(2);
+        var repository = new TestRepository(a.descriptor(), b.descriptor(), x.descriptor(), y.descriptor())
+        {
+            @Override
+            public ArtifactList resolveArtifacts(ArtifactDescriptorList descriptors,
+                                                 ProgressReporter reporter,
+                                                 RepositoryContentReader reader)
+            {
+                if (descriptors.contains(x.descriptor()) || descriptors.contains(y.descriptor()))
+                {
+                    try
+                    {
+                        barrier.await(10, TimeUnit.SECONDS);
+                    }
+                    catch (Exception e)
+                    {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return super.resolveArtifacts(descriptors, reporter, reader);
+            }
+        };
+        var librarian = librarian(repository);
+
+        var executor = Executors.newFixedThreadPool(2);
+        try
+        {
+            var first = executor.submit(() -> librarian.resolve(a));
+            var second = executor.submit(() -> librarian.resolve(b));
+
+            // both fail, instead of waiting for each other forever.
+            var failures = 0;
+            for (var result : List.of(first, second))
+            {
+                try
+                {
+                    result.get(10, TimeUnit.SECONDS);
+                }
+                catch (ExecutionException e)
+                {
+                    failures++;
+                }
+            }
+            ensureEqual(failures, 2);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEarlyExit()
+    {
+        var local = new TestRepository(descriptorAbv(), descriptorXyv());
+        var remote = new TestRepository(descriptorAbv(), descriptorXyv());
+        var librarian = librarian(local, remote);
+
+        // Everything is resolved by the first repository,
+        var resolved = librarian.resolve(descriptors(List.of(descriptorAbv(), descriptorXyv())));
+        ensureEqual(resolved.size(), 2);
+
+        // so the second is never asked.
+        ensureEqual(local.requests.size(), 1);
+        ensure(remote.requests.isEmpty());
+    }
+
+    @Test
+    public void testExclusions()
+    {
+        var c = library("c:c:1");
+        var b = library("b:b:1").withDependencies(c);
+        var librarian = librarian(new TestRepository(b.descriptor(), c.descriptor()));
+
+        // The same artifact with different exclusions is resolved separately.
+        ensureEqual(librarian.resolve(b).size(), 2);
+        ensureEqual(librarian.resolve(b.excluding(c)).size(), 1);
+        ensureEqual(librarian.resolve(b).size(), 2);
+    }
+
+    @Test
+    public void testMemoizedResolution()
+    {
+        //       a
+        //      / \
+        //     b   d
+        //      \ /
+        //       c
+
+        var c = library("c:c:1");
+        var b = library("b:b:1").withDependencies(c);
+        var d = library("d:d:1").withDependencies(c);
+        var a = library("a:a:1").withDependencies(b, d);
+        var repository = new TestRepository(a.descriptor(), b.descriptor(), c.descriptor(), d.descriptor());
+        var librarian = librarian(repository);
+
+        // The shared dependency is only resolved from the repository once,
+        var resolved = librarian.resolve(a);
+        ensure(resolved.asDescriptors().contains(c.descriptor()));
+        ensureEqual(resolved.last(), a);
+        ensureEqual(repository.requests.size(), 4);
+        ensureEqual(librarian.resolutionMisses(), 4L);
+        ensureEqual(librarian.resolutionHits(), 1L);
+
+        // and resolving it again doesn't reach the repository at all.
+        ensureEqual(librarian.resolve(a), resolved);
+        ensureEqual(repository.requests.size(), 4);
+        ensureEqual(librarian.resolutionHits(), 2L);
+    }
+
+    @Test
+    public void testMemoizedResolutionInParallel() throws Exception
+    {
+        var c = library("c:c:1");
+        var b = library("b:b:1").withDependencies(c);
+        var d = library("d:d:1").withDependencies(c);
+        var repository = new TestRepository(b.descriptor(), c.descriptor(), d.descriptor());
+        var librarian = librarian(repository);
+
+        // However many threads resolve artifacts that share a dependency at the same time,
+        var executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            var tasks = new ArrayList<Callable<ArtifactList>>();
+            for (var i = 0; i < 32; i++)
+            {
+                var artifact = i % 2 == 0 ? b : d;
+                tasks.add(() -> librarian.resolve(artifact));
+            }
+            for (var result : executor.invokeAll(tasks))
+            {
+                ensureEqual(result.get().size(), 2);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        // each artifact is only resolved from the repository once.
+        ensureEqual(repository.requests.size(), 3);
+        ensureEqual(librarian.resolutionMisses(), 3L);
+        ensureEqual(librarian.resolutionHits(), 31L);
+    }
+
+    @Test
+    public void testOnlyUnresolved()
+    {
+        var local = new TestRepository(descriptorAbv());
+        var remote = new TestRepository(descriptorAbv(), descriptorXyv());
+        var librarian = librarian(local, remote);
+
+        // The second repository is only asked for what the first didn't resolve.
+        var resolved = librarian.resolve(descriptors(List.of(descriptorAbv(), descriptorXyv())));
+        ensureEqual(resolved.size(), 2);
+        ensureEqual(remote.requests.size(), 1);
+        ensureEqual(remote.requests.first().size(), 1);
+        ensure(remote.requests.first().contains(descriptorXyv()));
+    }
+
+    @Test
+    public void testParallel()
+    {
+        var local = new TestRepository(descriptorAbv());
+        var remote = new TestRepository(descriptorAbv(), descriptorXyv());
+        var librarian = librarian(local, remote).withParallelSearch(true);
+
+        // All repositories are asked, but each artifact is only resolved once.
+        var resolved = librarian.resolve(descriptors(List.of(descriptorAbv(), descriptorXyv())));
+        ensureEqual(resolved.size(), 2);
+        ensureEqual(local.requests.size(), 1);
+        ensureEqual(remote.requests.size(), 1);
+    }
+
+    @Test
+    public void testUnresolved()
+    {
+        var librarian = librarian(new TestRepository(descriptorAbv()));
+        ensureThrows(() -> librarian.resolve(descriptors(List.of(descriptorAbv(), descriptorXyv()))));
+    }
+
+    private RepositorySearchLibrarian librarian(Repository... repositories)
+    {
+        return new RepositorySearchLibrarian(ObjectList.list(repositories));
+    }
+}
@@ -0,0 +1,81 @@
+package digital.fiasco.runtime.repository;
+
+import digital.fiasco.runtime.FiascoTest;
+import org.junit.Test;
+
+import static digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor.artifactDescriptor;
+import static digital.fiasco.runtime.dependency.artifact.types.Library.library;
+
+public class ArtifactIndexTest extends FiascoTest
+{
+    @Test
+    public void testAdd()
+    {
+        var index = index();
+        ensureEqual(index.size(), 4);
+
+        index.add(kivakitCore());
+        ensureEqual(index.size(), 4);
+        ensureEqual(index.matching(kivakitCore().descriptor()).size(), 1);
+    }
+
+    @Test
+    public void testClear()
+    {
+        var index = index();
+        index.clear();
+        ensureEqual(index.size(), 0);
+        ensure(index.matching(artifactDescriptor(":com.telenav.kivakit::")).isEmpty());
+
+        index.add(kivakitCore());
+        ensureEqual(index.size(), 1);
+    }
+
+    @Test
+    public void testContains()
+    {
+        var index = index();
+        ensure(index.contains(kivakitCore().descriptor()));
+        ensure(!index.contains(kivakitImages().descriptor()));
+        ensureEqual(index.get(kivakitIcons().descriptor()), kivakitIcons());
+    }
+
+    @Test
+    public void testMatching()
+    {
+        var index = index();
+
+        ensureEqual(index.matching(kivakitCore().descriptor()).size(), 1);
+        ensureEqual(index.matching(artifactDescriptor(":com.telenav.kivakit::")).size(), 4);
+        ensureEqual(index.matching(artifactDescriptor("library:com.telenav.kivakit::")).size(), 2);
+        ensureEqual(index.matching(artifactDescriptor("asset:com.telenav.kivakit::")).size(), 2);
+        ensureEqual(index.matching(artifactDescriptor("library:com.telenav.kivakit:kivakit-core:")).size(), 2);
+        ensureEqual(index.matching(artifactDescriptor(":com.telenav.kivakit::1.8.5")).size(), 3);
+        ensureEqual(index.matching(artifactDescriptor(":com.telenav.kivakit::1.9.0")).size(), 1);
+        ensure(index.matching(artifactDescriptor(":com.telenav.x::")).isEmpty());
+        ensure(index.matching(artifactDescriptor(":com.telenav.kivakit:kivakit-x:")).isEmpty());
+    }
+
+    @Test
+    public void testRemove()
+    {
+        var index = index();
+        ensureEqual(index.remove(kivakitIcons().descriptor()), kivakitIcons());
+        ensure(index.remove(kivakitIcons().descriptor()) == null);
+        ensureEqual(index.size(), 3);
+        ensureEqual(index.all().size(), 3);
+        ensure(!index.contains(kivakitIcons().descriptor()));
+        ensureEqual(index.matching(artifactDescriptor("asset:com.telenav.kivakit::")).size(), 1);
+        ensureEqual(index.matching(artifactDescriptor(":com.telenav.kivakit::1.8.5")).size(), 2);
+    }
+
+    private ArtifactIndex index()
+    {
+        var index = new ArtifactIndex();
+        index.add(kivakitCore());
+        index.add(library("com.telenav.kivakit:kivakit-core:1.9.0"));
+        index.add(kivakitIcons());
+        index.add(kivakitLogos());
+        return index;
+    }
+}
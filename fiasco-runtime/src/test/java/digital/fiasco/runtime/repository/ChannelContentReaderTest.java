@@ -0,0 +1,111 @@
+package digital.fiasco.runtime.repository;
+
+import digital.fiasco.runtime.FiascoTest;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.telenav.kivakit.core.value.count.Bytes.bytes;
+import static digital.fiasco.runtime.repository.ChannelContentReader.transferringContentReader;
+import static java.nio.file.StandardOpenOption.READ;
+
+public class ChannelContentReaderTest extends FiascoTest
+{
+    @Test
+    public void testNonBlockingFileTransfer() throws IOException, InterruptedException
+    {
+        // Write content that is much larger than a pipe's buffer to a file,
+        var content = content();
+        var file = Files.createTempFile("content", ".bin");
+        Files.write(file, content);
+
+        // then transfer it to a non-blocking pipe that is drained slowly.
+        var pipe = pipe();
+        var drained = drain(pipe);
+        try (var channel = FileChannel.open(file, READ))
+        {
+            transferringContentReader(pipe.sink()).read(channel, 0, bytes(content.length));
+        }
+        pipe.sink().close();
+        ensure(Arrays.equals(drained.await(), content));
+    }
+
+    @Test
+    public void testNonBlockingStreamCopy() throws IOException, InterruptedException
+    {
+        // Copy content that is much larger than a pipe's buffer to a non-blocking pipe that is drained slowly.
+        var content = content();
+        var pipe = pipe();
+        var drained = drain(pipe);
+        transferringContentReader(pipe.sink()).read(new ByteArrayInputStream(content), bytes(content.length));
+        pipe.sink().close();
+        ensure(Arrays.equals(drained.await(), content));
+    }
+
+    /**
+     * Reads everything from a pipe on another thread
+     */
+    private static class Drain extends Thread
+    {
+        private final Pipe pipe;
+
+        private final ByteArrayOutputStream drained = new ByteArrayOutputStream();
+
+        Drain(Pipe pipe)
+        {
+            this.pipe = pipe;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                var buffer = ByteBuffer.allocate(4 * 1024);
+                while (pipe.source().read(buffer.clear()) >= 0)
+                {
+                    drained.write(buffer.array(), 0, buffer.position());
+                    Thread.sleep(1);
+                }
+            }
+            catch (IOException | InterruptedException ignored)
+            {
+            }
+        }
+
+        byte[] await() throws InterruptedException
+        {
+            join(30_000);
+            return drained.toByteArray();
+        }
+    }
+
+    private byte[] content()
+    {
+        var content = new byte[1024 * 1024];
+        new Random(1).nextBytes(content);
+        return content;
+    }
+
+    private Drain drain(Pipe pipe)
+    {
+        var drain = new Drain(pipe);
+        drain.start();
+        return drain;
+    }
+
+    private Pipe pipe() throws IOException
+    {
+        var pipe = Pipe.open();
+        pipe.sink().configureBlocking(false);
+        return pipe;
+    }
+}
@@ -0,0 +1,16 @@
+package digital.fiasco.runtime.repository;
+
+import digital.fiasco.runtime.FiascoTest;
+import org.junit.Test;
+
+public class StripedLockTest extends FiascoTest
+{
+    @Test
+    public void testLock()
+    {
+        var locks = new StripedLock(16);
+        ensure(locks.lock(descriptorXv()) == locks.lock(descriptorXv()));
+        ensure(locks.lock(descriptorAv()) == locks.lock(descriptorAv()));
+        ensureThrows(() -> new StripedLock(12));
+    }
+}
@@ -1,16 +1,29 @@
 package digital.fiasco.runtime.repository.local;
 
+import com.telenav.kivakit.core.thread.locks.Lock;
 import com.telenav.kivakit.filesystem.Folder;
 import digital.fiasco.runtime.FiascoTest;
+import digital.fiasco.runtime.dependency.artifact.Artifact;
+import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor;
 import digital.fiasco.runtime.dependency.artifact.types.Asset;
 import digital.fiasco.runtime.dependency.artifact.types.Library;
 import digital.fiasco.runtime.repository.Repository;
+import digital.fiasco.runtime.repository.Repository.InstallationResult;
 import digital.fiasco.runtime.repository.local.user.FiascoUserRepository;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static com.telenav.kivakit.filesystem.Folders.currentFolder;
 import static digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptorList.descriptors;
+import static digital.fiasco.runtime.repository.Repository.InstallationResult.ALREADY_INSTALLED;
+import static digital.fiasco.runtime.repository.Repository.InstallationResult.INSTALLED;
 
 public class FiascoUserRepositoryTest extends FiascoTest
 {
@@ -28,6 +41,47 @@ public class FiascoUserRepositoryTest extends FiascoTest
         ensureEqual(resolved.first(), core);
     }
 
+    @Test
+    public void testConcurrentInstallsOfDifferentArtifacts() throws InterruptedException
+    {
+        // Pick two artifacts that don't share an install lock,
+        var repository = new BlockingRepository(2);
+        var core = kivakitCore().withContent(packageContent());
+        Artifact<?> other = kivakitIcons().withContent(packageContent());
+        if (repository.installLockFor(core.descriptor()) == repository.installLockFor(other.descriptor()))
+        {
+            other = kivakitLogos().withContent(packageContent());
+        }
+        ensure(repository.installLockFor(core.descriptor()) != repository.installLockFor(other.descriptor()));
+
+        // then install both at once, and check that both are saved at the same time.
+        var results = install(repository, core, other);
+        ensure(repository.entered.await(10, TimeUnit.SECONDS));
+        repository.release.countDown();
+        ensureEqual(await(results, 2), List.of(INSTALLED, INSTALLED));
+        ensureEqual(repository.saves.get(), 2);
+    }
+
+    @Test
+    public void testConcurrentInstallsOfSameArtifact() throws InterruptedException
+    {
+        // Install the same artifact on two threads at once,
+        var repository = new BlockingRepository(2);
+        var core = kivakitCore().withContent(packageContent());
+        var results = install(repository, core, core);
+
+        // check that only one thread saves it while the other waits for the install lock,
+        ensure(!repository.entered.await(1, TimeUnit.SECONDS));
+        ensureEqual(repository.entered.getCount(), 1L);
+
+        // and that the waiting thread finds it installed once the first thread is done.
+        repository.release.countDown();
+        var finished = await(results, 2);
+        ensure(finished.contains(INSTALLED));
+        ensure(finished.contains(ALREADY_INSTALLED));
+        ensureEqual(repository.saves.get(), 1);
+    }
+
     @Test
     public void testEquals()
     {
@@ -104,6 +158,48 @@ public class FiascoUserRepositoryTest extends FiascoTest
         ensureEqual(repository().uri(), root().asUri());
     }
 
+    /**
+     * A repository that holds each install in {@link #saveAttachments(Artifact)} until it is released
+     */
+    private static class BlockingRepository extends FiascoUserRepository
+    {
+        /** Counted down by each install that starts saving attachments */
+        private final CountDownLatch entered;
+
+        /** Releases the installs waiting to save attachments */
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        /** The number of times attachments were saved */
+        private final AtomicInteger saves = new AtomicInteger();
+
+        BlockingRepository(int installs)
+        {
+            super("blocking", root().mkdirs().clearAll());
+            this.entered = new CountDownLatch(installs);
+        }
+
+        Lock installLockFor(ArtifactDescriptor descriptor)
+        {
+            return installLock(descriptor);
+        }
+
+        @Override
+        protected Artifact<?> saveAttachments(Artifact<?> artifact)
+        {
+            saves.incrementAndGet();
+            entered.countDown();
+            try
+            {
+                release.await(30, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return super.saveAttachments(artifact);
+        }
+    }
+
     @NotNull
     private static Repository repository()
     {
@@ -115,6 +211,35 @@ public class FiascoUserRepositoryTest extends FiascoTest
         return currentFolder().folder("target/.fiasco/test").absolute();
     }
 
+    /**
+     * Waits for the given number of install results
+     */
+    private List<InstallationResult> await(List<InstallationResult> results, int count) throws InterruptedException
+    {
+        for (var wait = 0; results.size() < count && wait < 300; wait++)
+        {
+            Thread.sleep(100);
+        }
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * Installs each of the given artifacts on its own thread
+     *
+     * @return The results of the installs, in the order they finish
+     */
+    private List<InstallationResult> install(Repository repository, Artifact<?>... artifacts)
+    {
+        var results = Collections.synchronizedList(new ArrayList<InstallationResult>());
+        for (var artifact : artifacts)
+        {
+            var thread = new Thread(() -> results.add(repository.installArtifact(artifact)));
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return results;
+    }
+
     private void testRepository(Repository repository, Library core, Asset icons, Asset logos)
     {
         {
@@ -0,0 +1,99 @@
+package digital.fiasco.runtime.repository.local.cache;
+
+import com.telenav.kivakit.filesystem.Folder;
+import digital.fiasco.runtime.FiascoTest;
+import digital.fiasco.runtime.repository.local.cache.ContentBlobIndex.Blob;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static com.telenav.kivakit.filesystem.Folders.currentFolder;
+import static digital.fiasco.runtime.repository.local.cache.ContentBlobIndex.normalizedSha256;
+import static digital.fiasco.runtime.repository.local.cache.ContentBlobIndex.sha256;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+
+public class ContentBlobIndexTest extends FiascoTest
+{
+    @Test
+    public void testAdd()
+    {
+        var index = index();
+        index.add(hash("hello"), new Blob(32, 5));
+        index.close();
+
+        var reopened = new ContentBlobIndex(root(), "test");
+        ensureEqual(reopened.blob(hash("hello")), new Blob(32, 5));
+        ensure(reopened.blob(hash("world")) == null);
+        reopened.close();
+    }
+
+    @Test
+    public void testNormalizedSha256()
+    {
+        var hash = hash("hello");
+        ensureEqual(normalizedSha256(hash), hash);
+        ensureEqual(normalizedSha256(" " + hash.toUpperCase() + "  hello.jar\n"), hash);
+        ensure(normalizedSha256(null) == null);
+        ensure(normalizedSha256("") == null);
+        ensure(normalizedSha256(hash.substring(1)) == null);
+        ensure(normalizedSha256(hash.replace(hash.charAt(0), 'x')) == null);
+    }
+
+    @Test
+    public void testPartialRecord() throws IOException
+    {
+        var index = index();
+        index.add(hash("hello"), new Blob(32, 5));
+        index.close();
+
+        // A record torn by a crash should be ignored.
+        Files.write(Path.of(root().asUri()).resolve("test.blobs"), new byte[] { 1, 2, 3 }, APPEND);
+        var reopened = new ContentBlobIndex(root(), "test");
+        ensureEqual(reopened.size(), 1);
+        reopened.add(hash("world"), new Blob(69, 6));
+        reopened.close();
+
+        var recovered = new ContentBlobIndex(root(), "test");
+        ensureEqual(recovered.blob(hash("world")), new Blob(69, 6));
+        recovered.close();
+    }
+
+    @Test
+    public void testReplaceAll()
+    {
+        var index = index();
+        index.add(hash("hello"), new Blob(32, 5));
+        index.replaceAll(Map.of(hash("world"), new Blob(64, 6)));
+
+        ensure(index.blob(hash("hello")) == null);
+        ensureEqual(index.blob(hash("world")), new Blob(64, 6));
+        ensureEqual(index.size(), 1);
+        index.delete();
+    }
+
+    @Test
+    public void testSha256()
+    {
+        ensureEqual(hash(""), "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+    }
+
+    private String hash(String text)
+    {
+        return sha256(new ByteArrayInputStream(text.getBytes(UTF_8)));
+    }
+
+    private ContentBlobIndex index()
+    {
+        return new ContentBlobIndex(root().mkdirs().clearAll(), "test");
+    }
+
+    private Folder root()
+    {
+        return currentFolder().folder("target/.fiasco/content-blobs").absolute();
+    }
+}
@@ -0,0 +1,211 @@
+package digital.fiasco.runtime.repository.local.cache;
+
+import com.telenav.kivakit.filesystem.Folder;
+import digital.fiasco.runtime.FiascoTest;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.telenav.kivakit.filesystem.Folders.currentFolder;
+import static digital.fiasco.runtime.repository.ChannelContentReader.transferringContentReader;
+import static digital.fiasco.runtime.repository.local.cache.ContentLog.HEADER_SIZE;
+import static digital.fiasco.runtime.repository.local.cache.ContentLog.position;
+import static digital.fiasco.runtime.repository.local.cache.ContentLog.segment;
+import static digital.fiasco.runtime.repository.local.cache.ContentLogSection.contentLogSection;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+
+public class ContentLogTest extends FiascoTest
+{
+    @Test
+    public void testAppend()
+    {
+        var log = log(1024);
+        var first = append(log, "hello");
+        var second = append(log, "world!");
+        log.sync(log.end());
+
+        ensureEqual(first, (long) HEADER_SIZE);
+        ensureEqual(second, first + 5 + HEADER_SIZE);
+        ensureEqual(log.durable(), log.end());
+        ensureEqual(read(log, first, 5), "hello");
+        ensureEqual(read(log, second, 6), "world!");
+        log.close();
+    }
+
+    @Test
+    public void testCompaction()
+    {
+        var log = log(1024);
+        var first = append(log, "hello");
+        append(log, "garbage");
+        log.sync(log.end());
+
+        // Copy the live record into a new segment,
+        var boundary = log.startSegment();
+        ensureEqual(boundary, 1);
+        var copy = log.copy(ContentLog.hash("hello"), first, 5);
+        log.sync(log.end());
+        ensureEqual(segment(copy), 1);
+        ensureEqual(read(log, copy, 5), "hello");
+
+        // retire the old segment, which can still be read until the next retirement,
+        log.retire(boundary);
+        ensure(log.isRetired(first));
+        ensure(Files.exists(segmentPath(0)));
+        ensureEqual(read(log, first, 5), "hello");
+        ensureEqual(log.size(), position(log.end()));
+
+        // and check that reopening the log deletes it.
+        log.close();
+        var reopened = new ContentLog(root(), "test", 1024);
+        ensureEqual(reopened.firstSegment(), 1);
+        ensure(!Files.exists(segmentPath(0)));
+        ensureEqual(read(reopened, copy, 5), "hello");
+        reopened.close();
+    }
+
+    @Test
+    public void testContentLogSection() throws IOException
+    {
+        var log = log(1024);
+        append(log, "garbage");
+        var offset = append(log, "hello world");
+        log.sync(log.end());
+
+        // A section created from the location of another, as another process would create it,
+        var section = log.content(offset, 11);
+        var copy = contentLogSection(section.segmentPath(), section.segmentPosition(), section.sectionLength());
+
+        // reads the same content.
+        ensureEqual(copy.sectionLength(), 11L);
+        try (var channel = copy.openSection(0, 11))
+        {
+            ensureEqual(new String(Channels.newInputStream(channel).readAllBytes(), UTF_8), "hello world");
+        }
+        log.close();
+    }
+
+    @Test
+    public void testFailedAppend()
+    {
+        var log = log(1024);
+        ensureThrows(() -> log.append(0, 10, out -> out.write("short".getBytes(UTF_8))));
+        var offset = append(log, "after");
+        log.close();
+
+        // The failed record is padding, so the record after it survives recovery.
+        var reopened = new ContentLog(root(), "test", 1024);
+        ensureEqual(reopened.end(), offset + 5);
+        ensureEqual(read(reopened, offset, 5), "after");
+        reopened.close();
+    }
+
+    @Test
+    public void testOpenSection() throws IOException
+    {
+        var log = log(1024);
+        append(log, "garbage");
+        var offset = append(log, "hello world");
+        log.sync(log.end());
+
+        // Read part of the content through a section channel,
+        try (var channel = log.content(offset, 11).openSection(6, 5))
+        {
+            var buffer = ByteBuffer.allocate(16);
+            ensureEqual(channel.read(buffer), 5);
+            ensureEqual(channel.read(buffer), -1);
+            ensureEqual(new String(buffer.array(), 0, 5, UTF_8), "world");
+        }
+
+        // and check that sections outside the content are rejected.
+        ensureThrows(() -> log.content(offset, 11).openSection(6, 6));
+        log.close();
+    }
+
+    @Test
+    public void testRecovery() throws IOException
+    {
+        var log = log(1024);
+        var offset = append(log, "hello");
+        log.sync(log.end());
+        var end = log.end();
+        log.close();
+
+        // Simulate a torn write at the end of the segment,
+        Files.write(segmentPath(0), new byte[] { 'F', 'I', 'A', 'L', 0, 0, 0 }, APPEND);
+
+        // and check that it is truncated on recovery.
+        var reopened = new ContentLog(root(), "test", 1024);
+        ensureEqual(reopened.end(), end);
+        ensureEqual(Files.size(segmentPath(0)), position(end));
+        ensureEqual(read(reopened, offset, 5), "hello");
+        reopened.close();
+    }
+
+    @Test
+    public void testSegments()
+    {
+        var log = log(64);
+        var first = append(log, "0123456789");
+        var second = append(log, "abcdefghij");
+        log.sync(log.end());
+
+        ensureEqual(segment(first), 0);
+        ensureEqual(segment(second), 1);
+        ensureEqual(position(second), (long) HEADER_SIZE);
+        ensureEqual(read(log, second, 10), "abcdefghij");
+        log.delete();
+        ensure(!Files.exists(segmentPath(0)));
+    }
+
+    @Test
+    public void testTransfer() throws IOException
+    {
+        var log = log(1024);
+        var offset = append(log, "hello");
+        log.sync(log.end());
+
+        // Transfer the content to a file directly,
+        var target = Path.of(root().asUri()).resolve("transferred.txt");
+        log.content(offset, 5).transferTo(target);
+        ensureEqual(Files.readString(target), "hello");
+
+        // and through a channel content reader.
+        var out = new ByteArrayOutputStream();
+        log.content(offset, 5).read(transferringContentReader(Channels.newChannel(out)));
+        ensureEqual(out.toString(UTF_8), "hello");
+        log.close();
+    }
+
+    private long append(ContentLog log, String text)
+    {
+        var bytes = text.getBytes(UTF_8);
+        return log.append(ContentLog.hash(text), bytes.length, out -> out.write(bytes));
+    }
+
+    private ContentLog log(long maximumSegmentSize)
+    {
+        return new ContentLog(root().mkdirs().clearAll(), "test", maximumSegmentSize);
+    }
+
+    private String read(ContentLog log, long offset, long length)
+    {
+        return log.content(offset, length).reader().readText();
+    }
+
+    private Folder root()
+    {
+        return currentFolder().folder("target/.fiasco/content-log").absolute();
+    }
+
+    private Path segmentPath(int segment)
+    {
+        return Path.of(root().asUri()).resolve(String.format("test-%05d.binary", segment));
+    }
+}
@@ -0,0 +1,64 @@
+package digital.fiasco.runtime.repository.local.cache;
+
+import com.telenav.kivakit.core.collections.list.ObjectList;
+import digital.fiasco.runtime.FiascoTest;
+import digital.fiasco.runtime.dependency.artifact.Artifact;
+import digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptor;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static com.telenav.kivakit.core.collections.list.ObjectList.list;
+import static com.telenav.kivakit.core.time.Duration.minutes;
+import static com.telenav.kivakit.core.value.count.Bytes.bytes;
+import static digital.fiasco.runtime.repository.local.cache.ContentRetentionPolicy.retainAll;
+
+public class ContentRetentionPolicyTest extends FiascoTest
+{
+    private static final long NOW = 10 * 60 * 1000;
+
+    @Test
+    public void testMaximumAge()
+    {
+        var evictions = retainAll()
+            .withMaximumAge(minutes(5))
+            .evictions(artifacts(), this::lastResolved, NOW);
+
+        ensureEqual(evictions.size(), 1);
+        ensure(evictions.contains(kivakitCore().descriptor()));
+    }
+
+    @Test
+    public void testMaximumSize()
+    {
+        var evictions = retainAll()
+            .withMaximumSize(bytes(150))
+            .evictions(artifacts(), this::lastResolved, NOW);
+
+        ensureEqual(evictions.size(), 2);
+        ensure(evictions.contains(kivakitCore().descriptor()));
+        ensure(evictions.contains(kivakitIcons().descriptor()));
+    }
+
+    @Test
+    public void testRetainAll()
+    {
+        ensure(retainAll().evictions(artifacts(), this::lastResolved, NOW).isEmpty());
+    }
+
+    private ObjectList<Artifact<?>> artifacts()
+    {
+        var content = packageContent().withSize(bytes(100));
+        return list(kivakitCore().withContent(content),
+            kivakitIcons().withContent(content),
+            kivakitLogos().withContent(content));
+    }
+
+    private long lastResolved(ArtifactDescriptor descriptor)
+    {
+        return Map.of(
+            kivakitCore().descriptor(), 0L,
+            kivakitIcons().descriptor(), NOW - 2 * 60 * 1000,
+            kivakitLogos().descriptor(), NOW).get(descriptor);
+    }
+}
@@ -8,12 +8,91 @@ import digital.fiasco.runtime.repository.Repository;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.telenav.kivakit.core.collections.list.ObjectList.list;
 import static com.telenav.kivakit.core.messaging.Listener.throwingListener;
+import static com.telenav.kivakit.core.value.count.Bytes.bytes;
 import static com.telenav.kivakit.filesystem.Folders.currentFolder;
 import static digital.fiasco.runtime.dependency.artifact.descriptor.ArtifactDescriptorList.descriptors;
+import static digital.fiasco.runtime.repository.ChannelContentReader.transferringContentReader;
+import static digital.fiasco.runtime.repository.local.cache.ContentBlobIndex.sha256;
+import static digital.fiasco.runtime.repository.local.cache.ContentLog.HEADER_SIZE;
+import static digital.fiasco.runtime.repository.local.cache.ContentRetentionPolicy.retainAll;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class FiascoCacheRepositoryTest extends FiascoTest
 {
+    @Test
+    public void testCompact()
+    {
+        var core = kivakitCore()
+            .withContent(packageContent());
+        var icons = kivakitIcons()
+            .withContent(packageContent());
+        var logos = kivakitLogos()
+            .withContent(packageContent());
+
+        var repository = new FiascoCacheRepository("test", root().mkdirs().clearAll());
+        repository.installArtifact(core);
+        repository.installArtifact(icons);
+        repository.installArtifact(logos);
+
+        // Compacting without evicting anything should keep every artifact,
+        repository.compact(retainAll());
+        testRepository(repository, core, icons, logos);
+        testRepository(new FiascoCacheRepository("test", root()), core, icons, logos);
+
+        // and evicting everything should remove them all, even after reloading.
+        repository.compact(retainAll().withMaximumSize(bytes(0)));
+        ensure(repository.resolveArtifacts(descriptors(":com.telenav.kivakit::")).isEmpty());
+        ensure(new FiascoCacheRepository("test", root()).resolveArtifacts(descriptors(":com.telenav.kivakit::")).isEmpty());
+    }
+
+    @Test
+    public void testConcurrentInstall() throws Exception
+    {
+        var core = kivakitCore()
+            .withContent(packageContent());
+        var icons = kivakitIcons()
+            .withContent(packageContent());
+        var logos = kivakitLogos()
+            .withContent(packageContent());
+
+        var repository = new FiascoCacheRepository("test", root().mkdirs().clearAll());
+
+        // Install the same artifacts from several threads at once,
+        var executor = Executors.newFixedThreadPool(8);
+        var results = new ArrayList<Future<Repository.InstallationResult>>();
+        for (var thread = 0; thread < 8; thread++)
+        {
+            for (var artifact : list(core, icons, logos))
+            {
+                results.add(executor.submit(() -> repository.installArtifact(artifact)));
+            }
+        }
+
+        // and check that each artifact was installed exactly once.
+        var installed = 0;
+        for (var result : results)
+        {
+            if (result.get() == Repository.InstallationResult.INSTALLED)
+            {
+                installed++;
+            }
+        }
+        executor.shutdown();
+        ensureEqual(installed, 3);
+        testRepository(repository, core, icons, logos);
+    }
+
     @Test
     public void testCreate()
     {
@@ -28,6 +107,63 @@ public class FiascoCacheRepositoryTest extends FiascoTest
         ensureEqual(resolved.first(), core);
     }
 
+    @Test
+    public void testDeduplication() throws IOException
+    {
+        var core = kivakitCore()
+            .withContent(packageContent());
+        var icons = kivakitIcons()
+            .withContent(packageContent());
+        var logos = kivakitLogos()
+            .withContent(packageContent());
+
+        var repository = new FiascoCacheRepository("test", root().mkdirs().clearAll());
+        repository.installArtifact(core);
+        repository.installArtifact(icons);
+        repository.installArtifact(logos);
+
+        // The three artifacts have the same content, so it should only be stored once,
+        var size = packageContent().resource().sizeInBytes().asBytes();
+        var segment = Path.of(root().asUri()).resolve("artifact-content-00000.binary");
+        ensureEqual(Files.size(segment), HEADER_SIZE + size);
+        testRepository(repository, core, icons, logos);
+
+        // and it should only be copied once when the reloaded repository is compacted.
+        var reloaded = new FiascoCacheRepository("test", root());
+        reloaded.compact(retainAll());
+        ensureEqual(Files.size(Path.of(root().asUri()).resolve("artifact-content-00001.binary")), HEADER_SIZE + size);
+        testRepository(reloaded, core, icons, logos);
+    }
+
+    @Test
+    public void testForgedSignature() throws IOException
+    {
+        var content = packageContent();
+        var sha256 = sha256(content.openForReading());
+        var size = content.resource().sizeInBytes().asBytes();
+
+        var repository = new FiascoCacheRepository("test", root().mkdirs().clearAll());
+        repository.installArtifact(kivakitCore().withContent(content));
+
+        // Different content that claims to have the hash of the installed content should be stored separately,
+        var path = Path.of(root().asUri()).resolve("forged.txt");
+        Files.writeString(path, "forged");
+        var forged = content
+            .withResource(root().file("forged.txt"))
+            .withSize(bytes(6))
+            .withSignatures(signatures().withSha256(sha256));
+        repository.installArtifact(kivakitIcons().withContent(forged));
+        var segment = Path.of(root().asUri()).resolve("artifact-content-00000.binary");
+        ensureEqual(Files.size(segment), 2 * HEADER_SIZE + size + 6);
+        var icons = repository.resolveArtifacts(descriptors(kivakitIcons().descriptor())).first();
+        ensureEqual(icons.attachments().first().content().sha256(), sha256(Files.newInputStream(path)));
+
+        // while the same content with a signature file's formatting should be shared.
+        var signed = content.withSignatures(signatures().withSha256(" " + sha256.toUpperCase() + "  content.txt\n"));
+        repository.installArtifact(kivakitLogos().withContent(signed));
+        ensureEqual(Files.size(segment), 2 * HEADER_SIZE + size + 6);
+    }
+
     @Test
     public void testInstall()
     {
@@ -54,6 +190,21 @@ public class FiascoCacheRepositoryTest extends FiascoTest
         ensure(repository().name().equals("test"));
     }
 
+    @Test
+    public void testReadContent()
+    {
+        var core = kivakitCore()
+            .withContent(packageContent());
+
+        var repository = new FiascoCacheRepository("test", root().mkdirs().clearAll());
+        repository.installArtifact(core);
+
+        var out = new ByteArrayOutputStream();
+        repository.readContent(repository.resolveArtifacts(descriptors(core.descriptor())),
+            transferringContentReader(Channels.newChannel(out)));
+        ensureEqual(out.toString(UTF_8), packageContent().resource().reader().readText());
+    }
+
     @Test
     public void testReload()
     {
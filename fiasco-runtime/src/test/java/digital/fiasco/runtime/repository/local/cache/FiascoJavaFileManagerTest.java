@@ -0,0 +1,123 @@
+package digital.fiasco.runtime.repository.local.cache;
+
+import com.telenav.kivakit.core.collections.list.ObjectList;
+import digital.fiasco.runtime.FiascoTest;
+import digital.fiasco.runtime.dependency.artifact.content.jar.JarContent;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static com.telenav.kivakit.filesystem.Folder.FolderType.CLEAN_UP_ON_EXIT;
+import static com.telenav.kivakit.filesystem.Folder.temporaryFolderForProcess;
+import static digital.fiasco.runtime.dependency.artifact.content.jar.JarContent.jarContent;
+import static digital.fiasco.runtime.repository.local.cache.FiascoJavaFileManager.fiascoJavaFileManager;
+import static javax.tools.StandardLocation.CLASS_PATH;
+
+public class FiascoJavaFileManagerTest extends FiascoTest
+{
+    @Test
+    public void testCompile() throws IOException
+    {
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        var classpath = classpath();
+        var target = Files.createTempDirectory("target");
+        var source = Files.writeString(Files.createTempDirectory("sources").resolve("User.java"),
+            "public class User { library.Library library = new library.Library(); }");
+
+        try (var standard = compiler.getStandardFileManager(null, null, null))
+        {
+            standard.setLocation(CLASS_PATH, List.of());
+            var fileManager = fiascoJavaFileManager(standard, classpath);
+            var files = standard.getJavaFileObjects(source.toFile());
+            var options = List.of("-d", target.toString());
+            ensure(compiler.getTask(null, fileManager, null, options, null, files).call());
+            ensure(Files.exists(target.resolve("User.class")));
+        }
+    }
+
+    @Test
+    public void testList() throws IOException
+    {
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        try (var standard = compiler.getStandardFileManager(null, null, null))
+        {
+            standard.setLocation(CLASS_PATH, List.of());
+            var fileManager = fiascoJavaFileManager(standard, classpath());
+            var classes = Set.of(JavaFileObject.Kind.CLASS);
+
+            var listed = fileManager.list(CLASS_PATH, "library", classes, false).iterator();
+            var library = listed.next();
+            ensureEqual(fileManager.inferBinaryName(CLASS_PATH, library), "library.Library");
+            ensure(library.isNameCompatible("Library", JavaFileObject.Kind.CLASS));
+            ensure(!listed.hasNext());
+
+            ensure(fileManager.list(CLASS_PATH, "", classes, true).iterator().hasNext());
+            ensure(!fileManager.list(CLASS_PATH, "", classes, false).iterator().hasNext());
+            ensure(fileManager.getJavaFileForInput(CLASS_PATH, "library.Library", JavaFileObject.Kind.CLASS) != null);
+            ensure(fileManager.getFileForInput(CLASS_PATH, "library", "Library.class") != null);
+        }
+    }
+
+    @Test
+    public void testPrecedence() throws IOException
+    {
+        // Compile a newer library.Library into a classpath folder,
+        var folder = Files.createTempDirectory("folder");
+        var newer = Files.writeString(Files.createTempDirectory("sources").resolve("Library.java"),
+            "package library; public class Library { public void added() { } }");
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        ensure(compiler.run(null, null, null, "-d", folder.toString(), newer.toString()) == 0);
+
+        try (var standard = compiler.getStandardFileManager(null, null, null))
+        {
+            // then check that it hides the one in the cache repository JAR,
+            standard.setLocation(CLASS_PATH, List.of(folder.toFile()));
+            var fileManager = fiascoJavaFileManager(standard, classpath());
+            var classes = Set.of(JavaFileObject.Kind.CLASS);
+            var listed = fileManager.list(CLASS_PATH, "library", classes, false).iterator();
+            ensure(!(listed.next() instanceof FiascoJavaFileManager.EntryFileObject));
+            ensure(!listed.hasNext());
+            ensure(!(fileManager.getJavaFileForInput(CLASS_PATH, "library.Library", JavaFileObject.Kind.CLASS)
+                instanceof FiascoJavaFileManager.EntryFileObject));
+
+            // and that code compiled against them sees the newer class.
+            var target = Files.createTempDirectory("target");
+            var source = Files.writeString(Files.createTempDirectory("sources").resolve("User.java"),
+                "public class User { { new library.Library().added(); } }");
+            var files = standard.getJavaFileObjects(source.toFile());
+            var options = List.of("-d", target.toString());
+            ensure(compiler.getTask(null, fileManager, null, options, null, files).call());
+        }
+    }
+
+    /**
+     * Returns a classpath with a JAR holding the class library.Library
+     */
+    private ObjectList<JarContent> classpath() throws IOException
+    {
+        // Compile the library class,
+        var classes = Files.createTempDirectory("library");
+        var source = Files.writeString(classes.resolve("Library.java"), "package library; public class Library { }");
+        ensure(ToolProvider.getSystemJavaCompiler().run(null, null, null,
+            "-d", classes.toString(), source.toString()) == 0);
+
+        // and package it in a JAR.
+        var jar = temporaryFolderForProcess(CLEAN_UP_ON_EXIT).file("library.jar");
+        try (var out = new JarOutputStream(Files.newOutputStream(jar.asJavaFile().toPath())))
+        {
+            out.putNextEntry(new JarEntry("library/"));
+            out.closeEntry();
+            out.putNextEntry(new JarEntry("library/Library.class"));
+            out.write(Files.readAllBytes(classes.resolve("library/Library.class")));
+            out.closeEntry();
+        }
+        return ObjectList.list(jarContent(jar));
+    }
+}
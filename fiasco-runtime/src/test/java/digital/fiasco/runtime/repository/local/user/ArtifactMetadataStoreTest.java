@@ -0,0 +1,152 @@
+package digital.fiasco.runtime.repository.local.user;
+
+import com.telenav.kivakit.filesystem.Folder;
+import digital.fiasco.runtime.FiascoTest;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.telenav.kivakit.filesystem.Folders.currentFolder;
+
+public class ArtifactMetadataStoreTest extends FiascoTest
+{
+    @Test
+    public void testAppend()
+    {
+        var store = store();
+        ensureEqual(store.size(), 0);
+        ensureEqual(store.append(kivakitCore()), 0);
+        ensureEqual(store.append(kivakitIcons()), 1);
+        ensureEqual(store.size(), 2);
+        ensureEqual(store.record(kivakitIcons().descriptor()), 1);
+        store.close();
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException
+    {
+        // Append records on one thread,
+        var store = store();
+        store.append(kivakitIcons());
+        var appender = new Thread(() ->
+        {
+            for (var i = 0; i < 2_000; i++)
+            {
+                store.append(kivakitCore().withVersion("1.0." + i));
+            }
+        });
+
+        // while another thread looks up records that have been appended.
+        var failure = new AtomicReference<String>();
+        var reader = new Thread(() ->
+        {
+            while (appender.isAlive() && failure.get() == null)
+            {
+                var size = store.size();
+                if (!kivakitIcons().descriptor().equals(store.descriptor(0))
+                    || !Integer.valueOf(0).equals(store.record(kivakitIcons().descriptor()))
+                    || store.descriptor(size - 1) == null)
+                {
+                    failure.set("Lookup failed with " + size + " records");
+                }
+            }
+        });
+        appender.start();
+        reader.start();
+        appender.join();
+        reader.join();
+
+        ensure(failure.get() == null, failure.get());
+        ensureEqual(store.size(), 2_001);
+        ensureEqual(store.record(kivakitCore().withVersion("1.0.1999").descriptor()), 2_000);
+        store.close();
+    }
+
+    @Test
+    public void testDelete()
+    {
+        var store = store();
+        store.append(kivakitCore());
+        ensure(store.exists());
+        store.delete();
+        ensure(!store.exists());
+        ensureEqual(store.size(), 0);
+        store.close();
+    }
+
+    @Test
+    public void testRemove()
+    {
+        var store = store();
+        store.append(kivakitCore());
+        store.append(kivakitIcons());
+        store.remove(kivakitCore().descriptor());
+        ensure(store.record(kivakitCore().descriptor()) == null);
+        store.close();
+
+        var reopened = new ArtifactMetadataStore(root());
+        ensureEqual(reopened.size(), 3);
+        ensure(!reopened.isRemoval(0));
+        ensure(reopened.isRemoval(2));
+        ensureEqual(reopened.descriptor(0), kivakitCore().descriptor());
+        ensureEqual(reopened.descriptor(2), kivakitCore().descriptor());
+        ensure(reopened.record(kivakitCore().descriptor()) == null);
+        reopened.close();
+    }
+
+    @Test
+    public void testIndex()
+    {
+        // Records are found by descriptor, through an index that grows as records are added,
+        var store = store();
+        for (var i = 0; i < 3_000; i++)
+        {
+            store.append(kivakitCore().withVersion("1.0." + i));
+        }
+        ensureEqual(store.record(kivakitCore().withVersion("1.0.1234").descriptor()), 1234);
+        ensure(store.record(kivakitIcons().descriptor()) == null);
+        store.close();
+
+        // and the index is used again when the store is reopened,
+        var reopened = new ArtifactMetadataStore(root());
+        ensureEqual(reopened.record(kivakitCore().withVersion("1.0.2999").descriptor()), 2999);
+        reopened.close();
+
+        // or rebuilt from the records if it is lost.
+        root().file("artifacts.index").delete();
+        var rebuilt = new ArtifactMetadataStore(root());
+        ensureEqual(rebuilt.record(kivakitCore().withVersion("1.0.17").descriptor()), 17);
+        rebuilt.close();
+    }
+
+    @Test
+    public void testReopen()
+    {
+        var store = store();
+        store.append(kivakitCore());
+        store.append(kivakitIcons());
+        store.close();
+
+        var reopened = new ArtifactMetadataStore(root());
+        ensureEqual(reopened.size(), 2);
+        ensureEqual(reopened.record(kivakitCore().descriptor()), 0);
+        ensureEqual(reopened.descriptor(0), kivakitCore().descriptor());
+        ensureEqual(reopened.descriptor(1), kivakitIcons().descriptor());
+        ensureEqual(reopened.record(kivakitIcons().descriptor()), 1);
+        ensureEqual(reopened.artifact(1), kivakitIcons());
+
+        reopened.append(kivakitLogos());
+        ensureEqual(reopened.artifact(2), kivakitLogos());
+        reopened.close();
+    }
+
+    private Folder root()
+    {
+        return currentFolder().folder("target/.fiasco/metadata-store").absolute();
+    }
+
+    private ArtifactMetadataStore store()
+    {
+        return new ArtifactMetadataStore(root().mkdirs().clearAll());
+    }
+}
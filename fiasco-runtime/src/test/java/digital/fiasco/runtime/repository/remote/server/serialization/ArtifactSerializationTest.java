@@ -33,4 +33,16 @@ public class ArtifactSerializationTest extends FiascoTest
         var json = application.toJson();
         ensureEqual(application, artifactFromJson(json));
     }
+
+    @Test
+    public void testJsonWithoutContentType()
+    {
+        var application = kivakitApplication()
+            .withJar(packageContent());
+
+        // Content written without its runtime type should be read as plain content.
+        var json = application.toJson().replaceAll("\"type\"\\s*:\\s*\"ArtifactContent\",\\s*", "");
+        ensure(!json.contains("ArtifactContent"));
+        ensureEqual(application, artifactFromJson(json));
+    }
 }
\ No newline at end of file